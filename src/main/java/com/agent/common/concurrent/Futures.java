@@ -0,0 +1,127 @@
+package com.agent.common.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Futures
+ *
+ * 补齐 JDK 8 缺少的 CompletableFuture 工具（orTimeout / delayedExecutor）。
+ * 共享的定时线程只负责到点发信号，真正的完成动作及其后续回调都在单独的线程池执行，
+ * 慢回调不会拖住其他超时。
+ */
+public final class Futures {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Futures-Timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final ExecutorService COMPLETER = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Futures-Async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private Futures() {
+    }
+
+    /**
+     * 超时未完成时以 TimeoutException 异常完成
+     *
+     * @param future    被保护的 future
+     * @param timeoutMs 超时时间（毫秒，&lt;= 0 时若尚未完成则立即超时）
+     * @param what      超时信息中的描述
+     * @return 以原结果或超时异常完成的 future
+     */
+    public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeoutMs, String what) {
+        if (future.isDone()) {
+            return future;
+        }
+
+        CompletableFuture<T> guarded = new CompletableFuture<>();
+        ScheduledFuture<?> timer = schedule(
+                () -> guarded.completeExceptionally(
+                        new TimeoutException(what + " timed out after " + timeoutMs + "ms")),
+                TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs)));
+
+        future.whenComplete((result, error) -> {
+            timer.cancel(false);
+            if (error != null) {
+                guarded.completeExceptionally(error);
+            } else {
+                guarded.complete(result);
+            }
+        });
+        return guarded;
+    }
+
+    /**
+     * 延迟指定时间后完成的 future
+     */
+    public static CompletableFuture<Void> delay(long delayMs) {
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        schedule(() -> delayed.complete(null), TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)));
+        return delayed;
+    }
+
+    /**
+     * 延迟指定时间后执行任务
+     * 定时线程只负责转交，任务在完成线程池中执行
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        return TIMER.schedule(() -> COMPLETER.execute(task), Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 已异常完成的 future
+     */
+    public static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(error);
+        return failed;
+    }
+
+    /**
+     * 等待全部 future 完成，按顺序收集结果
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<T> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<T> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * 剥掉 CompletionException / ExecutionException 包装
+     */
+    public static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
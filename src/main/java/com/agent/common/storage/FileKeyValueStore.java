@@ -0,0 +1,113 @@
+package com.agent.common.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * File Key-Value Store
+ *
+ * 原来的目录布局：每个键对应文件 {dir}/{key}{suffix}。作为兼容后端保留，已有数据目录无需改动
+ *
+ * 每次写入先写临时文件再原子替换，单个键不会写坏；批量逐个键执行，不是原子的。
+ * 键必须是普通文件名（不含路径分隔符，不能是 "." 或 ".."）
+ */
+public final class FileKeyValueStore implements KeyValueStore {
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path dir;
+
+    private final String suffix;
+
+    public FileKeyValueStore(Path dir, String suffix) throws IOException {
+        this.dir = dir;
+        this.suffix = suffix;
+        Files.createDirectories(dir);
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        try {
+            return Files.readAllBytes(fileOf(key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        put(key, value, false);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(fileOf(key));
+    }
+
+    @Override
+    public void write(WriteBatch batch, boolean fsync) throws IOException {
+        for (WriteBatch.Op op : batch.ops()) {
+            if (op.isDelete()) {
+                delete(op.getKey());
+            } else {
+                put(op.getKey(), op.getValue(), fsync);
+            }
+        }
+    }
+
+    @Override
+    public List<String> keys(String prefix) throws IOException {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(suffix) && name.startsWith(prefix));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>(files.length);
+        for (File file : files) {
+            keys.add(file.getName().substring(0, file.getName().length() - suffix.length()));
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return false;
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void put(String key, byte[] value, boolean fsync) throws IOException {
+        Path target = fileOf(key);
+        Path tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(value);
+            if (fsync) {
+                out.getFD().sync();
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path fileOf(String key) {
+        if (key.isEmpty() || key.indexOf('/') >= 0 || key.indexOf('\\') >= 0
+                || ".".equals(key) || "..".equals(key)) {
+            throw new IllegalArgumentException("Key is not a valid file name: " + key);
+        }
+        return dir.resolve(key + suffix);
+    }
+}
@@ -0,0 +1,53 @@
+package com.agent.common.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Key-Value Store SPI
+ *
+ * 原先每个实体一个 JSON 文件的数据（会话、知识库文档）的存储后端。
+ * 键是短的可打印字符串（{@code [A-Za-z0-9_./-]}），值是不透明的字节
+ *
+ * 实现：
+ * - {@link FileKeyValueStore}：每个键一个文件，即原来的目录布局
+ * - {@link LogKeyValueStore}：单文件的嵌入式日志结构存储，多键批量写入是原子的
+ *
+ * 实现都是线程安全的
+ */
+public interface KeyValueStore extends Closeable {
+
+    /**
+     * @return 键对应的值，不存在时返回 null
+     */
+    byte[] get(String key) throws IOException;
+
+    void put(String key, byte[] value) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * 按顺序执行批量中的全部操作
+     *
+     * 崩溃时是否可能只写了一半见 {@link #isAtomic()}
+     *
+     * @param fsync 返回前是否落盘
+     */
+    void write(WriteBatch batch, boolean fsync) throws IOException;
+
+    /**
+     * 以 prefix 开头的键（升序）
+     */
+    List<String> keys(String prefix) throws IOException;
+
+    /**
+     * 崩溃时 {@link #write} 的批量是否要么全部生效、要么全不生效
+     */
+    boolean isAtomic();
+
+    /**
+     * 后端名称（日志和监控用）
+     */
+    String name();
+}
@@ -0,0 +1,56 @@
+package com.agent.common.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Key-Value Stores
+ *
+ * 按配置的后端名称创建 {@link KeyValueStore}
+ */
+public final class KeyValueStores {
+
+    /**
+     * {@link FileKeyValueStore} 的后端名称
+     */
+    public static final String FILE = "file";
+
+    /**
+     * {@link LogKeyValueStore} 的后端名称
+     */
+    public static final String LOG = "log";
+
+    /**
+     * log 后端在存储目录中的数据文件
+     */
+    public static final String LOG_FILE_NAME = "store.kv";
+
+    private static final long DEFAULT_COMPACT_MIN_GARBAGE = 16L << 20;
+
+    private KeyValueStores() {
+    }
+
+    /**
+     * 打开存储
+     *
+     * @param backend 后端名称：file / log
+     * @param dir     存储目录
+     * @param suffix  file 后端的文件后缀（如 ".json"）
+     */
+    public static KeyValueStore open(String backend, Path dir, String suffix) throws IOException {
+        if (backend == null || FILE.equalsIgnoreCase(backend)) {
+            return new FileKeyValueStore(dir, suffix);
+        }
+        if (LOG.equalsIgnoreCase(backend)) {
+            return new LogKeyValueStore(dir.resolve(LOG_FILE_NAME), DEFAULT_COMPACT_MIN_GARBAGE);
+        }
+        throw new IllegalArgumentException("Unknown storage backend: " + backend);
+    }
+
+    /**
+     * 是否为每个实体一个文件的后端
+     */
+    public static boolean isFileBackend(String backend) {
+        return backend == null || FILE.equalsIgnoreCase(backend);
+    }
+}
@@ -0,0 +1,509 @@
+package com.agent.common.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Log Key-Value Store
+ *
+ * 嵌入式日志结构存储（Bitcask 式）：全部键写在一个只追加的数据文件中，
+ * 几万个实体也只占一个文件，不需要扫描目录
+ *
+ *   [int MAGIC][int VERSION]
+ *   [int payloadLength][int crc32(payload)][payload] ...
+ *
+ * 每帧的 payload 是一个 {@link WriteBatch}：[int opCount]，然后每个操作
+ * [byte PUT|DELETE][int keyLength][key][int valueLength][value]（删除没有值）。
+ * 帧完整且校验和一致时才生效，所以每个批量都是原子的：崩溃留下的半帧在打开时截掉；
+ * 中间损坏的帧被跳过，从下一个校验通过的帧继续回放，丢弃的字节数记入日志
+ *
+ * 内存中的有序索引记录每个键最新值的位置，读取只需一次定位读。
+ * 被覆盖和删除的值是垃圾，{@link #compact()} 把存活条目重写到新文件后原子替换；
+ * 垃圾同时超过存活数据和配置的下限时自动压缩
+ */
+@Slf4j
+public final class LogKeyValueStore implements KeyValueStore {
+
+    private static final int MAGIC = 0x414b5631; // "AKV1"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 8;
+    private static final int FRAME_HEADER = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * 压缩时单帧的大小上限
+     */
+    private static final int COMPACT_FRAME_BYTES = 4 << 20;
+
+    private final Path file;
+
+    private final long compactMinGarbage;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<String, Location> index = new TreeMap<>();
+
+    private FileChannel channel;
+
+    private long end;
+
+    private long liveBytes;
+
+    private long garbageBytes;
+
+    private long compactions;
+
+    /**
+     * 值在数据文件中的位置和长度
+     */
+    private static final class Location {
+        private final long offset;
+        private final int length;
+        /** 整个操作在文件中占的字节数（被覆盖后计入垃圾） */
+        private final int recordBytes;
+
+        private Location(long offset, int length, int recordBytes) {
+            this.offset = offset;
+            this.length = length;
+            this.recordBytes = recordBytes;
+        }
+    }
+
+    /**
+     * 打开存储
+     *
+     * @param file              数据文件（不存在时创建）
+     * @param compactMinGarbage 自动压缩的垃圾字节数下限
+     */
+    public LogKeyValueStore(Path file, long compactMinGarbage) throws IOException {
+        this.file = file;
+        this.compactMinGarbage = compactMinGarbage;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        open();
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer value = ByteBuffer.allocate(location.length);
+            readFully(channel, value, location.offset);
+            return value.array();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        write(new WriteBatch().put(key, value), false);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        write(new WriteBatch().delete(key), false);
+    }
+
+    @Override
+    public void write(WriteBatch batch, boolean fsync) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long frameStart = end;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream payload = new DataOutputStream(bytes);
+            List<Location> locations = new ArrayList<>(batch.size());
+            payload.writeInt(batch.size());
+            for (WriteBatch.Op op : batch.ops()) {
+                int opStart = payload.size();
+                byte[] key = keyBytes(op.getKey());
+                payload.writeByte(op.isDelete() ? DELETE : PUT);
+                payload.writeInt(key.length);
+                payload.write(key);
+                if (op.isDelete()) {
+                    locations.add(null);
+                    continue;
+                }
+                payload.writeInt(op.getValue().length);
+                long valueOffset = frameStart + FRAME_HEADER + payload.size();
+                payload.write(op.getValue());
+                locations.add(new Location(valueOffset, op.getValue().length, payload.size() - opStart));
+            }
+            payload.flush();
+            appendFrame(channel, frameStart, bytes.toByteArray(), fsync);
+            end = frameStart + FRAME_HEADER + bytes.size();
+
+            for (int i = 0; i < batch.size(); i++) {
+                WriteBatch.Op op = batch.ops().get(i);
+                if (op.isDelete()) {
+                    // 删除标记写入后即是垃圾
+                    garbageBytes += 1 + 4 + keyBytes(op.getKey()).length;
+                    apply(op.getKey(), null);
+                } else {
+                    apply(op.getKey(), locations.get(i));
+                }
+            }
+            if (garbageBytes > compactMinGarbage && garbageBytes > liveBytes) {
+                try {
+                    compactLocked();
+                } catch (IOException e) {
+                    // 批量已经写入，压缩失败不影响本次写；下次写入时再试
+                    log.warn("⚠️ Key-value store compaction failed: {}", file, e);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> keys(String prefix) {
+        lock.readLock().lock();
+        try {
+            List<String> keys = new ArrayList<>();
+            for (String key : index.tailMap(prefix, true).keySet()) {
+                if (!key.startsWith(prefix)) {
+                    break;
+                }
+                keys.add(key);
+            }
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isAtomic() {
+        return true;
+    }
+
+    @Override
+    public String name() {
+        return "log";
+    }
+
+    /**
+     * 把存活条目重写到新文件，丢掉被覆盖和删除的值
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            return end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long garbageBytes() {
+        lock.readLock().lock();
+        try {
+            return garbageBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long compactions() {
+        lock.readLock().lock();
+        try {
+            return compactions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ===== 内部方法 =====
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index.clear();
+        liveBytes = 0;
+        garbageBytes = 0;
+        long size = channel.size();
+        if (size < FILE_HEADER) {
+            // 新文件（或连文件头都没写完的文件）
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header, 0);
+            end = FILE_HEADER;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException("Not a key-value store file: " + file);
+        }
+
+        long position = FILE_HEADER;
+        long dropped = 0;
+        while (position + FRAME_HEADER <= size) {
+            ByteBuffer payload = readFrame(position, size);
+            if (payload == null) {
+                // 损坏的帧：跳到下一个完整且校验通过的帧，找不到说明是残缺尾部
+                long next = nextFrame(position, size);
+                if (next < 0) {
+                    break;
+                }
+                dropped += next - position;
+                garbageBytes += next - position;
+                position = next;
+                continue;
+            }
+            replayFrame(payload, position + FRAME_HEADER);
+            position += FRAME_HEADER + payload.limit();
+        }
+        if (position < size) {
+            // 写到一半崩溃留下的残缺尾部：该批量没有生效
+            dropped += size - position;
+            channel.truncate(position);
+        }
+        if (dropped > 0) {
+            log.warn("⚠️ Dropped {} corrupt bytes from key-value store: {}", dropped, file);
+        }
+        end = position;
+    }
+
+    /**
+     * 读取 position 处的帧，长度越界或校验和不一致时返回 null
+     */
+    private ByteBuffer readFrame(long position, long size) throws IOException {
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER);
+        readFully(channel, frameHeader, position);
+        frameHeader.flip();
+        int length = frameHeader.getInt();
+        int crc = frameHeader.getInt();
+        if (length < 4 || position + FRAME_HEADER + length > size) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, position + FRAME_HEADER);
+        if (crc32(payload.array()) != crc) {
+            return null;
+        }
+        payload.flip();
+        return payload;
+    }
+
+    /**
+     * 找到损坏帧之后第一个有效帧的位置，没有时返回 -1
+     */
+    private long nextFrame(long position, long size) throws IOException {
+        // 损坏多半只在 payload 里：先按原长度跳过整帧
+        ByteBuffer frameHeader = ByteBuffer.allocate(4);
+        readFully(channel, frameHeader, position);
+        long skip = position + FRAME_HEADER + frameHeader.getInt(0);
+        if (skip > position + FRAME_HEADER && skip + FRAME_HEADER <= size && readFrame(skip, size) != null) {
+            return skip;
+        }
+        // 长度字段也坏了：逐字节向后找
+        for (long candidate = position + 1; candidate + FRAME_HEADER <= size; candidate++) {
+            if (readFrame(candidate, size) != null) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private void replayFrame(ByteBuffer payload, long payloadOffset) {
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            int opStart = payload.position();
+            byte type = payload.get();
+            byte[] key = new byte[payload.getInt()];
+            payload.get(key);
+            String name = new String(key, StandardCharsets.UTF_8);
+            if (type == DELETE) {
+                garbageBytes += payload.position() - opStart;
+                apply(name, null);
+                continue;
+            }
+            int valueLength = payload.getInt();
+            long valueOffset = payloadOffset + payload.position();
+            payload.position(payload.position() + valueLength);
+            apply(name, new Location(valueOffset, valueLength, payload.position() - opStart));
+        }
+    }
+
+    private void apply(String key, Location location) {
+        Location previous = location != null ? index.put(key, location) : index.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.recordBytes;
+            garbageBytes += previous.recordBytes;
+        }
+        if (location != null) {
+            liveBytes += location.recordBytes;
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        TreeMap<String, Location> compacted = new TreeMap<>();
+        long position = FILE_HEADER;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(out, header, 0);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            DataOutputStream payload = new DataOutputStream(bytes);
+            List<String> frameKeys = new ArrayList<>();
+            List<Location> frameLocations = new ArrayList<>();
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                if (bytes.size() == 0) {
+                    payload.writeInt(0); // 操作数，写出帧时回填
+                }
+                int opStart = payload.size();
+                byte[] key = keyBytes(entry.getKey());
+                Location location = entry.getValue();
+                ByteBuffer value = ByteBuffer.allocate(location.length);
+                readFully(channel, value, location.offset);
+                payload.writeByte(PUT);
+                payload.writeInt(key.length);
+                payload.write(key);
+                payload.writeInt(location.length);
+                int valueStart = payload.size();
+                payload.write(value.array());
+                frameKeys.add(entry.getKey());
+                frameLocations.add(new Location(position + FRAME_HEADER + valueStart, location.length,
+                        payload.size() - opStart));
+                if (bytes.size() >= COMPACT_FRAME_BYTES) {
+                    position = flushCompactFrame(out, position, bytes, frameKeys, frameLocations, compacted);
+                }
+            }
+            if (bytes.size() > 0) {
+                position = flushCompactFrame(out, position, bytes, frameKeys, frameLocations, compacted);
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 替换失败时原文件完好，索引仍指向它：重新打开继续使用
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        index.putAll(compacted);
+        end = position;
+        garbageBytes = 0;
+        compactions++;
+    }
+
+    private static long flushCompactFrame(FileChannel out, long position, ByteArrayOutputStream bytes,
+            List<String> keys, List<Location> locations, Map<String, Location> compacted) throws IOException {
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer.wrap(payload).putInt(0, keys.size());
+        appendFrame(out, position, payload, false);
+        for (int i = 0; i < keys.size(); i++) {
+            compacted.put(keys.get(i), locations.get(i));
+        }
+        keys.clear();
+        locations.clear();
+        bytes.reset();
+        return position + FRAME_HEADER + payload.length;
+    }
+
+    private static void appendFrame(FileChannel out, long position, byte[] payload, boolean fsync)
+            throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        frame.putInt(payload.length).putInt(crc32(payload)).put(payload).flip();
+        writeFully(out, frame, position);
+        if (fsync) {
+            out.force(false);
+        }
+    }
+
+    private static byte[] keyBytes(String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Empty key");
+        }
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("Unexpected end of key-value store file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
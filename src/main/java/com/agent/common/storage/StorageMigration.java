@@ -0,0 +1,46 @@
+package com.agent.common.storage;
+
+import java.io.IOException;
+
+/**
+ * Storage Migration
+ *
+ * 把一个 {@link KeyValueStore} 的全部条目复制到另一个，用于把已有数据目录
+ * 从每键一个文件迁移到日志结构后端（或反过来）。
+ * 按批复制，源存储不做改动，迁移失败时重新执行即可
+ */
+public final class StorageMigration {
+
+    private static final int BATCH_BYTES = 4 << 20;
+
+    private StorageMigration() {
+    }
+
+    /**
+     * 复制条目
+     *
+     * @param prefix 只复制以此开头的键（"" 表示全部）
+     * @return 复制的条目数
+     */
+    public static int copy(KeyValueStore from, KeyValueStore to, String prefix) throws IOException {
+        int copied = 0;
+        long batchBytes = 0;
+        WriteBatch batch = new WriteBatch();
+        for (String key : from.keys(prefix)) {
+            byte[] value = from.get(key);
+            if (value == null) {
+                continue;
+            }
+            batch.put(key, value);
+            batchBytes += value.length;
+            copied++;
+            if (batchBytes >= BATCH_BYTES) {
+                to.write(batch, false);
+                batch = new WriteBatch();
+                batchBytes = 0;
+            }
+        }
+        to.write(batch, true);
+        return copied;
+    }
+}
@@ -0,0 +1,65 @@
+package com.agent.common.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Write Batch
+ *
+ * 由 {@link KeyValueStore#write} 按顺序执行的一组写入和删除
+ */
+public final class WriteBatch {
+
+    /**
+     * 一个操作（删除时 value 为 null）
+     */
+    public static final class Op {
+        private final String key;
+        private final byte[] value;
+
+        private Op(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        public boolean isDelete() {
+            return value == null;
+        }
+    }
+
+    private final List<Op> ops = new ArrayList<>();
+
+    public WriteBatch put(String key, byte[] value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for key " + key);
+        }
+        ops.add(new Op(key, value));
+        return this;
+    }
+
+    public WriteBatch delete(String key) {
+        ops.add(new Op(key, null));
+        return this;
+    }
+
+    public List<Op> ops() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    public boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    public int size() {
+        return ops.size();
+    }
+}
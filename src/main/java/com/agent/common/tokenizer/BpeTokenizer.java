@@ -0,0 +1,200 @@
+package com.agent.common.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BPE Tokenizer
+ *
+ * 基于 tiktoken 格式词表的字节级 BPE（每行一个 "base64(token 字节) rank"，如 cl100k_base.tiktoken）。
+ * DeepSeek 等 Hugging Face 字节级词表按合并顺序写出每个 token 的原始字节即可转换成同一格式。
+ *
+ * 文本先按 cl100k 预分词规则切分；每段先整体查表，不是单个 token 时才按 rank 从低到高逐对合并。
+ * 字节序列以 ISO-8859-1 字符串作键，一次查表只是截取子串加一次 HashMap 查找。
+ *
+ * 加载后不可变，线程安全。
+ */
+public final class BpeTokenizer {
+
+    private static final Pattern CL100K_PATTERN = Pattern.compile(
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+                    + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+            Pattern.UNICODE_CHARACTER_CLASS);
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    /**
+     * token 字节（ISO-8859-1 字符串）→ rank
+     */
+    private final Map<String, Integer> encoder;
+
+    /**
+     * rank → token 字节
+     */
+    private final byte[][] decoder;
+
+    private BpeTokenizer(Map<String, Integer> encoder, byte[][] decoder) {
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * 加载 tiktoken 格式词表
+     */
+    public static BpeTokenizer load(InputStream vocab) throws IOException {
+        Map<String, Integer> encoder = new HashMap<>(200_000);
+        int maxRank = -1;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(vocab, StandardCharsets.US_ASCII));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            byte[] bytes = Base64.getDecoder().decode(line.substring(0, space));
+            int rank = Integer.parseInt(line.substring(space + 1).trim());
+            encoder.put(new String(bytes, StandardCharsets.ISO_8859_1), rank);
+            maxRank = Math.max(maxRank, rank);
+        }
+        if (encoder.isEmpty()) {
+            throw new IOException("Empty BPE vocabulary");
+        }
+
+        byte[][] decoder = new byte[maxRank + 1][];
+        for (Map.Entry<String, Integer> entry : encoder.entrySet()) {
+            decoder[entry.getValue()] = entry.getKey().getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return new BpeTokenizer(encoder, decoder);
+    }
+
+    public int getVocabSize() {
+        return encoder.size();
+    }
+
+    /**
+     * 把文本编码为 token rank
+     */
+    public int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        int[][] buffer = { new int[Math.max(16, text.length() / 3)] };
+        int[] size = { 0 };
+        tokenize(text, rank -> {
+            if (size[0] == buffer[0].length) {
+                buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+            }
+            buffer[0][size[0]++] = rank;
+        });
+        return Arrays.copyOf(buffer[0], size[0]);
+    }
+
+    /**
+     * 文本的 token 数（不构建 token 数组）
+     */
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int[] count = { 0 };
+        tokenize(text, rank -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * 把 token rank 解码回文本（末尾被截断的多字节字符丢弃）
+     */
+    public String decode(int[] tokens) {
+        int length = 0;
+        for (int token : tokens) {
+            length += decoder[token].length;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (int token : tokens) {
+            System.arraycopy(decoder[token], 0, bytes, offset, decoder[token].length);
+            offset += decoder[token].length;
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return text.endsWith("\uFFFD") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private void tokenize(String text, IntConsumer sink) {
+        Matcher matcher = CL100K_PATTERN.matcher(text);
+        while (matcher.find()) {
+            byte[] bytes = matcher.group().getBytes(StandardCharsets.UTF_8);
+            String piece = new String(bytes, StandardCharsets.ISO_8859_1);
+            Integer rank = encoder.get(piece);
+            if (rank != null) {
+                sink.accept(rank);
+            } else {
+                bytePairMerge(piece, sink);
+            }
+        }
+    }
+
+    /**
+     * 反复合并 rank 最低的相邻两段，直到没有可合并的一对
+     *
+     * boundaries[0..parts] 为各段起始偏移（最后一个是整段长度）；ranks[i] 为第 i 段与第 i + 1 段合并后的 rank。
+     */
+    private void bytePairMerge(String piece, IntConsumer sink) {
+        int length = piece.length();
+        int[] boundaries = new int[length + 1];
+        int[] ranks = new int[length];
+        for (int i = 0; i <= length; i++) {
+            boundaries[i] = i;
+        }
+        int parts = length;
+        for (int i = 0; i < parts; i++) {
+            ranks[i] = pairRank(piece, boundaries, parts, i);
+        }
+
+        while (parts > 1) {
+            int best = -1;
+            int bestRank = NO_RANK;
+            for (int i = 0; i < parts - 1; i++) {
+                if (ranks[i] < bestRank) {
+                    bestRank = ranks[i];
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+
+            // 合并第 best 段和第 best + 1 段：去掉两者之间的边界
+            System.arraycopy(boundaries, best + 2, boundaries, best + 1, parts - best - 1);
+            System.arraycopy(ranks, best + 2, ranks, best + 1, parts - best - 2);
+            parts--;
+            ranks[best] = pairRank(piece, boundaries, parts, best);
+            if (best > 0) {
+                ranks[best - 1] = pairRank(piece, boundaries, parts, best - 1);
+            }
+        }
+
+        for (int i = 0; i < parts; i++) {
+            Integer rank = encoder.get(piece.substring(boundaries[i], boundaries[i + 1]));
+            // 字节级词表包含所有单字节；未知字节也按一个 token 计
+            sink.accept(rank != null ? rank : 0);
+        }
+    }
+
+    private int pairRank(String piece, int[] boundaries, int parts, int i) {
+        if (i + 1 >= parts) {
+            return NO_RANK;
+        }
+        Integer rank = encoder.get(piece.substring(boundaries[i], boundaries[i + 2]));
+        return rank != null ? rank : NO_RANK;
+    }
+}
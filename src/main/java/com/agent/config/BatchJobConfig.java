@@ -0,0 +1,27 @@
+package com.agent.config;
+
+import com.agent.service.BatchJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量任务初始化配置
+ */
+@Slf4j
+@Configuration
+public class BatchJobConfig {
+
+    /**
+     * 应用启动时加载批量任务，并恢复被中断的任务
+     */
+    @Bean
+    public ApplicationRunner batchJobInitializer(BatchJobService batchJobService) {
+        return args -> {
+            log.info("📦 Initializing Batch Job Service...");
+            batchJobService.init();
+            log.info("✅ Batch Job Service initialized successfully");
+        };
+    }
+}
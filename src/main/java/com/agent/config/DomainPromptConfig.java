@@ -13,6 +13,15 @@ import org.springframework.stereotype.Component;
 @Component
 public class DomainPromptConfig {
 
+    public static final String DOMAIN_MEDICAL = "medical";
+    public static final String DOMAIN_LEGAL = "legal";
+    public static final String DOMAIN_PROGRAMMING = "programming";
+    public static final String DOMAIN_FINANCE = "finance";
+    public static final String DOMAIN_SCIENCE = "science";
+    public static final String DOMAIN_CONTENT = "content";
+    public static final String DOMAIN_DATA = "data";
+    public static final String DOMAIN_GENERAL = "general";
+
     /**
      * 医疗领域系统提示
      * 用于医学咨询、症状分析等
@@ -223,11 +232,20 @@ public class DomainPromptConfig {
     }
 
     /**
-     * 根据关键词自动检测领域
+     * 根据关键词自动检测领域，并返回对应的系统提示
      */
     public String detectAndGetDomainPrompt(String query) {
+        return getDomainPrompt(detectDomain(query));
+    }
+
+    /**
+     * 根据关键词自动检测领域
+     *
+     * @return 领域标识（DOMAIN_* 常量），无法识别时为 DOMAIN_GENERAL
+     */
+    public String detectDomain(String query) {
         if (query == null) {
-            return getGeneralPrompt();
+            return DOMAIN_GENERAL;
         }
 
         String lowerQuery = query.toLowerCase();
@@ -238,40 +256,67 @@ public class DomainPromptConfig {
                 "medical", "doctor", "hospital", "disease", "symptom", "medicine", "health", "diagnos", "patient",
                 "treatment", "pharmaceutical")) {
             log.info("🏥 Detected Medical Domain for query: {}", query);
-            return getMedicalPrompt();
+            return DOMAIN_MEDICAL;
         }
         // 法律关键词
         if (containsKeyword(lowerQuery, "法律", "合同", "权利", "律师", "法规", "条款", "协议", "法律问题",
                 "law", "legal", "attorney", "court", "contract")) {
-            return getLegalPrompt();
+            return DOMAIN_LEGAL;
         }
         // 编程关键词
         if (containsKeyword(lowerQuery, "编程", "代码", "java", "python", "javascript", "算法", "编程问题",
                 "code", "program", "algorithm", "function", "class", "object")) {
-            return getProgrammingPrompt();
+            return DOMAIN_PROGRAMMING;
         }
         // 财务关键词
         if (containsKeyword(lowerQuery, "投资", "财务", "金融", "基金", "股票", "经济", "理财", "财务问题",
                 "finance", "invest", "stock", "fund", "economy", "money", "planning", "budget", "advice")) {
-            return getFinancePrompt();
+            return DOMAIN_FINANCE;
         }
         // 科学关键词
         if (containsKeyword(lowerQuery, "物理", "化学", "生物", "科学", "实验", "原理",
                 "science", "physics", "chemistry", "biology", "experiment")) {
-            return getScienceEducationPrompt();
+            return DOMAIN_SCIENCE;
         }
         // 内容创作关键词
         if (containsKeyword(lowerQuery, "写作", "文章", "创意", "博客", "社交", "内容",
                 "content", "write", "blog", "article", "story")) {
-            return getContentCreationPrompt();
+            return DOMAIN_CONTENT;
         }
         // 数据分析关键词
         if (containsKeyword(lowerQuery, "数据", "分析", "统计", "图表", "报告",
                 "analytics", "data", "sql", "chart", "analysis")) {
-            return getDataAnalyticsPrompt();
+            return DOMAIN_DATA;
         }
 
-        return getGeneralPrompt();
+        return DOMAIN_GENERAL;
+    }
+
+    /**
+     * 领域标识对应的系统提示
+     */
+    public String getDomainPrompt(String domain) {
+        if (domain == null) {
+            return getGeneralPrompt();
+        }
+        switch (domain) {
+            case DOMAIN_MEDICAL:
+                return getMedicalPrompt();
+            case DOMAIN_LEGAL:
+                return getLegalPrompt();
+            case DOMAIN_PROGRAMMING:
+                return getProgrammingPrompt();
+            case DOMAIN_FINANCE:
+                return getFinancePrompt();
+            case DOMAIN_SCIENCE:
+                return getScienceEducationPrompt();
+            case DOMAIN_CONTENT:
+                return getContentCreationPrompt();
+            case DOMAIN_DATA:
+                return getDataAnalyticsPrompt();
+            default:
+                return getGeneralPrompt();
+        }
     }
 
     /**
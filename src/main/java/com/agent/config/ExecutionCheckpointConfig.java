@@ -0,0 +1,27 @@
+package com.agent.config;
+
+import com.agent.reasoning.checkpoint.ExecutionCheckpointStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 执行检查点初始化配置
+ */
+@Slf4j
+@Configuration
+public class ExecutionCheckpointConfig {
+
+    /**
+     * 应用启动时创建检查点目录并清理过期检查点
+     */
+    @Bean
+    public ApplicationRunner executionCheckpointInitializer(ExecutionCheckpointStore checkpointStore) {
+        return args -> {
+            log.info("💾 Initializing Execution Checkpoint Store...");
+            checkpointStore.init();
+            log.info("✅ Execution Checkpoint Store initialized successfully");
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.agent.config;
+
+import com.agent.reasoning.context.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Tokenizer 初始化配置
+ *
+ * 启动时加载 BPE 词表，避免第一次计数的请求承担加载耗时；
+ * 未配置 agent.tokenizer.vocab（默认）时 token 数为规则估算
+ */
+@Slf4j
+@Configuration
+public class TokenizerConfig {
+
+    @Value("${agent.tokenizer.vocab:}")
+    private String vocab;
+
+    @Value("${agent.tokenizer.cache-size:10000}")
+    private Integer cacheSize;
+
+    @PostConstruct
+    public void init() {
+        log.info("🔤 Initializing tokenizer...");
+        TokenCounter.configure(vocab, cacheSize);
+        log.info("✅ Tokenizer ready ({})", TokenCounter.isExact() ? "BPE" : "heuristic estimate");
+    }
+}
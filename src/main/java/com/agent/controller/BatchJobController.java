@@ -0,0 +1,142 @@
+package com.agent.controller;
+
+import com.agent.model.dto.BatchJob;
+import com.agent.service.BatchJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量任务 API
+ * 上传查询文件（每行一条，或 JSONL 的 "query" 字段），后台并行执行，结果以 JSONL 下载
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/agent/batch")
+public class BatchJobController {
+
+    private final BatchJobService batchJobService;
+
+    public BatchJobController(BatchJobService batchJobService) {
+        this.batchJobService = batchJobService;
+    }
+
+    /**
+     * 提交批量任务
+     *
+     * @param file        查询文件
+     * @param parallelism 并行度（可选，受 agent.batch.max-parallelism 限制）
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) Integer parallelism) {
+        try {
+            BatchJob job = batchJobService.submit(file.getOriginalFilename(), file.getInputStream(), parallelism);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("job", job);
+            response.put("message", "✅ Batch job submitted");
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            log.error("Error submitting batch job", e);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to submit batch job: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * 获取所有任务
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getJobs() {
+        List<BatchJob> jobs = batchJobService.getAllJobs();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("total", jobs.size());
+        response.put("jobs", jobs);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取任务进度
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<BatchJob> getJob(@PathVariable String jobId) {
+        BatchJob job = batchJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * 从检查点恢复任务
+     */
+    @PostMapping("/{jobId}/resume")
+    public ResponseEntity<BatchJob> resume(@PathVariable String jobId) {
+        BatchJob job = batchJobService.resume(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * 取消任务
+     */
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<BatchJob> cancel(@PathVariable String jobId) {
+        BatchJob job = batchJobService.cancel(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * 下载结果（JSONL，每行一个成功的查询结果；任务运行中也可下载已完成部分）
+     */
+    @GetMapping("/{jobId}/results")
+    public ResponseEntity<Resource> downloadResults(@PathVariable String jobId) {
+        return download(jobId, batchJobService.getResultsFile(jobId), "results");
+    }
+
+    /**
+     * 下载失败记录（JSONL，每次失败的尝试一行）
+     */
+    @GetMapping("/{jobId}/failures")
+    public ResponseEntity<Resource> downloadFailures(@PathVariable String jobId) {
+        return download(jobId, batchJobService.getFailuresFile(jobId), "failures");
+    }
+
+    private ResponseEntity<Resource> download(String jobId, File file, String kind) {
+        if (batchJobService.getJob(jobId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!file.exists()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + jobId + "-" + kind + ".jsonl\"")
+                .contentType(MediaType.parseMediaType("application/x-ndjson;charset=UTF-8"))
+                .body(new FileSystemResource(file));
+    }
+}
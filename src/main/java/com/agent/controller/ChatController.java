@@ -1,13 +1,19 @@
 package com.agent.controller;
 
+import com.agent.common.concurrent.Futures;
 import com.agent.demo.BeanContainerDemoService;
 import com.agent.demo.BeanDemoService;
 import com.agent.demo.CircularDependencyDemoService;
 import com.agent.demo.ConfigurationDemoService;
+import com.agent.llm.ratelimit.RequestPriority;
 import com.agent.model.dto.ChatSession;
-import com.agent.model.dto.ConversationMessage;
+import com.agent.reasoning.checkpoint.ExecutionCheckpoint;
+import com.agent.reasoning.checkpoint.ExecutionCheckpointStore;
+import com.agent.reasoning.context.CompiledHistory;
+import com.agent.reasoning.context.SessionContextCache;
 import com.agent.reasoning.engine.ExecutionContext;
 import com.agent.reasoning.engine.ReasoningEngine;
+import com.agent.reasoning.engine.ThoughtAction;
 import com.agent.service.SessionManager;
 import com.agent.streaming.StreamingResponseHandler;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +26,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -35,6 +43,7 @@ public class ChatController {
 
     private final ReasoningEngine reasoningEngine;
     private final SessionManager sessionManager;
+    private final SessionContextCache sessionContextCache;
     private final BeanDemoService beanDemoService;
     private final BeanContainerDemoService beanContainerDemoService;
     private final CircularDependencyDemoService circularDependencyDemoService; // ← 断依赖演示
@@ -49,12 +58,14 @@ public class ChatController {
      */
     public ChatController(ReasoningEngine reasoningEngine,
             SessionManager sessionManager,
+            SessionContextCache sessionContextCache,
             BeanDemoService beanDemoService,
             BeanContainerDemoService beanContainerDemoService,
             CircularDependencyDemoService circularDependencyDemoService,
             ConfigurationDemoService configurationDemoService) {
         this.reasoningEngine = reasoningEngine;
         this.sessionManager = sessionManager;
+        this.sessionContextCache = sessionContextCache;
         this.beanDemoService = beanDemoService;
         this.beanContainerDemoService = beanContainerDemoService;
         this.circularDependencyDemoService = circularDependencyDemoService;
@@ -66,92 +77,197 @@ public class ChatController {
      * Chat endpoint - Execute agent reasoning for a user query
      * 支持会话历史存储
      * 
+     * The servlet thread is released while the agent reasons; the response is
+     * written when the execution future completes.
+     * 
+     * An optional executionId makes the request idempotent: retrying it after a
+     * dropped connection or a restart resumes the same execution from its last
+     * checkpoint instead of starting over.
+     * 
      * @param request Request body containing the user query and optional sessionId
      * @return Agent response with result, steps, duration and sessionId
      */
     @PostMapping("/chat")
-    public ResponseEntity<Map<String, Object>> chat(@RequestBody ChatRequest request) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> chat(@RequestBody ChatRequest request) {
         log.info("Received chat request: {}", request.getQuery());
 
         if (request.getQuery() == null || request.getQuery().trim().isEmpty()) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Query cannot be empty");
-            return ResponseEntity.badRequest().body(errorResponse);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
+        }
+
+        String executionId = request.getExecutionId();
+        if (executionId != null && !ExecutionCheckpointStore.isValidExecutionId(executionId)) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Invalid executionId");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
         }
 
         try {
-            // 获取或创建会话
+            // 获取或创建会话（请求处理期间钉住，不被淘汰）
             String sessionId = request.getSessionId();
             if (sessionId == null || sessionId.isEmpty()) {
                 sessionId = UUID.randomUUID().toString();
+            } else if (!SessionManager.isValidSessionId(sessionId)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Invalid sessionId");
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
             }
-            ChatSession session = sessionManager.getOrCreateSession(sessionId);
-
-            long startTime = System.currentTimeMillis();
+            ChatSession session = sessionManager.acquireSession(sessionId);
+            try {
+                long startTime = System.currentTimeMillis();
 
-            // 添加用户消息到历史
-            session.addMessage("user", request.getQuery());
+                // 重试同一执行时这一轮的问答已在历史中
+                boolean retry = executionId != null && (reasoningEngine.isActive(executionId)
+                        || reasoningEngine.getCheckpoint(executionId) != null);
+                if (executionId == null) {
+                    executionId = UUID.randomUUID().toString();
+                }
 
-            // 构建对话历史上下文
-            List<String> conversationHistory = session.getMessages().stream()
-                    .map(msg -> msg.getRole().toUpperCase() + ": " + msg.getContent())
-                    .collect(Collectors.toList());
+                // 添加用户消息到历史，推理前先标记待保存
+                if (!retry) {
+                    session.addMessage("user", request.getQuery());
+                    sessionManager.markDirty(session);
+                }
 
-            // Execute the agent reasoning with conversation context
-            ExecutionContext context = reasoningEngine.execute(request.getQuery(), conversationHistory);
+                // 对话历史上下文：会话级缓存只追加本轮新增的消息（持有会话锁，避免并发请求同时改消息列表）
+                CompiledHistory history;
+                synchronized (session) {
+                    history = sessionContextCache.compile(sessionId, session.getArchivedCount(),
+                            session.getMessages(), request.getQuery());
+                }
 
-            // 添加助手回复到历史
-            session.addMessage("assistant", context.getFinalAnswer());
+                // Execute the agent reasoning with conversation context
+                String finalSessionId = sessionId;
+                return reasoningEngine.executeAsync(executionId, request.getQuery(), history,
+                                RequestPriority.NORMAL)
+                        .thenApply(context -> buildChatResponse(request, session, finalSessionId, context, retry,
+                                startTime))
+                        .exceptionally(this::chatError)
+                        .whenComplete((response, error) -> sessionManager.releaseSession(session));
+            } catch (RuntimeException e) {
+                sessionManager.releaseSession(session);
+                throw e;
+            }
 
-            // 保存会话
-            sessionManager.saveSession(session);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(chatError(e));
+        }
+    }
 
-            long duration = System.currentTimeMillis() - startTime;
+    /**
+     * Persist the assistant turn and build the /chat response body
+     */
+    private ResponseEntity<Map<String, Object>> buildChatResponse(ChatRequest request, ChatSession session,
+            String sessionId, ExecutionContext context, boolean retry, long startTime) {
+        // 添加助手回复到历史并保存会话（后台合并写盘）；重试的执行由第一次请求记录
+        if (!retry) {
+            session.addMessage("assistant", context.getFinalAnswer());
+            sessionManager.markDirty(session);
+        }
 
-            // Build response
-            Map<String, Object> response = new HashMap<>();
-            response.put("sessionId", sessionId);
-            response.put("result", context.getFinalAnswer());
-            response.put("iterations", context.getCurrentIteration());
-            response.put("duration_ms", duration);
-            response.put("is_complete", context.getIsComplete());
-            response.put("messageCount", session.getMessageCount());
+        long duration = System.currentTimeMillis() - startTime;
+
+        // Build response
+        Map<String, Object> response = new HashMap<>();
+        response.put("sessionId", sessionId);
+        response.put("executionId", context.getExecutionId());
+        response.put("result", context.getFinalAnswer());
+        response.put("iterations", context.getCurrentIteration());
+        response.put("route", context.getRoute());
+        response.put("duration_ms", duration);
+        response.put("is_complete", context.getIsComplete());
+        response.put("messageCount", session.getMessageCount());
+        response.put("usage", buildUsage(context));
+        response.put("timing", context.getTrace().getBreakdown());
+
+        // Full span tree (OTLP JSON) if requested
+        if (request.isIncludeTrace()) {
+            response.put("trace", context.getTrace().toOtlpJson());
+        }
 
-            // Add detailed steps if requested
-            if (request.isIncludeDetails()) {
-                response.put("steps", context.getThoughtActions().stream()
-                        .map(ta -> {
-                            Map<String, Object> step = new HashMap<>();
-                            step.put("thought", ta.getThought() != null ? ta.getThought() : "");
-                            step.put("action", ta.getAction() != null ? ta.getAction() : "");
-                            step.put("action_input", ta.getActionInput() != null ? ta.getActionInput() : "");
-                            return step;
-                        })
-                        .collect(Collectors.toList()));
+        // Add detailed steps if requested
+        if (request.isIncludeDetails()) {
+            response.put("steps", context.getThoughtActions().stream()
+                    .map(this::buildStep)
+                    .collect(Collectors.toList()));
+
+            response.put("tool_results", context.getToolResults().stream()
+                    .map(tr -> {
+                        Map<String, Object> result = new HashMap<>();
+                        result.put("tool_name", tr.getToolName());
+                        result.put("result", tr.getResult());
+                        result.put("success", tr.getSuccess());
+                        result.put("execution_time_ms", tr.getExecutionTimeMs());
+                        result.put("error", tr.getError() != null ? tr.getError() : "");
+                        return result;
+                    })
+                    .collect(Collectors.toList()));
+        }
 
-                response.put("tool_results", context.getToolResults().stream()
-                        .map(tr -> {
-                            Map<String, Object> result = new HashMap<>();
-                            result.put("tool_name", tr.getToolName());
-                            result.put("result", tr.getResult());
-                            result.put("success", tr.getSuccess());
-                            result.put("execution_time_ms", tr.getExecutionTimeMs());
-                            result.put("error", tr.getError() != null ? tr.getError() : "");
-                            return result;
-                        })
-                        .collect(Collectors.toList()));
-            }
+        log.info("Chat request completed in {}ms with {} iterations, sessionId: {}",
+                duration, context.getCurrentIteration(), sessionId);
+        return ResponseEntity.ok(response);
+    }
 
-            log.info("Chat request completed in {}ms with {} iterations, sessionId: {}",
-                    duration, context.getCurrentIteration(), sessionId);
-            return ResponseEntity.ok(response);
+    /**
+     * 查询执行检查点状态
+     */
+    @GetMapping("/executions/{executionId}")
+    public ResponseEntity<Map<String, Object>> getExecution(@PathVariable String executionId) {
+        ExecutionCheckpoint checkpoint = reasoningEngine.getCheckpoint(executionId);
+        if (checkpoint == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("executionId", executionId);
+        response.put("status", checkpoint.getStatus());
+        response.put("active", reasoningEngine.isActive(executionId));
+        response.put("resumable", checkpoint.isResumable());
+        response.put("next_iteration", checkpoint.getNextIteration() + 1);
+        response.put("pending_tool_calls", checkpoint.getPendingToolCalls().size());
+        response.put("steps", checkpoint.getThoughtActions().size());
+        response.put("updated_time", checkpoint.getUpdatedTime());
+        if (!checkpoint.isResumable()) {
+            response.put("result", checkpoint.getFinalAnswer());
+        }
+        return ResponseEntity.ok(response);
+    }
 
-        } catch (Exception e) {
-            log.error("Error processing chat request", e);
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Internal server error: " + e.getMessage());
-            return ResponseEntity.internalServerError().body(errorResponse);
+    /**
+     * 按执行 ID 恢复（仍在运行则等待其结果，已完成则直接返回结果）
+     * 不写入会话；需要同步会话历史时用相同 executionId 重试 /chat
+     */
+    @PostMapping("/executions/{executionId}/resume")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> resumeExecution(@PathVariable String executionId) {
+        CompletableFuture<ExecutionContext> execution = reasoningEngine.resume(executionId);
+        if (execution == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
         }
+        return execution
+                .thenApply(context -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("executionId", executionId);
+                    response.put("result", context.getFinalAnswer());
+                    response.put("iterations", context.getCurrentIteration());
+                    response.put("is_complete", context.getIsComplete());
+                    response.put("usage", buildUsage(context));
+                    response.put("timing", context.getTrace().getBreakdown());
+                    response.put("steps", context.getThoughtActions().stream()
+                            .map(this::buildStep)
+                            .collect(Collectors.toList()));
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(this::chatError);
+    }
+
+    private ResponseEntity<Map<String, Object>> chatError(Throwable error) {
+        Throwable cause = Futures.unwrap(error);
+        log.error("Error processing chat request", cause);
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Internal server error: " + cause.getMessage());
+        return ResponseEntity.internalServerError().body(errorResponse);
     }
 
     /**
@@ -168,6 +284,8 @@ public class ChatController {
 
         // 在后台线程中异步处理请求
         handler.executeAsync(() -> {
+            boolean pending = false;
+            ChatSession acquired = null;
             try {
                 if (request.getQuery() == null || request.getQuery().trim().isEmpty()) {
                     handler.sendError("Query cannot be empty");
@@ -181,90 +299,88 @@ public class ChatController {
 
                 log.info("🔄 Received streaming chat request: {}", request.getQuery());
 
-                // 获取或创建会话
+                String executionId = request.getExecutionId();
+                if (executionId != null && !ExecutionCheckpointStore.isValidExecutionId(executionId)) {
+                    handler.sendError("Invalid executionId");
+                    return;
+                }
+
+                // 获取或创建会话（推理结束前钉住，不被淘汰）
                 String sessionId = request.getSessionId();
                 if (sessionId == null || sessionId.isEmpty()) {
                     sessionId = UUID.randomUUID().toString();
+                } else if (!SessionManager.isValidSessionId(sessionId)) {
+                    handler.sendError("Invalid sessionId");
+                    return;
                 }
-                ChatSession session = sessionManager.getOrCreateSession(sessionId);
+                ChatSession session = sessionManager.acquireSession(sessionId);
+                acquired = session;
 
                 long startTime = System.currentTimeMillis();
 
-                // 添加用户消息到历史
-                session.addMessage("user", request.getQuery());
+                // 断线重连时这一轮的问答已在历史中
+                boolean retry = executionId != null && (reasoningEngine.isActive(executionId)
+                        || reasoningEngine.getCheckpoint(executionId) != null);
+                if (executionId == null) {
+                    executionId = UUID.randomUUID().toString();
+                }
+
+                // 添加用户消息到历史，推理前先标记待保存
+                if (!retry) {
+                    session.addMessage("user", request.getQuery());
+                    sessionManager.markDirty(session);
+                }
 
-                // 发送会话 ID
+                // 发送会话 ID 和执行 ID（连接断开后可用执行 ID 恢复）
                 Map<String, String> sessionInfo = new HashMap<>();
                 sessionInfo.put("sessionId", sessionId);
                 handler.sendChunk("Session: " + sessionId + "\n");
+                handler.sendChunk("Execution: " + executionId + "\n");
 
-                // 构建对话历史上下文
-                List<String> conversationHistory = session.getMessages().stream()
-                        .map(msg -> msg.getRole().toUpperCase() + ": " + msg.getContent())
-                        .collect(Collectors.toList());
+                // 对话历史上下文：会话级缓存只追加本轮新增的消息（持有会话锁）
+                CompiledHistory history;
+                synchronized (session) {
+                    history = sessionContextCache.compile(sessionId, session.getArchivedCount(),
+                            session.getMessages(), request.getQuery());
+                }
 
                 // 发送开始信息
                 handler.sendChunk("🤔 Reasoning...\n");
 
                 // 执行推理引擎（可以逐步发送步骤信息）
-                ExecutionContext context = reasoningEngine.execute(request.getQuery(), conversationHistory);
-
-                // 发送逐个单词的流式响应
-                String finalAnswer = context.getFinalAnswer();
-                handler.sendChunk("\n📝 Response:\n");
-
-                // 模拟流式传输：按句子分割返回
-                String[] sentences = finalAnswer.split("(?<=[。！？；])|(?<=[.!?;])");
-                for (String sentence : sentences) {
-                    if (handler.isActive() && !sentence.trim().isEmpty()) {
-                        handler.sendChunk(sentence.trim() + " ");
-                        // 模拟延迟，使流式传输更明显
-                        Thread.sleep(50);
-                    }
-                }
-
-                // 添加助手回复到历史
-                session.addMessage("assistant", finalAnswer);
-
-                // 保存会话
-                sessionManager.saveSession(session);
-
-                long duration = System.currentTimeMillis() - startTime;
-
-                // 构建最终结果
-                Map<String, Object> finalResult = new HashMap<>();
-                finalResult.put("sessionId", sessionId);
-                finalResult.put("messageCount", session.getMessageCount());
-                finalResult.put("duration_ms", duration);
-                finalResult.put("iterations", context.getCurrentIteration());
-                finalResult.put("is_complete", context.getIsComplete());
-
-                // 如果请求了详细信息
-                if (request.isIncludeDetails()) {
-                    finalResult.put("steps", context.getThoughtActions().stream()
-                            .map(ta -> {
-                                Map<String, Object> step = new HashMap<>();
-                                step.put("thought", ta.getThought() != null ? ta.getThought() : "");
-                                step.put("action", ta.getAction() != null ? ta.getAction() : "");
-                                step.put("action_input", ta.getActionInput() != null ? ta.getActionInput() : "");
-                                return step;
-                            })
-                            .collect(Collectors.toList()));
-                }
-
-                // 发送完成标记
-                handler.sendComplete(finalResult);
-
-                log.info("✅ Streaming response completed in {}ms, sessionId: {}", duration, sessionId);
+                // 交互式流式请求在 LLM 限流队列中优先于后台任务
+                // 推理完成后再回到处理器线程发送结果，等待期间不占用线程
+                String runId = executionId;
+                String runSessionId = sessionId;
+                pending = true;
+                reasoningEngine.executeAsync(executionId, request.getQuery(), history, RequestPriority.INTERACTIVE)
+                        .whenComplete((context, error) -> {
+                            if (error == null && !retry) {
+                                // 添加助手回复到历史（客户端断开也保留），后台合并写盘；重连的执行由第一次请求记录
+                                session.addMessage("assistant", context.getFinalAnswer());
+                                sessionManager.markDirty(session);
+                            }
+                            sessionManager.releaseSession(session);
+                            try {
+                                handler.executeAsync(() -> finishStream(handler, request, session, runSessionId,
+                                        runId, context, error, startTime));
+                            } catch (RejectedExecutionException e) {
+                                // 处理器已关闭（客户端断开或 SSE 超时）
+                                log.debug("Stream already closed for execution {}", runId);
+                            }
+                        });
 
             } catch (Exception e) {
                 log.error("❌ Error in streaming chat", e);
                 handler.sendError("Error: " + e.getMessage());
+                pending = false;
             } finally {
-                try {
-                    handler.close();
-                } catch (Exception e) {
-                    log.error("❌ 关闭流式处理器时出错: {}", e.getMessage());
+                // 推理仍在进行时由 finishStream 关闭，推理结束时解除钉住
+                if (!pending) {
+                    if (acquired != null) {
+                        sessionManager.releaseSession(acquired);
+                    }
+                    closeQuietly(handler);
                 }
             }
         });
@@ -272,6 +388,101 @@ public class ChatController {
         return emitter;
     }
 
+    /**
+     * 在处理器线程上发送推理结果，然后关闭流
+     */
+    private void finishStream(StreamingResponseHandler handler, ChatRequest request, ChatSession session,
+            String sessionId, String executionId, ExecutionContext context, Throwable error, long startTime) {
+        try {
+            if (error != null) {
+                Throwable cause = Futures.unwrap(error);
+                log.error("❌ Error in streaming chat", cause);
+                handler.sendError("Error: " + cause.getMessage());
+                return;
+            }
+
+            // 发送逐个单词的流式响应
+            String finalAnswer = context.getFinalAnswer();
+            handler.sendChunk("\n📝 Response:\n");
+
+            // 模拟流式传输：按句子分割返回
+            String[] sentences = finalAnswer.split("(?<=[。！？；])|(?<=[.!?;])");
+            for (String sentence : sentences) {
+                if (handler.isActive() && !sentence.trim().isEmpty()) {
+                    handler.sendChunk(sentence.trim() + " ");
+                    // 模拟延迟，使流式传输更明显
+                    Thread.sleep(50);
+                }
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+
+            // 构建最终结果
+            Map<String, Object> finalResult = new HashMap<>();
+            finalResult.put("sessionId", sessionId);
+            finalResult.put("executionId", executionId);
+            finalResult.put("messageCount", session.getMessageCount());
+            finalResult.put("duration_ms", duration);
+            finalResult.put("iterations", context.getCurrentIteration());
+            finalResult.put("is_complete", context.getIsComplete());
+            finalResult.put("usage", buildUsage(context));
+
+            // 如果请求了详细信息
+            if (request.isIncludeDetails()) {
+                finalResult.put("steps", context.getThoughtActions().stream()
+                        .map(this::buildStep)
+                        .collect(Collectors.toList()));
+            }
+
+            // 发送完成标记
+            handler.sendComplete(finalResult);
+
+            log.info("✅ Streaming response completed in {}ms, sessionId: {}", duration, sessionId);
+
+        } catch (Exception e) {
+            log.error("❌ Error in streaming chat", e);
+            handler.sendError("Error: " + e.getMessage());
+        } finally {
+            closeQuietly(handler);
+        }
+    }
+
+    private void closeQuietly(StreamingResponseHandler handler) {
+        try {
+            handler.close();
+        } catch (Exception e) {
+            log.error("❌ 关闭流式处理器时出错: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 构建单个推理步骤（并行调用多个工具时附带 tool_calls）
+     */
+    private Map<String, Object> buildStep(ThoughtAction ta) {
+        Map<String, Object> step = new HashMap<>();
+        step.put("thought", ta.getThought() != null ? ta.getThought() : "");
+        step.put("action", ta.getAction() != null ? ta.getAction() : "");
+        step.put("action_input", ta.getActionInput() != null ? ta.getActionInput() : "");
+        if (ta.isParallel()) {
+            step.put("tool_calls", ta.getToolCalls());
+        }
+        return step;
+    }
+
+    /**
+     * 汇总本次推理的 token 用量（含前缀缓存命中）
+     */
+    private Map<String, Object> buildUsage(ExecutionContext context) {
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("prompt_tokens", context.getPromptTokens());
+        usage.put("completion_tokens", context.getCompletionTokens());
+        usage.put("prompt_cache_hit_tokens", context.getPromptCacheHitTokens());
+        usage.put("prompt_cache_hit_ratio", context.getPromptCacheHitRatio());
+        usage.put("speculative_tool_hits", context.getSpeculativeHits());
+        usage.put("speculative_tool_discards", context.getSpeculativeDiscards());
+        return usage;
+    }
+
     /**
      * 【演示 5】容器统计信息 - Spring 管理的所有 Bean
      * 
@@ -727,6 +938,8 @@ public class ChatController {
         private String sessionId;
         private List<String> conversationHistory;
         private boolean includeDetails = false;
+        private boolean includeTrace = false;
+        private String executionId;
 
         public ChatRequest() {
         }
@@ -778,6 +991,22 @@ public class ChatController {
             this.includeDetails = includeDetails;
         }
 
+        public String getExecutionId() {
+            return executionId;
+        }
+
+        public void setExecutionId(String executionId) {
+            this.executionId = executionId;
+        }
+
+        public boolean isIncludeTrace() {
+            return includeTrace;
+        }
+
+        public void setIncludeTrace(boolean includeTrace) {
+            this.includeTrace = includeTrace;
+        }
+
         @Override
         public String toString() {
             return "ChatRequest{" +
@@ -785,6 +1014,8 @@ public class ChatController {
                     ", sessionId='" + sessionId + '\'' +
                     ", conversationHistory=" + (conversationHistory != null ? conversationHistory.size() : 0) +
                     ", includeDetails=" + includeDetails +
+                    ", includeTrace=" + includeTrace +
+                    ", executionId='" + executionId + '\'' +
                     '}';
         }
     }
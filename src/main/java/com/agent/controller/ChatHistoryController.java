@@ -1,10 +1,13 @@
 package com.agent.controller;
 
 import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.SessionSummary;
+import com.agent.reasoning.context.SessionContextCache;
 import com.agent.service.SessionManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,9 +23,11 @@ import java.util.Map;
 public class ChatHistoryController {
 
     private final SessionManager sessionManager;
+    private final SessionContextCache sessionContextCache;
 
-    public ChatHistoryController(SessionManager sessionManager) {
+    public ChatHistoryController(SessionManager sessionManager, SessionContextCache sessionContextCache) {
         this.sessionManager = sessionManager;
+        this.sessionContextCache = sessionContextCache;
     }
 
     /**
@@ -31,7 +36,7 @@ public class ChatHistoryController {
      */
     @GetMapping("/sessions")
     public Map<String, Object> getSessions() {
-        List<ChatSession> sessions = sessionManager.getAllSessions();
+        List<SessionSummary> sessions = sessionManager.getAllSessions();
         Map<String, Object> response = new HashMap<>();
         response.put("total", sessions.size());
         response.put("sessions", sessions);
@@ -52,7 +57,12 @@ public class ChatHistoryController {
         response.put("createdTime", session.getCreatedTime());
         response.put("lastActivityTime", session.getLastActivityTime());
         response.put("messageCount", session.getMessageCount());
-        response.put("messages", session.getMessages());
+        // 只返回最近的消息；更早的已归档，完整历史通过 export 获取
+        response.put("archivedCount", session.getArchivedCount());
+        synchronized (session) {
+            // 序列化在锁外进行：取一份副本，避免并发请求同时追加消息
+            response.put("messages", new ArrayList<>(session.getMessages()));
+        }
 
         return response;
     }
@@ -83,6 +93,7 @@ public class ChatHistoryController {
     @DeleteMapping("/sessions/{sessionId}")
     public Map<String, String> deleteSession(@PathVariable String sessionId) {
         boolean success = sessionManager.deleteSession(sessionId);
+        sessionContextCache.invalidate(sessionId);
 
         Map<String, String> response = new HashMap<>();
         if (success) {
@@ -104,6 +115,7 @@ public class ChatHistoryController {
         ChatSession session = sessionManager.getOrCreateSession(sessionId);
         session.clearMessages();
         sessionManager.saveSession(session);
+        sessionContextCache.invalidate(sessionId);
 
         Map<String, String> response = new HashMap<>();
         response.put("message", "✅ Session messages cleared");
@@ -123,6 +135,9 @@ public class ChatHistoryController {
         ChatSession session = sessionManager.getOrCreateSession(sessionId);
         boolean success = session.removeMessage(messageId);
         sessionManager.saveSession(session);
+        if (success) {
+            sessionContextCache.invalidate(sessionId);
+        }
 
         Map<String, Object> response = new HashMap<>();
         if (success) {
@@ -144,7 +159,7 @@ public class ChatHistoryController {
      */
     @GetMapping("/sessions/{sessionId}/export")
     public ChatSession exportSession(@PathVariable String sessionId) {
-        return sessionManager.getOrCreateSession(sessionId);
+        return sessionManager.exportSession(sessionId);
     }
 
     /**
@@ -153,12 +168,12 @@ public class ChatHistoryController {
      */
     @GetMapping("/stats")
     public Map<String, Object> getStats() {
-        List<ChatSession> sessions = sessionManager.getAllSessions();
+        List<SessionSummary> sessions = sessionManager.getAllSessions();
 
         int totalMessages = 0;
         int totalSessions = sessions.size();
 
-        for (ChatSession session : sessions) {
+        for (SessionSummary session : sessions) {
             totalMessages += session.getMessageCount();
         }
 
@@ -1,5 +1,10 @@
 package com.agent.knowledge.service;
 
+import com.agent.common.storage.FileKeyValueStore;
+import com.agent.common.storage.KeyValueStore;
+import com.agent.common.storage.KeyValueStores;
+import com.agent.common.storage.StorageMigration;
+import com.agent.common.storage.WriteBatch;
 import com.agent.knowledge.model.Document;
 import com.agent.knowledge.model.TextVector;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -7,14 +12,24 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * 知识库管理器
  * 负责文档的存储、检索和相似度搜索
+ * 
+ * 文档存储后端可插拔（agent.knowledge.storage-backend）：
+ * - file：每个文档一个 JSON 文件（兼容原有布局，默认）
+ * - log：全部文档放在一个嵌入式日志结构键值存储 store.kv 中；
+ *   首次以 log 启动且存储为空时自动从已有的 JSON 文件迁移（原文件保留）
  */
 @Slf4j
 @Component
@@ -23,7 +38,17 @@ public class KnowledgeBaseManager {
     @Value("${agent.knowledge.storage-path:./data/knowledge}")
     private String storagePath;
 
+    /**
+     * 存储后端：file / log
+     */
+    @Value("${agent.knowledge.storage-backend:file}")
+    private String storageBackend;
+
+    private KeyValueStore store;
+
     private final EmbeddingService embeddingService;
+    private static final String DOCUMENT_SUFFIX = ".json";
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // 内存中的文档和向量索引
@@ -45,9 +70,42 @@ public class KnowledgeBaseManager {
                 log.info("✅ Knowledge base storage directory created: {}", storagePath);
             }
         }
+        try {
+            store = openStore();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open knowledge base store: " + storagePath, e);
+        }
         loadAllDocuments();
     }
 
+    private KeyValueStore openStore() throws IOException {
+        Path dir = Paths.get(storagePath);
+        KeyValueStore opened = KeyValueStores.open(storageBackend, dir, DOCUMENT_SUFFIX);
+        if (!KeyValueStores.isFileBackend(storageBackend) && opened.keys("").isEmpty()) {
+            KeyValueStore legacy = new FileKeyValueStore(dir, DOCUMENT_SUFFIX);
+            int migrated = StorageMigration.copy(legacy, opened, "");
+            if (migrated > 0) {
+                log.info("📦 Migrated {} documents from JSON files to the {} store (files kept)",
+                        migrated, opened.name());
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * 应用关闭时关闭存储
+     */
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.error("❌ Failed to close knowledge base store", e);
+            }
+        }
+    }
+
     /**
      * 添加文档到知识库
      */
@@ -74,15 +132,16 @@ public class KnowledgeBaseManager {
      * 删除文档
      */
     public void removeDocument(String docId) {
-        documentIndex.remove(docId);
+        boolean existed = documentIndex.remove(docId) != null;
         vectorIndex.remove(docId);
 
-        File file = new File(storagePath, docId + ".json");
-        if (file.exists()) {
-            boolean deleted = file.delete();
-            if (deleted) {
+        try {
+            store.delete(docId);
+            if (existed) {
                 log.info("🗑️ Document deleted: {}", docId);
             }
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("❌ Failed to delete document: {}", docId, e);
         }
     }
 
@@ -123,8 +182,26 @@ public class KnowledgeBaseManager {
         }
 
         // 生成查询向量
+        return search(embeddingService.embed(query), topK);
+    }
+
+    /**
+     * 检索 - 查询向量和前K个结果一起返回
+     * 推理前的分流阶段复用这两者，同一查询只嵌入和检索一次
+     * 
+     * @param query 查询文本
+     * @param topK  返回前K个最相似的文档
+     * @return 查询向量和相似度排序的文档列表（知识库为空时列表为空）
+     */
+    public Retrieval retrieve(String query, int topK) {
         TextVector queryVector = embeddingService.embed(query);
+        return Retrieval.builder()
+                .queryVector(queryVector)
+                .results(documentIndex.isEmpty() ? Collections.emptyList() : search(queryVector, topK))
+                .build();
+    }
 
+    private List<SearchResult> search(TextVector queryVector, int topK) {
         // 计算与所有文档的相似度
         List<SearchResult> results = new ArrayList<>();
         for (Map.Entry<String, TextVector> entry : vectorIndex.entrySet()) {
@@ -169,17 +246,15 @@ public class KnowledgeBaseManager {
         documentIndex.clear();
         vectorIndex.clear();
 
-        // 删除所有文件
-        File dir = new File(storagePath);
-        if (dir.exists()) {
-            File[] files = dir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(".json")) {
-                        file.delete();
-                    }
-                }
+        // 删除所有文档（log 后端为一次批量写）
+        try {
+            WriteBatch batch = new WriteBatch();
+            for (String key : store.keys("")) {
+                batch.delete(key);
             }
+            store.write(batch, false);
+        } catch (IOException e) {
+            log.error("❌ Failed to clear knowledge base storage", e);
         }
         log.info("🧹 Knowledge base cleared");
     }
@@ -204,6 +279,7 @@ public class KnowledgeBaseManager {
                 .categories(categories.size())
                 .vectorDimension(embeddingService.getVectorDimension())
                 .storagePath(storagePath)
+                .storageBackend(store != null ? store.name() : storageBackend)
                 .build();
     }
 
@@ -211,39 +287,40 @@ public class KnowledgeBaseManager {
 
     private void saveDocument(Document document) {
         try {
-            File file = new File(storagePath, document.getDocId() + ".json");
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, document);
+            store.put(document.getDocId(), objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(document));
             log.debug("💾 Document saved: {}", document.getDocId());
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             log.error("❌ Failed to save document: {}", document.getDocId(), e);
         }
     }
 
     private void loadAllDocuments() {
-        File dir = new File(storagePath);
-        if (!dir.exists()) {
-            return;
-        }
-
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
-        if (files == null) {
+        List<String> keys;
+        try {
+            keys = store.keys("");
+        } catch (IOException e) {
+            log.error("❌ Failed to list documents", e);
             return;
         }
 
-        for (File file : files) {
+        for (String key : keys) {
             try {
-                Document doc = objectMapper.readValue(file, Document.class);
+                byte[] json = store.get(key);
+                if (json == null) {
+                    continue;
+                }
+                Document doc = objectMapper.readValue(json, Document.class);
                 documentIndex.put(doc.getDocId(), doc);
 
                 // 重新生成向量
                 TextVector vector = embeddingService.embed(doc.getContent());
                 vectorIndex.put(doc.getDocId(), vector);
             } catch (IOException e) {
-                log.error("Failed to load document from file: {}", file.getName(), e);
+                log.error("Failed to load document: {}", key, e);
             }
         }
 
-        log.info("✅ Loaded {} documents from storage", documentIndex.size());
+        log.info("✅ Loaded {} documents from {} storage", documentIndex.size(), store.name());
     }
 
     // ===== 内部类 =====
@@ -259,6 +336,13 @@ public class KnowledgeBaseManager {
         private String summary;
     }
 
+    @lombok.Data
+    @lombok.Builder
+    public static class Retrieval {
+        private TextVector queryVector;
+        private List<SearchResult> results;
+    }
+
     @lombok.Data
     @lombok.Builder
     public static class KnowledgeBaseStats {
@@ -267,5 +351,6 @@ public class KnowledgeBaseManager {
         private int categories;
         private int vectorDimension;
         private String storagePath;
+        private String storageBackend;
     }
 }
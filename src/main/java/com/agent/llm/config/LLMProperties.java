@@ -35,6 +35,10 @@ public class LLMProperties {
         private Integer maxTokens;
         private Double temperature;
         private Integer timeout;
+        /**
+         * Max in-flight async HTTP calls (OkHttp dispatcher limit, total and per host)
+         */
+        private Integer maxConcurrentRequests;
     }
     
     /**
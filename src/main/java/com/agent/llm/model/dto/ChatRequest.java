@@ -1,5 +1,8 @@
 package com.agent.llm.model.dto;
 
+import com.agent.llm.ratelimit.RequestPriority;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -7,6 +10,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Chat Request DTO
@@ -57,4 +61,32 @@ public class ChatRequest {
     @JsonProperty("stream")
     @Builder.Default
     private Boolean stream = false;
+    
+    /**
+     * Streaming options, e.g. {"include_usage": true}
+     */
+    @JsonProperty("stream_options")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Object> streamOptions;
+
+    /**
+     * Tools the model may call (native function-calling mode)
+     */
+    @JsonProperty("tools")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<ToolSpec> tools;
+    
+    /**
+     * Tool choice: "auto", "none" or "required"
+     */
+    @JsonProperty("tool_choice")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String toolChoice;
+
+    /**
+     * Client-side admission priority (not sent to the provider)
+     */
+    @JsonIgnore
+    @Builder.Default
+    private RequestPriority priority = RequestPriority.NORMAL;
 }
@@ -1,5 +1,6 @@
 package com.agent.llm.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
@@ -7,6 +8,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -60,6 +62,29 @@ public class ChatResponse {
         return null;
     }
     
+    /**
+     * Get the first choice's message
+     */
+    @JsonIgnore
+    public Message getMessage() {
+        if (choices != null && !choices.isEmpty()) {
+            return choices.get(0).getMessage();
+        }
+        return null;
+    }
+    
+    /**
+     * Get the tool calls requested in the first choice (empty if none)
+     */
+    @JsonIgnore
+    public List<LLMToolCall> getToolCalls() {
+        Message message = getMessage();
+        if (message != null && message.getToolCalls() != null) {
+            return message.getToolCalls();
+        }
+        return Collections.emptyList();
+    }
+    
     /**
      * Choice DTO
      */
@@ -98,5 +123,17 @@ public class ChatResponse {
         
         @JsonProperty("total_tokens")
         private Integer totalTokens;
+        
+        /**
+         * Prompt tokens served from the provider's context cache (DeepSeek)
+         */
+        @JsonProperty("prompt_cache_hit_tokens")
+        private Integer promptCacheHitTokens;
+        
+        /**
+         * Prompt tokens not found in the provider's context cache (DeepSeek)
+         */
+        @JsonProperty("prompt_cache_miss_tokens")
+        private Integer promptCacheMissTokens;
     }
 }
@@ -0,0 +1,59 @@
+package com.agent.llm.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * LLM Tool Call DTO
+ * A function call requested by the model (OpenAI-compatible "tool_calls" entry)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LLMToolCall {
+
+    /**
+     * Call ID, echoed back in the "tool" message carrying the result
+     */
+    @JsonProperty("id")
+    private String id;
+
+    /**
+     * Call type, always "function"
+     */
+    @JsonProperty("type")
+    @Builder.Default
+    private String type = "function";
+
+    /**
+     * Function name and arguments
+     */
+    @JsonProperty("function")
+    private FunctionCall function;
+
+    /**
+     * Function Call DTO
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class FunctionCall {
+
+        @JsonProperty("name")
+        private String name;
+
+        /**
+         * Arguments as a JSON-encoded string
+         */
+        @JsonProperty("arguments")
+        private String arguments;
+    }
+}
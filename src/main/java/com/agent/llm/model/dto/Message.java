@@ -1,11 +1,15 @@
 package com.agent.llm.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * Message DTO
  * Represents a single message in a conversation
@@ -14,10 +18,11 @@ import lombok.NoArgsConstructor;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class Message {
     
     /**
-     * Role: "user", "assistant", "system"
+     * Role: "user", "assistant", "system", "tool"
      */
     @JsonProperty("role")
     private String role;
@@ -27,4 +32,18 @@ public class Message {
      */
     @JsonProperty("content")
     private String content;
+    
+    /**
+     * Tool calls requested by the assistant (native function-calling mode)
+     */
+    @JsonProperty("tool_calls")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<LLMToolCall> toolCalls;
+    
+    /**
+     * ID of the tool call this "tool" message answers
+     */
+    @JsonProperty("tool_call_id")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String toolCallId;
 }
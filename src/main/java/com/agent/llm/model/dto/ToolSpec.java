@@ -0,0 +1,55 @@
+package com.agent.llm.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Tool Spec DTO
+ * A tool offered to the model (OpenAI-compatible "tools" entry)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ToolSpec {
+
+    /**
+     * Tool type, always "function"
+     */
+    @JsonProperty("type")
+    @Builder.Default
+    private String type = "function";
+
+    /**
+     * Function definition
+     */
+    @JsonProperty("function")
+    private FunctionDefinition function;
+
+    /**
+     * Function Definition DTO
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FunctionDefinition {
+
+        @JsonProperty("name")
+        private String name;
+
+        @JsonProperty("description")
+        private String description;
+
+        /**
+         * Parameter schema in JSON Schema format
+         */
+        @JsonProperty("parameters")
+        private Map<String, Object> parameters;
+    }
+}
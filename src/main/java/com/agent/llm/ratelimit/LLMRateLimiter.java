@@ -0,0 +1,470 @@
+package com.agent.llm.ratelimit;
+
+import com.agent.common.concurrent.Futures;
+import com.agent.common.exception.AgentException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LLM Rate Limiter
+ *
+ * 出站 LLM 调用的客户端准入控制：
+ * - 两个令牌桶：每分钟请求数、每分钟 token 数
+ * - 优先级队列：等待中的调用严格按优先级、同优先级按先后放行
+ * - 放行时按估算扣 token，调用结束后按实际用量对账；调用失败时退还未用掉的配额
+ * - 服务端返回 429 时，在 Retry-After 时间内暂停放行
+ * - 等待不占线程：排队方持有 future，配额恢复、暂停结束或超时时由定时器唤醒队列
+ *
+ * 队列深度和等待时间通过 getStats() 导出
+ */
+@Slf4j
+@Component
+public class LLMRateLimiter {
+
+    @Value("${llm.rate-limit.enabled:true}")
+    private Boolean enabled = true;
+
+    @Value("${llm.rate-limit.requests-per-minute:60}")
+    private Integer requestsPerMinute = 60;
+
+    @Value("${llm.rate-limit.tokens-per-minute:100000}")
+    private Integer tokensPerMinute = 100000;
+
+    @Value("${llm.rate-limit.max-queue-depth:500}")
+    private Integer maxQueueDepth = 500;
+
+    @Value("${llm.rate-limit.max-wait-ms:120000}")
+    private Long maxWaitMs = 120000L;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+    private ScheduledFuture<?> wakeTask;
+    private long wakeAtNanos = 0;
+
+    private double availableRequests = -1;
+    private double availableTokens = -1;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = 0;
+    private long ticketSequence = 0;
+
+    // 监控指标
+    private final AtomicLong admittedCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong throttledCount = new AtomicLong(0);
+    private final AtomicLong refundedCount = new AtomicLong(0);
+    private final AtomicLong totalWaitMs = new AtomicLong(0);
+    private final AtomicLong maxObservedWaitMs = new AtomicLong(0);
+    private final AtomicLong peakQueueDepth = new AtomicLong(0);
+    private final Map<RequestPriority, AtomicLong> admittedByPriority = new EnumMap<>(RequestPriority.class);
+
+    public LLMRateLimiter() {
+        for (RequestPriority priority : RequestPriority.values()) {
+            admittedByPriority.put(priority, new AtomicLong(0));
+        }
+    }
+
+    /**
+     * 阻塞等待两个令牌桶都放行
+     *
+     * @param priority        优先级
+     * @param estimatedTokens 估算的 prompt + completion token 数
+     * @return 放行凭证，调用结束后用于对账
+     * @throws AgentException       队列已满或等待超过 max-wait-ms
+     * @throws InterruptedException 等待线程被中断
+     */
+    public Permit acquire(RequestPriority priority, int estimatedTokens) throws InterruptedException {
+        CompletableFuture<Permit> future = acquireAsync(priority, estimatedTokens);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            if (!future.cancel(false) && !future.isCompletedExceptionally()) {
+                // 中断的同时刚好被放行：调用没有发出，配额全部退还
+                refund(future.join());
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AgentException) {
+                throw (AgentException) cause;
+            }
+            throw new AgentException("LLM admission failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 排队等待放行（不阻塞）
+     *
+     * 两个令牌桶都放行后 future 以凭证完成；队列已满或等待超过 max-wait-ms 时
+     * 以 AgentException 异常完成。取消 future 即退出队列
+     *
+     * @param priority        优先级
+     * @param estimatedTokens 估算的 prompt + completion token 数
+     * @return 放行凭证
+     */
+    public CompletableFuture<Permit> acquireAsync(RequestPriority priority, int estimatedTokens) {
+        RequestPriority effectivePriority = priority != null ? priority : RequestPriority.NORMAL;
+        int tokens = Math.max(1, Math.min(estimatedTokens, tokensPerMinute));
+
+        if (!Boolean.TRUE.equals(enabled)) {
+            return CompletableFuture.completedFuture(new Permit(effectivePriority, tokens, 0));
+        }
+
+        long now = System.nanoTime();
+        Ticket ticket;
+        List<Runnable> completions;
+
+        lock.lock();
+        try {
+            if (waiting.size() >= maxQueueDepth) {
+                rejectedCount.incrementAndGet();
+                return Futures.failed(new AgentException("LLM request queue is full (" + waiting.size() + " waiting)"));
+            }
+
+            ticket = new Ticket(effectivePriority, ticketSequence++, tokens, now,
+                    now + TimeUnit.MILLISECONDS.toNanos(maxWaitMs));
+            waiting.add(ticket);
+            peakQueueDepth.accumulateAndGet(waiting.size(), Math::max);
+            completions = pump();
+        } finally {
+            lock.unlock();
+        }
+
+        runAll(completions);
+        return ticket.future;
+    }
+
+    /**
+     * 按实际用量对账：多估算的退还，少估算的补扣
+     *
+     * 调用失败时传 0（服务端没有计费），只退 token，请求数仍算已用。
+     * 每个凭证只对账一次，重复调用被忽略
+     */
+    public void release(Permit permit, Integer actualTokens) {
+        if (permit == null || actualTokens == null || !Boolean.TRUE.equals(enabled) || !permit.settle()) {
+            return;
+        }
+        adjust(0, permit.getEstimatedTokens() - actualTokens);
+    }
+
+    /**
+     * 调用没有到达服务端（放行后被取消、连接失败）：请求数和 token 全部退还
+     *
+     * 每个凭证只对账一次，已经 release 过的凭证不再退还
+     */
+    public void refund(Permit permit) {
+        if (permit == null || !Boolean.TRUE.equals(enabled) || !permit.settle()) {
+            return;
+        }
+        refundedCount.incrementAndGet();
+        adjust(1, permit.getEstimatedTokens());
+    }
+
+    private void adjust(int requests, int tokens) {
+        if (requests == 0 && tokens == 0) {
+            return;
+        }
+
+        List<Runnable> completions;
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            availableRequests = Math.min(requestsPerMinute, availableRequests + requests);
+            availableTokens = Math.min(tokensPerMinute, availableTokens + tokens);
+            completions = pump();
+        } finally {
+            lock.unlock();
+        }
+        runAll(completions);
+    }
+
+    /**
+     * 服务端返回 429：在给定时间内暂停所有放行
+     */
+    public void onThrottled(long retryAfterMs) {
+        throttledCount.incrementAndGet();
+        long pauseMs = retryAfterMs > 0 ? retryAfterMs : 1000;
+
+        List<Runnable> completions;
+        lock.lock();
+        try {
+            pausedUntilNanos = Math.max(pausedUntilNanos,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMs));
+            availableRequests = 0;
+            completions = pump();
+        } finally {
+            lock.unlock();
+        }
+        runAll(completions);
+        log.warn("⏸️  LLM provider throttled us, pausing admissions for {}ms", pauseMs);
+    }
+
+    /**
+     * 当前队列深度
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 限流统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Integer> depthByPriority = new HashMap<>();
+        for (RequestPriority priority : RequestPriority.values()) {
+            depthByPriority.put(priority.name(), 0);
+        }
+
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            for (Ticket ticket : waiting) {
+                depthByPriority.merge(ticket.priority.name(), 1, Integer::sum);
+            }
+            stats.put("queueDepth", waiting.size());
+            stats.put("availableRequests", (int) availableRequests);
+            stats.put("availableTokens", (int) availableTokens);
+            stats.put("paused", System.nanoTime() < pausedUntilNanos);
+        } finally {
+            lock.unlock();
+        }
+
+        long admitted = admittedCount.get();
+        Map<String, Long> admittedPerPriority = new HashMap<>();
+        for (Map.Entry<RequestPriority, AtomicLong> entry : admittedByPriority.entrySet()) {
+            admittedPerPriority.put(entry.getKey().name(), entry.getValue().get());
+        }
+
+        stats.put("enabled", enabled);
+        stats.put("requestsPerMinute", requestsPerMinute);
+        stats.put("tokensPerMinute", tokensPerMinute);
+        stats.put("queueDepthByPriority", depthByPriority);
+        stats.put("peakQueueDepth", peakQueueDepth.get());
+        stats.put("admitted", admitted);
+        stats.put("admittedByPriority", admittedPerPriority);
+        stats.put("rejected", rejectedCount.get());
+        stats.put("throttled", throttledCount.get());
+        stats.put("refunded", refundedCount.get());
+        stats.put("avgWaitMs", admitted > 0 ? (double) totalWaitMs.get() / admitted : 0.0);
+        stats.put("maxWaitMs", maxObservedWaitMs.get());
+        return stats;
+    }
+
+    // ===== 内部方法 =====
+
+    /**
+     * 放行、超时或移除排队中的调用（调用方需持有锁）
+     *
+     * future 由调用方在释放锁之后完成（见 runAll），后续阶段不会在限流器的锁内执行
+     *
+     * @return 释放锁之后要执行的完成动作
+     */
+    private List<Runnable> pump() {
+        long now = System.nanoTime();
+        refill(now);
+        List<Runnable> completions = new ArrayList<>();
+        long wakeAt = Long.MAX_VALUE;
+
+        // 移除已退出的调用，队列中任何位置超时的调用直接拒绝
+        Iterator<Ticket> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            Ticket ticket = iterator.next();
+            if (ticket.future.isDone()) {
+                iterator.remove();
+            } else if (now >= ticket.deadlineNanos) {
+                iterator.remove();
+                rejectedCount.incrementAndGet();
+                AgentException timeout = new AgentException(String.format(
+                        "LLM rate limit wait exceeded %dms (priority=%s, queue=%d)",
+                        maxWaitMs, ticket.priority, waiting.size()));
+                completions.add(() -> ticket.future.completeExceptionally(timeout));
+            } else {
+                wakeAt = Math.min(wakeAt, ticket.deadlineNanos);
+            }
+        }
+
+        // 严格从队头放行：低优先级不会越过正在等待的高优先级
+        while (!waiting.isEmpty()) {
+            Ticket head = waiting.peek();
+            if (now < pausedUntilNanos) {
+                wakeAt = Math.min(wakeAt, pausedUntilNanos);
+                break;
+            }
+            if (availableRequests >= 1 && availableTokens >= head.tokens) {
+                waiting.poll();
+                availableRequests -= 1;
+                availableTokens -= head.tokens;
+
+                long waitedMs = TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedNanos);
+                recordAdmission(head.priority, waitedMs);
+                Permit permit = new Permit(head.priority, head.tokens, waitedMs);
+                completions.add(() -> {
+                    if (!head.future.complete(permit)) {
+                        // 放行的同时已退出队列：配额全部退还
+                        refund(permit);
+                    }
+                });
+            } else {
+                wakeAt = Math.min(wakeAt, now + nanosUntilAvailable(head.tokens));
+                break;
+            }
+        }
+
+        if (!waiting.isEmpty()) {
+            scheduleWake(wakeAt, now);
+        }
+        return completions;
+    }
+
+    /**
+     * 保证不晚于 wakeAt 再处理一次队列（调用方需持有锁）
+     */
+    private void scheduleWake(long wakeAt, long now) {
+        if (wakeTask != null && !wakeTask.isDone() && wakeAtNanos <= wakeAt) {
+            return;
+        }
+        if (wakeTask != null) {
+            wakeTask.cancel(false);
+        }
+        wakeAtNanos = wakeAt;
+        wakeTask = Futures.schedule(() -> {
+            List<Runnable> completions;
+            lock.lock();
+            try {
+                // 本次唤醒已触发，由 pump() 安排下一次
+                wakeTask = null;
+                completions = pump();
+            } finally {
+                lock.unlock();
+            }
+            runAll(completions);
+        }, wakeAt - now);
+    }
+
+    private void runAll(List<Runnable> completions) {
+        for (Runnable completion : completions) {
+            completion.run();
+        }
+    }
+
+    private void refill(long now) {
+        if (availableRequests < 0) {
+            availableRequests = requestsPerMinute;
+            availableTokens = tokensPerMinute;
+            lastRefillNanos = now;
+            return;
+        }
+
+        long elapsed = now - lastRefillNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+
+        double minutes = elapsed / (double) TimeUnit.MINUTES.toNanos(1);
+        availableRequests = Math.min(requestsPerMinute, availableRequests + minutes * requestsPerMinute);
+        availableTokens = Math.min(tokensPerMinute, availableTokens + minutes * tokensPerMinute);
+        lastRefillNanos = now;
+    }
+
+    private long nanosUntilAvailable(int tokens) {
+        long minuteNanos = TimeUnit.MINUTES.toNanos(1);
+        double missingRequests = Math.max(0, 1 - availableRequests);
+        double missingTokens = Math.max(0, tokens - availableTokens);
+
+        long requestWait = (long) (missingRequests / requestsPerMinute * minuteNanos);
+        long tokenWait = (long) (missingTokens / tokensPerMinute * minuteNanos);
+        return Math.max(requestWait, tokenWait) + 1;
+    }
+
+    private void recordAdmission(RequestPriority priority, long waitedMs) {
+        admittedCount.incrementAndGet();
+        admittedByPriority.get(priority).incrementAndGet();
+        totalWaitMs.addAndGet(waitedMs);
+        maxObservedWaitMs.accumulateAndGet(waitedMs, Math::max);
+        if (waitedMs > 0) {
+            log.debug("🚦 LLM call admitted after {}ms (priority={})", waitedMs, priority);
+        }
+    }
+
+    /**
+     * 排队中的调用，先按优先级、再按到达顺序排序
+     */
+    private static final class Ticket implements Comparable<Ticket> {
+        private final RequestPriority priority;
+        private final long sequence;
+        private final int tokens;
+        private final long enqueuedNanos;
+        private final long deadlineNanos;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        private Ticket(RequestPriority priority, long sequence, int tokens, long enqueuedNanos, long deadlineNanos) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.tokens = tokens;
+            this.enqueuedNanos = enqueuedNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 单次 LLM 调用的放行凭证
+     */
+    public static final class Permit {
+        private final RequestPriority priority;
+        private final int estimatedTokens;
+        private final long waitedMs;
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+
+        Permit(RequestPriority priority, int estimatedTokens, long waitedMs) {
+            this.priority = priority;
+            this.estimatedTokens = estimatedTokens;
+            this.waitedMs = waitedMs;
+        }
+
+        public RequestPriority getPriority() {
+            return priority;
+        }
+
+        public int getEstimatedTokens() {
+            return estimatedTokens;
+        }
+
+        public long getWaitedMs() {
+            return waitedMs;
+        }
+
+        /**
+         * 标记为已对账（只有第一次返回 true）
+         */
+        private boolean settle() {
+            return settled.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.agent.llm.ratelimit;
+
+/**
+ * Request Priority
+ *
+ * 出站 LLM 调用的放行优先级：序号小的优先，交互请求总是先于后台任务放行
+ */
+public enum RequestPriority {
+    /**
+     * 用户在连接上等待结果（如 /chat/stream）
+     */
+    INTERACTIVE,
+
+    /**
+     * 普通的同步 API 调用
+     */
+    NORMAL,
+
+    /**
+     * 离线 / 批量任务，可以接受排队
+     */
+    BACKGROUND
+}
@@ -3,6 +3,9 @@ package com.agent.llm.service;
 import com.agent.llm.model.dto.ChatRequest;
 import com.agent.llm.model.dto.ChatResponse;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 /**
  * LLM Service Interface
  * Unified interface for all LLM providers
@@ -18,6 +21,59 @@ public interface LLMService {
      */
     ChatResponse chat(ChatRequest request) throws Exception;
     
+    /**
+     * Send a chat request and receive the content incrementally
+     * 
+     * Providers without streaming support fall back to a single delta with the full content.
+     * 
+     * @param request Chat request
+     * @param onDelta Called with each content fragment, in order, as it arrives
+     * @return The assembled chat response
+     * @throws Exception if the API call fails
+     */
+    default ChatResponse chatStream(ChatRequest request, Consumer<String> onDelta) throws Exception {
+        ChatResponse response = chat(request);
+        if (response != null && response.getContent() != null) {
+            onDelta.accept(response.getContent());
+        }
+        return response;
+    }
+    
+    /**
+     * Send a chat request without blocking the caller
+     * 
+     * Providers without an async transport run the blocking call on the caller's thread.
+     * 
+     * @param request Chat request
+     * @return Future completing with the chat response, or exceptionally if the API call fails
+     */
+    default CompletableFuture<ChatResponse> chatAsync(ChatRequest request) {
+        CompletableFuture<ChatResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(chat(request));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Streaming variant of {@link #chatAsync(ChatRequest)}
+     * 
+     * @param request Chat request
+     * @param onDelta Called with each content fragment, in order, as it arrives
+     * @return Future completing with the assembled chat response
+     */
+    default CompletableFuture<ChatResponse> chatStreamAsync(ChatRequest request, Consumer<String> onDelta) {
+        CompletableFuture<ChatResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(chatStream(request, onDelta));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
     /**
      * Validate the request before sending
      * 
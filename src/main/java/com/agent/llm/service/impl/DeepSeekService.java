@@ -1,17 +1,32 @@
 package com.agent.llm.service.impl;
 
+import com.agent.common.concurrent.Futures;
 import com.agent.llm.config.LLMProperties;
 import com.agent.llm.model.dto.ChatRequest;
 import com.agent.llm.model.dto.ChatResponse;
+import com.agent.llm.model.dto.LLMToolCall;
 import com.agent.llm.model.dto.Message;
+import com.agent.llm.ratelimit.LLMRateLimiter;
 import com.agent.llm.service.LLMService;
+import com.agent.reasoning.context.TokenCounter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import okio.BufferedSink;
+import okio.BufferedSource;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * DeepSeek LLM Service Implementation
@@ -22,20 +37,39 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class DeepSeekService implements LLMService {
     
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    
     private final LLMProperties llmProperties;
     private final ObjectMapper objectMapper;
     private final OkHttpClient httpClient;
+    private final LLMRateLimiter rateLimiter;
+    private final ObjectWriter requestWriter;
+    private final ObjectReader responseReader;
     
-    public DeepSeekService(LLMProperties llmProperties, ObjectMapper objectMapper) {
+    public DeepSeekService(LLMProperties llmProperties, ObjectMapper objectMapper, LLMRateLimiter rateLimiter) {
         this.llmProperties = llmProperties;
         this.objectMapper = objectMapper;
+        this.rateLimiter = rateLimiter;
+        // The sink belongs to OkHttp, so Jackson must not close it after writing
+        this.requestWriter = objectMapper.writerFor(ChatRequest.class)
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.responseReader = objectMapper.readerFor(ChatResponse.class);
         
         // Initialize HTTP client with timeout
         long timeout = llmProperties.getDeepseek().getTimeout() != null 
             ? llmProperties.getDeepseek().getTimeout() 
             : 30;
         
+        // Async calls queue in the dispatcher; the default of 5 per host would cap concurrency
+        int maxConcurrent = llmProperties.getDeepseek().getMaxConcurrentRequests() != null
+            ? llmProperties.getDeepseek().getMaxConcurrentRequests()
+            : 64;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConcurrent);
+        dispatcher.setMaxRequestsPerHost(maxConcurrent);
+        
         this.httpClient = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
             .connectTimeout(timeout, TimeUnit.SECONDS)
             .readTimeout(timeout, TimeUnit.SECONDS)
             .writeTimeout(timeout, TimeUnit.SECONDS)
@@ -44,55 +78,303 @@ public class DeepSeekService implements LLMService {
     
     @Override
     public ChatResponse chat(ChatRequest request) throws Exception {
-        log.debug("Sending chat request to DeepSeek: {}", request);
         
         validateRequest(request);
         
-        // Build the request
+        ChatRequest deepseekRequest = buildProviderRequest(request, false);
+        Request httpRequest = buildHttpRequest(deepseekRequest);
+        
+        // Wait for admission (requests/min + tokens/min buckets)
+        LLMRateLimiter.Permit permit = rateLimiter.acquire(request.getPriority(),
+            estimateTokens(deepseekRequest));
+        
+        // Send request and get response
+        try (Response response = httpClient.newCall(httpRequest).execute()) {
+            checkResponse(response);
+            return readResponse(response, permit);
+        } catch (IOException | RuntimeException e) {
+            settleFailed(permit, e, false);
+            throw e;
+        }
+    }
+    
+    @Override
+    public ChatResponse chatStream(ChatRequest request, Consumer<String> onDelta) throws Exception {
+        
+        validateRequest(request);
+        
+        ChatRequest deepseekRequest = buildProviderRequest(request, true);
+        Request httpRequest = buildHttpRequest(deepseekRequest);
+        
+        LLMRateLimiter.Permit permit = rateLimiter.acquire(request.getPriority(),
+            estimateTokens(deepseekRequest));
+        
+        try (Response response = httpClient.newCall(httpRequest).execute()) {
+            checkResponse(response);
+            return readStream(response, onDelta, permit);
+        } catch (IOException | RuntimeException e) {
+            settleFailed(permit, e, false);
+            throw e;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<ChatResponse> chatAsync(ChatRequest request) {
+        return sendAsync(request, false, null);
+    }
+    
+    @Override
+    public CompletableFuture<ChatResponse> chatStreamAsync(ChatRequest request, Consumer<String> onDelta) {
+        return sendAsync(request, true, onDelta);
+    }
+    
+    /**
+     * Non-blocking call: rate-limiter admission and the HTTP exchange are both callbacks
+     * 
+     * No thread is held while queued for admission; OkHttp's dispatcher runs the
+     * exchange and the response is parsed on its callback thread.
+     * Cancelling the returned future leaves the admission queue or cancels the HTTP call.
+     */
+    private CompletableFuture<ChatResponse> sendAsync(ChatRequest request, boolean stream, Consumer<String> onDelta) {
+        ChatRequest deepseekRequest;
+        Request httpRequest;
+        try {
+            validateRequest(request);
+            deepseekRequest = buildProviderRequest(request, stream);
+            httpRequest = buildHttpRequest(deepseekRequest);
+        } catch (Exception e) {
+            return Futures.failed(e);
+        }
+        
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        CompletableFuture<LLMRateLimiter.Permit> admission = rateLimiter.acquireAsync(request.getPriority(),
+            estimateTokens(deepseekRequest));
+        
+        admission.whenComplete((permit, error) -> {
+            if (error != null) {
+                result.completeExceptionally(Futures.unwrap(error));
+                return;
+            }
+            if (result.isDone()) {
+                // Cancelled while the permit was being granted: nothing was sent
+                rateLimiter.refund(permit);
+                return;
+            }
+            
+            Call call = httpClient.newCall(httpRequest);
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) {
+                    call.cancel();
+                }
+            });
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call failedCall, IOException e) {
+                    settleFailed(permit, e, failedCall.isCanceled());
+                    result.completeExceptionally(e);
+                }
+                
+                @Override
+                public void onResponse(Call completedCall, Response response) {
+                    try (Response r = response) {
+                        checkResponse(r);
+                        result.complete(stream ? readStream(r, onDelta, permit) : readResponse(r, permit));
+                    } catch (Exception e) {
+                        settleFailed(permit, e, false);
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        });
+        
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                admission.cancel(false);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Give a failed call's unused budget back to the rate limiter
+     * 
+     * Calls that never reached the provider (cancelled, connection refused, unknown host)
+     * return their request slot as well; calls the provider answered with an error keep
+     * the request slot but are not charged any tokens. A permit already reconciled
+     * against real usage is left alone.
+     */
+    private void settleFailed(LLMRateLimiter.Permit permit, Throwable error, boolean canceled) {
+        if (canceled || error instanceof ConnectException || error instanceof UnknownHostException) {
+            rateLimiter.refund(permit);
+        } else {
+            rateLimiter.release(permit, 0);
+        }
+    }
+    
+    /**
+     * Parse directly from the response source, no intermediate String copy
+     */
+    private ChatResponse readResponse(Response response, LLMRateLimiter.Permit permit) throws IOException {
+        ChatResponse chatResponse = responseReader.readValue(response.body().byteStream());
+        log.debug("Parsed response: {}", chatResponse);
+        
+        if (chatResponse.getUsage() != null) {
+            rateLimiter.release(permit, chatResponse.getUsage().getTotalTokens());
+        }
+        return chatResponse;
+    }
+    
+    /**
+     * Assemble a streamed response, forwarding each content delta as it arrives
+     */
+    private ChatResponse readStream(Response response, Consumer<String> onDelta, LLMRateLimiter.Permit permit)
+            throws IOException {
+        // Server-sent events: one "data: {chunk}" line per delta, terminated by "data: [DONE]"
+        StringBuilder content = new StringBuilder();
+        ChatResponse.Usage usage = null;
+        String id = null;
+        String model = null;
+        String finishReason = null;
+        
+        BufferedSource source = response.body().source();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            
+            JsonNode chunk = objectMapper.readTree(data);
+            if (id == null && chunk.hasNonNull("id")) {
+                id = chunk.get("id").asText();
+                model = chunk.path("model").asText(null);
+            }
+            JsonNode choices = chunk.path("choices");
+            if (choices.size() > 0) {
+                JsonNode choice = choices.get(0);
+                JsonNode delta = choice.path("delta").path("content");
+                if (delta.isTextual() && !delta.asText().isEmpty()) {
+                    content.append(delta.asText());
+                    onDelta.accept(delta.asText());
+                }
+                if (choice.hasNonNull("finish_reason")) {
+                    finishReason = choice.get("finish_reason").asText();
+                }
+            }
+            if (chunk.hasNonNull("usage")) {
+                usage = objectMapper.treeToValue(chunk.get("usage"), ChatResponse.Usage.class);
+            }
+        }
+        
+        ChatResponse chatResponse = ChatResponse.builder()
+            .id(id)
+            .model(model)
+            .created(System.currentTimeMillis() / 1000)
+            .choices(Collections.singletonList(ChatResponse.Choice.builder()
+                .index(0)
+                .message(Message.builder().role("assistant").content(content.toString()).build())
+                .finishReason(finishReason)
+                .build()))
+            .usage(usage)
+            .build();
+        log.debug("Streamed response assembled: {} chars, finish_reason={}", content.length(), finishReason);
+        
+        if (usage != null) {
+            rateLimiter.release(permit, usage.getTotalTokens());
+        }
+        return chatResponse;
+    }
+    
+    /**
+     * Build the provider request, filling defaults from configuration
+     */
+    private ChatRequest buildProviderRequest(ChatRequest request, boolean stream) throws IOException {
         LLMProperties.DeepSeekConfig config = llmProperties.getDeepseek();
-        String url = config.getBaseUrl() + "/chat/completions";
         
-        // Prepare request body
         ChatRequest deepseekRequest = ChatRequest.builder()
             .model(request.getModel() != null ? request.getModel() : config.getModel())
             .messages(request.getMessages())
             .temperature(request.getTemperature() != null ? request.getTemperature() : config.getTemperature())
             .maxTokens(request.getMaxTokens() != null ? request.getMaxTokens() : config.getMaxTokens())
             .topP(request.getTopP())
-            .stream(false)
+            .tools(request.getTools())
+            .toolChoice(request.getToolChoice())
+            .stream(stream)
+            // Ask for the usage chunk at the end of the stream so the limiter can reconcile
+            .streamOptions(stream ? Collections.<String, Object>singletonMap("include_usage", true) : null)
             .build();
         
-        String requestBody = objectMapper.writeValueAsString(deepseekRequest);
-        log.debug("DeepSeek request body: {}", requestBody);
+        if (log.isDebugEnabled()) {
+            log.debug("Sending chat request to DeepSeek: model={}, messages={}, stream={}",
+                deepseekRequest.getModel(), deepseekRequest.getMessages().size(), stream);
+            log.debug("DeepSeek request body: {}", objectMapper.writeValueAsString(deepseekRequest));
+        }
+        return deepseekRequest;
+    }
+    
+    /**
+     * Create HTTP request: JSON is streamed straight into the connection sink
+     */
+    private Request buildHttpRequest(ChatRequest deepseekRequest) {
+        LLMProperties.DeepSeekConfig config = llmProperties.getDeepseek();
+        String url = config.getBaseUrl() + "/chat/completions";
         
-        // Create HTTP request
-        RequestBody body = RequestBody.create(
-            requestBody,
-            MediaType.get("application/json; charset=utf-8")
-        );
+        RequestBody body = new JacksonRequestBody(requestWriter, deepseekRequest);
         
-        Request httpRequest = new Request.Builder()
+        return new Request.Builder()
             .url(url)
             .post(body)
             .addHeader("Authorization", "Bearer " + config.getApiKey())
             .addHeader("Content-Type", "application/json")
             .build();
-        
-        // Send request and get response
-        try (Response response = httpClient.newCall(httpRequest).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "No error details";
-                log.error("DeepSeek API error: {} - {}", response.code(), errorBody);
-                throw new IOException("DeepSeek API error: " + response.code() + " - " + errorBody);
+    }
+    
+    /**
+     * Fail on non-2xx responses; a 429 pauses the rate limiter for the Retry-After window
+     */
+    private void checkResponse(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            String errorBody = response.body() != null ? response.body().string() : "No error details";
+            log.error("DeepSeek API error: {} - {}", response.code(), errorBody);
+            if (response.code() == 429) {
+                rateLimiter.onThrottled(parseRetryAfterMs(response.header("Retry-After")));
             }
-            
-            String responseBody = response.body().string();
-            log.debug("DeepSeek response: {}", responseBody);
-            
-            ChatResponse chatResponse = objectMapper.readValue(responseBody, ChatResponse.class);
-            log.debug("Parsed response: {}", chatResponse);
-            
-            return chatResponse;
+            throw new IOException("DeepSeek API error: " + response.code() + " - " + errorBody);
+        }
+    }
+    
+    /**
+     * Estimate the tokens a call will consume: prompt estimate + completion budget
+     */
+    private int estimateTokens(ChatRequest request) {
+        int tokens = 0;
+        for (Message message : request.getMessages()) {
+            tokens += TokenCounter.countTokens(message.getContent());
+            if (message.getToolCalls() != null) {
+                for (LLMToolCall toolCall : message.getToolCalls()) {
+                    if (toolCall.getFunction() != null) {
+                        tokens += TokenCounter.countTokens(toolCall.getFunction().getArguments());
+                    }
+                }
+            }
+        }
+        return tokens + (request.getMaxTokens() != null ? request.getMaxTokens() : 0);
+    }
+    
+    /**
+     * Parse the Retry-After header (seconds) into milliseconds
+     */
+    private long parseRetryAfterMs(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return (long) (Double.parseDouble(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
     
@@ -106,7 +388,9 @@ public class DeepSeekService implements LLMService {
             if (message.getRole() == null || message.getRole().isEmpty()) {
                 throw new IllegalArgumentException("Message role cannot be empty");
             }
-            if (message.getContent() == null || message.getContent().isEmpty()) {
+            // An assistant turn that only requests tool calls carries no content
+            boolean hasToolCalls = message.getToolCalls() != null && !message.getToolCalls().isEmpty();
+            if (!hasToolCalls && (message.getContent() == null || message.getContent().isEmpty())) {
                 throw new IllegalArgumentException("Message content cannot be empty");
             }
         }
@@ -119,4 +403,31 @@ public class DeepSeekService implements LLMService {
             throw new IllegalArgumentException("DeepSeek API key is not configured");
         }
     }
+    
+    /**
+     * Request body that serializes with Jackson directly into OkHttp's BufferedSink
+     * 
+     * Content length is unknown up front, so the request is sent chunked.
+     * writeTo may be called again if OkHttp retries, which just re-serializes.
+     */
+    private static final class JacksonRequestBody extends RequestBody {
+        
+        private final ObjectWriter writer;
+        private final Object value;
+        
+        private JacksonRequestBody(ObjectWriter writer, Object value) {
+            this.writer = writer;
+            this.value = value;
+        }
+        
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+        
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            writer.writeValue(sink.outputStream(), value);
+        }
+    }
 }
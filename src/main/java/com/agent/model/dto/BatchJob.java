@@ -0,0 +1,74 @@
+package com.agent.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * 批量任务 - 离线批量回放查询（回归测试、成本分析）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchJob {
+
+    /** 任务 ID */
+    private String jobId;
+
+    /** 任务名称（通常为上传的文件名） */
+    private String name;
+
+    /** 状态：PENDING / RUNNING / COMPLETED / CANCELLED / FAILED */
+    private String status;
+
+    /** 查询总数 */
+    private int totalQueries;
+
+    /** 已完成数（含失败） */
+    private int completedQueries;
+
+    /** 失败数 */
+    private int failedQueries;
+
+    /** 并行度 */
+    private int parallelism;
+
+    /** 创建时间 */
+    private long createdTime;
+
+    /** 开始时间（最近一次启动/恢复） */
+    private long startedTime;
+
+    /** 结束时间 */
+    private long finishedTime;
+
+    /** 错误信息（任务级） */
+    private String errorMessage;
+
+    /**
+     * 创建新任务
+     */
+    public static BatchJob create(String name, int totalQueries, int parallelism) {
+        return BatchJob.builder()
+                .jobId(UUID.randomUUID().toString())
+                .name(name)
+                .status("PENDING")
+                .totalQueries(totalQueries)
+                .parallelism(parallelism)
+                .createdTime(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * 是否已处于终止状态
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        return "COMPLETED".equals(status) || "CANCELLED".equals(status) || "FAILED".equals(status);
+    }
+}
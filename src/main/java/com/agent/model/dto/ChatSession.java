@@ -11,6 +11,9 @@ import java.util.UUID;
 
 /**
  * 会话对象 - 代表一次用户对话会话
+ * 
+ * 同一会话可能被并发请求（如流式重连）同时修改：修改消息的方法都在会话对象上同步，
+ * 需要连续读取消息列表的调用方（序列化、编译上下文）也应持有会话对象的锁
  */
 @Data
 @Builder
@@ -30,12 +33,18 @@ public class ChatSession {
     /** 会话标题（可选） */
     private String title;
 
-    /** 对话消息列表 */
+    /** 对话消息列表（热数据：最近的消息，更早的已归档到冷存储） */
     private List<ConversationMessage> messages;
 
-    /** 元数据：对话轮次 */
+    /** 元数据：对话轮次（含已归档的消息） */
     private int messageCount;
 
+    /** 已归档到冷存储的较早消息数（按时间顺序排在 messages 之前） */
+    private int archivedCount;
+
+    /** 快照版本：每次重写会话 JSON 加一，消息日志中只有同版本的记录有效 */
+    private long snapshotVersion;
+
     /**
      * 创建新会话
      */
@@ -53,7 +62,7 @@ public class ChatSession {
     /**
      * 添加消息
      */
-    public void addMessage(String role, String content) {
+    public synchronized void addMessage(String role, String content) {
         ConversationMessage msg = ConversationMessage.builder()
                 .role(role)
                 .content(content)
@@ -69,7 +78,7 @@ public class ChatSession {
     /**
      * 删除单条消息
      */
-    public boolean removeMessage(String messageId) {
+    public synchronized boolean removeMessage(String messageId) {
         boolean removed = this.messages.removeIf(msg -> msg.getMessageId().equals(messageId));
         if (removed) {
             this.messageCount--;
@@ -78,12 +87,23 @@ public class ChatSession {
         return removed;
     }
 
+    /**
+     * 取出最早的 count 条热消息，转为已归档
+     */
+    public synchronized List<ConversationMessage> archiveOldest(int count) {
+        List<ConversationMessage> oldest = new ArrayList<>(this.messages.subList(0, count));
+        this.messages.subList(0, count).clear();
+        this.archivedCount += count;
+        return oldest;
+    }
+
     /**
      * 清空消息
      */
-    public void clearMessages() {
+    public synchronized void clearMessages() {
         this.messages.clear();
         this.messageCount = 0;
+        this.archivedCount = 0;
         this.lastActivityTime = System.currentTimeMillis();
     }
 }
@@ -0,0 +1,44 @@
+package com.agent.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 会话摘要 - 会话列表和统计只需要的字段，不含消息
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionSummary {
+
+    /** 会话 ID */
+    private String sessionId;
+
+    /** 会话标题 */
+    private String title;
+
+    /** 会话创建时间 */
+    private long createdTime;
+
+    /** 最后活动时间 */
+    private long lastActivityTime;
+
+    /** 对话轮次（含已归档的消息） */
+    private int messageCount;
+
+    /**
+     * 从会话生成摘要
+     */
+    public static SessionSummary of(ChatSession session) {
+        return SessionSummary.builder()
+                .sessionId(session.getSessionId())
+                .title(session.getTitle())
+                .createdTime(session.getCreatedTime())
+                .lastActivityTime(session.getLastActivityTime())
+                .messageCount(session.getMessageCount())
+                .build();
+    }
+}
@@ -1,7 +1,13 @@
 package com.agent.monitoring.controller;
 
+import com.agent.llm.ratelimit.LLMRateLimiter;
 import com.agent.monitoring.service.MetricsCollector;
 import com.agent.monitoring.service.MetricsStorageService;
+import com.agent.reasoning.context.ContextManagerFactory;
+import com.agent.reasoning.context.SessionContextCache;
+import com.agent.reasoning.context.TokenCounter;
+import com.agent.reasoning.routing.QueryRouter;
+import com.agent.service.SessionManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +28,21 @@ public class MonitoringController {
     @Autowired
     private MetricsStorageService storageService;
 
+    @Autowired
+    private LLMRateLimiter llmRateLimiter;
+
+    @Autowired
+    private ContextManagerFactory contextManagerFactory;
+
+    @Autowired
+    private SessionContextCache sessionContextCache;
+
+    @Autowired
+    private QueryRouter queryRouter;
+
+    @Autowired
+    private SessionManager sessionManager;
+
     /**
      * 获取监控摘要
      * GET /api/monitoring/summary
@@ -41,6 +62,22 @@ public class MonitoringController {
         // 存储统计
         summary.put("storage", storageService.getSummary());
 
+        // LLM 限流队列
+        summary.put("llmRateLimit", llmRateLimiter.getStats());
+
+        // 推理上下文（每次执行独立）
+        summary.put("reasoningContexts", contextManagerFactory.getStats());
+
+        // 会话级已编译上下文（每轮只追加新消息的比例）
+        summary.put("sessionContexts", sessionContextCache.getStats());
+        summary.put("sessionPersistence", sessionManager.getPersistenceStats());
+
+        // 查询分流（跳过 ReAct 循环的比例）
+        summary.put("queryRouting", queryRouter.getStats());
+
+        // Token 计数（BPE / 规则估算，计数缓存命中率）
+        summary.put("tokenizer", TokenCounter.getStats());
+
         // 时间戳
         summary.put("timestamp", System.currentTimeMillis());
 
@@ -140,6 +177,19 @@ public class MonitoringController {
         return response;
     }
 
+    /**
+     * 获取 LLM 限流队列状态（队列深度、等待时间、剩余配额）
+     * GET /api/monitoring/llm-rate-limit
+     */
+    @GetMapping("/llm-rate-limit")
+    public Map<String, Object> getLlmRateLimit() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("stats", llmRateLimiter.getStats());
+        response.put("timestamp", System.currentTimeMillis());
+
+        return response;
+    }
+
     /**
      * 清空指标数据
      * DELETE /api/monitoring/metrics
@@ -1,5 +1,6 @@
 package com.agent.optimization;
 
+import com.agent.reasoning.context.TokenCounter;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,7 +49,7 @@ public class ConversationHistoryManager {
             this.timestamp = System.currentTimeMillis();
             this.role = role;
             this.content = content;
-            this.tokens = (int) (content.split("\\s+").length * 1.3);
+            this.tokens = TokenCounter.countTokens(content);
             this.importance = 0.5; // 默认中等重要性
         }
     }
@@ -98,7 +99,7 @@ public class ConversationHistoryManager {
             } else if (turn.getSummary() != null) {
                 // 使用摘要替代完整消息
                 String summaryContent = "【之前讨论总结】" + turn.getSummary();
-                int summaryTokens = (int) (summaryContent.split("\\s+").length * 1.3);
+                int summaryTokens = TokenCounter.countTokens(summaryContent);
 
                 if (summaryTokens <= tokenBudget) {
                     result.add(0, createMessage(turn.getRole(), summaryContent));
@@ -1,5 +1,6 @@
 package com.agent.optimization;
 
+import com.agent.reasoning.context.TokenCounter;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -21,7 +22,6 @@ import java.util.concurrent.ConcurrentHashMap;
 public class OptimizedPromptBuilder {
 
     private static final int MAX_SYSTEM_PROMPT_TOKENS = 800;
-    private static final double TOKENS_PER_WORD = 1.3;
 
     // System Prompt 缓存
     private final Map<String, String> promptCache = new ConcurrentHashMap<>();
@@ -222,14 +222,10 @@ public class OptimizedPromptBuilder {
     }
 
     /**
-     * 估算Token数（简化版）
+     * 计算Token数（共享 TokenCounter）
      */
     private int estimateTokens(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-        int wordCount = text.split("\\s+").length;
-        return (int) Math.ceil(wordCount * TOKENS_PER_WORD);
+        return TokenCounter.countTokens(text);
     }
 
     /**
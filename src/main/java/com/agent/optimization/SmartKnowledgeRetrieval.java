@@ -1,6 +1,7 @@
 package com.agent.optimization;
 
 import com.agent.knowledge.service.KnowledgeBaseManager;
+import com.agent.reasoning.context.TokenCounter;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,7 +30,6 @@ public class SmartKnowledgeRetrieval {
     private static final int INITIAL_TOP_K = 10; // 初始候选集大小
     private static final double MIN_SIMILARITY = 0.65; // 相似度阈值
     private static final int MAX_RESULT_TOKENS = 1500; // 结果Token限制
-    private static final double TOKENS_PER_WORD = 1.3;
 
     /**
      * 知识库文档
@@ -54,8 +54,7 @@ public class SmartKnowledgeRetrieval {
         }
 
         private static int estimateTokens(String text) {
-            int wordCount = text.split("\\s+").length;
-            return (int) Math.ceil(wordCount * TOKENS_PER_WORD);
+            return TokenCounter.countTokens(text);
         }
     }
 
@@ -246,14 +245,10 @@ public class SmartKnowledgeRetrieval {
     }
 
     /**
-     * 估算Token数
+     * 计算Token数（共享 TokenCounter）
      */
     private int estimateTokens(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-        int wordCount = text.split("\\s+").length;
-        return (int) Math.ceil(wordCount * TOKENS_PER_WORD);
+        return TokenCounter.countTokens(text);
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.agent.optimization;
 
+import com.agent.reasoning.context.TokenCounter;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,7 +23,6 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class TokenUsageService {
 
-    private static final double TOKENS_PER_WORD = 1.3;
     private static final double MESSAGE_OVERHEAD = 4.0;
 
     // Token成本配置（以美分为单位，适应不同LLM）
@@ -116,9 +116,7 @@ public class TokenUsageService {
             return 0;
         }
 
-        // 简化估算：单词数 × 1.3
-        int wordCount = text.split("\\s+").length;
-        return (int) Math.ceil(wordCount * TOKENS_PER_WORD);
+        return TokenCounter.countTokens(text);
     }
 
     /**
@@ -132,10 +130,7 @@ public class TokenUsageService {
         int totalTokens = 0;
 
         for (Object msg : messages) {
-            String content = msg.toString();
-            int wordCount = content.split("\\s+").length;
-            int messageTokens = (int) Math.ceil(wordCount * TOKENS_PER_WORD) + 4;
-            totalTokens += messageTokens;
+            totalTokens += TokenCounter.countTokens(msg.toString()) + (int) MESSAGE_OVERHEAD;
         }
 
         return totalTokens;
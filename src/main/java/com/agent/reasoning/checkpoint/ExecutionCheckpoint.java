@@ -0,0 +1,94 @@
+package com.agent.reasoning.checkpoint;
+
+import com.agent.llm.model.dto.Message;
+import com.agent.llm.ratelimit.RequestPriority;
+import com.agent.reasoning.engine.ThoughtAction;
+import com.agent.tool.model.ToolCall;
+import com.agent.tool.model.ToolResult;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 执行检查点 - 一次推理执行在某个一致点上的完整状态
+ *
+ * 每次 LLM 回复解析后、每批工具结果写回后各保存一次：
+ * 恢复时从最后一个检查点继续，已付费的 LLM 调用不会重做，
+ * 最多重跑最后一批尚未完成的工具调用。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecutionCheckpoint {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String TIMED_OUT = "TIMED_OUT";
+    public static final String FAILED = "FAILED";
+
+    /** 执行 ID（客户端可自带，用作幂等键） */
+    private String executionId;
+
+    /** 状态：RUNNING / COMPLETED / TIMED_OUT / FAILED */
+    private String status;
+
+    /** 原始查询 */
+    private String userQuery;
+
+    /** LLM 限流优先级 */
+    private RequestPriority priority;
+
+    /** QueryRouter 选择的路径 */
+    private String route;
+
+    /** 是否使用原生 function calling */
+    private Boolean nativeTools;
+
+    /** 恢复后要执行的下一轮迭代（从 0 开始） */
+    private int nextIteration;
+
+    /** 上一步已解析但尚未拿到结果的工具调用；非空时恢复先执行它们 */
+    @Builder.Default
+    private List<ToolCall> pendingToolCalls = new ArrayList<>();
+
+    /** 下一轮开始时要追加的 Observation（文本 ReAct 模式） */
+    private String pendingObservation;
+
+    /** ContextManager 中按加入顺序排列的全部消息 */
+    @Builder.Default
+    private List<Message> messages = new ArrayList<>();
+
+    @Builder.Default
+    private List<ThoughtAction> thoughtActions = new ArrayList<>();
+
+    @Builder.Default
+    private List<ToolResult> toolResults = new ArrayList<>();
+
+    private String finalAnswer;
+
+    private int promptTokens;
+    private int completionTokens;
+    private int promptCacheHitTokens;
+    private int speculativeHits;
+    private int speculativeDiscards;
+
+    /** 执行开始时间 */
+    private long startTime;
+
+    /** 最近一次保存时间 */
+    private long updatedTime;
+
+    /**
+     * 是否可以从此检查点继续执行（进程重启后仍为 RUNNING，或超时/失败中断）
+     */
+    @JsonIgnore
+    public boolean isResumable() {
+        return RUNNING.equals(status) || TIMED_OUT.equals(status) || FAILED.equals(status);
+    }
+}
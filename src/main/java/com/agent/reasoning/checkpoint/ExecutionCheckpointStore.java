@@ -0,0 +1,192 @@
+package com.agent.reasoning.checkpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 执行检查点存储
+ *
+ * 存储布局：{storage-path}/{executionId}.json，每次保存先写临时文件再原子替换，
+ * 进程在写入中途退出也不会留下半个检查点。
+ *
+ * 已结束（COMPLETED）的检查点保留 retention-hours，供客户端按执行 ID 取回结果；
+ * 过期检查点在启动时和之后每隔 purge-interval-minutes 清理一次。
+ */
+@Slf4j
+@Component
+public class ExecutionCheckpointStore {
+
+    private static final Pattern EXECUTION_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    @Value("${agent.checkpoint.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${agent.checkpoint.storage-path:./data/executions}")
+    private String storagePath;
+
+    @Value("${agent.checkpoint.retention-hours:24}")
+    private Integer retentionHours;
+
+    @Value("${agent.checkpoint.purge-interval-minutes:60}")
+    private Integer purgeIntervalMinutes;
+
+    private ScheduledExecutorService purger;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 初始化存储目录、清理过期检查点并启动定期清理
+     */
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        File dir = new File(storagePath);
+        if (!dir.exists() && dir.mkdirs()) {
+            log.info("✅ Execution checkpoint directory created: {}", storagePath);
+        }
+
+        int purged = purgeExpired();
+        int interrupted = 0;
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files != null) {
+            for (File file : files) {
+                ExecutionCheckpoint checkpoint = read(file);
+                if (checkpoint != null && checkpoint.isResumable()) {
+                    interrupted++;
+                }
+            }
+        }
+        log.info("✅ Execution checkpoints ready: {} resumable, {} expired removed", interrupted, purged);
+
+        if (purgeIntervalMinutes != null && purgeIntervalMinutes > 0) {
+            purger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "CheckpointPurger");
+                t.setDaemon(true);
+                return t;
+            });
+            purger.scheduleWithFixedDelay(this::purgeQuietly, purgeIntervalMinutes, purgeIntervalMinutes,
+                    TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 执行 ID 直接用作文件名，只接受安全字符
+     */
+    public static boolean isValidExecutionId(String executionId) {
+        return executionId != null && EXECUTION_ID.matcher(executionId).matches();
+    }
+
+    /**
+     * 保存检查点（失败只记录日志，不影响推理）
+     */
+    public void save(ExecutionCheckpoint checkpoint) {
+        if (!isEnabled()) {
+            return;
+        }
+        checkpoint.setUpdatedTime(System.currentTimeMillis());
+        try {
+            Path dir = new File(storagePath).toPath();
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(checkpoint.getExecutionId() + ".json.tmp");
+            objectMapper.writeValue(tmp.toFile(), checkpoint);
+            Files.move(tmp, dir.resolve(checkpoint.getExecutionId() + ".json"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("💾 Checkpoint saved: {} ({}, next iteration {})", checkpoint.getExecutionId(),
+                    checkpoint.getStatus(), checkpoint.getNextIteration());
+        } catch (IOException e) {
+            log.error("❌ Failed to save execution checkpoint: {}", checkpoint.getExecutionId(), e);
+        }
+    }
+
+    /**
+     * 加载检查点
+     *
+     * @return 检查点，不存在时返回 null
+     */
+    public ExecutionCheckpoint load(String executionId) {
+        if (!isEnabled() || !isValidExecutionId(executionId)) {
+            return null;
+        }
+        File file = new File(storagePath, executionId + ".json");
+        return file.exists() ? read(file) : null;
+    }
+
+    /**
+     * 删除检查点
+     */
+    public boolean delete(String executionId) {
+        if (!isValidExecutionId(executionId)) {
+            return false;
+        }
+        return new File(storagePath, executionId + ".json").delete();
+    }
+
+    /**
+     * 删除超过保留期的检查点
+     *
+     * @return 删除数量
+     */
+    public int purgeExpired() {
+        File[] files = new File(storagePath).listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - retentionHours * 3600_000L;
+        int purged = 0;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && file.delete()) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * 定期清理（异常只记录日志，不中断后续调度）
+     */
+    private void purgeQuietly() {
+        try {
+            int purged = purgeExpired();
+            if (purged > 0) {
+                log.info("🧹 Expired execution checkpoints removed: {}", purged);
+            }
+        } catch (RuntimeException e) {
+            log.error("❌ Failed to purge expired execution checkpoints", e);
+        }
+    }
+
+    private ExecutionCheckpoint read(File file) {
+        try {
+            return objectMapper.readValue(file, ExecutionCheckpoint.class);
+        } catch (IOException e) {
+            log.error("❌ Failed to load execution checkpoint: {}", file.getName(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.agent.reasoning.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiled History
+ *
+ * 一次推理执行要带入的对话历史（不含当前问题本身）：
+ * - 来自 SessionContextCache：会话历史的已编译快照，消息已计数、已压缩或摘要，
+ *   带入执行时只复制，不重新解析、计数和压缩
+ * - 来自 "ROLE: content" 文本（兼容旧调用方）：首次用到时解析并计数一次
+ *
+ * 不可变，可被多次带入（每次带入都复制消息）
+ */
+public final class CompiledHistory {
+
+    private static final CompiledHistory EMPTY = new CompiledHistory(Collections.emptyList());
+
+    /**
+     * 尚未解析的文本历史（解析后置为 null）
+     */
+    private List<String> transcript;
+
+    private String userQuery;
+
+    private List<ConversationMessage> messages;
+
+    private CompiledHistory(List<ConversationMessage> messages) {
+        this.messages = messages;
+    }
+
+    private CompiledHistory(String userQuery, List<String> transcript) {
+        this.userQuery = userQuery;
+        this.transcript = transcript;
+    }
+
+    public static CompiledHistory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 由 "ROLE: content" 格式的历史构建（与当前问题相同的用户消息会被跳过）
+     */
+    public static CompiledHistory fromTranscript(String userQuery, List<String> transcript) {
+        if (transcript == null || transcript.isEmpty()) {
+            return EMPTY;
+        }
+        return new CompiledHistory(userQuery, transcript);
+    }
+
+    /**
+     * 由已计数的消息构建（调用方保证消息不会再被修改）
+     */
+    static CompiledHistory of(List<ConversationMessage> messages) {
+        return messages.isEmpty() ? EMPTY : new CompiledHistory(Collections.unmodifiableList(messages));
+    }
+
+    /**
+     * 消息数
+     */
+    public int size() {
+        return messages().size();
+    }
+
+    public boolean isEmpty() {
+        return messages().isEmpty();
+    }
+
+    /**
+     * 历史的 token 总数（已缓存在各条消息上）
+     */
+    public int getTokens() {
+        int tokens = 0;
+        for (ConversationMessage msg : messages()) {
+            tokens += msg.getTokenCount();
+        }
+        return tokens;
+    }
+
+    /**
+     * 已计数的消息（只读）
+     */
+    synchronized List<ConversationMessage> messages() {
+        if (messages == null) {
+            messages = Collections.unmodifiableList(parse(userQuery, transcript));
+            transcript = null;
+            userQuery = null;
+        }
+        return messages;
+    }
+
+    private static List<ConversationMessage> parse(String userQuery, List<String> transcript) {
+        List<ConversationMessage> parsed = new ArrayList<>(transcript.size());
+        for (String entry : transcript) {
+            if (entry.contains(":")) {
+                String[] parts = entry.split(":", 2);
+                String role = parts[0].trim().toLowerCase();
+                String content = parts[1].trim();
+
+                // 跳过当前问题本身
+                if ("user".equals(role) && content.equals(userQuery)) {
+                    continue;
+                }
+
+                ConversationMessage msg = ConversationMessage.builder()
+                        .role(role)
+                        .content(content)
+                        .build();
+                msg.updateTokenCount();
+                parsed.add(msg);
+            }
+        }
+        return parsed;
+    }
+}
@@ -1,11 +1,13 @@
 package com.agent.reasoning.context;
 
+import com.agent.llm.model.dto.LLMToolCall;
 import com.agent.llm.model.dto.Message;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Context Manager
@@ -21,9 +23,16 @@ import java.util.List;
  * 2. 检查容量：shouldCompress()
  * 3. 压缩历史：compress()
  * 4. 获取 LLM 消息：getMessagesForLLM()
+ * 
+ * 每次推理执行独占一个实例（由 ContextManagerFactory 创建），
+ * 不在请求之间共享，执行结束后随请求一起释放
+ * 
+ * 两级压缩：
+ * - 软阈值（compressionThreshold）：后台用 LLM 摘要较早的轮次（HistoryCompactor），
+ *   摘要完成后在下一次 getMessagesForLLM() 时整体替换，不占用请求路径
+ * - 硬上限（maxTokens）：同步执行规则压缩兜底
  */
 @Slf4j
-@Component
 public class ContextManager {
 
     /**
@@ -37,46 +46,60 @@ public class ContextManager {
     private final HistoryCompressor compressor;
 
     /**
-     * 最大 token 数（来自配置）
+     * 压缩配置（最大 token 数、阈值、保留条数等）
+     */
+    private final HistoryCompressor.CompressionConfig config;
+
+    /**
+     * 前缀稳定模式：不变内容在前，消息严格按加入顺序发送，
+     * 以便命中 LLM 服务端的前缀缓存
      */
-    @Value("${agent.context.max-tokens:4096}")
-    private Integer maxTokens;
+    private final boolean prefixStable;
 
     /**
-     * 压缩阈值
+     * 后台摘要压缩（为 null 时只有同步规则压缩）
      */
-    @Value("${agent.context.compression-threshold:3000}")
-    private Integer compressionThreshold;
+    private final HistoryCompactor compactor;
 
     /**
-     * 保留的最近消息数
+     * 进行中的后台摘要
      */
-    @Value("${agent.context.keep-recent:5}")
-    private Integer keepRecentCount;
+    private volatile CompletableFuture<String> compaction;
 
     /**
-     * 是否启用智能摘要
+     * 已完成、等待替换进历史的后台摘要（由后台线程写入，只在本执行的线程上应用）
      */
-    @Value("${agent.context.enable-summary:true}")
-    private Boolean enableSmartSummary;
+    private volatile PendingCompaction pendingCompaction;
 
     /**
-     * 最后一次压缩的结果
+     * 最近一次 getMessagesForLLM() 中压缩的结果
      */
     private HistoryCompressor.CompressionResult lastCompressionResult;
 
     public ContextManager() {
+        this(HistoryCompressor.CompressionConfig.builder().build(), false);
+    }
+
+    public ContextManager(HistoryCompressor.CompressionConfig config, boolean prefixStable) {
+        this(config, prefixStable, null);
+    }
+
+    public ContextManager(HistoryCompressor.CompressionConfig config, boolean prefixStable,
+            HistoryCompactor compactor) {
         this.history = new ConversationHistory();
-        this.compressor = new HistoryCompressor();
+        this.config = config;
+        this.compressor = new HistoryCompressor(config);
+        this.prefixStable = prefixStable;
+        this.compactor = compactor;
     }
 
     /**
      * 初始化系统消息
      */
     public void initializeWithSystemPrompt(String systemPrompt) {
+        int before = history.getTotalTokens();
         history.addMessage("system", systemPrompt);
-        log.info("Context initialized with system prompt ({} tokens)",
-                TokenCounter.estimateTokensPrecise(systemPrompt));
+        log.info("Context initialized with system prompt ({} tokens)", history.getTotalTokens() - before);
     }
 
     /**
@@ -103,6 +126,30 @@ public class ContextManager {
         logContextStats();
     }
 
+    /**
+     * 添加助手发起的工具调用（原生 function calling 模式）
+     */
+    public void addAssistantToolCalls(String content, List<LLMToolCall> toolCalls) {
+        history.addMessage(Message.builder()
+                .role("assistant")
+                .content(content)
+                .toolCalls(toolCalls)
+                .build());
+        logContextStats();
+    }
+
+    /**
+     * 添加工具结果（原生 function calling 模式，按调用 ID 回传）
+     */
+    public void addToolResult(String toolCallId, String content) {
+        history.addMessage(Message.builder()
+                .role("tool")
+                .toolCallId(toolCallId)
+                .content(content)
+                .build());
+        logContextStats();
+    }
+
     /**
      * 添加通用消息
      */
@@ -119,6 +166,35 @@ public class ContextManager {
         logContextStats();
     }
 
+    /**
+     * 带入已编译的对话历史（复制消息，沿用缓存的 token 数和向量，不重新计数）
+     */
+    public void addHistory(CompiledHistory compiled) {
+        List<ConversationMessage> messages = compiled.messages();
+        if (messages.isEmpty()) {
+            return;
+        }
+        for (ConversationMessage msg : messages) {
+            history.appendCounted(msg.copy());
+        }
+        logContextStats();
+        log.info("✅ Context loaded: {} previous messages added", messages.size());
+    }
+
+    /**
+     * 导出当前历史的快照（不含 system 消息，消息为副本）
+     */
+    CompiledHistory compileHistory() {
+        List<ConversationMessage> messages = new ArrayList<>(history.getMessageCount());
+        for (int i = 0; i < history.getMessageCount(); i++) {
+            ConversationMessage msg = history.getMessage(i);
+            if (!"system".equals(msg.getRole())) {
+                messages.add(msg.copy());
+            }
+        }
+        return CompiledHistory.of(messages);
+    }
+
     /**
      * 检查是否需要压缩
      */
@@ -130,14 +206,14 @@ public class ContextManager {
      * 获取距离上限的距离（百分比）
      */
     public double getTokenBudgetUsage() {
-        return history.getTotalTokens() / (double) maxTokens;
+        return history.getTotalTokens() / (double) config.getMaxTokens();
     }
 
     /**
      * 获取剩余 token 数
      */
     public int getRemainingTokens() {
-        return Math.max(0, maxTokens - history.getTotalTokens());
+        return Math.max(0, config.getMaxTokens() - history.getTotalTokens());
     }
 
     /**
@@ -153,15 +229,7 @@ public class ContextManager {
         log.info("   Before: {} tokens ({} messages)",
                 history.getTotalTokens(), history.getMessageCount());
 
-        HistoryCompressor.CompressionConfig config = HistoryCompressor.CompressionConfig.builder()
-                .maxTokens(maxTokens)
-                .keepRecentCount(keepRecentCount)
-                .compressionThreshold(compressionThreshold)
-                .enableSmartSummary(enableSmartSummary)
-                .build();
-
-        HistoryCompressor compressorWithConfig = new HistoryCompressor(config);
-        lastCompressionResult = compressorWithConfig.compress(history);
+        lastCompressionResult = compressor.compress(history);
 
         if (lastCompressionResult.getWasCompressed()) {
             log.info("✅ Compression successful!");
@@ -182,12 +250,160 @@ public class ContextManager {
      * 会自动检查并执行压缩（如果需要）
      */
     public List<Message> getMessagesForLLM() {
-        // 在返回前自动检查并压缩
+        maintain();
+        return history.getMessagesForLLM(isPrefixStable());
+    }
+
+    /**
+     * 应用已完成的后台摘要；超过软阈值时安排后台摘要，超过硬上限时同步压缩
+     */
+    void maintain() {
+        lastCompressionResult = null;
+        applyCompaction();
+
         if (shouldCompress()) {
-            compress();
+            if (compactor != null && compactor.isEnabled() && history.getTotalTokens() <= config.getMaxTokens()) {
+                // 软阈值：后台摘要，本次请求照常发送
+                scheduleCompaction();
+            } else {
+                // 硬上限（或未启用后台摘要）：同步规则压缩
+                compress();
+            }
         }
+    }
 
-        return history.getMessagesForLLM();
+    /**
+     * 是否有进行中的后台摘要
+     */
+    public boolean isCompacting() {
+        CompletableFuture<String> current = compaction;
+        return current != null && !current.isDone();
+    }
+
+    /**
+     * 取消进行中的后台摘要（执行结束时调用）
+     */
+    public void cancelCompaction() {
+        CompletableFuture<String> current = compaction;
+        if (current != null) {
+            current.cancel(true);
+        }
+        pendingCompaction = null;
+    }
+
+    /**
+     * 选出较早的一段连续非 system 消息，交给后台摘要
+     *
+     * 范围不拆开工具调用和它的结果：不以带 tool_calls 的助手消息结尾，
+     * 保留部分也不以 tool 消息开头
+     */
+    private void scheduleCompaction() {
+        if (isCompacting() || pendingCompaction != null) {
+            return;
+        }
+
+        int count = history.getMessageCount();
+        int from = 0;
+        while (from < count && "system".equals(history.getMessage(from).getRole())) {
+            from++;
+        }
+        int limit = count - config.getKeepRecentCount();
+        int to = from;
+        while (to < limit && !"system".equals(history.getMessage(to).getRole())) {
+            to++;
+        }
+        while (to > from && !HistoryCompressor.isPairBoundary(history, to)) {
+            to--;
+        }
+        if (to - from < 4) {
+            return;
+        }
+
+        List<ConversationMessage> turns = history.getMessages(from, to);
+        CompletableFuture<String> summary = compactor.summarize(turns);
+        compaction = summary;
+        summary.thenAccept(text -> {
+            if (text != null && !summary.isCancelled()) {
+                pendingCompaction = new PendingCompaction(turns, text);
+            }
+        });
+        log.debug("Background compaction scheduled for {} messages", turns.size());
+    }
+
+    /**
+     * 把已完成的后台摘要替换进历史（原消息已被同步压缩改动时放弃）
+     */
+    private void applyCompaction() {
+        PendingCompaction pending = pendingCompaction;
+        if (pending == null) {
+            return;
+        }
+        pendingCompaction = null;
+
+        List<ConversationMessage> turns = pending.turns;
+        int from = -1;
+        for (int i = 0; i < history.getMessageCount(); i++) {
+            if (history.getMessage(i) == turns.get(0)) {
+                from = i;
+                break;
+            }
+        }
+        if (from < 0 || from + turns.size() > history.getMessageCount()) {
+            log.debug("Background compaction dropped: history changed meanwhile");
+            return;
+        }
+        for (int i = 0; i < turns.size(); i++) {
+            if (history.getMessage(from + i) != turns.get(i)) {
+                log.debug("Background compaction dropped: history changed meanwhile");
+                return;
+            }
+        }
+
+        int originalTokens = history.getTotalTokens();
+        for (int i = 0; i < turns.size(); i++) {
+            history.removeMessage(from);
+        }
+        history.insertMessage(from, ConversationMessage.builder()
+                .role("assistant")
+                .content("Previous context summary: " + pending.summary)
+                .isSummarized(true)
+                .build());
+        int compressedTokens = history.getTotalTokens();
+
+        List<String> methods = new ArrayList<>(1);
+        methods.add("Summarized " + turns.size() + " earlier messages in the background");
+        lastCompressionResult = HistoryCompressor.CompressionResult.builder()
+                .wasCompressed(true)
+                .originalTokens(originalTokens)
+                .compressedTokens(compressedTokens)
+                .tokensSaved(originalTokens - compressedTokens)
+                .comressionRatio((originalTokens - compressedTokens) / (double) originalTokens)
+                .compressedAt(LocalDateTime.now())
+                .reason("Exceeded soft threshold: " + config.getCompressionThreshold())
+                .summarizedMessages(methods)
+                .build();
+        log.info("✅ Background summary applied: {} messages, {} → {} tokens",
+                turns.size(), originalTokens, compressedTokens);
+    }
+
+    /**
+     * 后台摘要结果：被摘要的原消息（按引用比对）和摘要文本
+     */
+    private static final class PendingCompaction {
+        private final List<ConversationMessage> turns;
+        private final String summary;
+
+        private PendingCompaction(List<ConversationMessage> turns, String summary) {
+            this.turns = turns;
+            this.summary = summary;
+        }
+    }
+
+    /**
+     * 是否启用前缀稳定的消息布局
+     */
+    public boolean isPrefixStable() {
+        return prefixStable;
     }
 
     /**
@@ -197,15 +413,30 @@ public class ContextManager {
         return history.getMessagesForLLM();
     }
 
+    /**
+     * 按加入顺序导出全部消息（用于执行检查点）
+     */
+    public List<Message> snapshotMessages() {
+        return history.getMessagesForLLM(true);
+    }
+
+    /**
+     * 从检查点恢复消息（按原顺序追加，不重复记录日志统计）
+     */
+    public void restoreMessages(List<Message> messages) {
+        for (Message message : messages) {
+            history.addMessage(message);
+        }
+        log.info("Context restored from checkpoint ({} messages, {} tokens)",
+                history.getMessageCount(), history.getTotalTokens());
+    }
+
     /**
      * 获取最近的 N 条消息
      */
     public List<Message> getRecentMessages(int count) {
         return history.getRecentMessages(count).stream()
-                .map(m -> Message.builder()
-                        .role(m.getRole())
-                        .content(m.getContent())
-                        .build())
+                .map(ConversationMessage::toMessage)
                 .collect(java.util.stream.Collectors.toList());
     }
 
@@ -217,7 +448,7 @@ public class ContextManager {
     }
 
     /**
-     * 获取上次压缩的结果
+     * 获取最近一次 getMessagesForLLM() 中压缩的结果（未压缩为 null）
      */
     public HistoryCompressor.CompressionResult getLastCompressionResult() {
         return lastCompressionResult;
@@ -265,7 +496,7 @@ public class ContextManager {
                 stats.getAssistantMessages(),
                 stats.getSystemMessages(),
                 stats.getTotalTokens(),
-                maxTokens,
+                config.getMaxTokens(),
                 usage,
                 getRemainingTokens(),
                 stats.getCreatedAt(),
@@ -273,20 +504,21 @@ public class ContextManager {
     }
 
     /**
-     * 记录上下文统计
+     * 记录上下文统计（每次加消息都会调用：计数均为 O(1)，进度条只在 debug 时生成）
      */
     private void logContextStats() {
         double usage = getTokenBudgetUsage();
-        String bar = createProgressBar(usage);
 
-        log.debug("📈 Context: {} messages, {} tokens [{}] {:.1f}%",
-                history.getMessageCount(),
-                history.getTotalTokens(),
-                bar,
-                usage * 100);
+        if (log.isDebugEnabled()) {
+            log.debug("📈 Context: {} messages, {} tokens [{}] {}%",
+                    history.getMessageCount(),
+                    history.getTotalTokens(),
+                    createProgressBar(usage),
+                    String.format("%.1f", usage * 100));
+        }
 
         if (usage > 0.9) {
-            log.warn("⚠️  Context approaching limit! ({:.1f}% full)", usage * 100);
+            log.warn("⚠️  Context approaching limit! ({}% full)", String.format("%.1f", usage * 100));
         }
     }
 
@@ -0,0 +1,132 @@
+package com.agent.reasoning.context;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Context Manager Factory
+ *
+ * 为每次推理执行创建独立的 ContextManager：
+ * - 并发请求之间的消息互不干扰
+ * - 历史随执行结束释放，内存只与活跃对话数成正比
+ * - 配置（agent.context.*）统一在这里读取一次
+ * - 会话级上下文共享同一个 HistoryCompactor（后台摘要压缩）；单次执行的上下文随执行结束释放，
+ *   摘要多半来不及应用，只用同步规则压缩
+ */
+@Slf4j
+@Component
+public class ContextManagerFactory {
+
+    /**
+     * 最大 token 数（来自配置）
+     */
+    @Value("${agent.context.max-tokens:4096}")
+    private Integer maxTokens;
+
+    /**
+     * 压缩阈值
+     */
+    @Value("${agent.context.compression-threshold:3000}")
+    private Integer compressionThreshold;
+
+    /**
+     * 保留的最近消息数
+     */
+    @Value("${agent.context.keep-recent:5}")
+    private Integer keepRecentCount;
+
+    /**
+     * 是否启用智能摘要
+     */
+    @Value("${agent.context.enable-summary:true}")
+    private Boolean enableSmartSummary;
+
+    /**
+     * 按与当前问题的相关度裁剪历史
+     */
+    @Value("${agent.context.relevance-pruning:true}")
+    private Boolean relevancePruning;
+
+    /**
+     * 前缀稳定模式
+     */
+    @Value("${agent.context.prefix-stable:false}")
+    private Boolean prefixStable;
+
+    private final HistoryCompactor compactor;
+
+    private final AtomicInteger activeContexts = new AtomicInteger(0);
+    private final AtomicInteger peakActiveContexts = new AtomicInteger(0);
+    private final AtomicLong createdContexts = new AtomicLong(0);
+
+    public ContextManagerFactory(HistoryCompactor compactor) {
+        this.compactor = compactor;
+    }
+
+    /**
+     * 创建一个新的上下文（调用方负责在执行结束时 release）
+     */
+    public ContextManager create() {
+        int active = activeContexts.incrementAndGet();
+        peakActiveContexts.accumulateAndGet(active, Math::max);
+        createdContexts.incrementAndGet();
+        log.debug("Context created ({} active)", active);
+
+        return build(null);
+    }
+
+    /**
+     * 按当前配置创建带后台摘要的上下文，不计入活跃执行（会话级缓存使用）
+     */
+    ContextManager newContextManager() {
+        return build(compactor);
+    }
+
+    private ContextManager build(HistoryCompactor compactor) {
+        HistoryCompressor.CompressionConfig config = HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(maxTokens)
+                .keepRecentCount(keepRecentCount)
+                .compressionThreshold(compressionThreshold)
+                .enableSmartSummary(enableSmartSummary)
+                .relevancePruning(relevancePruning)
+                .build();
+        return new ContextManager(config, Boolean.TRUE.equals(prefixStable), compactor);
+    }
+
+    /**
+     * 执行结束，释放上下文
+     */
+    public void release(ContextManager contextManager) {
+        if (contextManager != null) {
+            contextManager.cancelCompaction();
+            activeContexts.decrementAndGet();
+        }
+    }
+
+    /**
+     * 是否启用前缀稳定的消息布局
+     */
+    public boolean isPrefixStable() {
+        return Boolean.TRUE.equals(prefixStable);
+    }
+
+    /**
+     * 上下文统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeContexts", activeContexts.get());
+        stats.put("peakActiveContexts", peakActiveContexts.get());
+        stats.put("createdContexts", createdContexts.get());
+        if (compactor != null) {
+            stats.put("compaction", compactor.getStats());
+        }
+        return stats;
+    }
+}
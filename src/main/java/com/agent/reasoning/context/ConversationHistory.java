@@ -1,10 +1,8 @@
 package com.agent.reasoning.context;
 
 import com.agent.llm.model.dto.Message;
-import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDateTime;
@@ -12,150 +10,191 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 /**
- * Conversation Message
+ * Conversation History
+ * 
+ * 管理完整的对话历史：
+ * - 存储所有消息
+ * - 跟踪 token 使用
+ * - 支持历史查询和管理
+ * - 准备摘要生成
  * 
- * 封装对话中的单条消息，包含内容和元数据
+ * 各角色的消息数和 token 总数随增删增量维护，统计查询为 O(1)；
+ * 每条消息的 token 数在加入时计算一次。消息存放在环形缓冲中，
+ * 从头部淘汰旧消息不需要搬移整个数组。
+ * 压缩（HistoryCompressor）只能通过本类的增删方法修改历史，以保证计数一致。
  */
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
-class ConversationMessage {
+@Slf4j
+public class ConversationHistory {
 
     /**
-     * 消息角色：user, assistant, system
+     * 所有消息列表，按时间顺序
      */
-    private String role;
+    private final List<ConversationMessage> messages = new RingBufferList<>();
 
     /**
-     * 消息内容
+     * 消息 ID 到消息的映射（快速查找）
      */
-    private String content;
+    private final Map<String, ConversationMessage> messageMap = new HashMap<>();
 
     /**
-     * 消息时间戳
+     * 系统提示词（总是保留）
      */
-    @Builder.Default
-    private LocalDateTime timestamp = LocalDateTime.now();
+    private ConversationMessage systemPrompt;
 
     /**
-     * 消息的 token 数量
+     * 总 token 成本
      */
-    @Builder.Default
-    private Integer tokenCount = 0;
+    private int totalTokens = 0;
 
     /**
-     * 消息是否已被摘要
+     * system 消息的 token 数
      */
-    @Builder.Default
-    private Boolean isSummarized = false;
+    private int systemTokens = 0;
 
     /**
-     * 原始内容（如果被摘要）
+     * 各角色消息数
      */
-    private String originalContent;
+    private int userMessages = 0;
+    private int assistantMessages = 0;
+    private int systemMessages = 0;
+    private int toolMessages = 0;
 
     /**
-     * 消息的轮次索引
+     * 创建时间
      */
-    private Integer turnIndex;
+    private final LocalDateTime createdAt = LocalDateTime.now();
 
     /**
-     * 消息的唯一 ID
+     * 最后更新时间
      */
-    @Builder.Default
-    private String messageId = UUID.randomUUID().toString();
+    private LocalDateTime lastUpdated = LocalDateTime.now();
 
     /**
-     * 转换为 Message DTO
+     * 增加一条消息
      */
-    public Message toMessage() {
-        return Message.builder()
+    public void addMessage(String role, String content) {
+        append(ConversationMessage.builder()
                 .role(role)
                 .content(content)
-                .build();
+                .turnIndex(messages.size())
+                .build());
     }
 
     /**
-     * 更新 token 计数
+     * 增加一条 Message 对象（保留工具调用信息）
      */
-    public void updateTokenCount() {
-        this.tokenCount = TokenCounter.estimateTokensPrecise(content);
+    public void addMessage(Message message) {
+        append(ConversationMessage.builder()
+                .role(message.getRole())
+                .content(message.getContent())
+                .toolCalls(message.getToolCalls())
+                .toolCallId(message.getToolCallId())
+                .turnIndex(messages.size())
+                .build());
     }
-}
 
-/**
- * Conversation History
- * 
- * 管理完整的对话历史：
- * - 存储所有消息
- * - 跟踪 token 使用
- * - 支持历史查询和管理
- * - 准备摘要生成
- */
-@Slf4j
-public class ConversationHistory {
+    private void append(ConversationMessage msg) {
+        insertMessage(messages.size(), msg);
+        log.debug("Added message: {} (tokens: {})", msg.getRole(), msg.getTokenCount());
+    }
 
     /**
-     * 所有消息列表，按时间顺序
+     * 追加一条已计数的消息（token 数沿用消息上的缓存值，不重新扫描内容）
      */
-    private final List<ConversationMessage> messages = new ArrayList<>();
+    void appendCounted(ConversationMessage msg) {
+        msg.setTurnIndex(messages.size());
+        insertCounted(messages.size(), msg);
+    }
 
     /**
-     * 消息 ID 到消息的映射（快速查找）
+     * 在指定位置插入消息（压缩时插入摘要）
      */
-    private final Map<String, ConversationMessage> messageMap = new HashMap<>();
+    void insertMessage(int index, ConversationMessage msg) {
+        msg.updateTokenCount();
+        insertCounted(index, msg);
+    }
+
+    private void insertCounted(int index, ConversationMessage msg) {
+        messages.add(index, msg);
+        messageMap.put(msg.getMessageId(), msg);
+
+        // 保留系统消息
+        if ("system".equals(msg.getRole())) {
+            systemPrompt = msg;
+        }
+
+        account(msg, 1);
+    }
 
     /**
-     * 系统提示词（总是保留）
+     * 删除指定位置的消息
      */
-    private ConversationMessage systemPrompt;
+    ConversationMessage removeMessage(int index) {
+        ConversationMessage msg = messages.remove(index);
+        messageMap.remove(msg.getMessageId());
+        account(msg, -1);
+
+        if (msg == systemPrompt) {
+            systemPrompt = null;
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if ("system".equals(messages.get(i).getRole())) {
+                    systemPrompt = messages.get(i);
+                    break;
+                }
+            }
+        }
+        return msg;
+    }
 
     /**
-     * 总 token 成本
+     * 把 index + 1 处的消息合并进 index 处的消息
+     *
+     * 合并后的 token 数由两条消息的缓存值相加得到，不重新扫描内容
      */
-    private Integer totalTokens = 0;
+    void mergeWithNext(int index) {
+        ConversationMessage target = messages.get(index);
+        ConversationMessage next = removeMessage(index + 1);
+        int mergedTokens = target.getTokenCount() + next.getTokenCount() + 1;
+
+        account(target, -1);
+        target.setContent(target.getContent() + "\n" + next.getContent());
+        target.setTokenCount(mergedTokens);
+        target.invalidateEmbedding();
+        account(target, 1);
+    }
 
     /**
-     * 创建时间
+     * 获取指定位置的消息
      */
-    private final LocalDateTime createdAt = LocalDateTime.now();
+    ConversationMessage getMessage(int index) {
+        return messages.get(index);
+    }
 
     /**
-     * 最后更新时间
+     * 获取 [from, to) 范围内的消息副本
      */
-    private LocalDateTime lastUpdated = LocalDateTime.now();
+    List<ConversationMessage> getMessages(int from, int to) {
+        return new ArrayList<>(messages.subList(from, to));
+    }
 
     /**
-     * 增加一条消息
+     * 增减计数（sign = 1 加入，-1 移除）
      */
-    public void addMessage(String role, String content) {
-        ConversationMessage msg = ConversationMessage.builder()
-                .role(role)
-                .content(content)
-                .turnIndex(messages.size())
-                .build();
-
-        msg.updateTokenCount();
-        messages.add(msg);
-        messageMap.put(msg.getMessageId(), msg);
-
-        // 保留系统消息
+    private void account(ConversationMessage msg, int sign) {
+        int tokens = msg.getTokenCount() != null ? msg.getTokenCount() : 0;
+        totalTokens += sign * tokens;
+        String role = msg.getRole();
         if ("system".equals(role)) {
-            systemPrompt = msg;
+            systemMessages += sign;
+            systemTokens += sign * tokens;
+        } else if ("user".equals(role)) {
+            userMessages += sign;
+        } else if ("assistant".equals(role)) {
+            assistantMessages += sign;
+        } else if ("tool".equals(role)) {
+            toolMessages += sign;
         }
-
-        totalTokens += msg.getTokenCount();
         lastUpdated = LocalDateTime.now();
-
-        log.debug("Added message: {} (tokens: {})", role, msg.getTokenCount());
-    }
-
-    /**
-     * 增加一条 Message 对象
-     */
-    public void addMessage(Message message) {
-        addMessage(message.getRole(), message.getContent());
     }
 
     /**
@@ -177,7 +216,24 @@ public class ConversationHistory {
      * 获取所有 Message DTO（用于发送给 LLM）
      */
     public List<Message> getMessagesForLLM() {
-        List<Message> result = new ArrayList<>();
+        return getMessagesForLLM(false);
+    }
+
+    /**
+     * 获取所有 Message DTO（用于发送给 LLM）
+     *
+     * @param preserveOrder true 时严格按加入顺序输出（前缀稳定模式），
+     *                      不再把最后一条 system 消息提到最前面
+     */
+    public List<Message> getMessagesForLLM(boolean preserveOrder) {
+        List<Message> result = new ArrayList<>(messages.size());
+
+        if (preserveOrder) {
+            for (ConversationMessage msg : messages) {
+                result.add(msg.toMessage());
+            }
+            return result;
+        }
 
         // 总是包含系统消息
         if (systemPrompt != null) {
@@ -212,22 +268,29 @@ public class ConversationHistory {
      * 获取非系统消息的 token 总数（用于计算压缩空间）
      */
     public int getNonSystemTokens() {
-        return messages.stream()
-                .filter(m -> m != systemPrompt)
-                .mapToInt(ConversationMessage::getTokenCount)
-                .sum();
+        return totalTokens - systemTokens;
     }
 
     /**
      * 清除所有非系统消息
      */
     public void clear() {
+        ConversationMessage kept = systemPrompt;
         messages.clear();
         messageMap.clear();
-        if (systemPrompt != null) {
-            messages.add(systemPrompt);
+        systemPrompt = null;
+        totalTokens = 0;
+        systemTokens = 0;
+        userMessages = 0;
+        assistantMessages = 0;
+        systemMessages = 0;
+        toolMessages = 0;
+        if (kept != null) {
+            messages.add(kept);
+            messageMap.put(kept.getMessageId(), kept);
+            systemPrompt = kept;
+            account(kept, 1);
         }
-        totalTokens = systemPrompt != null ? systemPrompt.getTokenCount() : 0;
         lastUpdated = LocalDateTime.now();
         log.info("Conversation history cleared");
     }
@@ -242,10 +305,10 @@ public class ConversationHistory {
     }
 
     /**
-     * 获取消息 ID 到消息的映射
+     * 获取消息 ID 到消息的映射（只读）
      */
     public Map<String, ConversationMessage> getMessageMap() {
-        return messageMap;
+        return Collections.unmodifiableMap(messageMap);
     }
 
     /**
@@ -255,9 +318,11 @@ public class ConversationHistory {
         return HistoryStats.builder()
                 .totalMessages(messages.size())
                 .totalTokens(totalTokens)
-                .userMessages((int) messages.stream().filter(m -> "user".equals(m.getRole())).count())
-                .assistantMessages((int) messages.stream().filter(m -> "assistant".equals(m.getRole())).count())
-                .systemMessages((int) messages.stream().filter(m -> "system".equals(m.getRole())).count())
+                .systemTokens(systemTokens)
+                .userMessages(userMessages)
+                .assistantMessages(assistantMessages)
+                .systemMessages(systemMessages)
+                .toolMessages(toolMessages)
                 .createdAt(createdAt)
                 .lastUpdated(lastUpdated)
                 .build();
@@ -271,9 +336,11 @@ public class ConversationHistory {
     public static class HistoryStats {
         private Integer totalMessages;
         private Integer totalTokens;
+        private Integer systemTokens;
         private Integer userMessages;
         private Integer assistantMessages;
         private Integer systemMessages;
+        private Integer toolMessages;
         private LocalDateTime createdAt;
         private LocalDateTime lastUpdated;
     }
@@ -0,0 +1,165 @@
+package com.agent.reasoning.context;
+
+import com.agent.llm.model.dto.LLMToolCall;
+import com.agent.llm.model.dto.Message;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Conversation Message
+ * 
+ * 封装对话中的单条消息，包含内容和元数据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+class ConversationMessage {
+
+    /**
+     * 消息角色：user, assistant, system, tool
+     */
+    private String role;
+
+    /**
+     * 消息内容
+     */
+    private String content;
+
+    /**
+     * 助手发起的工具调用（原生 function calling 模式）
+     */
+    private List<LLMToolCall> toolCalls;
+
+    /**
+     * tool 消息对应的调用 ID
+     */
+    private String toolCallId;
+
+    /**
+     * 消息时间戳
+     */
+    @Builder.Default
+    private LocalDateTime timestamp = LocalDateTime.now();
+
+    /**
+     * 消息的 token 数量
+     */
+    @Builder.Default
+    private Integer tokenCount = 0;
+
+    /**
+     * 消息是否已被摘要
+     */
+    @Builder.Default
+    private Boolean isSummarized = false;
+
+    /**
+     * 原始内容（如果被摘要）
+     */
+    private String originalContent;
+
+    /**
+     * 消息的轮次索引
+     */
+    private Integer turnIndex;
+
+    /**
+     * 消息的唯一 ID
+     */
+    @Builder.Default
+    private String messageId = UUID.randomUUID().toString();
+
+    /**
+     * 内容向量（首次用到时计算并缓存，用于相关度裁剪和相似消息合并）
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient float[] embedding;
+
+    /**
+     * 转换为 Message DTO
+     */
+    public Message toMessage() {
+        return Message.builder()
+                .role(role)
+                .content(content)
+                .toolCalls(toolCalls)
+                .toolCallId(toolCallId)
+                .build();
+    }
+
+    /**
+     * 计算 token 数（加入历史时计算一次并缓存，之后不再重新扫描内容）
+     */
+    public void updateTokenCount() {
+        int tokens = TokenCounter.countTokens(content);
+        if (toolCalls != null) {
+            for (LLMToolCall call : toolCalls) {
+                if (call.getFunction() != null) {
+                    tokens += TokenCounter.countTokens(call.getFunction().getName())
+                            + TokenCounter.countTokens(call.getFunction().getArguments());
+                }
+            }
+        }
+        this.tokenCount = tokens;
+    }
+
+    /**
+     * 内容向量（含工具调用的函数名和参数），每条消息只计算一次
+     */
+    float[] embedding() {
+        if (embedding == null) {
+            StringBuilder text = new StringBuilder(content != null ? content : "");
+            if (toolCalls != null) {
+                for (LLMToolCall call : toolCalls) {
+                    if (call.getFunction() != null) {
+                        text.append(' ').append(call.getFunction().getName())
+                                .append(' ').append(call.getFunction().getArguments());
+                    }
+                }
+            }
+            embedding = TurnEmbedder.embed(text.toString());
+        }
+        return embedding;
+    }
+
+    /**
+     * 复制一条已计数的消息（沿用 token 数和向量，用于跨执行共享会话历史）
+     */
+    ConversationMessage copy() {
+        ConversationMessage copy = ConversationMessage.builder()
+                .role(role)
+                .content(content)
+                .toolCalls(toolCalls)
+                .toolCallId(toolCallId)
+                .timestamp(timestamp)
+                .tokenCount(tokenCount)
+                .isSummarized(isSummarized)
+                .originalContent(originalContent)
+                .turnIndex(turnIndex)
+                .build();
+        copy.embedding = embedding;
+        return copy;
+    }
+
+    /**
+     * 内容被改写后丢弃缓存的向量
+     */
+    void invalidateEmbedding() {
+        embedding = null;
+    }
+}
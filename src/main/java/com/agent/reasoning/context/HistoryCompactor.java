@@ -0,0 +1,183 @@
+package com.agent.reasoning.context;
+
+import com.agent.common.concurrent.Futures;
+import com.agent.llm.model.dto.ChatRequest;
+import com.agent.llm.model.dto.ChatResponse;
+import com.agent.llm.model.dto.Message;
+import com.agent.llm.ratelimit.RequestPriority;
+import com.agent.llm.service.LLMService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * History Compactor
+ *
+ * 后台摘要压缩：对话历史超过软阈值（agent.context.compression-threshold）时，
+ * 由 ContextManager 在后台把较早的若干轮交给一次低成本 LLM 调用做摘要，
+ * 摘要在下一次组装 LLM 请求时整体替换原消息。
+ *
+ * - 调用以 BACKGROUND 优先级排队，不挤占交互请求的限流配额
+ * - 同时进行的摘要数受 max-concurrent 限制，拿不到许可就跳过（硬上限仍有同步的规则压缩兜底）
+ * - 摘要不比原文短、超时或失败时丢弃，不影响推理
+ * - 取消返回的 future（或摘要超时）会取消底层的 LLM 调用，进行中的 HTTP 请求随之中止
+ */
+@Slf4j
+@Component
+public class HistoryCompactor {
+
+    private static final String SUMMARY_PROMPT =
+            "You compress the conversation history of an AI agent. Summarize the conversation below "
+                    + "in the language it is written in. Keep facts, numbers, names, decisions, tool results "
+                    + "and open questions; drop greetings, repetition and reasoning that led nowhere. "
+                    + "Reply with the summary only.";
+
+    private final LLMService llmService;
+
+    @Value("${agent.context.compaction.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${agent.context.compaction.model:deepseek-chat}")
+    private String model;
+
+    @Value("${agent.context.compaction.max-summary-tokens:512}")
+    private Integer maxSummaryTokens;
+
+    @Value("${agent.context.compaction.max-concurrent:4}")
+    private Integer maxConcurrent;
+
+    @Value("${agent.context.compaction.timeout-seconds:30}")
+    private Integer timeoutSeconds;
+
+    private volatile Semaphore permits;
+
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong tokensSaved = new AtomicLong();
+
+    public HistoryCompactor(LLMService llmService) {
+        this.llmService = llmService;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled) && llmService != null;
+    }
+
+    /**
+     * 摘要一段消息
+     *
+     * @param turns 要摘要的消息（按顺序）
+     * @return 摘要文本；跳过、失败或摘要无收益时为 null（不会异常完成）；取消它会中止 LLM 调用
+     */
+    CompletableFuture<String> summarize(List<ConversationMessage> turns) {
+        Semaphore semaphore = permits();
+        if (!isEnabled() || !semaphore.tryAcquire()) {
+            skipped.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        scheduled.incrementAndGet();
+
+        int originalTokens = 0;
+        StringBuilder transcript = new StringBuilder();
+        for (ConversationMessage turn : turns) {
+            originalTokens += turn.getTokenCount() != null ? turn.getTokenCount() : 0;
+            transcript.append(turn.getRole().toUpperCase()).append(": ")
+                    .append(turn.getContent() != null ? turn.getContent() : "").append("\n\n");
+        }
+        int sourceTokens = originalTokens;
+
+        List<Message> messages = new ArrayList<>(2);
+        messages.add(Message.builder().role("system").content(SUMMARY_PROMPT).build());
+        messages.add(Message.builder().role("user").content(transcript.toString()).build());
+        ChatRequest request = ChatRequest.builder()
+                .model(model)
+                .messages(messages)
+                .temperature(0.3)
+                .maxTokens(maxSummaryTokens)
+                .priority(RequestPriority.BACKGROUND)
+                .build();
+
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<ChatResponse> call;
+        try {
+            call = llmService.chatAsync(request);
+        } catch (RuntimeException e) {
+            call = Futures.failed(e);
+        }
+        CompletableFuture<ChatResponse> llmCall = call;
+        // 许可跟随 LLM 调用本身释放（且只释放一次）：调用方取消 summarized 时下面的 handle 不会执行
+        AtomicBoolean released = new AtomicBoolean();
+        llmCall.whenComplete((response, error) -> {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        });
+        CompletableFuture<String> result = Futures.within(llmCall, timeoutSeconds * 1000L, "History compaction")
+                .thenApply(response -> response != null ? response.getContent() : null);
+        CompletableFuture<String> summarized = result.handle((summary, error) -> {
+            if (error != null) {
+                // 超时后不再等待这次调用
+                llmCall.cancel(true);
+                discarded.incrementAndGet();
+                log.warn("⚠️ Background compaction failed: {}", Futures.unwrap(error).getMessage());
+                return null;
+            }
+            int summaryTokens = TokenCounter.countTokens(summary);
+            if (summary == null || summary.trim().isEmpty() || summaryTokens >= sourceTokens) {
+                discarded.incrementAndGet();
+                log.debug("Background compaction discarded ({} → {} tokens)", sourceTokens, summaryTokens);
+                return null;
+            }
+            completed.incrementAndGet();
+            tokensSaved.addAndGet(sourceTokens - summaryTokens);
+            log.info("🗜️  Background compaction: {} messages, {} → {} tokens in {}ms",
+                    turns.size(), sourceTokens, summaryTokens, System.currentTimeMillis() - startTime);
+            return summary.trim();
+        });
+        // 调用方取消（执行或会话结束）时中止进行中的调用，许可随之释放
+        summarized.whenComplete((summary, error) -> {
+            if (summarized.isCancelled()) {
+                llmCall.cancel(true);
+            }
+        });
+        return summarized;
+    }
+
+    private Semaphore permits() {
+        Semaphore semaphore = permits;
+        if (semaphore == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    permits = new Semaphore(maxConcurrent != null && maxConcurrent > 0 ? maxConcurrent : 4);
+                }
+                semaphore = permits;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * 压缩统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("scheduled", scheduled.get());
+        stats.put("completed", completed.get());
+        stats.put("discarded", discarded.get());
+        stats.put("skipped", skipped.get());
+        stats.put("tokensSaved", tokensSaved.get());
+        return stats;
+    }
+}
@@ -8,7 +8,6 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * History Compressor
@@ -20,7 +19,9 @@ import java.util.stream.Collectors;
  * 4. 保留重要的上下文
  * 
  * 压缩策略：
- * - 保留：系统消息、最近的 K 条消息、关键决策
+ * - 保留：系统消息、最近的 K 条消息、当前问题、关键决策
+ * - 相关度裁剪：其余消息按轮次与当前问题的向量相似度排序，
+ *   在 token 预算内优先保留最相关的轮次，而不是只按位置删除最老的
  * - 压缩：多轮相似对话、冗长的中间步骤
  * - 丢弃：重复信息、过时的观察
  */
@@ -70,6 +71,12 @@ public class HistoryCompressor {
          */
         @Builder.Default
         private Double summaryReductionRatio = 0.4;
+
+        /**
+         * 是否按与当前问题的相关度裁剪历史（关闭时只按位置压缩）
+         */
+        @Builder.Default
+        private Boolean relevancePruning = true;
     }
 
     /**
@@ -119,6 +126,16 @@ public class HistoryCompressor {
         private List<String> summarizedMessages;
     }
 
+    /**
+     * 相邻同角色消息的合并阈值（余弦相似度）
+     */
+    private static final double SIMILARITY_THRESHOLD = 0.8;
+
+    /**
+     * 相关度得分中的新近度加成上限：相关度相近时优先保留较新的轮次
+     */
+    private static final double RECENCY_WEIGHT = 0.1;
+
     private final CompressionConfig config;
 
     public HistoryCompressor() {
@@ -155,6 +172,7 @@ public class HistoryCompressor {
                     .tokensSaved(0)
                     .comressionRatio(0.0)
                     .reason("Within token limit")
+                    .summarizedMessages(Collections.emptyList())
                     .build();
         }
 
@@ -174,13 +192,20 @@ public class HistoryCompressor {
                 continue;
             }
 
-            // 3. 压缩旧的消息
+            // 3. 按相关度保留预算内价值最高的轮次
+            int pruned = pruneByRelevance(history);
+            if (pruned > 0) {
+                summarizedMessages.add("Pruned " + pruned + " low-relevance messages");
+                continue;
+            }
+
+            // 4. 压缩旧的消息（找不到当前问题时按位置处理）
             if (compressOldMessages(history)) {
                 summarizedMessages.add("Compressed old message exchanges");
                 continue;
             }
 
-            // 4. 最后手段：删除最老的非系统消息
+            // 5. 最后手段：删除最老的非系统消息
             if (removeOldestMessages(history, config.getMessagesToRemove())) {
                 summarizedMessages.add("Removed " + config.getMessagesToRemove() + " oldest messages");
                 continue;
@@ -208,23 +233,21 @@ public class HistoryCompressor {
      * 合并相邻的相似消息
      */
     private boolean mergeSimilarMessages(ConversationHistory history) {
-        List<ConversationMessage> messages = history.getAllMessages();
+        for (int i = 0; i < history.getMessageCount() - 1; i++) {
+            ConversationMessage msg1 = history.getMessage(i);
+            ConversationMessage msg2 = history.getMessage(i + 1);
 
-        for (int i = 0; i < messages.size() - 1; i++) {
-            ConversationMessage msg1 = messages.get(i);
-            ConversationMessage msg2 = messages.get(i + 1);
+            // 系统消息不合并：前缀稳定模式下开头的系统消息必须逐字节不变；
+            // tool 消息和带 tool_calls 的助手消息不合并：合并会丢掉调用 ID，调用与结果对不上
+            if (!isMergeable(msg1) || !isMergeable(msg2)) {
+                continue;
+            }
 
             // 如果两条消息角色相同且内容相似，合并它们
             if (msg1.getRole().equals(msg2.getRole()) &&
-                    areSimilar(msg1.getContent(), msg2.getContent())) {
-
-                String merged = msg1.getContent() + "\n" + msg2.getContent();
-                msg1.setContent(merged);
-                msg1.updateTokenCount();
+                    areSimilar(msg1, msg2)) {
 
-                // 删除第二条消息
-                messages.remove(i + 1);
-                history.getMessageMap().remove(msg2.getMessageId());
+                history.mergeWithNext(i);
 
                 log.debug("Merged similar messages at index {}", i);
                 return true;
@@ -234,25 +257,42 @@ public class HistoryCompressor {
         return false;
     }
 
+    private static boolean isMergeable(ConversationMessage msg) {
+        return !"system".equals(msg.getRole()) && !"tool".equals(msg.getRole()) && !hasToolCalls(msg);
+    }
+
+    private static boolean hasToolCalls(ConversationMessage msg) {
+        return msg.getToolCalls() != null && !msg.getToolCalls().isEmpty();
+    }
+
+    /**
+     * 在 index 之前切开历史是否会拆开工具调用和它的结果
+     * （切点之后不能是 tool 消息，切点之前不能是带 tool_calls 的助手消息）
+     */
+    static boolean isPairBoundary(ConversationHistory history, int index) {
+        if (index <= 0 || index >= history.getMessageCount()) {
+            return true;
+        }
+        return !"tool".equals(history.getMessage(index).getRole()) && !hasToolCalls(history.getMessage(index - 1));
+    }
+
     /**
      * 删除冗余的观察结果
      * 如果多条观察包含相同的关键信息，只保留第一条
      */
     private boolean removeRedundantObservations(ConversationHistory history) {
-        List<ConversationMessage> messages = history.getAllMessages();
         Set<String> seenObservations = new HashSet<>();
 
-        for (int i = messages.size() - 1; i >= 1; i--) {
-            ConversationMessage msg = messages.get(i);
+        for (int i = history.getMessageCount() - 1; i >= 1; i--) {
+            ConversationMessage msg = history.getMessage(i);
 
-            if (msg.getContent().startsWith("Observation:")) {
+            if (msg.getContent() != null && msg.getContent().startsWith("Observation:")) {
                 String observation = msg.getContent().substring("Observation:".length()).trim();
                 String keyInfo = extractKeyInfo(observation);
 
                 if (seenObservations.contains(keyInfo)) {
                     // 重复的观察，删除它
-                    messages.remove(i);
-                    history.getMessageMap().remove(msg.getMessageId());
+                    history.removeMessage(i);
                     log.debug("Removed redundant observation at index {}", i);
                     return true;
                 }
@@ -264,28 +304,161 @@ public class HistoryCompressor {
         return false;
     }
 
+    /**
+     * 相关度裁剪
+     *
+     * 以最后一条用户提问为当前问题，把较早的消息按轮次分组（一轮从用户提问开始，
+     * 连同之后的助手回复、工具调用结果和 Observation，工具调用与结果不会被拆开），
+     * 每轮的得分是其中消息与问题的最大余弦相似度加上少量新近度加成。
+     * 系统消息、当前问题所在轮次和最近 K 条消息所在轮次总是保留；
+     * 其余轮次按得分从高到低放入剩余预算，放不下的整轮删除。
+     *
+     * @return 删除的消息数
+     */
+    private int pruneByRelevance(ConversationHistory history) {
+        if (!Boolean.TRUE.equals(config.getRelevancePruning())) {
+            return 0;
+        }
+        int messageCount = history.getMessageCount();
+        int queryIndex = -1;
+        for (int i = messageCount - 1; i >= 0; i--) {
+            ConversationMessage msg = history.getMessage(i);
+            if ("user".equals(msg.getRole()) && !isObservation(msg)) {
+                queryIndex = i;
+                break;
+            }
+        }
+        if (queryIndex < 0) {
+            return 0;
+        }
+        float[] query = history.getMessage(queryIndex).embedding();
+        int recentFrom = Math.max(0, messageCount - config.getKeepRecentCount());
+
+        // 分组：units 记录每轮的起始下标
+        List<int[]> units = new ArrayList<>();
+        int budget = config.getMaxTokens();
+        int start = -1;
+        for (int i = 0; i <= messageCount; i++) {
+            ConversationMessage msg = i < messageCount ? history.getMessage(i) : null;
+            boolean system = msg != null && "system".equals(msg.getRole());
+            if (system) {
+                budget -= msg.getTokenCount();
+            }
+            if (start >= 0 && (msg == null || system || startsTurn(msg))) {
+                units.add(new int[] { start, i });
+                start = -1;
+            }
+            if (msg != null && !system && start < 0) {
+                start = i;
+            }
+        }
+
+        List<int[]> candidates = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        for (int[] unit : units) {
+            int tokens = 0;
+            double relevance = -1;
+            for (int i = unit[0]; i < unit[1]; i++) {
+                ConversationMessage msg = history.getMessage(i);
+                tokens += msg.getTokenCount();
+                relevance = Math.max(relevance, TurnEmbedder.cosine(query, msg.embedding()));
+            }
+            if (unit[1] > recentFrom || (queryIndex >= unit[0] && queryIndex < unit[1])) {
+                budget -= tokens;
+            } else {
+                candidates.add(new int[] { unit[0], unit[1], tokens, candidates.size() });
+                scores.add(relevance + RECENCY_WEIGHT * unit[0] / messageCount);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        List<int[]> ranked = new ArrayList<>(candidates);
+        ranked.sort((a, b) -> Double.compare(scores.get(b[3]), scores.get(a[3])));
+        boolean[] keep = new boolean[candidates.size()];
+        for (int[] unit : ranked) {
+            if (unit[2] <= budget) {
+                keep[unit[3]] = true;
+                budget -= unit[2];
+            }
+        }
+
+        // 从后往前删除，前面的下标不受影响
+        int removed = 0;
+        for (int u = candidates.size() - 1; u >= 0; u--) {
+            if (keep[u]) {
+                continue;
+            }
+            int[] unit = candidates.get(u);
+            for (int i = unit[1] - 1; i >= unit[0]; i--) {
+                history.removeMessage(i);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            log.debug("Pruned {} low-relevance messages ({} of {} turns kept)", removed,
+                    candidates.size() - countDropped(keep), candidates.size());
+        }
+        return removed;
+    }
+
+    /**
+     * 新一轮从用户提问开始；助手回复、tool 结果和 Observation 归入当前轮次
+     */
+    private static boolean startsTurn(ConversationMessage msg) {
+        return "user".equals(msg.getRole()) && !isObservation(msg);
+    }
+
+    private static boolean isObservation(ConversationMessage msg) {
+        return msg.getContent() != null && msg.getContent().startsWith("Observation:");
+    }
+
+    private static int countDropped(boolean[] keep) {
+        int dropped = 0;
+        for (boolean k : keep) {
+            if (!k) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
     /**
      * 压缩旧的消息交换
      * 将多条旧的 user-assistant 对话替换为一条摘要
      */
     private boolean compressOldMessages(ConversationHistory history) {
-        List<ConversationMessage> messages = history.getAllMessages();
+        int messageCount = history.getMessageCount();
         int recentCount = config.getKeepRecentCount();
 
-        if (messages.size() <= recentCount + 4) {
+        if (messageCount <= recentCount + 4) {
             return false; // 消息不够多，无法压缩
         }
 
         // 找到最老的非系统消息对（应该在 recent 之前）
-        int compressStart = 1; // 跳过系统消息
-        int compressEnd = messages.size() - recentCount - 2;
+        // 跳过开头的全部系统消息（前缀稳定模式下有多条），前缀保持不变
+        int compressStart = leadingSystemCount(history);
+        int compressEnd = messageCount - recentCount - 2;
+
+        // 范围内不含系统消息：之后加入的系统消息（如知识库）留在原位
+        for (int i = compressStart; i < compressEnd; i++) {
+            if ("system".equals(history.getMessage(i).getRole())) {
+                compressEnd = i;
+                break;
+            }
+        }
+        // 切点移到工具调用与结果之间的边界上，摘要不会吞掉调用而留下它的结果
+        while (compressEnd > compressStart && !isPairBoundary(history, compressEnd)) {
+            compressEnd--;
+        }
 
         if (compressEnd <= compressStart + 1) {
             return false;
         }
 
         // 收集要压缩的消息
-        List<ConversationMessage> toCompress = messages.subList(compressStart, compressEnd);
+        List<ConversationMessage> toCompress = history.getMessages(compressStart, compressEnd);
 
         // 生成摘要
         String summary = generateSummary(toCompress);
@@ -297,39 +470,55 @@ public class HistoryCompressor {
                 .isSummarized(true)
                 .build();
 
-        summaryMessage.updateTokenCount();
-
-        // 删除旧消息
-        for (int i = compressEnd - 1; i >= compressStart; i--) {
-            ConversationMessage msg = messages.remove(i);
-            history.getMessageMap().remove(msg.getMessageId());
+        // 删除旧消息（从头部附近删除，环形缓冲只移动前面的少数几条）
+        for (int i = compressStart; i < compressEnd; i++) {
+            history.removeMessage(compressStart);
         }
 
         // 插入摘要
-        messages.add(compressStart, summaryMessage);
+        history.insertMessage(compressStart, summaryMessage);
 
         log.debug("Compressed {} old messages into one summary", toCompress.size());
         return true;
     }
 
     /**
-     * 删除最老的消息
+     * 开头连续的系统消息数
      */
-    private boolean removeOldestMessages(ConversationHistory history, int count) {
-        List<ConversationMessage> messages = history.getAllMessages();
+    private static int leadingSystemCount(ConversationHistory history) {
+        int count = 0;
+        while (count < history.getMessageCount() && "system".equals(history.getMessage(count).getRole())) {
+            count++;
+        }
+        return count;
+    }
 
+    /**
+     * 删除最老的消息（跳过 system 消息）
+     *
+     * 删掉带 tool_calls 的助手消息时，紧随其后的 tool 结果一并删除，不留下没有调用的结果
+     */
+    private boolean removeOldestMessages(ConversationHistory history, int count) {
         // 保留系统消息和最近的消息
         int recentCount = config.getKeepRecentCount();
 
-        if (messages.size() <= recentCount + 1) {
+        if (history.getMessageCount() <= recentCount + 1) {
             return false;
         }
 
         int removeCount = 0;
-        for (int i = 1; i < messages.size() - recentCount && removeCount < count; i++) {
-            ConversationMessage msg = messages.remove(i);
-            history.getMessageMap().remove(msg.getMessageId());
+        int i = 0;
+        while (i < history.getMessageCount() - recentCount && removeCount < count) {
+            if ("system".equals(history.getMessage(i).getRole())) {
+                i++;
+                continue;
+            }
+            history.removeMessage(i);
             removeCount++;
+            while (i < history.getMessageCount() && "tool".equals(history.getMessage(i).getRole())) {
+                history.removeMessage(i);
+                removeCount++;
+            }
         }
 
         log.debug("Removed {} oldest messages", removeCount);
@@ -351,6 +540,10 @@ public class HistoryCompressor {
         Set<String> keyPoints = new HashSet<>();
 
         for (ConversationMessage msg : messages) {
+            if (msg.getContent() == null || msg.getContent().isEmpty()) {
+                // 只含 tool_calls 的助手消息没有正文
+                continue;
+            }
             if ("user".equals(msg.getRole())) {
                 // 从用户消息提取问题或需求
                 String keyInfo = extractKeyQuestionsAndNeeds(msg.getContent());
@@ -437,25 +630,12 @@ public class HistoryCompressor {
     }
 
     /**
-     * 判断两个文本是否相似
+     * 判断两条消息是否相似（缓存向量的余弦相似度，不再为每对消息重新分词建集合）
      */
-    private boolean areSimilar(String text1, String text2) {
-        if (text1 == null || text2 == null) {
+    private boolean areSimilar(ConversationMessage msg1, ConversationMessage msg2) {
+        if (msg1.getContent() == null || msg2.getContent() == null) {
             return false;
         }
-
-        // 简单的相似度算法：计算共同单词比例
-        String[] words1 = text1.toLowerCase().split("\\s+");
-        String[] words2 = text2.toLowerCase().split("\\s+");
-
-        Set<String> set1 = Arrays.stream(words1).collect(Collectors.toSet());
-        Set<String> set2 = Arrays.stream(words2).collect(Collectors.toSet());
-
-        Set<String> intersection = new HashSet<>(set1);
-        intersection.retainAll(set2);
-
-        double similarity = intersection.size() / (double) Math.max(set1.size(), set2.size());
-
-        return similarity > 0.6; // 相似度超过 60% 则认为相似
+        return TurnEmbedder.cosine(msg1.embedding(), msg2.embedding()) > SIMILARITY_THRESHOLD;
     }
 }
@@ -0,0 +1,128 @@
+package com.agent.reasoning.context;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Ring Buffer List
+ *
+ * 基于环形数组的 List：
+ * - 下标访问 O(1)
+ * - 头尾插入/删除 O(1)（均摊）
+ * - 中间位置插入/删除只移动较短的一侧
+ *
+ * 对话历史新消息追加在尾部，压缩时从头部（系统提示之后）淘汰旧消息，
+ * 两端都不需要整体搬移数组。
+ *
+ * 非线程安全（ContextManager 每次执行独占）
+ */
+final class RingBufferList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 容量始终是 2 的幂，下标用掩码取模
+     */
+    private Object[] elements = new Object[DEFAULT_CAPACITY];
+
+    private int head = 0;
+
+    private int size = 0;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, size);
+        return (E) elements[slot(index)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index, size);
+        int slot = slot(index);
+        E previous = (E) elements[slot];
+        elements[slot] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, size + 1);
+        if (size == elements.length) {
+            grow();
+        }
+        if (index < size - index) {
+            // 前半段整体左移一格
+            head = (head - 1) & (elements.length - 1);
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            // 后半段整体右移一格
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(index)] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        checkIndex(index, size);
+        E removed = (E) elements[slot(index)];
+        if (index < size - 1 - index) {
+            // 前半段整体右移一格
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        } else {
+            // 后半段整体左移一格
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    private int slot(int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    private void grow() {
+        Object[] grown = new Object[elements.length << 1];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[slot(i)];
+        }
+        elements = grown;
+        head = 0;
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
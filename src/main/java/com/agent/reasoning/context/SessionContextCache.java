@@ -0,0 +1,216 @@
+package com.agent.reasoning.context;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session Context Cache
+ *
+ * 会话级的已编译上下文缓存：每个会话保留一个只含对话历史的 ContextManager，
+ * 消息的 token 数、向量、后台摘要和压缩结果在轮次之间保留。
+ *
+ * 每一轮只把会话中新增的消息追加进去（O(新消息数)），再导出快照带入本次执行，
+ * 不再把整段会话转成 "ROLE: content" 文本、重新解析、逐条计数和从头压缩。
+ *
+ * - 会话被删改（删除单条消息、清空）时，按最后一条已消费消息的 ID 校验失败，整体重建
+ * - 会话较早的消息归档到冷存储后不再传入：下标按会话第一条消息起算，
+ *   已消费的部分不受影响，重建时只从热消息开始
+ * - 最多缓存 max-sessions 个会话，按最近使用淘汰
+ */
+@Slf4j
+@Component
+public class SessionContextCache {
+
+    private final ContextManagerFactory contextManagerFactory;
+
+    @Value("${agent.context.session-cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${agent.context.session-cache.max-sessions:1000}")
+    private Integer maxSessions;
+
+    /**
+     * 会话 ID → 已编译上下文（访问顺序，最久未用的在前）
+     */
+    private final LinkedHashMap<String, SessionContext> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong incrementalSyncs = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong appendedMessages = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SessionContextCache(ContextManagerFactory contextManagerFactory) {
+        this.contextManagerFactory = contextManagerFactory;
+    }
+
+    /**
+     * 同步会话历史并导出本轮要带入执行的快照
+     *
+     * @param sessionId    会话 ID
+     * @param messages     会话的全部消息（按时间顺序）
+     * @param currentQuery 本轮问题（已作为最后一条消息加入会话时不计入历史）
+     */
+    public CompiledHistory compile(String sessionId, List<com.agent.model.dto.ConversationMessage> messages,
+            String currentQuery) {
+        return compile(sessionId, 0, messages, currentQuery);
+    }
+
+    /**
+     * 同步会话历史并导出本轮要带入执行的快照
+     *
+     * @param sessionId     会话 ID
+     * @param archivedCount 已归档到冷存储、不在 messages 中的较早消息数
+     * @param messages      会话的热消息（按时间顺序）
+     * @param currentQuery  本轮问题（已作为最后一条消息加入会话时不计入历史）
+     */
+    public CompiledHistory compile(String sessionId, int archivedCount,
+            List<com.agent.model.dto.ConversationMessage> messages, String currentQuery) {
+        if (messages == null || messages.isEmpty()) {
+            return CompiledHistory.empty();
+        }
+        if (!Boolean.TRUE.equals(enabled) || sessionId == null) {
+            SessionContext oneOff = new SessionContext(contextManagerFactory.newContextManager());
+            CompiledHistory compiled = oneOff.sync(archivedCount, messages, currentQuery);
+            oneOff.close();
+            return compiled;
+        }
+
+        SessionContext context;
+        synchronized (sessions) {
+            context = sessions.get(sessionId);
+            if (context == null) {
+                context = new SessionContext(contextManagerFactory.newContextManager());
+                sessions.put(sessionId, context);
+                evictOverflow();
+            }
+        }
+        return context.sync(archivedCount, messages, currentQuery);
+    }
+
+    /**
+     * 丢弃会话的已编译上下文（会话被删除时调用）
+     */
+    public void invalidate(String sessionId) {
+        SessionContext removed;
+        synchronized (sessions) {
+            removed = sessions.remove(sessionId);
+        }
+        if (removed != null) {
+            removed.close();
+        }
+    }
+
+    private void evictOverflow() {
+        int limit = maxSessions != null && maxSessions > 0 ? maxSessions : 1000;
+        while (sessions.size() > limit) {
+            Map.Entry<String, SessionContext> eldest = sessions.entrySet().iterator().next();
+            sessions.remove(eldest.getKey());
+            eldest.getValue().close();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 缓存统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (sessions) {
+            stats.put("sessions", sessions.size());
+        }
+        stats.put("enabled", Boolean.TRUE.equals(enabled));
+        stats.put("incrementalSyncs", incrementalSyncs.get());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("appendedMessages", appendedMessages.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    /**
+     * 一个会话的已编译上下文
+     *
+     * 记录已消费的会话消息数和最后一条已消费消息的标识，用于判断会话是否只是在末尾追加了消息
+     * （中间删除会让这条消息前移，清空后 ID 全部不同）。
+     * 同一会话的并发请求在此串行
+     */
+    private final class SessionContext {
+
+        private ContextManager contextManager;
+
+        /**
+         * 已追加进上下文的会话消息数
+         */
+        private int consumed;
+
+        private String lastKey;
+
+        private SessionContext(ContextManager contextManager) {
+            this.contextManager = contextManager;
+        }
+
+        synchronized CompiledHistory sync(int base, List<com.agent.model.dto.ConversationMessage> messages,
+                String currentQuery) {
+            // 下标从会话第一条消息起算，messages 从 base 开始
+            int end = base + messages.size();
+            com.agent.model.dto.ConversationMessage last = messages.get(messages.size() - 1);
+            if ("user".equals(last.getRole()) && last.getContent() != null
+                    && last.getContent().equals(currentQuery)) {
+                end--;
+            }
+
+            if (consumed > 0) {
+                boolean appendOnly = end >= consumed && consumed - 1 >= base
+                        && lastKey.equals(key(messages.get(consumed - 1 - base)));
+                if (appendOnly) {
+                    incrementalSyncs.incrementAndGet();
+                } else {
+                    // 会话被删改：重建
+                    contextManager.cancelCompaction();
+                    contextManager = contextManagerFactory.newContextManager();
+                    consumed = 0;
+                    rebuilds.incrementAndGet();
+                    log.debug("Session context rebuilt: history changed");
+                }
+            }
+
+            int from = Math.max(consumed, base);
+            for (int i = from; i < end; i++) {
+                com.agent.model.dto.ConversationMessage msg = messages.get(i - base);
+                contextManager.addMessage(msg.getRole(), msg.getContent());
+            }
+            appendedMessages.addAndGet(Math.max(0, end - from));
+            if (end > base) {
+                lastKey = key(messages.get(end - 1 - base));
+                consumed = end;
+            } else {
+                consumed = 0;
+            }
+
+            // 应用已完成的摘要；超阈值时安排摘要或压缩，结果留给后续轮次
+            contextManager.maintain();
+            return contextManager.compileHistory();
+        }
+
+        synchronized void close() {
+            contextManager.cancelCompaction();
+        }
+
+        /**
+         * 消息标识（旧会话文件中的消息可能没有 ID）
+         */
+        private String key(com.agent.model.dto.ConversationMessage msg) {
+            if (msg.getMessageId() != null) {
+                return msg.getMessageId();
+            }
+            return msg.getRole() + ":" + msg.getTimestamp() + ":"
+                    + (msg.getContent() != null ? msg.getContent().hashCode() : 0);
+        }
+    }
+}
@@ -1,71 +1,197 @@
 package com.agent.reasoning.context;
 
+import com.agent.common.tokenizer.BpeTokenizer;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Token Counter
  * 
- * 估算文本中的 token 数量
- * 使用与 GPT 类似的算法
+ * 全局共享的 token 计数入口，所有组件（上下文、压缩、限流预估、知识检索、提示词构建）
+ * 都通过它计数，预算口径一致。
+ * 
+ * - 默认是字符规则估算（中文字符 2 tokens，英文单词/数字 1 token，标点 1 token）：
+ *   仓库不附带词表，agent.tokenizer.vocab 默认为空，启动时告警一次
+ * - 配置了 BPE 词表（tiktoken 格式，如 cl100k_base.tiktoken）后才使用本地 BPE 精确计数；
+ *   词表加载失败时仍退回规则估算
  * 
- * Token 计数规则：
- * - 英文单词通常 1-2 tokens
- * - 标点符号通常 1 token
- * - 中文字符通常 1-2 tokens
- * - 特殊字符通常 1 token
+ * 计数结果按文本的 64 位哈希缓存在 LRU 中（agent.tokenizer.cache-size），
+ * 同一段系统提示、知识片段反复计数时不再重新分词。
  */
 @Slf4j
 public class TokenCounter {
 
-    // 单词细分模式 - 用于英文 token 计数
-    private static final String WORD_PATTERN = "\\w+";
+    /**
+     * 短文本直接计算，比查缓存更便宜
+     */
+    private static final int MIN_CACHED_LENGTH = 32;
+
+    private static volatile BpeTokenizer tokenizer;
+    private static volatile int cacheSize = 10_000;
 
-    // 中文字符细分模式
-    private static final String CJK_PATTERN = "[\\u2E80-\\u2EFF\\u2F00-\\u2FDF\\u3040-\\u309F\\u30A0-\\u30FF\\u3100-\\u312F\\u3200-\\u32FF\\u3400-\\u4DBF\\u4E00-\\u9FFF]";
+    private static final Map<Long, Integer> CACHE = new LinkedHashMap<Long, Integer>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
 
     /**
-     * 估算文本的 token 数量
-     * 这是一个近似值，不同的 LLM 可能有不同的 tokenizer
+     * 加载词表并设置缓存大小（应用启动时调用；未调用时使用字符规则估算）
+     *
+     * @param vocab     词表位置：classpath:xxx 或文件路径
+     * @param cacheSize LRU 缓存条数
+     */
+    public static synchronized void configure(String vocab, int cacheSize) {
+        TokenCounter.cacheSize = Math.max(0, cacheSize);
+        if (vocab == null || vocab.trim().isEmpty()) {
+            log.warn("⚠️ No tokenizer vocab configured (agent.tokenizer.vocab), using heuristic token estimates");
+            tokenizer = null;
+        } else {
+            tokenizer = loadTokenizer(vocab.trim());
+        }
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * 是否使用 BPE 精确计数（否则为规则估算）
+     */
+    public static boolean isExact() {
+        return tokenizer != null;
+    }
+
+    /**
+     * 计算文本的 token 数
      * 
      * @param text 要计算的文本
-     * @return 估算的 token 数量
+     * @return token 数量（空文本为 0）
      */
-    public static int estimateTokens(String text) {
+    public static int countTokens(String text) {
         if (text == null || text.isEmpty()) {
             return 0;
         }
+        if (text.length() < MIN_CACHED_LENGTH || cacheSize == 0) {
+            return compute(text);
+        }
 
-        int tokens = 0;
-
-        // 1. 计算英文单词 token 数
-        // 规则：大多数单词1个token，较长单词可能是2个
-        int englishWords = text.split("\\s+").length;
-        tokens += (int) (englishWords * 1.2); // 平均每个词 1.2 tokens
-
-        // 2. 计算中文字符 token 数
-        // 规则：每个中文字符约 1-2 tokens
-        int chineseChars = countMatches(text, CJK_PATTERN);
-        tokens += (int) (chineseChars * 1.5); // 每个中文字符 1.5 tokens
-
-        // 3. 统计特殊字符和标点
-        // 规则：特殊字符和标点通常是 1 token，但某些组合可能是多个
-        int specialChars = text.length() - englishWords * 5; // 粗略估计
-        tokens += (int) (specialChars * 0.3);
+        Long key = hash(text);
+        Integer cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(key);
+        }
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return cached;
+        }
 
-        // 4. 新行符号通常是分开的 tokens
-        tokens += countMatches(text, "\n");
+        MISSES.incrementAndGet();
+        int tokens = compute(text);
+        synchronized (CACHE) {
+            CACHE.put(key, tokens);
+        }
+        return tokens;
+    }
 
-        return Math.max(tokens, 1); // 最少 1 token
+    /**
+     * 估算文本的 token 数量（同 {@link #countTokens}）
+     * 
+     * @param text 要计算的文本
+     * @return token 数量
+     */
+    public static int estimateTokens(String text) {
+        return countTokens(text);
     }
 
     /**
-     * 更精确的 token 计数（适用于中英混合文本）
-     * 使用更细致的规则
+     * 中英混合文本的 token 数量（同 {@link #countTokens}）
      * 
      * @param text 要计算的文本
-     * @return 更精确的 token 数量
+     * @return token 数量
      */
     public static int estimateTokensPrecise(String text) {
+        return countTokens(text);
+    }
+
+    /**
+     * 缓存统计
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        BpeTokenizer current = tokenizer;
+        stats.put("mode", current != null ? "bpe" : "heuristic");
+        stats.put("vocabSize", current != null ? current.getVocabSize() : 0);
+        synchronized (CACHE) {
+            stats.put("cacheSize", CACHE.size());
+        }
+        long hits = HITS.get();
+        long total = hits + MISSES.get();
+        stats.put("cacheHits", hits);
+        stats.put("cacheMisses", total - hits);
+        stats.put("cacheHitRate", total == 0 ? 0.0 : hits / (double) total);
+        return stats;
+    }
+
+    private static int compute(String text) {
+        BpeTokenizer current = tokenizer;
+        return current != null ? current.countTokens(text) : heuristicTokens(text);
+    }
+
+    private static BpeTokenizer loadTokenizer(String vocab) {
+        long start = System.currentTimeMillis();
+        try (InputStream in = open(vocab)) {
+            if (in == null) {
+                log.warn("⚠️ Tokenizer vocab not found at {}, falling back to heuristic token estimates", vocab);
+                return null;
+            }
+            BpeTokenizer loadedTokenizer = BpeTokenizer.load(in);
+            log.info("✅ BPE tokenizer loaded: {} tokens from {} in {}ms",
+                    loadedTokenizer.getVocabSize(), vocab, System.currentTimeMillis() - start);
+            return loadedTokenizer;
+        } catch (IOException | RuntimeException e) {
+            log.error("❌ Failed to load tokenizer vocab {}, falling back to heuristic token estimates", vocab, e);
+            return null;
+        }
+    }
+
+    private static InputStream open(String vocab) throws IOException {
+        if (vocab == null || vocab.isEmpty()) {
+            return null;
+        }
+        if (vocab.startsWith("classpath:")) {
+            return TokenCounter.class.getClassLoader().getResourceAsStream(vocab.substring("classpath:".length()));
+        }
+        File file = new File(vocab);
+        return file.exists() ? new FileInputStream(file) : null;
+    }
+
+    /**
+     * 64 位 FNV-1a 哈希（缓存键，不保留原文本）
+     */
+    private static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h ^ text.length();
+    }
+
+    /**
+     * 规则估算（无词表时使用）
+     */
+    static int heuristicTokens(String text) {
         if (text == null || text.isEmpty()) {
             return 0;
         }
@@ -125,52 +251,52 @@ public class TokenCounter {
                 (c >= 0x20000 && c <= 0x2A6DF); // CJK Unified Ideographs Extension B
     }
 
-    /**
-     * 统计字符串中匹配模式的出现次数
-     */
-    private static int countMatches(String text, String pattern) {
-        if (text == null || pattern == null || text.isEmpty()) {
-            return 0;
-        }
-
-        int count = 0;
-        int index = 0;
-        while ((index = text.indexOf(pattern, index)) != -1) {
-            count++;
-            index += pattern.length();
-        }
-        return count;
-    }
-
     /**
      * 获取文本前 N 个 tokens 对应的文本
      * 用于裁剪过长的文本
      * 
+     * 按字符长度二分，保证结果的 {@link #countTokens} 不超过 maxTokens
+     * 
      * @param text      原文本
      * @param maxTokens 最大 token 数
      * @return 裁剪后的文本
      */
     public static String truncateByTokens(String text, int maxTokens) {
-        if (text == null || text.isEmpty()) {
+        if (text == null || text.isEmpty() || compute(text) <= maxTokens) {
             return text;
         }
 
-        int targetLength = (int) (maxTokens * 4.5); // 粗略估计：1 token ≈ 4.5 字符
-        if (text.length() <= targetLength) {
-            return text;
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (compute(prefix(text, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
         }
-
-        String truncated = text.substring(0, Math.min(targetLength, text.length()));
+        String truncated = prefix(text, low);
 
         // 确保不在中间截断单词
         int lastSpace = truncated.lastIndexOf(' ');
-        if (lastSpace > 0 && lastSpace > targetLength * 0.8) {
+        if (lastSpace > 0 && lastSpace > truncated.length() * 0.8) {
             return truncated.substring(0, lastSpace);
         }
 
         return truncated;
     }
 
+    /**
+     * 前 length 个字符（不拆开代理对）
+     */
+    private static String prefix(String text, int length) {
+        if (length > 0 && length < text.length() && Character.isHighSurrogate(text.charAt(length - 1))) {
+            length--;
+        }
+        return text.substring(0, length);
+    }
+
     /**
      * 转换 token 数为人类可读的格式
      */
@@ -0,0 +1,124 @@
+package com.agent.reasoning.context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turn Embedder
+ *
+ * 对话消息的轻量向量化（特征哈希）：
+ * - 英文/数字按词切分，去掉常见停用词
+ * - 中文按相邻两字（bigram）切分，单字消息保留单字
+ * - 词频取 1 + ln(tf)，按带符号哈希落到固定维度，最后 L2 归一化
+ *
+ * 同一批词的文本向量方向一致，词面无交集的文本余弦接近 0，
+ * 足以对历史消息按与当前问题的相关度排序。
+ * 每条消息只向量化一次（缓存在 ConversationMessage 上）。
+ *
+ * 无状态，线程安全
+ */
+final class TurnEmbedder {
+
+    static final int DIMENSION = 512;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "and", "or", "but", "of", "to", "in", "on", "at", "for", "with", "by",
+            "from", "as", "is", "are", "was", "were", "be", "been", "it", "its", "this", "that",
+            "these", "those", "i", "you", "he", "she", "we", "they", "me", "my", "your", "our",
+            "do", "does", "did", "can", "could", "will", "would", "should", "please", "what",
+            "which", "how", "there", "here", "so", "if", "then", "than", "not", "no", "yes"
+    ));
+
+    private TurnEmbedder() {
+    }
+
+    /**
+     * 文本向量（L2 归一化；没有可用词时为全 0 向量）
+     */
+    static float[] embed(String text) {
+        float[] vector = new float[DIMENSION];
+        if (text == null || text.isEmpty()) {
+            return vector;
+        }
+
+        Map<String, Integer> termFrequency = new HashMap<>();
+        String lower = text.toLowerCase();
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            char c = lower.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(lower.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    termFrequency.merge(lower.substring(start, i), 1, Integer::sum);
+                }
+                for (int j = start; j + 1 < i; j++) {
+                    termFrequency.merge(lower.substring(j, j + 2), 1, Integer::sum);
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(lower.charAt(i)) && !isCjk(lower.charAt(i))) {
+                    i++;
+                }
+                String word = lower.substring(start, i);
+                if (!STOP_WORDS.contains(word)) {
+                    termFrequency.merge(word, 1, Integer::sum);
+                }
+            } else {
+                i++;
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : termFrequency.entrySet()) {
+            int hash = mix(entry.getKey().hashCode());
+            float weight = (float) (1 + Math.log(entry.getValue()));
+            // 低位选维度，最高位选符号：哈希冲突的期望贡献为 0
+            vector[(hash & 0x7fffffff) % DIMENSION] += hash < 0 ? -weight : weight;
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int k = 0; k < DIMENSION; k++) {
+                vector[k] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 余弦相似度（两个向量都已归一化，即点积）
+     */
+    static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        for (int k = 0; k < DIMENSION; k++) {
+            dot += a[k] * b[k];
+        }
+        return dot;
+    }
+
+    private static boolean isCjk(char c) {
+        return c >= '\u4e00' && c <= '\u9fff';
+    }
+
+    /**
+     * String.hashCode 的低位分布较差，再打散一次（murmur3 fmix32）
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -1,5 +1,9 @@
 package com.agent.reasoning.engine;
 
+import com.agent.llm.model.dto.ChatResponse;
+import com.agent.llm.ratelimit.RequestPriority;
+import com.agent.reasoning.trace.ExecutionTrace;
+import com.agent.tool.model.ToolCall;
 import com.agent.tool.model.ToolResult;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,6 +20,11 @@ import java.util.List;
 @NoArgsConstructor
 public class ExecutionContext {
     
+    /**
+     * Execution ID (checkpoint key; a request retried with the same ID resumes this execution)
+     */
+    private String executionId;
+    
     /**
      * Original user query
      */
@@ -61,6 +70,46 @@ public class ExecutionContext {
      */
     private Long endTime;
     
+    /**
+     * Admission priority for the LLM calls made by this execution
+     */
+    private RequestPriority priority = RequestPriority.NORMAL;
+    
+    /**
+     * Execution path chosen by the QueryRouter (REACT, DIRECT, KNOWLEDGE, CACHED)
+     */
+    private String route = "REACT";
+    
+    /**
+     * Span tree timing each phase of the execution (retrieval, compression, LLM, tools)
+     */
+    private ExecutionTrace trace = new ExecutionTrace();
+    
+    /**
+     * Prompt tokens billed across all LLM calls
+     */
+    private Integer promptTokens = 0;
+    
+    /**
+     * Completion tokens billed across all LLM calls
+     */
+    private Integer completionTokens = 0;
+    
+    /**
+     * Prompt tokens served from the provider's prefix cache
+     */
+    private Integer promptCacheHitTokens = 0;
+    
+    /**
+     * Tool calls served by a speculative execution started while the LLM was streaming
+     */
+    private Integer speculativeHits = 0;
+    
+    /**
+     * Speculative executions discarded because the final parse disagreed
+     */
+    private Integer speculativeDiscards = 0;
+    
     public ExecutionContext(String userQuery) {
         this.userQuery = userQuery;
         this.startTime = System.currentTimeMillis();
@@ -87,6 +136,31 @@ public class ExecutionContext {
         toolResults.add(toolResult);
     }
     
+    /**
+     * Accumulate token usage reported by an LLM response
+     */
+    public void recordUsage(ChatResponse.Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getPromptTokens() != null) {
+            promptTokens += usage.getPromptTokens();
+        }
+        if (usage.getCompletionTokens() != null) {
+            completionTokens += usage.getCompletionTokens();
+        }
+        if (usage.getPromptCacheHitTokens() != null) {
+            promptCacheHitTokens += usage.getPromptCacheHitTokens();
+        }
+    }
+    
+    /**
+     * Share of prompt tokens that hit the provider's prefix cache
+     */
+    public double getPromptCacheHitRatio() {
+        return promptTokens > 0 ? promptCacheHitTokens / (double) promptTokens : 0.0;
+    }
+    
     /**
      * Mark as complete
      */
@@ -106,6 +180,14 @@ public class ExecutionContext {
         return null;
     }
     
+    /**
+     * Record the outcome of speculative tool execution for one step
+     */
+    public void recordSpeculation(int hits, int discards) {
+        speculativeHits += hits;
+        speculativeDiscards += discards;
+    }
+    
     /**
      * Get the full context as a string for LLM
      */
@@ -113,16 +195,26 @@ public class ExecutionContext {
         StringBuilder context = new StringBuilder();
         context.append("Original Query: ").append(userQuery).append("\n\n");
         
+        // Tool results are stored flat; a step with parallel calls consumes several of them
+        int resultIndex = 0;
         for (int i = 0; i < thoughtActions.size(); i++) {
             ThoughtAction ta = thoughtActions.get(i);
             context.append("Iteration ").append(i + 1).append(":\n");
             context.append("Thought: ").append(ta.getThought()).append("\n");
-            context.append("Action: ").append(ta.getAction()).append("\n");
-            context.append("Action Input: ").append(ta.getActionInput()).append("\n");
             
-            if (i < toolResults.size()) {
-                ToolResult result = toolResults.get(i);
-                context.append("Observation: ").append(result.getResult()).append("\n\n");
+            if (ta.getToolCalls() == null || ta.getToolCalls().isEmpty()) {
+                context.append("Action: ").append(ta.getAction()).append("\n");
+                context.append("Action Input: ").append(ta.getActionInput()).append("\n");
+                continue;
+            }
+            
+            for (ToolCall call : ta.getToolCalls()) {
+                context.append("Action: ").append(call.getToolName()).append("\n");
+                context.append("Action Input: ").append(call.getInput()).append("\n");
+                if (resultIndex < toolResults.size()) {
+                    ToolResult result = toolResults.get(resultIndex++);
+                    context.append("Observation: ").append(result.getResult()).append("\n\n");
+                }
             }
         }
         
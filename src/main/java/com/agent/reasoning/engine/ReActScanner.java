@@ -0,0 +1,352 @@
+package com.agent.reasoning.engine;
+
+import com.agent.tool.model.ToolCall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * ReAct Scanner
+ *
+ * 文本 ReAct 格式的单遍解析器：
+ *
+ * <pre>
+ * Thought: ...
+ * Action: tool_name
+ * Action Input: ...      （可跨行；后面可以跟多个 Action 块）
+ * Observation: ...       （忽略，模型有时会自己写一段）
+ * Final Answer: ...      （一直到响应结尾）
+ * </pre>
+ *
+ * 标记只在行首识别；"Action:" 和 "Final Answer:" 也可以在行中结束 Thought，
+ * "Action Input:" 可以与工具名写在同一行。
+ *
+ * 每个字符只访问一次，只记录各段的偏移，构建结果前不截取子串。
+ * 可以逐块喂入流式 delta：被块边界截断的标记留到下一块再判断；
+ * Action 块一旦可用（第一行 Action Input 结束，或后面没有 Action Input）立即回调监听器。
+ *
+ * 非线程安全，每个响应一个实例。
+ */
+public final class ReActScanner {
+
+    private enum Section {
+        NONE(null),
+        THOUGHT("Thought:"),
+        ACTION("Action:"),
+        AWAIT_INPUT(null),
+        ACTION_INPUT("Action Input:"),
+        OBSERVATION("Observation:"),
+        FINAL_ANSWER("Final Answer:");
+
+        private final String marker;
+
+        Section(String marker) {
+            this.marker = marker;
+        }
+    }
+
+    private static final Section[] MARKERS = {
+            Section.THOUGHT, Section.ACTION, Section.ACTION_INPUT, Section.OBSERVATION, Section.FINAL_ANSWER
+    };
+
+    /**
+     * 一次性解析时为原字符串，流式解析时为缓冲区
+     */
+    private final CharSequence text;
+    private final StringBuilder buffer;
+    private final BiConsumer<String, String> actionListener;
+
+    private int pos = 0;
+    private boolean lineStart = true;
+    private Section section = Section.NONE;
+    private int contentStart = 0;
+
+    private int thoughtStart = -1;
+    private int thoughtEnd = -1;
+    private int finalAnswerStart = -1;
+    private int nameStart = -1;
+    private int nameEnd = -1;
+    private boolean announced = false;
+    private boolean finished = false;
+
+    /**
+     * 每个 Action 块的 {nameStart, nameEnd, inputStart, inputEnd}，没有 Action Input 时 inputStart = -1
+     */
+    private final List<int[]> actions = new ArrayList<>(2);
+
+    public ReActScanner() {
+        this((BiConsumer<String, String>) null);
+    }
+
+    /**
+     * @param actionListener 流式解析中每个 Action 块可用时以 (toolName, input) 回调
+     */
+    public ReActScanner(BiConsumer<String, String> actionListener) {
+        this.buffer = new StringBuilder();
+        this.text = buffer;
+        this.actionListener = actionListener;
+    }
+
+    private ReActScanner(String response) {
+        this.buffer = null;
+        this.text = response;
+        this.actionListener = null;
+    }
+
+    /**
+     * 解析完整响应
+     */
+    public static ThoughtAction parse(String response) {
+        return new ReActScanner(response != null ? response : "").finish();
+    }
+
+    /**
+     * 喂入下一段流式内容
+     */
+    public ReActScanner append(CharSequence chunk) {
+        if (buffer == null || finished) {
+            throw new IllegalStateException("Scanner is not accepting input");
+        }
+        buffer.append(chunk);
+        scan(false);
+        return this;
+    }
+
+    /**
+     * 是否已出现 "Final Answer:"（之后不再上报 Action）
+     */
+    public boolean hasFinalAnswer() {
+        return section == Section.FINAL_ANSWER;
+    }
+
+    /**
+     * 目前为止收到的文本
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * 输入结束：扫描留下的尾部并构建结果
+     */
+    public ThoughtAction finish() {
+        if (!finished) {
+            scan(true);
+            close(text.length(), false);
+            finished = true;
+        }
+        return build();
+    }
+
+    // ===== 扫描 =====
+
+    private void scan(boolean complete) {
+        int length = text.length();
+        while (pos < length) {
+            if (section == Section.FINAL_ANSWER) {
+                pos = length;
+                return;
+            }
+
+            char c = text.charAt(pos);
+            if (c == '\n') {
+                endOfLine(pos);
+                lineStart = true;
+                pos++;
+                continue;
+            }
+            if (c <= ' ') {
+                pos++;
+                continue;
+            }
+
+            Section marker = null;
+            if (c == 'T' || c == 'A' || c == 'O' || c == 'F') {
+                for (Section candidate : MARKERS) {
+                    if (candidate.marker.charAt(0) != c || !eligible(candidate)) {
+                        continue;
+                    }
+                    int match = matchAt(pos, candidate.marker, complete);
+                    if (match < 0) {
+                        // 可能是被块边界截断的标记：等待更多文本
+                        return;
+                    }
+                    if (match > 0) {
+                        marker = candidate;
+                        break;
+                    }
+                }
+            }
+
+            if (marker == null) {
+                if (section == Section.AWAIT_INPUT) {
+                    // Action 行后面没有 Action Input
+                    close(pos, true);
+                    section = Section.NONE;
+                }
+                lineStart = false;
+                pos++;
+                continue;
+            }
+
+            int markerAt = pos;
+            pos += marker.marker.length();
+            if (marker == Section.ACTION_INPUT) {
+                if (section == Section.ACTION) {
+                    // "Action: tool Action Input: value" 写在同一行
+                    nameEnd = markerAt;
+                }
+            } else {
+                close(markerAt, !complete);
+            }
+            if (marker == Section.ACTION) {
+                nameStart = pos;
+                announced = false;
+            } else if (marker == Section.FINAL_ANSWER) {
+                finalAnswerStart = pos;
+            }
+            section = marker;
+            contentStart = pos;
+            lineStart = false;
+        }
+    }
+
+    /**
+     * 标记在行首生效，少数标记也接受出现在行中
+     */
+    private boolean eligible(Section marker) {
+        if (marker == Section.ACTION_INPUT) {
+            return section == Section.ACTION || section == Section.AWAIT_INPUT;
+        }
+        if (lineStart || section == Section.NONE) {
+            return true;
+        }
+        return section == Section.THOUGHT && (marker == Section.ACTION || marker == Section.FINAL_ANSWER);
+    }
+
+    /**
+     * @return 标记从 {@code at} 开始返回 1，不是返回 0，文本不足以判断时返回 -1
+     */
+    private int matchAt(int at, String marker, boolean complete) {
+        int available = Math.min(text.length() - at, marker.length());
+        for (int i = 0; i < available; i++) {
+            if (text.charAt(at + i) != marker.charAt(i)) {
+                return 0;
+            }
+        }
+        if (available == marker.length()) {
+            return 1;
+        }
+        return complete ? 0 : -1;
+    }
+
+    private void endOfLine(int at) {
+        if (section == Section.ACTION) {
+            nameEnd = at;
+            section = Section.AWAIT_INPUT;
+        } else if (section == Section.ACTION_INPUT && !announced) {
+            announced = true;
+            announce(contentStart, at);
+        }
+    }
+
+    /**
+     * 在 {@code at} 处结束当前段
+     */
+    private void close(int at, boolean announce) {
+        switch (section) {
+            case THOUGHT:
+                if (thoughtStart < 0) {
+                    thoughtStart = contentStart;
+                    thoughtEnd = at;
+                }
+                break;
+            case ACTION:
+                nameEnd = at;
+                actions.add(new int[] { nameStart, nameEnd, -1, -1 });
+                break;
+            case AWAIT_INPUT:
+                actions.add(new int[] { nameStart, nameEnd, -1, -1 });
+                if (announce) {
+                    announce(-1, -1);
+                }
+                break;
+            case ACTION_INPUT:
+                actions.add(new int[] { nameStart, nameEnd, contentStart, at });
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void announce(int inputStart, int inputEnd) {
+        if (actionListener != null) {
+            actionListener.accept(slice(nameStart, nameEnd), inputStart < 0 ? "" : slice(inputStart, inputEnd));
+        }
+    }
+
+    /**
+     * 两个偏移之间去掉首尾空白的文本
+     */
+    private String slice(int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    // ===== 结果 =====
+
+    private ThoughtAction build() {
+        ThoughtAction thoughtAction = ThoughtAction.builder()
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        if (thoughtStart >= 0) {
+            thoughtAction.setThought(slice(thoughtStart, thoughtEnd));
+        }
+
+        if (finalAnswerStart >= 0) {
+            thoughtAction.setFinalAnswer(slice(finalAnswerStart, text.length()));
+            thoughtAction.setAction("finish");
+            thoughtAction.setIsFinished(true);
+            return thoughtAction;
+        }
+
+        // 每一对 Action / Action Input（可能一次发出多个独立调用）
+        for (int[] block : actions) {
+            String action = slice(block[0], block[1]);
+            if (action.isEmpty() || "finish".equalsIgnoreCase(action)) {
+                continue;
+            }
+            thoughtAction.getToolCalls().add(ToolCall.builder()
+                    .toolName(action)
+                    .input(block[2] >= 0 ? slice(block[2], block[3]) : "")
+                    .callId("call_" + (thoughtAction.getToolCalls().size() + 1))
+                    .build());
+        }
+
+        if (!thoughtAction.getToolCalls().isEmpty()) {
+            ToolCall first = thoughtAction.getToolCalls().get(0);
+            thoughtAction.setAction(first.getToolName());
+            thoughtAction.setActionInput(first.getInput());
+        } else {
+            thoughtAction.setActionInput("");
+        }
+
+        // 未解析出时的默认 action
+        if (thoughtAction.getAction() == null || thoughtAction.getAction().isEmpty()) {
+            thoughtAction.setAction("finish");
+            thoughtAction.setFinalAnswer(text.toString());
+            thoughtAction.setIsFinished(true);
+        }
+
+        thoughtAction.setIsFinished("finish".equalsIgnoreCase(thoughtAction.getAction()));
+
+        return thoughtAction;
+    }
+}
@@ -1,24 +1,53 @@
 package com.agent.reasoning.engine;
 
+import com.agent.common.concurrent.Futures;
 import com.agent.knowledge.service.KnowledgeBaseManager;
 import com.agent.llm.model.dto.ChatRequest;
 import com.agent.llm.model.dto.ChatResponse;
+import com.agent.llm.model.dto.LLMToolCall;
 import com.agent.llm.model.dto.Message;
+import com.agent.llm.ratelimit.RequestPriority;
 import com.agent.llm.service.LLMService;
+import com.agent.reasoning.checkpoint.ExecutionCheckpoint;
+import com.agent.reasoning.checkpoint.ExecutionCheckpointStore;
 import com.agent.tool.executor.ToolExecutor;
 import com.agent.tool.model.ToolCall;
 import com.agent.tool.model.ToolResult;
+import com.agent.tool.model.ToolSchema;
+import com.agent.tool.registry.ToolRegistry;
 import com.agent.reasoning.prompt.SystemPromptBuilder;
+import com.agent.reasoning.context.CompiledHistory;
 import com.agent.reasoning.context.ContextManager;
+import com.agent.reasoning.context.ContextManagerFactory;
 import com.agent.reasoning.context.HistoryCompressor;
+import com.agent.reasoning.routing.QueryRouter;
+import com.agent.reasoning.routing.RouteDecision;
+import com.agent.reasoning.trace.ExecutionTrace;
+import com.agent.reasoning.trace.Span;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -26,10 +55,24 @@ import java.util.stream.Collectors;
  * 
  * Core logic for Agent's reasoning loop (ReACT framework)
  * 
- * Integrated with ContextManager for intelligent context management:
+ * Integrated with ContextManager for intelligent context management
+ * (one isolated ContextManager per execution, created by ContextManagerFactory):
  * - Automatic history compression
  * - Token-aware conversation management
  * - Smart summarization of old messages
+ * 
+ * A QueryRouter stage runs first (agent.routing.enabled): queries that need no tools
+ * are answered with a single short-prompt LLM call, from the knowledge base, or from
+ * the answer cache, and only the rest enter the ReAct loop.
+ * 
+ * Two tool-calling modes:
+ * - Text ReAct (default): Thought / Action / Action Input blocks parsed from the reply
+ * - Native function calling (agent.reasoning.native-tools): tool schemas are sent as
+ *   structured "tools" and the model's "tool_calls" are consumed directly
+ * 
+ * ReAct executions are checkpointed (agent.checkpoint) after every LLM reply and every
+ * batch of tool results. An execution interrupted by the timeout, an error or a restart
+ * can be resumed by its ID without redoing any LLM call.
  */
 @Slf4j
 @Component
@@ -39,7 +82,17 @@ public class ReasoningEngine {
     private final ToolExecutor toolExecutor;
     private final SystemPromptBuilder promptBuilder;
     private final KnowledgeBaseManager knowledgeBaseManager;
-    private final ContextManager contextManager;
+    private final ContextManagerFactory contextManagerFactory;
+    private final ToolRegistry toolRegistry;
+    private final QueryRouter queryRouter;
+    private final ExecutionCheckpointStore checkpointStore;
+
+    /**
+     * Executions in flight on this node, by execution ID (a retried request attaches to its run)
+     */
+    private final Map<String, CompletableFuture<ExecutionContext>> activeExecutions = new ConcurrentHashMap<>();
+
+    private static final ObjectMapper ARGUMENTS_MAPPER = new ObjectMapper();
 
     @Value("${agent.max-iterations:10}")
     private Integer maxIterations;
@@ -53,15 +106,32 @@ public class ReasoningEngine {
     @Value("${agent.knowledge.top-k:3}")
     private Integer knowledgeTopK;
 
+    @Value("${agent.reasoning.native-tools:false}")
+    private Boolean nativeTools;
+
+    @Value("${agent.reasoning.speculative-tools:false}")
+    private Boolean speculativeTools;
+
+    @Value("${agent.reasoning.preamble-threads:4}")
+    private Integer preambleThreads;
+
+    private volatile ThreadPoolExecutor preambleExecutor;
+
     public ReasoningEngine(LLMService llmService, ToolExecutor toolExecutor,
             SystemPromptBuilder promptBuilder,
             KnowledgeBaseManager knowledgeBaseManager,
-            ContextManager contextManager) {
+            ContextManagerFactory contextManagerFactory,
+            ToolRegistry toolRegistry,
+            QueryRouter queryRouter,
+            ExecutionCheckpointStore checkpointStore) {
         this.llmService = llmService;
         this.toolExecutor = toolExecutor;
         this.promptBuilder = promptBuilder;
         this.knowledgeBaseManager = knowledgeBaseManager;
-        this.contextManager = contextManager;
+        this.contextManagerFactory = contextManagerFactory;
+        this.toolRegistry = toolRegistry;
+        this.queryRouter = queryRouter;
+        this.checkpointStore = checkpointStore;
     }
 
     /**
@@ -85,135 +155,985 @@ public class ReasoningEngine {
      * @return ExecutionContext with the final answer and all intermediate steps
      */
     public ExecutionContext execute(String userQuery, List<String> conversationHistory) {
-        log.info("Starting agent reasoning for query: {}", userQuery);
-        if (conversationHistory != null && !conversationHistory.isEmpty()) {
-            log.info("📚 Including {} messages in conversation context", conversationHistory.size());
+        return execute(userQuery, conversationHistory, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Execute the Agent's reasoning loop with conversation context and LLM admission priority
+     * 
+     * @param userQuery           The user's question
+     * @param conversationHistory Previous conversation messages for context
+     * @param priority            Priority of this execution's LLM calls in the rate limiter queue
+     * @return ExecutionContext with the final answer and all intermediate steps
+     */
+    public ExecutionContext execute(String userQuery, List<String> conversationHistory, RequestPriority priority) {
+        return executeAsync(userQuery, conversationHistory, priority).join();
+    }
+
+    /**
+     * Execute the Agent's reasoning loop without blocking the caller
+     * 
+     * Each iteration is a chain of callbacks (LLM call → parse → tools → next iteration),
+     * so an execution holds no thread while it waits for the rate limiter, the LLM
+     * or its tools. The overall timeout is a timer that cancels whatever stage is in
+     * flight. The returned future always completes normally with the context.
+     * 
+     * @param userQuery           The user's question
+     * @param conversationHistory Previous conversation messages for context
+     * @param priority            Priority of this execution's LLM calls in the rate limiter queue
+     * @return future completing with the ExecutionContext
+     */
+    public CompletableFuture<ExecutionContext> executeAsync(String userQuery, List<String> conversationHistory,
+            RequestPriority priority) {
+        return executeAsync(UUID.randomUUID().toString(), userQuery, conversationHistory, priority);
+    }
+
+    /**
+     * Execute with a caller-chosen execution ID
+     * 
+     * The ID is an idempotency key: if that execution is still running on this node the
+     * call attaches to it, if it has a checkpoint it continues from there (or returns its
+     * stored result), and only an unknown ID starts a new execution.
+     * 
+     * @param executionId         ID to checkpoint under (letters, digits, '-' and '_')
+     * @param userQuery           The user's question
+     * @param conversationHistory Previous conversation messages for context
+     * @param priority            Priority of this execution's LLM calls in the rate limiter queue
+     * @return future completing with the ExecutionContext
+     */
+    public CompletableFuture<ExecutionContext> executeAsync(String executionId, String userQuery,
+            List<String> conversationHistory, RequestPriority priority) {
+        return executeAsync(executionId, userQuery, CompiledHistory.fromTranscript(userQuery, conversationHistory),
+                priority);
+    }
+
+    /**
+     * Execute with a caller-chosen execution ID and an already compiled history
+     * 
+     * The history (e.g. a SessionContextCache snapshot) is copied into the execution's
+     * context as is: its messages are not re-parsed, re-counted or re-compressed.
+     * 
+     * @param executionId ID to checkpoint under (letters, digits, '-' and '_')
+     * @param userQuery   The user's question
+     * @param history     Previous conversation messages, without the question itself
+     * @param priority    Priority of this execution's LLM calls in the rate limiter queue
+     * @return future completing with the ExecutionContext
+     */
+    public CompletableFuture<ExecutionContext> executeAsync(String executionId, String userQuery,
+            CompiledHistory history, RequestPriority priority) {
+        if (!ExecutionCheckpointStore.isValidExecutionId(executionId)) {
+            throw new IllegalArgumentException("Invalid execution ID: " + executionId);
+        }
+        CompletableFuture<ExecutionContext> existing = resume(executionId);
+        if (existing != null) {
+            log.info("♻️  Execution {} already known, attaching instead of starting over", executionId);
+            return existing;
+        }
+        CompiledHistory conversation = history != null ? history : CompiledHistory.empty();
+        return register(executionId, () -> start(executionId, userQuery, conversation, priority));
+    }
+
+    /**
+     * Resume an execution by ID
+     * 
+     * Attaches to the run if it is still in flight on this node; otherwise continues from
+     * its last checkpoint with a fresh timeout budget. LLM replies already received are
+     * never requested again; at most the tool calls of the last step are re-run.
+     * A completed execution returns its stored result.
+     * 
+     * @return the execution's future, or null if the ID is unknown
+     */
+    public CompletableFuture<ExecutionContext> resume(String executionId) {
+        CompletableFuture<ExecutionContext> active = activeExecutions.get(executionId);
+        if (active != null) {
+            return active;
+        }
+        ExecutionCheckpoint checkpoint = checkpointStore.load(executionId);
+        if (checkpoint == null) {
+            return null;
+        }
+        if (!checkpoint.isResumable()) {
+            return CompletableFuture.completedFuture(restoreContext(checkpoint));
+        }
+        return register(executionId, () -> continueFrom(checkpoint));
+    }
+
+    /**
+     * Whether the execution is running on this node
+     */
+    public boolean isActive(String executionId) {
+        return activeExecutions.containsKey(executionId);
+    }
+
+    /**
+     * Last checkpoint of an execution, or null
+     */
+    public ExecutionCheckpoint getCheckpoint(String executionId) {
+        return checkpointStore.load(executionId);
+    }
+
+    /**
+     * Track an execution as active under its ID for as long as it runs
+     * A concurrent request for the same ID gets the already registered future
+     */
+    private CompletableFuture<ExecutionContext> register(String executionId,
+            Supplier<CompletableFuture<ExecutionContext>> body) {
+        CompletableFuture<ExecutionContext> handle = new CompletableFuture<>();
+        CompletableFuture<ExecutionContext> racing = activeExecutions.putIfAbsent(executionId, handle);
+        if (racing != null) {
+            return racing;
+        }
+        CompletableFuture<ExecutionContext> result;
+        try {
+            result = body.get();
+        } catch (Exception e) {
+            result = Futures.failed(e);
         }
+        result.whenComplete((context, error) -> {
+            activeExecutions.remove(executionId, handle);
+            if (error != null) {
+                handle.completeExceptionally(error);
+            } else {
+                handle.complete(context);
+            }
+        });
+        return handle;
+    }
+
+    private CompletableFuture<ExecutionContext> start(String executionId, String userQuery,
+            CompiledHistory history, RequestPriority priority) {
+        log.info("Starting agent reasoning for query: {}", userQuery);
 
         ExecutionContext context = new ExecutionContext(userQuery);
+        context.setExecutionId(executionId);
+        context.setPriority(priority);
+
+        Span root = context.getTrace().startSpan(ExecutionTrace.EXECUTE, null)
+                .setAttribute("agent.priority", priority.name());
+
+        // Retrieval starts first: routing reuses its query vector and hits, the preamble its hits
+        CompletableFuture<KnowledgeBaseManager.Retrieval> retrieval = CompletableFuture.supplyAsync(
+                () -> retrieveKnowledge(userQuery, root), preambleExecutor());
+
+        // Early exit: only queries that need tools pay for the full loop and tool-laden prompt
+        Span routeSpan = root.startChild(ExecutionTrace.ROUTE);
+        return queryRouter.route(userQuery, !history.isEmpty(), retrieval)
+                .thenCompose(route -> {
+                    routeSpan.setAttribute("agent.route", route.getRoute().name())
+                            .setAttribute("agent.route.reason", route.getReason())
+                            .end();
+                    return execute(userQuery, history, context, root, route, retrieval);
+                });
+    }
+
+    /**
+     * Run the chosen route: cached answer, single call, or the full loop
+     */
+    private CompletableFuture<ExecutionContext> execute(String userQuery, CompiledHistory history,
+            ExecutionContext context, Span root, RouteDecision route,
+            CompletableFuture<KnowledgeBaseManager.Retrieval> retrieval) {
+        context.setRoute(route.getRoute().name());
+        root.setAttribute("agent.route", route.getRoute().name());
+        if (route.getRoute() == QueryRouter.Route.CACHED) {
+            context.setCurrentIteration(1);
+            context.addThoughtAction(routedAnswer(route, route.getCachedAnswer()));
+            context.finish(route.getCachedAnswer());
+            root.end();
+            return CompletableFuture.completedFuture(context);
+        }
+
+        boolean useNativeTools = Boolean.TRUE.equals(nativeTools);
+        // Each execution owns its context: concurrent requests never share history
+        ContextManager contextManager = contextManagerFactory.create();
+        Run run = new Run(userQuery, context, contextManager, useNativeTools,
+                System.currentTimeMillis() + timeout * 1000L, root);
+
+        CompletableFuture<ExecutionContext> result;
+        try {
+            if (route.getRoute() != QueryRouter.Route.REACT) {
+                result = answerDirectly(history, route, run);
+            } else {
+                result = prepareContext(userQuery, history, retrieval, contextManager, useNativeTools, root)
+                        .thenCompose(ready -> {
+                            run.checkpoint(0, Collections.emptyList());
+                            return run.iterate(0);
+                        });
+            }
+        } catch (Exception e) {
+            result = Futures.failed(e);
+        }
+        return run.complete(result);
+    }
+
+    /**
+     * Continue a checkpointed execution on this node
+     */
+    private CompletableFuture<ExecutionContext> continueFrom(ExecutionCheckpoint checkpoint) {
+        log.info("♻️  Resuming execution {} ({}) at iteration {}, {} pending tool calls",
+                checkpoint.getExecutionId(), checkpoint.getStatus(), checkpoint.getNextIteration() + 1,
+                checkpoint.getPendingToolCalls().size());
+
+        ExecutionContext context = restoreContext(checkpoint);
+        Span root = context.getTrace().startSpan(ExecutionTrace.EXECUTE, null)
+                .setAttribute("agent.priority", context.getPriority().name())
+                .setAttribute("agent.route", context.getRoute())
+                .setAttribute("agent.resumed", true);
+
+        ContextManager contextManager = contextManagerFactory.create();
+        Run run = new Run(checkpoint.getUserQuery(), context, contextManager,
+                Boolean.TRUE.equals(checkpoint.getNativeTools()),
+                System.currentTimeMillis() + timeout * 1000L, root);
+        run.pendingObservation = checkpoint.getPendingObservation();
+        run.lastCheckpoint = checkpoint;
+
+        CompletableFuture<ExecutionContext> result;
+        try {
+            contextManager.restoreMessages(checkpoint.getMessages());
+            if (checkpoint.getPendingToolCalls().isEmpty()) {
+                result = run.iterate(checkpoint.getNextIteration());
+            } else {
+                List<ThoughtAction> steps = context.getThoughtActions();
+                result = run.resumeTools(checkpoint.getNextIteration() - 1, steps.get(steps.size() - 1),
+                        checkpoint.getPendingToolCalls());
+            }
+        } catch (Exception e) {
+            result = Futures.failed(e);
+        }
+        return run.complete(result);
+    }
+
+    /**
+     * Rebuild the ExecutionContext recorded in a checkpoint
+     */
+    private ExecutionContext restoreContext(ExecutionCheckpoint checkpoint) {
+        ExecutionContext context = new ExecutionContext(checkpoint.getUserQuery());
+        context.setExecutionId(checkpoint.getExecutionId());
+        context.setStartTime(checkpoint.getStartTime());
+        context.setPriority(checkpoint.getPriority() != null ? checkpoint.getPriority() : RequestPriority.NORMAL);
+        context.setRoute(checkpoint.getRoute());
+        context.setCurrentIteration(checkpoint.getNextIteration());
+        context.setThoughtActions(new ArrayList<>(checkpoint.getThoughtActions()));
+        context.setToolResults(new ArrayList<>(checkpoint.getToolResults()));
+        context.setPromptTokens(checkpoint.getPromptTokens());
+        context.setCompletionTokens(checkpoint.getCompletionTokens());
+        context.setPromptCacheHitTokens(checkpoint.getPromptCacheHitTokens());
+        context.setSpeculativeHits(checkpoint.getSpeculativeHits());
+        context.setSpeculativeDiscards(checkpoint.getSpeculativeDiscards());
+        if (!checkpoint.isResumable()) {
+            context.finish(checkpoint.getFinalAnswer());
+            context.setEndTime(checkpoint.getUpdatedTime());
+        }
+        return context;
+    }
+
+    /**
+     * Seed the context: system prompt, conversation history and knowledge base hits
+     *
+     * Fan-out / fan-in: prompt assembly runs on the preamble pool next to the knowledge
+     * retrieval started before routing, while the calling thread readies the history (a no-op for a cached session snapshot),
+     * so the first LLM call waits for the slowest stage instead of their sum. The
+     * ContextManager is only filled at fan-in, on a single thread and in the usual order,
+     * so the prompt is unchanged.
+     */
+    private CompletableFuture<Void> prepareContext(String userQuery, CompiledHistory history,
+            CompletableFuture<KnowledgeBaseManager.Retrieval> retrieval, ContextManager contextManager,
+            boolean useNativeTools, Span root) {
         long startTime = System.currentTimeMillis();
+        Span preambleSpan = root.startChild(ExecutionTrace.PREAMBLE);
+        boolean prefixStable = contextManager.isPrefixStable();
+        Executor executor = preambleExecutor();
+
+        CompletableFuture<List<String>> systemMessages = CompletableFuture.supplyAsync(
+                () -> buildSystemMessages(userQuery, useNativeTools, prefixStable, preambleSpan), executor);
+        CompletableFuture<List<KnowledgeBaseManager.SearchResult>> knowledge = retrieval.thenApply(
+                result -> result != null ? result.getResults() : Collections.emptyList());
 
+        Span historySpan = preambleSpan.startChild(ExecutionTrace.HISTORY);
+        historySpan.setAttribute("agent.history.messages", history.size())
+                .setAttribute("agent.history.tokens", history.getTokens())
+                .end();
+
+        return systemMessages.thenCombine(knowledge, (system, knowledgeResults) -> {
+            // Prefix-stable layout: static prompt → domain instructions → history → knowledge → query
+            contextManager.initializeWithSystemPrompt(system.get(0));
+            for (String message : system.subList(1, system.size())) {
+                contextManager.addMessage("system", message);
+            }
+            contextManager.addHistory(history);
+            if (!knowledgeResults.isEmpty()) {
+                contextManager.addMessage("system", formatKnowledge(knowledgeResults));
+                log.info("🧠 Knowledge base context added: {} documents", knowledgeResults.size());
+            }
+            return (Void) null;
+        }).whenComplete((ignored, error) -> {
+            preambleSpan.setAttribute("agent.prompt.messages", contextManager.getMessageCount())
+                    .end(error != null ? Futures.unwrap(error) : null);
+            log.info("⏱️  Preamble ready in {}ms", System.currentTimeMillis() - startTime);
+        });
+    }
+
+    /**
+     * Preamble stage: system prompt messages, first one initializes the context
+     */
+    private List<String> buildSystemMessages(String userQuery, boolean useNativeTools, boolean prefixStable,
+            Span parent) {
+        Span promptSpan = parent.startChild(ExecutionTrace.PROMPT)
+                .setAttribute("agent.prompt.prefix_stable", prefixStable);
         try {
-            // Build system prompt with domain detection
-            String systemPrompt = promptBuilder.buildSystemPromptWithDomainDetection(userQuery);
-
-            // Initialize context manager
-            contextManager.initializeWithSystemPrompt(systemPrompt);
-
-            // Add conversation history for context using ContextManager
-            if (conversationHistory != null && !conversationHistory.isEmpty()) {
-                for (String history : conversationHistory) {
-                    // Parse role and content from formatted history (ROLE: content)
-                    if (history.contains(":")) {
-                        String[] parts = history.split(":", 2);
-                        String role = parts[0].trim().toLowerCase();
-                        String content = parts[1].trim();
-
-                        // Skip the current message if it's the latest user query
-                        if ("user".equals(role) && content.equals(userQuery)) {
-                            continue;
-                        }
+            List<String> messages = new ArrayList<>(2);
+            if (prefixStable) {
+                // The leading messages are byte-identical across requests, so the provider can cache them
+                messages.add(promptBuilder.buildStaticSystemPrompt(useNativeTools));
+                messages.add(promptBuilder.buildDomainInstructions(userQuery));
+            } else {
+                // Build system prompt with domain detection
+                messages.add(promptBuilder.buildSystemPromptWithDomainDetection(userQuery, useNativeTools));
+            }
+            promptSpan.end();
+            return messages;
+        } catch (RuntimeException e) {
+            promptSpan.end(e);
+            throw e;
+        }
+    }
 
-                        contextManager.addMessage(role, content);
-                    }
+    /**
+     * Preamble stage: query vector and knowledge base hits, shared with routing
+     * (null when knowledge is disabled; a failed search only costs the knowledge context)
+     */
+    private KnowledgeBaseManager.Retrieval retrieveKnowledge(String userQuery, Span parent) {
+        if (knowledgeEnabled == null || !knowledgeEnabled || knowledgeBaseManager == null) {
+            return null;
+        }
+        Span retrievalSpan = parent.startChild(ExecutionTrace.RETRIEVAL)
+                .setAttribute("knowledge.top_k", knowledgeTopK);
+        try {
+            KnowledgeBaseManager.Retrieval retrieval = knowledgeBaseManager.retrieve(userQuery, knowledgeTopK);
+            retrievalSpan.setAttribute("knowledge.hits", retrieval.getResults().size()).end();
+            return retrieval;
+        } catch (RuntimeException e) {
+            retrievalSpan.end(e);
+            log.warn("⚠️ Knowledge retrieval failed, continuing without it: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Preamble pool, created on first use (bounded: excess work runs on the caller)
+     */
+    private Executor preambleExecutor() {
+        ThreadPoolExecutor executor = preambleExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = preambleExecutor;
+                if (executor == null) {
+                    int threads = preambleThreads != null && preambleThreads > 0 ? preambleThreads : 4;
+                    AtomicInteger counter = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(threads * 16), r -> {
+                                Thread t = new Thread(r, "Preamble-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    executor.allowCoreThreadTimeOut(true);
+                    preambleExecutor = executor;
                 }
-                log.info("✅ Context loaded: {} previous messages added", contextManager.getMessageCount());
             }
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ThreadPoolExecutor executor = preambleExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
 
-            // Add knowledge base context if enabled
-            if (knowledgeEnabled != null && knowledgeEnabled &&
-                    knowledgeBaseManager != null && knowledgeBaseManager.getStats().getTotalDocuments() > 0) {
+    private String formatKnowledge(List<KnowledgeBaseManager.SearchResult> knowledgeResults) {
+        StringBuilder knowledgeContext = new StringBuilder();
+        knowledgeContext.append("📚 相关知识库内容：\n");
 
-                List<KnowledgeBaseManager.SearchResult> knowledgeResults = knowledgeBaseManager
-                        .semanticSearch(userQuery, knowledgeTopK);
+        for (KnowledgeBaseManager.SearchResult result : knowledgeResults) {
+            knowledgeContext.append(String.format("[%s] (相似度: %.2f)\n%s\n\n",
+                    result.getTitle(),
+                    result.getSimilarity() * 100,
+                    result.getSummary()));
+        }
+        return knowledgeContext.toString();
+    }
 
-                if (!knowledgeResults.isEmpty()) {
-                    StringBuilder knowledgeContext = new StringBuilder();
-                    knowledgeContext.append("📚 相关知识库内容：\n");
+    /**
+     * Routed fast path: one LLM call with a short, tool-free prompt
+     */
+    private CompletableFuture<ExecutionContext> answerDirectly(CompiledHistory history,
+            RouteDecision route, Run run) {
+        String userQuery = run.userQuery;
+        ExecutionContext context = run.context;
+        ContextManager contextManager = run.contextManager;
+        Span root = run.root;
+        String knowledge = route.getKnowledge().isEmpty() ? null : formatKnowledge(route.getKnowledge());
+        contextManager.initializeWithSystemPrompt(promptBuilder.buildDirectAnswerPrompt(route.getDomain(), knowledge));
+        contextManager.addHistory(history);
+        contextManager.addUserMessage(userQuery);
+        context.setCurrentIteration(1);
 
-                    for (KnowledgeBaseManager.SearchResult result : knowledgeResults) {
-                        knowledgeContext.append(String.format("[%s] (相似度: %.2f)\n%s\n\n",
-                                result.getTitle(),
-                                result.getSimilarity() * 100,
-                                result.getSummary()));
+        Span iterationSpan = root.startChild(ExecutionTrace.ITERATION).setAttribute("agent.iteration", 1);
+        CompletableFuture<ChatResponse> call = callLLM(contextManager.getMessagesForLLM(), context.getPriority(),
+                false, null, iterationSpan);
+        return Futures.within(call, timeout * 1000L, "Direct answer")
+                .handle((response, error) -> {
+                    iterationSpan.end(error != null ? Futures.unwrap(error) : null);
+                    if (error != null) {
+                        call.cancel(true);
+                        Throwable cause = Futures.unwrap(error);
+                        if (cause instanceof TimeoutException) {
+                            log.warn("Agent reasoning timeout on the {} route", route.getRoute());
+                            run.interruption = ExecutionCheckpoint.TIMED_OUT;
+                            context.finish("Reasoning timeout after 0 iterations");
+                            return context;
+                        }
+                        throw new CompletionException(cause);
+                    }
+                    if (response == null || response.getContent() == null) {
+                        log.error("Failed to get response from LLM");
+                        run.interruption = ExecutionCheckpoint.FAILED;
+                        context.finish("Failed to get response from LLM");
+                        return context;
                     }
 
-                    contextManager.addMessage("system", knowledgeContext.toString());
-                    log.info("🧠 Knowledge base context added: {} documents", knowledgeResults.size());
-                }
+                    context.recordUsage(response.getUsage());
+                    contextManager.addAssistantMessage(response.getContent());
+                    context.addThoughtAction(routedAnswer(route, response.getContent()));
+                    context.finish(response.getContent());
+                    queryRouter.remember(route, userQuery, response.getContent());
+                    log.info("Agent answered via {} route in a single call", route.getRoute());
+                    return context;
+                });
+    }
+
+    private static Span startToolSpan(Span toolsSpan, ToolCall toolCall) {
+        return toolsSpan.startChild(ExecutionTrace.TOOL_CALL)
+                .setAttribute("tool.name", toolCall.getToolName())
+                .setAttribute("tool.call_id", toolCall.getCallId());
+    }
+
+    private static void endToolSpan(Span toolSpan, ToolResult result, Throwable error) {
+        if (result != null) {
+            toolSpan.setAttribute("tool.success", result.getSuccess());
+            if (!Boolean.TRUE.equals(result.getSuccess())) {
+                toolSpan.setAttribute("tool.error", result.getError());
             }
+        }
+        toolSpan.end(error != null ? Futures.unwrap(error) : null);
+    }
 
-            // Main reasoning loop
-            for (int iteration = 0; iteration < maxIterations; iteration++) {
-                context.setCurrentIteration(iteration + 1);
+    /**
+     * The single step recorded for a routed answer
+     */
+    private ThoughtAction routedAnswer(RouteDecision route, String answer) {
+        return ThoughtAction.builder()
+                .thought("Routed to " + route.getRoute() + " (" + route.getReason() + ")")
+                .action("finish")
+                .actionInput("")
+                .finalAnswer(answer)
+                .isFinished(true)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
 
-                // Check timeout
-                if (System.currentTimeMillis() - startTime > timeout * 1000L) {
-                    log.warn("Agent reasoning timeout after {} iterations", iteration);
-                    context.finish("Reasoning timeout after " + iteration + " iterations");
-                    return context;
-                }
+    /**
+     * One reasoning execution driven as a state machine
+     * 
+     * Stages run one after another on whichever thread completed the previous one
+     * (HTTP callback, tool worker), so the ContextManager is never touched concurrently.
+     */
+    private final class Run {
+        private static final int RUNNING = 0;
+        private static final int STEPPING = 1;
+        private static final int FINISHED = 2;
+        private static final int ABANDONED = 3;
 
-                log.debug("Iteration {}/{}", iteration + 1, maxIterations);
+        private final String userQuery;
+        private final ExecutionContext context;
+        private final ContextManager contextManager;
+        private final boolean useNativeTools;
+        private final long deadline;
+        private final Span root;
 
-                // Add user query on first iteration
-                if (iteration == 0) {
-                    contextManager.addUserMessage(userQuery);
-                } else {
-                    // Add previous observation to continue reasoning
-                    if (!context.getToolResults().isEmpty()) {
-                        ToolResult lastResult = context.getToolResults().get(context.getToolResults().size() - 1);
-                        contextManager.addObservation(lastResult.getResult());
-                    }
-                }
+        /**
+         * Leaf futures of the current stage, cancelled on timeout
+         */
+        private final List<Future<?>> inFlight = new CopyOnWriteArrayList<>();
 
-                // Get messages from context manager (will auto-compress if needed)
-                List<Message> messages = contextManager.getMessagesForLLM();
+        /**
+         * RUNNING → STEPPING → RUNNING while a stage applies its result, then FINISHED or ABANDONED
+         * Every transition is a CAS, so a timeout and a late callback never both write the context
+         */
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
 
-                // Log context compression if it happened
-                HistoryCompressor.CompressionResult compressionResult = contextManager.getLastCompressionResult();
-                if (compressionResult != null && compressionResult.getWasCompressed()) {
-                    log.info("🗜️  Context compressed at iteration {}: saved {} tokens",
-                            iteration + 1, compressionResult.getTokensSaved());
+        /**
+         * Completes once the state is FINISHED or ABANDONED
+         */
+        private final CompletableFuture<Void> settled = new CompletableFuture<>();
+
+        /**
+         * Set when the timeout fired while a stage was applying its result; the stage abandons on exit
+         */
+        private volatile boolean timeoutRequested = false;
+
+        private volatile int timeoutIteration;
+
+        private String pendingObservation;
+
+        /**
+         * Last consistent state written to the checkpoint store
+         */
+        private ExecutionCheckpoint lastCheckpoint;
+
+        /**
+         * TIMED_OUT or FAILED when the execution stopped without an answer (resumable)
+         */
+        private volatile String interruption;
+
+        /**
+         * Set by the final save; later checkpoints are dropped
+         */
+        private boolean checkpointClosed = false;
+
+        private Run(String userQuery, ExecutionContext context, ContextManager contextManager,
+                boolean useNativeTools, long deadline, Span root) {
+            this.userQuery = userQuery;
+            this.context = context;
+            this.contextManager = contextManager;
+            this.useNativeTools = useNativeTools;
+            this.deadline = deadline;
+            this.root = root;
+        }
+
+        private CompletableFuture<ExecutionContext> iterate(int iteration) {
+            if (iteration >= maxIterations) {
+                finishMaxIterations();
+                return CompletableFuture.completedFuture(context);
+            }
+            context.setCurrentIteration(iteration + 1);
+            inFlight.clear();
+
+            // Check timeout
+            long remainingMs = deadline - System.currentTimeMillis();
+            if (remainingMs <= 0) {
+                return timedOut(iteration);
+            }
+
+            log.debug("Iteration {}/{}", iteration + 1, maxIterations);
+            Span iterationSpan = root.startChild(ExecutionTrace.ITERATION).setAttribute("agent.iteration", iteration + 1);
+
+            // Add user query on first iteration
+            if (iteration == 0) {
+                contextManager.addUserMessage(userQuery);
+            } else if (pendingObservation != null) {
+                // Add previous observation(s) to continue reasoning
+                contextManager.addObservation(pendingObservation);
+                pendingObservation = null;
+            }
+
+            // Get messages from context manager (will auto-compress if needed)
+            Span compressionSpan = iterationSpan.startChild(ExecutionTrace.COMPRESSION);
+            List<Message> messages = contextManager.getMessagesForLLM();
+
+            // Log context compression if it happened
+            HistoryCompressor.CompressionResult compressionResult = contextManager.getLastCompressionResult();
+            boolean compressed = compressionResult != null && compressionResult.getWasCompressed();
+            if (compressed) {
+                log.info("🗜️  Context compressed at iteration {}: saved {} tokens",
+                        iteration + 1, compressionResult.getTokensSaved());
+            }
+            compressionSpan.setAttribute("context.messages", messages.size())
+                    .setAttribute("context.compressed", compressed)
+                    .setAttribute("context.tokens_saved", compressed ? compressionResult.getTokensSaved() : 0)
+                    .end();
+
+            // Call LLM to get thought and action
+            // Text ReAct mode can stream the reply and start tools before it is complete
+            SpeculativeActionDetector speculation = Boolean.TRUE.equals(speculativeTools) && !useNativeTools
+                    ? new SpeculativeActionDetector(toolExecutor)
+                    : null;
+            CompletableFuture<Boolean> step = track(callLLM(messages, context.getPriority(), useNativeTools,
+                    speculation, iterationSpan))
+                    .thenCompose(response -> onResponse(iteration, response, speculation, iterationSpan));
+            return settle(iteration, step, remainingMs, iterationSpan, speculation);
+        }
+
+        /**
+         * Run the tool calls of a checkpointed step, then continue with the next iteration
+         */
+        private CompletableFuture<ExecutionContext> resumeTools(int iteration, ThoughtAction thoughtAction,
+                List<ToolCall> toolCalls) {
+            context.setCurrentIteration(iteration + 1);
+            long remainingMs = deadline - System.currentTimeMillis();
+            Span iterationSpan = root.startChild(ExecutionTrace.ITERATION)
+                    .setAttribute("agent.iteration", iteration + 1)
+                    .setAttribute("agent.resumed_tools", true);
+            Span toolsSpan = iterationSpan.startChild(ExecutionTrace.TOOLS)
+                    .setAttribute("agent.tools.calls", toolCalls.size());
+            CompletableFuture<Boolean> step = afterTools(iteration, thoughtAction,
+                    executeTools(toolCalls, toolsSpan), toolsSpan);
+            return settle(iteration, step, remainingMs, iterationSpan, null);
+        }
+
+        /**
+         * Bound one iteration by the remaining time budget, then finish or move on
+         */
+        private CompletableFuture<ExecutionContext> settle(int iteration, CompletableFuture<Boolean> step,
+                long remainingMs, Span iterationSpan, SpeculativeActionDetector speculation) {
+            return Futures.within(step, remainingMs, "Reasoning iteration " + (iteration + 1))
+                    .handle((finished, error) -> {
+                        iterationSpan.end(error != null ? Futures.unwrap(error) : null);
+                        if (error == null) {
+                            return finished
+                                    ? CompletableFuture.completedFuture(context)
+                                    : iterate(iteration + 1);
+                        }
+                        Throwable cause = Futures.unwrap(error);
+                        if (cause instanceof TimeoutException) {
+                            if (speculation != null) {
+                                speculation.cancelUnreserved();
+                            }
+                            return timedOut(iteration);
+                        }
+                        return Futures.<ExecutionContext>failed(cause);
+                    })
+                    .thenCompose(next -> next);
+        }
+
+        /**
+         * Handle one LLM reply: finish, or run its tools
+         * 
+         * @return true once the execution has a final answer
+         */
+        private CompletableFuture<Boolean> onResponse(int iteration, ChatResponse response,
+                SpeculativeActionDetector speculation, Span iterationSpan) {
+            if (!enterStep()) {
+                return CompletableFuture.completedFuture(true);
+            }
+            ThoughtAction thoughtAction = null;
+            try {
+                thoughtAction = applyResponse(iteration, response, speculation);
+            } finally {
+                exitStep(thoughtAction == null);
+            }
+            if (state.get() != RUNNING) {
+                // Abandoned while the reply was applied
+                return CompletableFuture.completedFuture(true);
+            }
+
+            // Execute the tool(s); independent calls from the same step run concurrently
+            Span toolsSpan = iterationSpan.startChild(ExecutionTrace.TOOLS)
+                    .setAttribute("agent.tools.calls", thoughtAction.getToolCalls().size());
+            CompletableFuture<List<ToolResult>> toolResults = speculation != null
+                    ? executeWithSpeculation(thoughtAction.getToolCalls(), speculation, toolsSpan)
+                    : executeTools(thoughtAction.getToolCalls(), toolsSpan);
+            return afterTools(iteration, thoughtAction, toolResults, toolsSpan);
+        }
+
+        /**
+         * Record the reply in the context
+         * 
+         * @return the step whose tools run next, or null once the execution has a final answer
+         */
+        private ThoughtAction applyResponse(int iteration, ChatResponse response,
+                SpeculativeActionDetector speculation) {
+            boolean hasToolCalls = useNativeTools && response != null && !response.getToolCalls().isEmpty();
+            if (response == null || (response.getContent() == null && !hasToolCalls)) {
+                log.error("Failed to get response from LLM");
+                interruption = ExecutionCheckpoint.FAILED;
+                context.finish("Failed to get response from LLM");
+                return null;
+            }
+
+            context.recordUsage(response.getUsage());
+            if (response.getUsage() != null && response.getUsage().getPromptCacheHitTokens() != null) {
+                log.debug("Prompt cache: {} / {} prompt tokens hit",
+                        response.getUsage().getPromptCacheHitTokens(), response.getUsage().getPromptTokens());
+            }
+
+            String llmResponse = response.getContent();
+            log.debug("LLM response: {}", llmResponse);
+
+            ThoughtAction thoughtAction;
+            if (useNativeTools) {
+                // Structured tool calls: no text parsing needed
+                if (hasToolCalls) {
+                    contextManager.addAssistantToolCalls(llmResponse, response.getToolCalls());
+                } else {
+                    contextManager.addAssistantMessage(llmResponse);
                 }
+                thoughtAction = fromNativeToolCalls(llmResponse, response.getToolCalls());
+            } else {
+                contextManager.addAssistantMessage(llmResponse);
+                thoughtAction = speculation != null
+                        ? speculation.parse(llmResponse)
+                        : ReActScanner.parse(llmResponse);
+            }
+            context.addThoughtAction(thoughtAction);
 
-                // Call LLM to get thought and action
-                ChatResponse response = callLLM(messages);
-                if (response == null || response.getContent() == null) {
-                    log.error("Failed to get response from LLM");
-                    context.finish("Failed to get response from LLM");
-                    return context;
+            // Check if agent decided to finish
+            if ("finish".equalsIgnoreCase(thoughtAction.getAction()) || thoughtAction.getIsFinished()) {
+                if (speculation != null) {
+                    context.recordSpeculation(0, speculation.cancelUnreserved());
                 }
+                String finalAnswer = thoughtAction.getFinalAnswer() != null
+                        ? thoughtAction.getFinalAnswer()
+                        : llmResponse;
+                context.finish(finalAnswer);
+                log.info("Agent reasoning completed after {} iterations (prompt cache hit {}%)",
+                        iteration + 1, String.format("%.1f", context.getPromptCacheHitRatio() * 100));
+                log.info(contextManager.getContextSummary());
+                return null;
+            }
 
-                String llmResponse = response.getContent();
-                log.debug("LLM response: {}", llmResponse);
-                contextManager.addAssistantMessage(llmResponse);
+            // The reply is paid for: persist it before running its tools
+            checkpoint(iteration + 1, thoughtAction.getToolCalls());
+            return thoughtAction;
+        }
 
-                // Parse the response
-                ThoughtAction thoughtAction = parseResponse(llmResponse);
-                context.addThoughtAction(thoughtAction);
-
-                // Check if agent decided to finish
-                if ("finish".equalsIgnoreCase(thoughtAction.getAction()) || thoughtAction.getIsFinished()) {
-                    String finalAnswer = thoughtAction.getFinalAnswer() != null
-                            ? thoughtAction.getFinalAnswer()
-                            : llmResponse;
-                    context.finish(finalAnswer);
-                    log.info("Agent reasoning completed after {} iterations", iteration + 1);
-                    log.info(contextManager.getContextSummary());
-                    return context;
+        private CompletableFuture<Boolean> afterTools(int iteration, ThoughtAction thoughtAction,
+                CompletableFuture<List<ToolResult>> toolResults, Span toolsSpan) {
+            return toolResults.thenApply(results -> {
+                toolsSpan.end();
+                if (!enterStep()) {
+                    return true;
                 }
+                try {
+                    onToolResults(iteration, thoughtAction, results);
+                    checkpoint(iteration + 1, Collections.emptyList());
+                } finally {
+                    exitStep(false);
+                }
+                return false;
+            });
+        }
 
-                // Execute the tool
-                ToolResult toolResult = toolExecutor.execute(thoughtAction.getAction(), thoughtAction.getActionInput());
+        private void onToolResults(int iteration, ThoughtAction thoughtAction, List<ToolResult> toolResults) {
+            for (ToolResult toolResult : toolResults) {
                 context.addToolResult(toolResult);
-
                 if (!toolResult.getSuccess()) {
                     log.warn("Tool execution failed: {}", toolResult.getError());
                 }
             }
+            if (thoughtAction.isParallel()) {
+                log.info("⚡ Dispatched {} tool calls in parallel at iteration {}",
+                        toolResults.size(), iteration + 1);
+            }
+            if (useNativeTools) {
+                // Each result goes back as a "tool" message answering its call ID
+                for (ToolResult toolResult : toolResults) {
+                    contextManager.addToolResult(toolResult.getCallId(), observationText(toolResult));
+                }
+            } else {
+                pendingObservation = formatObservation(thoughtAction.getToolCalls(), toolResults);
+            }
+        }
 
-            // Max iterations reached
+        /**
+         * Execute the parsed calls, reusing speculative executions that match exactly
+         * Calls without a matching speculation run normally; mismatched speculations are cancelled
+         */
+        private CompletableFuture<List<ToolResult>> executeWithSpeculation(List<ToolCall> toolCalls,
+                SpeculativeActionDetector speculation, Span toolsSpan) {
+            List<CompletableFuture<ToolResult>> reserved = new ArrayList<>();
+            List<ToolCall> remaining = new ArrayList<>();
+            for (ToolCall toolCall : toolCalls) {
+                CompletableFuture<ToolResult> future = speculation.reserve(toolCall);
+                reserved.add(future);
+                if (future == null) {
+                    remaining.add(toolCall);
+                } else {
+                    track(future);
+                }
+            }
+            int discarded = speculation.cancelUnreserved();
+
+            // Unmatched calls run while the reserved speculative ones finish
+            CompletableFuture<List<ToolResult>> remainingResults = executeTools(remaining, toolsSpan);
+
+            List<CompletableFuture<ToolResult>> results = new ArrayList<>();
+            int hits = 0;
+            int next = 0;
+            for (int i = 0; i < toolCalls.size(); i++) {
+                if (reserved.get(i) != null) {
+                    Span toolSpan = startToolSpan(toolsSpan, toolCalls.get(i)).setAttribute("tool.speculative", true);
+                    results.add(SpeculativeActionDetector.adopt(reserved.get(i), toolCalls.get(i))
+                            .whenComplete((result, error) -> endToolSpan(toolSpan, result, error)));
+                    hits++;
+                } else {
+                    int index = next++;
+                    results.add(remainingResults.thenApply(list -> list.get(index)));
+                }
+            }
+
+            context.recordSpeculation(hits, discarded);
+            if (speculation.getStartedCount() > 0) {
+                log.debug("Speculative tools: {} started, {} used, {} discarded",
+                        speculation.getStartedCount(), hits, discarded);
+            }
+            return Futures.allOf(results);
+        }
+
+        /**
+         * Run calls concurrently, one tool.execute span per call
+         */
+        private CompletableFuture<List<ToolResult>> executeTools(List<ToolCall> toolCalls, Span toolsSpan) {
+            List<CompletableFuture<ToolResult>> futures = new ArrayList<>();
+            for (ToolCall toolCall : toolCalls) {
+                Span toolSpan = startToolSpan(toolsSpan, toolCall);
+                futures.add(track(toolExecutor.executeAsync(toolCall))
+                        .whenComplete((result, error) -> endToolSpan(toolSpan, result, error)));
+            }
+            return Futures.allOf(futures);
+        }
+
+        private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            inFlight.add(future);
+            if (state.get() == ABANDONED) {
+                // Started after the timeout swept inFlight
+                future.cancel(true);
+            }
+            return future;
+        }
+
+        /**
+         * Claim the context for a stage; fails once the execution was finished or abandoned
+         */
+        private boolean enterStep() {
+            return state.compareAndSet(RUNNING, STEPPING);
+        }
+
+        /**
+         * Leave a stage; a timeout that fired meanwhile takes effect now
+         */
+        private void exitStep(boolean finished) {
+            if (finished) {
+                state.compareAndSet(STEPPING, FINISHED);
+                settled.complete(null);
+                return;
+            }
+            state.compareAndSet(STEPPING, RUNNING);
+            if (timeoutRequested) {
+                abandon();
+            }
+        }
+
+        /**
+         * Stop at the timeout: the context settles as timed out unless a stage finished it first
+         * 
+         * @return the context once no stage can touch it any more
+         */
+        private CompletableFuture<ExecutionContext> timedOut(int iteration) {
+            timeoutIteration = iteration;
+            timeoutRequested = true;
+            abandon();
+            return settled.thenApply(ignored -> context);
+        }
+
+        private void abandon() {
+            if (!state.compareAndSet(RUNNING, ABANDONED)) {
+                // A stage holds the context (it abandons on exit) or the execution is already settled
+                return;
+            }
+            interruption = ExecutionCheckpoint.TIMED_OUT;
+            for (Future<?> future : inFlight) {
+                future.cancel(true);
+            }
+            log.warn("Agent reasoning timeout after {} iterations", timeoutIteration);
+            context.finish("Reasoning timeout after " + timeoutIteration + " iterations");
+            settled.complete(null);
+        }
+
+        /**
+         * Map failures to a finished context, write the final checkpoint and release resources
+         */
+        private CompletableFuture<ExecutionContext> complete(CompletableFuture<ExecutionContext> result) {
+            return result
+                    .exceptionally(error -> {
+                        Throwable cause = Futures.unwrap(error);
+                        log.error("Error during agent reasoning", cause);
+                        if (interruption == null) {
+                            interruption = ExecutionCheckpoint.FAILED;
+                        }
+                        context.finish("Error during reasoning: " + cause.getMessage());
+                        root.end(cause);
+                        return context;
+                    })
+                    .whenComplete((finished, error) -> {
+                        saveFinalCheckpoint();
+                        root.setAttribute("agent.iterations", context.getCurrentIteration())
+                                .setAttribute("gen_ai.usage.input_tokens", context.getPromptTokens())
+                                .setAttribute("gen_ai.usage.output_tokens", context.getCompletionTokens())
+                                .end();
+                        contextManagerFactory.release(contextManager);
+                    });
+        }
+
+        /**
+         * Persist the loop state at a consistent point: the next step is fully described by it
+         * 
+         * @param nextIteration    iteration to continue from
+         * @param pendingToolCalls calls of the last step whose results are not in yet
+         */
+        private synchronized void checkpoint(int nextIteration, List<ToolCall> pendingToolCalls) {
+            if (checkpointClosed || state.get() == ABANDONED || !checkpointStore.isEnabled()) {
+                return;
+            }
+            lastCheckpoint = snapshot(ExecutionCheckpoint.RUNNING, nextIteration, pendingToolCalls);
+            checkpointStore.save(lastCheckpoint);
+        }
+
+        /**
+         * A finished execution stores its result; an interrupted one keeps its last
+         * consistent state, marked resumable
+         */
+        private synchronized void saveFinalCheckpoint() {
+            if (checkpointClosed || !checkpointStore.isEnabled()) {
+                return;
+            }
+            checkpointClosed = true;
+            if (interruption == null) {
+                checkpointStore.save(snapshot(ExecutionCheckpoint.COMPLETED, context.getCurrentIteration(),
+                        Collections.emptyList()));
+            } else if (lastCheckpoint != null) {
+                lastCheckpoint.setStatus(interruption);
+                lastCheckpoint.setFinalAnswer(context.getFinalAnswer());
+                checkpointStore.save(lastCheckpoint);
+            }
+        }
+
+        private ExecutionCheckpoint snapshot(String status, int nextIteration, List<ToolCall> pendingToolCalls) {
+            return ExecutionCheckpoint.builder()
+                    .executionId(context.getExecutionId())
+                    .status(status)
+                    .userQuery(userQuery)
+                    .priority(context.getPriority())
+                    .route(context.getRoute())
+                    .nativeTools(useNativeTools)
+                    .nextIteration(nextIteration)
+                    .pendingToolCalls(new ArrayList<>(pendingToolCalls))
+                    .pendingObservation(pendingObservation)
+                    .messages(contextManager.snapshotMessages())
+                    .thoughtActions(new ArrayList<>(context.getThoughtActions()))
+                    .toolResults(new ArrayList<>(context.getToolResults()))
+                    .finalAnswer(context.getFinalAnswer())
+                    .promptTokens(context.getPromptTokens())
+                    .completionTokens(context.getCompletionTokens())
+                    .promptCacheHitTokens(context.getPromptCacheHitTokens())
+                    .speculativeHits(context.getSpeculativeHits())
+                    .speculativeDiscards(context.getSpeculativeDiscards())
+                    .startTime(context.getStartTime())
+                    .build();
+        }
+
+        private void finishMaxIterations() {
             log.warn("Max iterations ({}) reached", maxIterations);
             if (!context.getToolResults().isEmpty()) {
                 ToolResult lastResult = context.getToolResults().get(context.getToolResults().size() - 1);
@@ -223,88 +1143,144 @@ public class ReasoningEngine {
             }
 
             log.info(contextManager.getContextSummary());
-            return context;
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Error during agent reasoning", e);
-            context.finish("Error during reasoning: " + e.getMessage());
-            return context;
+    /**
+     * Format the observation message for one step
+     * A single result is passed through as-is; multiple results are numbered in call order
+     */
+    private String formatObservation(List<ToolCall> toolCalls, List<ToolResult> toolResults) {
+        if (toolResults.size() == 1) {
+            return observationText(toolResults.get(0));
+        }
+
+        StringBuilder observation = new StringBuilder();
+        for (int i = 0; i < toolResults.size(); i++) {
+            ToolCall call = toolCalls.get(i);
+            observation.append(String.format("[%d] %s(%s):\n", i + 1, call.getToolName(), call.getInput()));
+            observation.append(observationText(toolResults.get(i))).append("\n\n");
         }
+        return observation.toString().trim();
+    }
+
+    private String observationText(ToolResult result) {
+        return Boolean.TRUE.equals(result.getSuccess()) ? result.getResult() : "Error: " + result.getError();
     }
 
     /**
      * Call LLM with the current conversation
      */
-    private ChatResponse callLLM(List<Message> messages) {
-        try {
-            ChatRequest request = ChatRequest.builder()
-                    .model("deepseek-chat") // Explicitly set the model
-                    .messages(messages)
-                    .temperature(0.7)
-                    .maxTokens(2048)
-                    .topP(0.9)
-                    .build();
-
-            log.debug("CallLLM with request: model={}, messages={}", request.getModel(), request.getMessages().size());
-            ChatResponse response = llmService.chat(request);
-            log.debug("Received response: {}", response);
-            return response;
-        } catch (Exception e) {
-            log.error("Error calling LLM: {}", e.getMessage(), e);
-            throw new RuntimeException("LLM call failed: " + e.getMessage(), e);
+    private CompletableFuture<ChatResponse> callLLM(List<Message> messages, RequestPriority priority,
+            boolean useNativeTools, SpeculativeActionDetector speculation, Span parent) {
+        ChatRequest request = ChatRequest.builder()
+                .model("deepseek-chat") // Explicitly set the model
+                .messages(messages)
+                .temperature(0.7)
+                .maxTokens(2048)
+                .topP(0.9)
+                .priority(priority)
+                .build();
+        if (useNativeTools && !toolRegistry.getToolNames().isEmpty()) {
+            request.setTools(toolRegistry.getFunctionToolSpecs());
+            request.setToolChoice("auto");
         }
+
+        log.debug("CallLLM with request: model={}, messages={}", request.getModel(), request.getMessages().size());
+        Span llmSpan = parent.startChild(ExecutionTrace.LLM_CALL)
+                .setKind(Span.Kind.CLIENT)
+                .setAttribute("gen_ai.request.model", request.getModel())
+                .setAttribute("gen_ai.request.max_tokens", request.getMaxTokens())
+                .setAttribute("gen_ai.request.messages", messages.size())
+                .setAttribute("gen_ai.request.streaming", speculation != null);
+        CompletableFuture<ChatResponse> call = speculation != null
+                ? llmService.chatStreamAsync(request, speculation)
+                : llmService.chatAsync(request);
+        call.whenComplete((response, error) -> {
+            if (response != null && response.getUsage() != null) {
+                llmSpan.setAttribute("gen_ai.usage.input_tokens", response.getUsage().getPromptTokens())
+                        .setAttribute("gen_ai.usage.output_tokens", response.getUsage().getCompletionTokens())
+                        .setAttribute("gen_ai.usage.cache_hit_tokens", response.getUsage().getPromptCacheHitTokens());
+            }
+            llmSpan.end(error != null ? Futures.unwrap(error) : null);
+            if (error != null) {
+                if (speculation != null) {
+                    speculation.cancelUnreserved();
+                }
+                if (!call.isCancelled()) {
+                    Throwable cause = Futures.unwrap(error);
+                    log.error("Error calling LLM: {}", cause.getMessage(), cause);
+                }
+            } else {
+                log.debug("Received response: {}", response);
+            }
+        });
+        return call;
     }
 
     /**
-     * Parse LLM response to extract Thought, Action, and Action Input
+     * Build a ThoughtAction from native tool calls
+     * Any text returned alongside the calls is kept as the thought; no calls means a final answer
      */
-    private ThoughtAction parseResponse(String response) {
+    private ThoughtAction fromNativeToolCalls(String content, List<LLMToolCall> llmToolCalls) {
         ThoughtAction thoughtAction = ThoughtAction.builder()
+                .thought(content)
                 .timestamp(System.currentTimeMillis())
                 .build();
 
-        // Extract Thought
-        Pattern thoughtPattern = Pattern.compile("Thought:\\s*(.+?)(?=Action:|Final Answer:|$)", Pattern.DOTALL);
-        Matcher thoughtMatcher = thoughtPattern.matcher(response);
-        if (thoughtMatcher.find()) {
-            thoughtAction.setThought(thoughtMatcher.group(1).trim());
+        for (LLMToolCall llmToolCall : llmToolCalls) {
+            if (llmToolCall.getFunction() == null) {
+                continue;
+            }
+            String toolName = llmToolCall.getFunction().getName();
+            thoughtAction.getToolCalls().add(ToolCall.builder()
+                    .toolName(toolName)
+                    .input(toToolInput(toolName, llmToolCall.getFunction().getArguments()))
+                    .callId(llmToolCall.getId())
+                    .build());
         }
 
-        // Check for Final Answer
-        Pattern finalAnswerPattern = Pattern.compile("Final Answer:\\s*(.+?)$", Pattern.DOTALL);
-        Matcher finalAnswerMatcher = finalAnswerPattern.matcher(response);
-        if (finalAnswerMatcher.find()) {
-            thoughtAction.setFinalAnswer(finalAnswerMatcher.group(1).trim());
+        if (thoughtAction.getToolCalls().isEmpty()) {
             thoughtAction.setAction("finish");
+            thoughtAction.setActionInput("");
+            thoughtAction.setFinalAnswer(content);
             thoughtAction.setIsFinished(true);
-            return thoughtAction;
-        }
-
-        // Extract Action
-        Pattern actionPattern = Pattern.compile("Action:\\s*(.+?)(?=Action Input:|Observation:|$)", Pattern.DOTALL);
-        Matcher actionMatcher = actionPattern.matcher(response);
-        if (actionMatcher.find()) {
-            thoughtAction.setAction(actionMatcher.group(1).trim());
-        }
-
-        // Extract Action Input
-        Pattern actionInputPattern = Pattern.compile("Action Input:\\s*(.+?)(?=Observation:|$)", Pattern.DOTALL);
-        Matcher actionInputMatcher = actionInputPattern.matcher(response);
-        if (actionInputMatcher.find()) {
-            thoughtAction.setActionInput(actionInputMatcher.group(1).trim());
         } else {
-            thoughtAction.setActionInput("");
+            ToolCall first = thoughtAction.getToolCalls().get(0);
+            thoughtAction.setAction(first.getToolName());
+            thoughtAction.setActionInput(first.getInput());
+            thoughtAction.setIsFinished(false);
         }
+        return thoughtAction;
+    }
 
-        // Default action if not parsed
-        if (thoughtAction.getAction() == null || thoughtAction.getAction().isEmpty()) {
-            thoughtAction.setAction("finish");
-            thoughtAction.setFinalAnswer(response);
-            thoughtAction.setIsFinished(true);
+    /**
+     * Map JSON function arguments onto the single String input tool methods accept
+     * A tool with exactly one declared parameter receives that value; otherwise the raw JSON is passed
+     */
+    private String toToolInput(String toolName, String arguments) {
+        if (arguments == null || arguments.trim().isEmpty()) {
+            return "";
         }
-
-        thoughtAction.setIsFinished("finish".equalsIgnoreCase(thoughtAction.getAction()));
-
-        return thoughtAction;
+        try {
+            JsonNode args = ARGUMENTS_MAPPER.readTree(arguments);
+            ToolSchema schema = toolRegistry.getToolSchema(toolName);
+            if (args.isObject() && schema != null && schema.getParameters() != null) {
+                Object properties = schema.getParameters().get("properties");
+                if (properties instanceof Map && ((Map<?, ?>) properties).size() == 1) {
+                    String paramName = String.valueOf(((Map<?, ?>) properties).keySet().iterator().next());
+                    JsonNode value = args.get(paramName);
+                    if (value != null) {
+                        return value.isTextual() ? value.asText() : value.toString();
+                    }
+                }
+            }
+            if (args.isObject() && args.size() == 0) {
+                return "";
+            }
+        } catch (Exception e) {
+            log.debug("Tool arguments for '{}' are not valid JSON, passing through: {}", toolName, arguments);
+        }
+        return arguments;
     }
 }
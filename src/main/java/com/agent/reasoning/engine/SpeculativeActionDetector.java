@@ -0,0 +1,155 @@
+package com.agent.reasoning.engine;
+
+import com.agent.common.concurrent.Futures;
+import com.agent.tool.executor.ToolExecutor;
+import com.agent.tool.model.ToolCall;
+import com.agent.tool.model.ToolResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Speculative Action Detector
+ *
+ * 流式接收 ReAct 响应，"Action:" 和第一行 "Action Input:" 完整到达后立即启动工具，
+ * 工具耗时与 LLM 继续生成的时间重叠。增量交给 ReActScanner，扫描结果在最终解析时复用。
+ *
+ * 推测只是猜测：响应完整后照常解析，工具名和输入与解析结果完全一致的推测结果被预定，
+ * 其余全部取消。
+ *
+ * 每次 LLM 调用一个实例。start() 在 HTTP 流式回调线程上执行，reserve() 和
+ * cancelUnreserved() 在完成回调线程上执行：推测列表是并发列表，
+ * cancelUnreserved() 之后不再启动新的推测
+ */
+@Slf4j
+public class SpeculativeActionDetector implements Consumer<String> {
+
+    private final ToolExecutor toolExecutor;
+    private final ReActScanner scanner = new ReActScanner(this::start);
+    private final List<Speculation> speculations = new CopyOnWriteArrayList<>();
+
+    /**
+     * cancelUnreserved() 已执行：之后到达的 Action 不再启动
+     */
+    private volatile boolean closed;
+
+    public SpeculativeActionDetector(ToolExecutor toolExecutor) {
+        this.toolExecutor = toolExecutor;
+    }
+
+    @Override
+    public void accept(String delta) {
+        // 扫描器在每个 Action 块完整时回调 start()，遇到最终答案后停止
+        scanner.append(delta);
+    }
+
+    /**
+     * 解析完整响应；文本与流式扫描的一致时直接复用扫描结果
+     */
+    public ThoughtAction parse(String response) {
+        return response != null && response.contentEquals(scanner.getText())
+                ? scanner.finish()
+                : ReActScanner.parse(response);
+    }
+
+    /**
+     * 预定与解析结果一致的推测执行
+     *
+     * @return 进行中的 future；没有对应的推测时返回 null
+     */
+    public CompletableFuture<ToolResult> reserve(ToolCall toolCall) {
+        String input = toolCall.getInput() != null ? toolCall.getInput() : "";
+        for (Speculation speculation : speculations) {
+            if (speculation.toolName.equals(toolCall.getToolName()) && speculation.input.equals(input)
+                    && speculation.claim()) {
+                return speculation.future;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 取消所有未被预定的推测执行，并停止接受新的推测
+     *
+     * @return 本次丢弃的推测数
+     */
+    public int cancelUnreserved() {
+        closed = true;
+        int discarded = 0;
+        for (Speculation speculation : speculations) {
+            if (speculation.claim()) {
+                speculation.future.cancel(true);
+                discarded++;
+                log.debug("Discarded speculative call {}({})", speculation.toolName, speculation.input);
+            }
+        }
+        return discarded;
+    }
+
+    /**
+     * 不阻塞地接手已预定的推测结果
+     */
+    public static CompletableFuture<ToolResult> adopt(CompletableFuture<ToolResult> future, ToolCall toolCall) {
+        return future.handle((result, error) -> {
+            if (error != null) {
+                Throwable cause = Futures.unwrap(error);
+                return ToolResult.failure(toolCall.getToolName(), "Execution error: " + cause.getMessage());
+            }
+            if (toolCall.getCallId() != null) {
+                result.setCallId(toolCall.getCallId());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 已启动的推测执行数
+     */
+    public int getStartedCount() {
+        return speculations.size();
+    }
+
+    private void start(String toolName, String input) {
+        if (closed || toolName.isEmpty() || "finish".equalsIgnoreCase(toolName)) {
+            return;
+        }
+        ToolCall call = ToolCall.builder().toolName(toolName).input(input).build();
+        Speculation speculation = new Speculation(toolName, input, toolExecutor.executeAsync(call));
+        speculations.add(speculation);
+        // 先加入再检查：与 cancelUnreserved() 交错时，至少有一方会取消它
+        if (closed && speculation.claim()) {
+            speculation.future.cancel(true);
+            log.debug("Speculative call {}({}) started after the response completed, cancelled", toolName, input);
+            return;
+        }
+        log.debug("⚡ Speculatively started {}({}) while the response is still streaming", toolName, input);
+    }
+
+    /**
+     * 响应完整之前启动的工具调用
+     */
+    private static final class Speculation {
+        private final String toolName;
+        private final String input;
+        private final CompletableFuture<ToolResult> future;
+
+        /**
+         * 已被预定或已丢弃（只能发生一次）
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        private Speculation(String toolName, String input, CompletableFuture<ToolResult> future) {
+            this.toolName = toolName;
+            this.input = input;
+            this.future = future;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
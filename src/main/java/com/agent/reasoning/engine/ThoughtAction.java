@@ -1,11 +1,16 @@
 package com.agent.reasoning.engine;
 
+import com.agent.tool.model.ToolCall;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Thought Action
  * 
@@ -35,6 +40,14 @@ public class ThoughtAction {
     @JsonProperty("action_input")
     private String actionInput;
     
+    /**
+     * All tool calls requested in this step (several independent actions may be issued at once)
+     * The first call is mirrored in action / actionInput
+     */
+    @JsonProperty("tool_calls")
+    @Builder.Default
+    private List<ToolCall> toolCalls = new ArrayList<>();
+    
     /**
      * Whether the agent has decided to finish
      */
@@ -52,4 +65,12 @@ public class ThoughtAction {
      */
     @JsonProperty("timestamp")
     private Long timestamp;
+    
+    /**
+     * Whether this step dispatches more than one tool call
+     */
+    @JsonIgnore
+    public boolean isParallel() {
+        return toolCalls != null && toolCalls.size() > 1;
+    }
 }
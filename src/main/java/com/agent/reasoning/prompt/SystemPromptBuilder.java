@@ -17,9 +17,25 @@ import org.springframework.stereotype.Component;
 @Component
 public class SystemPromptBuilder {
 
+    private static final String BASE_ROLE =
+            "You are an AI Assistant with the ability to use tools to help answer questions and solve problems.\n\n";
+
+    private static final String DIRECT_ROLE =
+            "You are an AI Assistant. Answer the user's message directly and concisely, without tools.\n\n";
+
     private final ToolRegistry toolRegistry;
     private final DomainPromptConfig domainPromptConfig;
 
+    /**
+     * 前缀稳定模式下的静态系统提示（工具注册完成后不再变化，构建一次即可）
+     */
+    private volatile String staticSystemPrompt;
+
+    /**
+     * 原生 function calling 模式下的静态系统提示（工具定义通过请求的 tools 字段发送）
+     */
+    private volatile String staticNativeToolsPrompt;
+
     public SystemPromptBuilder(ToolRegistry toolRegistry, DomainPromptConfig domainPromptConfig) {
         this.toolRegistry = toolRegistry;
         this.domainPromptConfig = domainPromptConfig;
@@ -29,14 +45,14 @@ public class SystemPromptBuilder {
      * Build the system prompt with tool definitions
      */
     public String buildSystemPrompt() {
-        return buildSystemPrompt(null, null);
+        return buildSystemPrompt(null, null, false);
     }
 
     /**
      * Build the system prompt with optional custom instructions
      */
     public String buildSystemPrompt(String customInstructions) {
-        return buildSystemPrompt(customInstructions, null);
+        return buildSystemPrompt(customInstructions, null, false);
     }
 
     /**
@@ -44,17 +60,84 @@ public class SystemPromptBuilder {
      * 根据查询自动检测领域并应用相应的专业提示
      */
     public String buildSystemPromptWithDomainDetection(String query) {
+        return buildSystemPromptWithDomainDetection(query, false);
+    }
+
+    /**
+     * Build the system prompt with domain detection
+     * 
+     * @param nativeTools true 时省略工具列表和 ReAct 格式说明（工具以结构化 tools 发送）
+     */
+    public String buildSystemPromptWithDomainDetection(String query, boolean nativeTools) {
         String domainPrompt = domainPromptConfig.detectAndGetDomainPrompt(query);
         log.info("🔍 Domain detection - Query: {}", query);
         log.info("🔍 Domain prompt returned (first 100 chars): {}",
                 domainPrompt.substring(0, Math.min(100, domainPrompt.length())));
-        return buildSystemPrompt(domainPrompt, query);
+        return buildSystemPrompt(domainPrompt, query, nativeTools);
+    }
+
+    /**
+     * Build the immutable part of the system prompt (role, tools, response format)
+     * 
+     * 前缀稳定模式使用：不包含任何与查询相关的内容，
+     * 每次请求输出字节级相同的文本，便于命中服务端的前缀缓存
+     */
+    public String buildStaticSystemPrompt() {
+        return buildStaticSystemPrompt(false);
+    }
+
+    /**
+     * Build the immutable part of the system prompt
+     * 
+     * @param nativeTools true 时只保留角色和简短的工具使用说明
+     */
+    public String buildStaticSystemPrompt(boolean nativeTools) {
+        String cached = nativeTools ? staticNativeToolsPrompt : staticSystemPrompt;
+        if (cached == null) {
+            StringBuilder prompt = new StringBuilder(BASE_ROLE);
+            if (nativeTools) {
+                appendNativeToolNotes(prompt);
+                cached = prompt.toString();
+                staticNativeToolsPrompt = cached;
+            } else {
+                appendToolSections(prompt);
+                cached = prompt.toString();
+                staticSystemPrompt = cached;
+            }
+            log.debug("Static system prompt built: {} chars (native tools: {})", cached.length(), nativeTools);
+        }
+        return cached;
+    }
+
+    /**
+     * Get the domain-specific instructions for a query
+     * 前缀稳定模式下作为独立的 system 消息放在静态提示之后
+     */
+    public String buildDomainInstructions(String query) {
+        return domainPromptConfig.detectAndGetDomainPrompt(query);
+    }
+
+    /**
+     * Build the short prompt for a routed single-call answer
+     * 不包含工具说明和 ReAct 格式要求，只保留角色、领域指令和（可选的）知识库内容
+     * 
+     * @param domain           领域标识（DomainPromptConfig.DOMAIN_*）
+     * @param knowledgeContext 知识库检索结果，可为 null
+     */
+    public String buildDirectAnswerPrompt(String domain, String knowledgeContext) {
+        StringBuilder prompt = new StringBuilder(DIRECT_ROLE);
+        prompt.append(domainPromptConfig.getDomainPrompt(domain));
+        if (knowledgeContext != null && !knowledgeContext.isEmpty()) {
+            prompt.append("\n").append(knowledgeContext)
+                    .append("\nBase your answer on the knowledge above; say so if it does not cover the question.\n");
+        }
+        return prompt.toString();
     }
 
     /**
      * Build the system prompt with custom instructions and domain information
      */
-    private String buildSystemPrompt(String customInstructions, String query) {
+    private String buildSystemPrompt(String customInstructions, String query, boolean nativeTools) {
         StringBuilder prompt = new StringBuilder();
 
         // 如果有自定义指令（来自领域配置），直接使用
@@ -71,8 +154,7 @@ public class SystemPromptBuilder {
                     customInstructions == null,
                     customInstructions != null && customInstructions.isEmpty(),
                     customInstructions != null && !customInstructions.contains("==="));
-            prompt.append(
-                    "You are an AI Assistant with the ability to use tools to help answer questions and solve problems.\n\n");
+            prompt.append(BASE_ROLE);
 
             // 如果有自定义指令，追加到这后面
             if (customInstructions != null && !customInstructions.isEmpty()) {
@@ -80,9 +162,26 @@ public class SystemPromptBuilder {
             }
         }
 
+        if (nativeTools) {
+            appendNativeToolNotes(prompt);
+        } else {
+            appendToolSections(prompt);
+        }
+
+        log.debug("System prompt built with {} tools", toolRegistry.size());
+        log.debug("Final prompt size: {} chars", prompt.length());
+
+        return prompt.toString();
+    }
+
+    /**
+     * Append tool list, response format and notes
+     * 工具按名称排序，输出在多次请求之间保持一致
+     */
+    private void appendToolSections(StringBuilder prompt) {
         // Tool instructions
         prompt.append("=== AVAILABLE TOOLS ===\n");
-        if (toolRegistry.size() == 0) {
+        if (toolRegistry.getToolNames().isEmpty()) {
             prompt.append("No tools available.\n");
         } else {
             prompt.append(toolRegistry.getToolsDescription());
@@ -97,6 +196,9 @@ public class SystemPromptBuilder {
         prompt.append("Action Input: [The input to pass to the tool, or empty if using 'finish']\n\n");
         prompt.append("When you use a tool, you will receive:\n");
         prompt.append("Observation: [The result of the tool]\n\n");
+        prompt.append("If you need several tools whose inputs do not depend on each other, list one ")
+                .append("Action / Action Input pair per tool in the same response. They run in parallel and ")
+                .append("you will receive all observations together, numbered in the order you listed them.\n\n");
         prompt.append("You can repeat Thought/Action/Observation cycles as many times as needed.\n");
         prompt.append("When you can answer the user's question directly, respond with:\n");
         prompt.append("Final Answer: [Your final answer to the user]\n\n");
@@ -107,10 +209,16 @@ public class SystemPromptBuilder {
         prompt.append("- Provide clear reasoning in Thought before taking action\n");
         prompt.append("- Use tools to get information you don't know\n");
         prompt.append("- Always end with 'Final Answer:' when you're done\n");
+    }
 
-        log.debug("System prompt built with {} tools", toolRegistry.size());
-        log.debug("Final prompt size: {} chars", prompt.length());
-
-        return prompt.toString();
+    /**
+     * Append the short tool notes used in native function-calling mode
+     * 工具名称、描述和参数由请求的 tools 字段提供，这里无需重复
+     */
+    private void appendNativeToolNotes(StringBuilder prompt) {
+        prompt.append("=== TOOL USE ===\n");
+        prompt.append("- Call the provided functions when you need information you don't know\n");
+        prompt.append("- Independent calls can be requested together; they run in parallel\n");
+        prompt.append("- When you have the answer, reply to the user directly without calling a function\n");
     }
 }
@@ -0,0 +1,388 @@
+package com.agent.reasoning.routing;
+
+import com.agent.config.DomainPromptConfig;
+import com.agent.knowledge.model.TextVector;
+import com.agent.knowledge.service.EmbeddingService;
+import com.agent.knowledge.service.KnowledgeBaseManager;
+import com.agent.tool.model.ToolDefinition;
+import com.agent.tool.registry.ToolRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Query Router
+ *
+ * ReAct 循环之前的快速分类阶段，只有真正需要工具的查询才进入多轮推理：
+ * - REACT：带工具说明的完整推理循环
+ * - DIRECT：闲聊，一次短提示 LLM 调用
+ * - KNOWLEDGE：知识库高度匹配，一次带检索结果的短提示 LLM 调用
+ * - CACHED：与之前一次无上下文的闲聊查询完全相同，直接返回缓存答案
+ *
+ * 分类顺序：工具规则 → 缓存 → 闲聊规则 → 嵌入相似度（工具 vs 闲聊原型）→ 知识库。
+ * 嵌入和知识库两步复用推理预处理阶段的检索结果，不再单独检索。
+ * 命中专业领域的查询（如房价、税费）仍可能需要工具，不直接回答。
+ * 无法确定时一律走 REACT，宁可多花 token 也不漏掉工具调用。
+ */
+@Slf4j
+@Component
+public class QueryRouter {
+
+    public enum Route {
+        REACT, DIRECT, KNOWLEDGE, CACHED
+    }
+
+    /**
+     * 算式：数字 运算符 数字
+     */
+    private static final Pattern ARITHMETIC = Pattern.compile("\\d\\s*[+\\-*/%×÷^]\\s*[(（]?\\s*\\d");
+
+    /**
+     * 明显需要工具的表述（工具名和标签在运行时另外加入）
+     */
+    private static final String[] TOOL_KEYWORDS = {
+            "计算", "算一下", "算算", "等于多少", "估价", "估算", "房价", "政策", "限购", "限售", "税费", "契税",
+            "中介费", "推荐房", "房源", "户型", "时间戳", "大写", "小写", "反转", "字符串",
+            "calculate", "compute", "timestamp", "uppercase", "lowercase", "reverse"
+    };
+
+    /**
+     * 闲聊：整句只由问候/致谢/确认等组成
+     */
+    private static final Pattern SMALL_TALK = Pattern.compile(
+            "^(hi|hello|hey|thanks|thank you|ok|okay|bye|goodbye|good (morning|afternoon|evening|night)"
+                    + "|who are you|what can you do|你好|您好|嗨|哈喽|谢谢|多谢|感谢|好的|嗯|再见|拜拜"
+                    + "|早上好|中午好|下午好|晚上好|晚安|你是谁|你能做什么)[\\s!！。.,，?？~～]*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final String[] SMALL_TALK_SAMPLES = {
+            "你好", "谢谢你的帮助", "你是谁", "今天心情不错", "讲个笑话", "hello there", "thank you so much",
+            "how are you", "what can you do", "good morning"
+    };
+
+    private final ToolRegistry toolRegistry;
+    private final EmbeddingService embeddingService;
+    private final KnowledgeBaseManager knowledgeBaseManager;
+    private final DomainPromptConfig domainPromptConfig;
+
+    @Value("${agent.routing.enabled:false}")
+    private Boolean enabled;
+
+    /**
+     * 知识库 top-1 相似度达到该值时走 KNOWLEDGE
+     */
+    @Value("${agent.routing.knowledge-threshold:0.9}")
+    private Double knowledgeThreshold;
+
+    /**
+     * 工具原型与闲聊原型的相似度差超过该值才采信嵌入分类
+     */
+    @Value("${agent.routing.embedding-margin:0.05}")
+    private Double embeddingMargin;
+
+    /**
+     * 超过该长度的查询不按闲聊处理
+     */
+    @Value("${agent.routing.small-talk-max-length:40}")
+    private Integer smallTalkMaxLength;
+
+    @Value("${agent.routing.cache-size:256}")
+    private Integer cacheSize;
+
+    @Value("${agent.routing.cache-ttl-seconds:600}")
+    private Long cacheTtlSeconds;
+
+    /**
+     * 嵌入原型（工具注册是懒加载的，首次路由时构建）
+     */
+    private volatile List<TextVector> toolPrototypes;
+    private volatile List<TextVector> smallTalkPrototypes;
+    private volatile List<String> toolKeywords;
+
+    /**
+     * 答案缓存：LRU，按规范化后的查询文本索引
+     * 只存无历史、无检索内容的 DIRECT 答案，答案只取决于查询文本本身
+     */
+    private final Map<String, CachedAnswer> answerCache = new LinkedHashMap<String, CachedAnswer>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedAnswer> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final Map<Route, AtomicLong> routeCounts = new EnumMap<>(Route.class);
+
+    public QueryRouter(ToolRegistry toolRegistry, EmbeddingService embeddingService,
+            KnowledgeBaseManager knowledgeBaseManager, DomainPromptConfig domainPromptConfig) {
+        this.toolRegistry = toolRegistry;
+        this.embeddingService = embeddingService;
+        this.knowledgeBaseManager = knowledgeBaseManager;
+        this.domainPromptConfig = domainPromptConfig;
+        for (Route route : Route.values()) {
+            routeCounts.put(route, new AtomicLong(0));
+        }
+    }
+
+    /**
+     * 为一条查询选择执行路径，复用预处理阶段的知识库检索
+     *
+     * @param query         用户查询
+     * @param hasPriorTurns 会话中是否已有之前的轮次（有则不读写答案缓存）
+     * @param retrieval     预处理阶段的检索（查询向量 + 结果）；规则能判定时不等待它，
+     *                      为 null 或结果为 null 时自行嵌入和检索
+     */
+    public CompletableFuture<RouteDecision> route(String query, boolean hasPriorTurns,
+            CompletableFuture<KnowledgeBaseManager.Retrieval> retrieval) {
+        return classify(query, hasPriorTurns, retrieval).thenApply(decision -> {
+            routeCounts.get(decision.getRoute()).incrementAndGet();
+            if (decision.getRoute() != Route.REACT) {
+                log.info("🔀 Routed to {} ({}): {}", decision.getRoute(), decision.getReason(), query);
+            } else {
+                log.debug("Routed to REACT ({})", decision.getReason());
+            }
+            return decision;
+        });
+    }
+
+    private CompletableFuture<RouteDecision> classify(String query, boolean hasPriorTurns,
+            CompletableFuture<KnowledgeBaseManager.Retrieval> retrieval) {
+        if (!Boolean.TRUE.equals(enabled) || query == null || query.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(decision(Route.REACT, "routing disabled", null, false));
+        }
+
+        String normalized = normalize(query);
+        boolean cacheable = !hasPriorTurns;
+
+        // 1. 工具规则：算式、工具名/标签、工具相关关键词
+        String toolRule = matchToolRule(normalized);
+        if (toolRule != null) {
+            return CompletableFuture.completedFuture(decision(Route.REACT, "rule: " + toolRule, null, cacheable));
+        }
+
+        // 2. 缓存
+        if (cacheable) {
+            String cached = lookup(normalized);
+            if (cached != null) {
+                RouteDecision decision = decision(Route.CACHED, "cache hit", null, true);
+                decision.setCachedAnswer(cached);
+                return CompletableFuture.completedFuture(decision);
+            }
+        }
+
+        String domain = domainPromptConfig.detectDomain(query);
+
+        // 3. 闲聊规则
+        if (normalized.length() <= smallTalkMaxLength && SMALL_TALK.matcher(normalized).matches()) {
+            return CompletableFuture.completedFuture(decision(Route.DIRECT, "rule: small talk", domain, cacheable));
+        }
+
+        if (retrieval == null) {
+            return CompletableFuture.completedFuture(classifyBySimilarity(query, domain, cacheable, null));
+        }
+        // 检索失败时退回自行检索
+        return retrieval.handle((result, error) ->
+                classifyBySimilarity(query, domain, cacheable, error == null ? result : null));
+    }
+
+    private RouteDecision classifyBySimilarity(String query, String domain, boolean cacheable,
+            KnowledgeBaseManager.Retrieval retrieval) {
+        // 4. 嵌入分类：离工具原型明显更近就走 REACT
+        TextVector queryVector = retrieval != null && retrieval.getQueryVector() != null
+                ? retrieval.getQueryVector()
+                : embeddingService.embed(query);
+        double toolSimilarity = maxSimilarity(queryVector, getToolPrototypes());
+        double smallTalkSimilarity = maxSimilarity(queryVector, getSmallTalkPrototypes());
+        if (toolSimilarity - smallTalkSimilarity >= embeddingMargin) {
+            return decision(Route.REACT, String.format("embedding: tool %.2f vs chat %.2f",
+                    toolSimilarity, smallTalkSimilarity), domain, cacheable);
+        }
+
+        // 5. 知识库高度匹配（答案取决于知识库内容，不缓存）
+        List<KnowledgeBaseManager.SearchResult> hits = retrieval != null && retrieval.getResults() != null
+                ? retrieval.getResults()
+                : search(query);
+        if (!hits.isEmpty() && hits.get(0).getSimilarity() >= knowledgeThreshold) {
+            RouteDecision decision = decision(Route.KNOWLEDGE,
+                    String.format("knowledge %.2f", hits.get(0).getSimilarity()), domain, false);
+            decision.setKnowledge(hits);
+            return decision;
+        }
+
+        // 6. 离闲聊原型明显更近（命中专业领域的查询不算闲聊）
+        boolean general = DomainPromptConfig.DOMAIN_GENERAL.equals(domain);
+        if (general && smallTalkSimilarity - toolSimilarity >= embeddingMargin) {
+            return decision(Route.DIRECT, String.format("embedding: chat %.2f vs tool %.2f",
+                    smallTalkSimilarity, toolSimilarity), domain, cacheable);
+        }
+
+        // 专业领域的查询仍可能需要工具，带着领域走 REACT
+        return decision(Route.REACT, general ? "default" : "domain: " + domain, domain, cacheable);
+    }
+
+    /**
+     * 记录一次无上下文 DIRECT 调用的答案，供相同查询直接复用
+     */
+    public void remember(RouteDecision decision, String query, String answer) {
+        if (decision == null || !decision.isCacheable() || answer == null || answer.isEmpty()
+                || decision.getRoute() != Route.DIRECT || !decision.getKnowledge().isEmpty()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + cacheTtlSeconds * 1000L;
+        synchronized (answerCache) {
+            answerCache.put(normalize(query), new CachedAnswer(answer, expiresAt));
+        }
+    }
+
+    /**
+     * 路由统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", Boolean.TRUE.equals(enabled));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<Route, AtomicLong> entry : routeCounts.entrySet()) {
+            counts.put(entry.getKey().name(), entry.getValue().get());
+            total += entry.getValue().get();
+        }
+        stats.put("routes", counts);
+        stats.put("total", total);
+        stats.put("shortCircuitRatio", total > 0
+                ? (double) (total - routeCounts.get(Route.REACT).get()) / total
+                : 0.0);
+        synchronized (answerCache) {
+            stats.put("cachedAnswers", answerCache.size());
+        }
+        return stats;
+    }
+
+    // ===== 分类细节 =====
+
+    private String matchToolRule(String normalized) {
+        if (ARITHMETIC.matcher(normalized).find()) {
+            return "arithmetic";
+        }
+        for (String keyword : getToolKeywords()) {
+            if (normalized.contains(keyword)) {
+                return "keyword '" + keyword + "'";
+            }
+        }
+        return null;
+    }
+
+    private List<KnowledgeBaseManager.SearchResult> search(String query) {
+        if (knowledgeBaseManager.getStats().getTotalDocuments() == 0) {
+            return Collections.emptyList();
+        }
+        return knowledgeBaseManager.semanticSearch(query, 3);
+    }
+
+    private String lookup(String normalized) {
+        synchronized (answerCache) {
+            CachedAnswer cached = answerCache.get(normalized);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt < System.currentTimeMillis()) {
+                answerCache.remove(normalized);
+                return null;
+            }
+            return cached.answer;
+        }
+    }
+
+    private List<String> getToolKeywords() {
+        List<String> keywords = toolKeywords;
+        if (keywords == null) {
+            keywords = new ArrayList<>();
+            Collections.addAll(keywords, TOOL_KEYWORDS);
+            for (ToolDefinition tool : toolRegistry.getAllTools()) {
+                keywords.add(tool.getName().toLowerCase(Locale.ROOT));
+                if (tool.getTags() != null) {
+                    for (String tag : tool.getTags()) {
+                        // 过短的标签（如 "fee"）容易误伤普通单词
+                        if (tag.length() >= 4) {
+                            keywords.add(tag.toLowerCase(Locale.ROOT));
+                        }
+                    }
+                }
+            }
+            toolKeywords = keywords;
+        }
+        return keywords;
+    }
+
+    private List<TextVector> getToolPrototypes() {
+        List<TextVector> prototypes = toolPrototypes;
+        if (prototypes == null) {
+            prototypes = new ArrayList<>();
+            for (ToolDefinition tool : toolRegistry.getAllTools()) {
+                prototypes.add(embeddingService.embed(tool.getDescription()));
+                if (tool.getExamples() != null) {
+                    for (String example : tool.getExamples()) {
+                        if (example.startsWith("Input:")) {
+                            prototypes.add(embeddingService.embed(example.substring("Input:".length()).trim()));
+                        }
+                    }
+                }
+            }
+            toolPrototypes = prototypes;
+        }
+        return prototypes;
+    }
+
+    private List<TextVector> getSmallTalkPrototypes() {
+        List<TextVector> prototypes = smallTalkPrototypes;
+        if (prototypes == null) {
+            prototypes = new ArrayList<>();
+            for (String sample : SMALL_TALK_SAMPLES) {
+                prototypes.add(embeddingService.embed(sample));
+            }
+            smallTalkPrototypes = prototypes;
+        }
+        return prototypes;
+    }
+
+    private static double maxSimilarity(TextVector vector, List<TextVector> prototypes) {
+        double max = 0.0;
+        for (TextVector prototype : prototypes) {
+            max = Math.max(max, vector.cosineSimilarity(prototype));
+        }
+        return max;
+    }
+
+    private static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static RouteDecision decision(Route route, String reason, String domain, boolean cacheable) {
+        return RouteDecision.builder()
+                .route(route)
+                .reason(reason)
+                .domain(domain)
+                .cacheable(cacheable)
+                .build();
+    }
+
+    private static final class CachedAnswer {
+        private final String answer;
+        private final long expiresAt;
+
+        private CachedAnswer(String answer, long expiresAt) {
+            this.answer = answer;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.agent.reasoning.routing;
+
+import com.agent.knowledge.service.KnowledgeBaseManager;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route Decision
+ *
+ * QueryRouter 对一条查询的分流结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteDecision {
+
+    /**
+     * 执行路径
+     */
+    private QueryRouter.Route route;
+
+    /**
+     * 命中的规则或分类依据（日志和监控用）
+     */
+    private String reason;
+
+    /**
+     * 检测到的领域（DomainPromptConfig.DOMAIN_*）
+     */
+    private String domain;
+
+    /**
+     * KNOWLEDGE 路径使用的知识库检索结果
+     */
+    @Builder.Default
+    private List<KnowledgeBaseManager.SearchResult> knowledge = new ArrayList<>();
+
+    /**
+     * CACHED 路径的缓存答案
+     */
+    private String cachedAnswer;
+
+    /**
+     * 查询不依赖之前的对话，答案可以写入缓存
+     */
+    private boolean cacheable;
+}
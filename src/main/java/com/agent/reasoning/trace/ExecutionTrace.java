@@ -0,0 +1,226 @@
+package com.agent.reasoning.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Execution Trace
+ *
+ * 一次推理执行的 Span 树：
+ *
+ * <pre>
+ * agent.execute
+ * ├── knowledge.retrieval      （最先开始，分流和预处理共用）
+ * ├── agent.route
+ * ├── agent.preamble
+ * │   ├── agent.prompt         （与尚未结束的检索并行）
+ * │   └── agent.history
+ * └── reasoning.iteration      （每轮一个）
+ *     ├── context.compression
+ *     ├── llm.call
+ *     └── agent.tools
+ *         └── tool.execute     （每个调用一个，并发调用时间重叠）
+ * </pre>
+ *
+ * 时间戳以墙钟时间为基准、用 System.nanoTime 计时，时长单调。
+ * Span 可以在不同线程开始和结束（HTTP 回调、工具线程）。
+ */
+public class ExecutionTrace {
+
+    public static final String EXECUTE = "agent.execute";
+    public static final String ROUTE = "agent.route";
+    public static final String PREAMBLE = "agent.preamble";
+    public static final String PROMPT = "agent.prompt";
+    public static final String HISTORY = "agent.history";
+    public static final String RETRIEVAL = "knowledge.retrieval";
+    public static final String ITERATION = "reasoning.iteration";
+    public static final String COMPRESSION = "context.compression";
+    public static final String LLM_CALL = "llm.call";
+    public static final String TOOLS = "agent.tools";
+    public static final String TOOL_CALL = "tool.execute";
+
+    private static final String SERVICE_NAME = "ai-agent";
+    private static final String SCOPE_NAME = "com.agent.reasoning";
+
+    private final String traceId;
+    private final long epochAnchorNanos;
+    private final long monotonicAnchorNanos;
+    private final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+
+    public ExecutionTrace() {
+        this.traceId = randomHex(16);
+        this.epochAnchorNanos = System.currentTimeMillis() * 1_000_000L;
+        this.monotonicAnchorNanos = System.nanoTime();
+    }
+
+    /**
+     * 开始一个 Span
+     *
+     * @param name   Span 名称（上面的常量之一）
+     * @param parent 父 Span，根 Span 传 null
+     */
+    public Span startSpan(String name, Span parent) {
+        Span span = new Span(this, randomHex(8), parent != null ? parent.getSpanId() : null, name, nowNanos());
+        spans.add(span);
+        return span;
+    }
+
+    long nowNanos() {
+        return epochAnchorNanos + (System.nanoTime() - monotonicAnchorNanos);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    /**
+     * 时间花在哪里：各阶段的墙钟时间，多轮累加
+     *
+     * tools_ms 按每个工具阶段的墙钟时间计，并行调用不重复计算。
+     * prompt_ms、history_ms、retrieval_ms 与分流和预处理重叠，只单独列出，不计入合计。
+     * time_to_first_llm_ms 从执行开始算起。
+     */
+    public Map<String, Object> getBreakdown() {
+        Map<String, Double> totals = new HashMap<>();
+        int llmCalls = 0;
+        int toolCalls = 0;
+        int iterations = 0;
+        Span root = null;
+        Span firstLlmCall = null;
+        for (Span span : getSpans()) {
+            totals.merge(span.getName(), span.getDurationMs(), Double::sum);
+            if (EXECUTE.equals(span.getName()) && root == null) {
+                root = span;
+            } else if (LLM_CALL.equals(span.getName())) {
+                if (firstLlmCall == null || span.getStartNanos() < firstLlmCall.getStartNanos()) {
+                    firstLlmCall = span;
+                }
+                llmCalls++;
+            } else if (TOOL_CALL.equals(span.getName())) {
+                toolCalls++;
+            } else if (ITERATION.equals(span.getName())) {
+                iterations++;
+            }
+        }
+
+        Map<String, Object> breakdown = new LinkedHashMap<>();
+        double total = totals.getOrDefault(EXECUTE, 0.0);
+        double accounted = 0;
+        String[][] phases = {
+                { ROUTE, "route_ms" }, { PREAMBLE, "preamble_ms" },
+                { COMPRESSION, "compression_ms" }, { LLM_CALL, "llm_ms" }, { TOOLS, "tools_ms" }
+        };
+        for (String[] phase : phases) {
+            double ms = totals.getOrDefault(phase[0], 0.0);
+            breakdown.put(phase[1], round(ms));
+            accounted += ms;
+        }
+        String[][] stages = { { PROMPT, "prompt_ms" }, { HISTORY, "history_ms" }, { RETRIEVAL, "retrieval_ms" } };
+        for (String[] stage : stages) {
+            breakdown.put(stage[1], round(totals.getOrDefault(stage[0], 0.0)));
+        }
+        breakdown.put("other_ms", round(Math.max(0, total - accounted)));
+        if (root != null && firstLlmCall != null) {
+            breakdown.put("time_to_first_llm_ms", round((firstLlmCall.getStartNanos() - root.getStartNanos()) / 1_000_000.0));
+        }
+        breakdown.put("total_ms", round(total));
+        breakdown.put("iterations", iterations);
+        breakdown.put("llm_calls", llmCalls);
+        breakdown.put("tool_calls", toolCalls);
+        return breakdown;
+    }
+
+    /**
+     * 导出为 OTLP/JSON（OTLP/HTTP ExportTraceServiceRequest 的请求体）
+     *
+     * 按 OTLP JSON 映射要求，int64 值编码为字符串。
+     */
+    public Map<String, Object> toOtlpJson() {
+        List<Map<String, Object>> otlpSpans = new ArrayList<>();
+        for (Span span : getSpans()) {
+            Map<String, Object> otlpSpan = new LinkedHashMap<>();
+            otlpSpan.put("traceId", traceId);
+            otlpSpan.put("spanId", span.getSpanId());
+            if (span.getParentSpanId() != null) {
+                otlpSpan.put("parentSpanId", span.getParentSpanId());
+            }
+            otlpSpan.put("name", span.getName());
+            // SPAN_KIND_INTERNAL = 1, SPAN_KIND_CLIENT = 3
+            otlpSpan.put("kind", span.getKind() == Span.Kind.CLIENT ? 3 : 1);
+            otlpSpan.put("startTimeUnixNano", String.valueOf(span.getStartNanos()));
+            otlpSpan.put("endTimeUnixNano", String.valueOf(span.isEnded() ? span.getEndNanos() : nowNanos()));
+            otlpSpan.put("attributes", toAttributes(span.getAttributes()));
+
+            Map<String, Object> status = new LinkedHashMap<>();
+            // STATUS_CODE_OK = 1, STATUS_CODE_ERROR = 2
+            status.put("code", span.isError() ? 2 : 1);
+            if (span.getStatusMessage() != null) {
+                status.put("message", span.getStatusMessage());
+            }
+            otlpSpan.put("status", status);
+            otlpSpans.add(otlpSpan);
+        }
+
+        Map<String, Object> scopeSpans = new LinkedHashMap<>();
+        scopeSpans.put("scope", Collections.singletonMap("name", SCOPE_NAME));
+        scopeSpans.put("spans", otlpSpans);
+
+        Map<String, Object> resourceSpans = new LinkedHashMap<>();
+        resourceSpans.put("resource", Collections.singletonMap("attributes",
+                toAttributes(Collections.<String, Object>singletonMap("service.name", SERVICE_NAME))));
+        resourceSpans.put("scopeSpans", Collections.singletonList(scopeSpans));
+
+        return Collections.<String, Object>singletonMap("resourceSpans", Collections.singletonList(resourceSpans));
+    }
+
+    private static List<Map<String, Object>> toAttributes(Map<String, Object> attributes) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            Object value = entry.getValue();
+            String type;
+            Object encoded;
+            if (value instanceof Boolean) {
+                type = "boolValue";
+                encoded = value;
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+                type = "intValue";
+                encoded = String.valueOf(value);
+            } else if (value instanceof Number) {
+                type = "doubleValue";
+                encoded = ((Number) value).doubleValue();
+            } else {
+                type = "stringValue";
+                encoded = String.valueOf(value);
+            }
+            Map<String, Object> attribute = new LinkedHashMap<>();
+            attribute.put("key", entry.getKey());
+            attribute.put("value", Collections.singletonMap(type, encoded));
+            result.add(attribute);
+        }
+        return result;
+    }
+
+    private static double round(double ms) {
+        return Math.round(ms * 10) / 10.0;
+    }
+
+    private static String randomHex(int bytes) {
+        StringBuilder hex = new StringBuilder(bytes * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bytes; i++) {
+            hex.append(String.format("%02x", random.nextInt(256)));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.agent.reasoning.trace;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Span
+ *
+ * 推理执行中一次计时的操作（LLM 调用、工具调用、压缩、检索等）。
+ * 通过 parentSpanId 组成树，由 {@link ExecutionTrace#startSpan(String, Span)} 创建。
+ *
+ * 属性名有 OpenTelemetry 约定的沿用约定（如 gen_ai.usage.input_tokens）。
+ */
+public class Span {
+
+    public enum Kind {
+        INTERNAL, CLIENT
+    }
+
+    private final ExecutionTrace trace;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final long startNanos;
+    private final Map<String, Object> attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private Kind kind = Kind.INTERNAL;
+    private volatile long endNanos = -1;
+    private volatile boolean error;
+    private volatile String statusMessage;
+
+    Span(ExecutionTrace trace, String spanId, String parentSpanId, String name, long startNanos) {
+        this.trace = trace;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 在同一 trace 中开始子 Span
+     */
+    public Span startChild(String name) {
+        return trace.startSpan(name, this);
+    }
+
+    public Span setAttribute(String key, Object value) {
+        if (value != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public Span setKind(Kind kind) {
+        this.kind = kind;
+        return this;
+    }
+
+    /**
+     * 结束 Span，重复调用忽略
+     */
+    public void end() {
+        if (endNanos < 0) {
+            endNanos = trace.nowNanos();
+        }
+    }
+
+    /**
+     * 以错误状态结束 Span
+     */
+    public void end(Throwable failure) {
+        if (failure != null && endNanos < 0) {
+            error = true;
+            statusMessage = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+        }
+        end();
+    }
+
+    public boolean isEnded() {
+        return endNanos >= 0;
+    }
+
+    /**
+     * 时长（毫秒），未结束时算到当前
+     */
+    public double getDurationMs() {
+        long end = endNanos >= 0 ? endNanos : trace.nowNanos();
+        return (end - startNanos) / 1_000_000.0;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    public Map<String, Object> getAttributes() {
+        synchronized (attributes) {
+            return new LinkedHashMap<>(attributes);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.agent.service;
+
+import com.agent.llm.ratelimit.RequestPriority;
+import com.agent.model.dto.BatchJob;
+import com.agent.reasoning.engine.ExecutionContext;
+import com.agent.reasoning.engine.ReasoningEngine;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量任务服务 - 离线批量回放查询
+ *
+ * 存储布局：{storage-path}/{jobId}/
+ * - job.json      任务元数据
+ * - queries.jsonl 规范化后的输入（每行 {"index","query"}）
+ * - results.jsonl  成功的结果（每完成一条追加一行，同时作为断点续跑的检查点）
+ * - failures.jsonl 失败的尝试（每次失败追加一行）；恢复任务时未成功且尝试次数
+ *   未达 max-attempts 的查询重新排队，达到上限的计为失败
+ *
+ * 所有 LLM 调用以 BACKGROUND 优先级经过全局限流器，不会挤占交互流量
+ */
+@Slf4j
+@Component
+public class BatchJobService {
+
+    private static final String JOB_FILE = "job.json";
+    private static final String QUERIES_FILE = "queries.jsonl";
+    private static final String RESULTS_FILE = "results.jsonl";
+    private static final String FAILURES_FILE = "failures.jsonl";
+
+    @Value("${agent.batch.storage-path:./data/batch}")
+    private String storagePath;
+
+    @Value("${agent.batch.default-parallelism:4}")
+    private Integer defaultParallelism;
+
+    @Value("${agent.batch.max-parallelism:16}")
+    private Integer maxParallelism;
+
+    @Value("${agent.batch.resume-on-startup:true}")
+    private Boolean resumeOnStartup;
+
+    @Value("${agent.batch.max-attempts:3}")
+    private Integer maxAttempts;
+
+    private final ReasoningEngine reasoningEngine;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, RunningJob> runningJobs = new ConcurrentHashMap<>();
+
+    public BatchJobService(ReasoningEngine reasoningEngine) {
+        this.reasoningEngine = reasoningEngine;
+    }
+
+    /**
+     * 初始化存储目录，加载已有任务，并恢复未完成的任务
+     */
+    public void init() {
+        File dir = new File(storagePath);
+        if (!dir.exists() && dir.mkdirs()) {
+            log.info("✅ Batch storage directory created: {}", storagePath);
+        }
+
+        File[] jobDirs = dir.listFiles(File::isDirectory);
+        if (jobDirs != null) {
+            for (File jobDir : jobDirs) {
+                File jobFile = new File(jobDir, JOB_FILE);
+                if (!jobFile.exists()) {
+                    continue;
+                }
+                try {
+                    BatchJob job = objectMapper.readValue(jobFile, BatchJob.class);
+                    jobs.put(job.getJobId(), job);
+                } catch (IOException e) {
+                    log.error("❌ Failed to load batch job: {}", jobDir.getName(), e);
+                }
+            }
+        }
+        log.info("✅ Loaded {} batch jobs from storage", jobs.size());
+
+        if (Boolean.TRUE.equals(resumeOnStartup)) {
+            for (BatchJob job : jobs.values()) {
+                if ("RUNNING".equals(job.getStatus()) || "PENDING".equals(job.getStatus())) {
+                    log.info("🔁 Resuming interrupted batch job: {}", job.getJobId());
+                    start(job);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建并启动批量任务
+     *
+     * 输入格式：每行一条查询；以 '{' 开头的行按 JSON 解析并读取 "query" 字段
+     */
+    public BatchJob submit(String name, InputStream input, Integer parallelism) throws IOException {
+        List<String> queries = readQueries(input);
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("Batch input contains no queries");
+        }
+
+        int effectiveParallelism = parallelism != null && parallelism > 0 ? parallelism : defaultParallelism;
+        effectiveParallelism = Math.min(effectiveParallelism, maxParallelism);
+
+        BatchJob job = BatchJob.create(name, queries.size(), effectiveParallelism);
+        Path jobDir = jobDir(job.getJobId());
+        Files.createDirectories(jobDir);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(jobDir.resolve(QUERIES_FILE), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < queries.size(); i++) {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("index", i);
+                line.put("query", queries.get(i));
+                writer.write(objectMapper.writeValueAsString(line));
+                writer.newLine();
+            }
+        }
+
+        jobs.put(job.getJobId(), job);
+        saveJob(job);
+        log.info("📦 Batch job created: {} ({} queries, parallelism {})",
+                job.getJobId(), queries.size(), effectiveParallelism);
+
+        start(job);
+        return job;
+    }
+
+    /**
+     * 从检查点恢复任务（跳过 results.jsonl 中已成功的查询，失败的查询在尝试次数内重新执行）
+     */
+    public BatchJob resume(String jobId) {
+        BatchJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        boolean retryable = !"COMPLETED".equals(job.getStatus()) || job.getFailedQueries() > 0;
+        if (!runningJobs.containsKey(jobId) && retryable) {
+            start(job);
+        }
+        return job;
+    }
+
+    /**
+     * 取消任务（已开始的查询会执行完并写入结果）
+     */
+    public BatchJob cancel(String jobId) {
+        BatchJob job = jobs.get(jobId);
+        RunningJob running = runningJobs.get(jobId);
+        if (running != null) {
+            running.cancelled = true;
+            running.pool.shutdown();
+        } else if (job != null && !job.isFinished()) {
+            job.setStatus("CANCELLED");
+            saveJob(job);
+        }
+        return job;
+    }
+
+    /**
+     * 获取任务
+     */
+    public BatchJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 获取所有任务
+     */
+    public List<BatchJob> getAllJobs() {
+        List<BatchJob> result = new ArrayList<>(jobs.values());
+        result.sort((a, b) -> Long.compare(b.getCreatedTime(), a.getCreatedTime()));
+        return result;
+    }
+
+    /**
+     * 结果文件（JSONL）
+     */
+    public File getResultsFile(String jobId) {
+        return jobDir(jobId).resolve(RESULTS_FILE).toFile();
+    }
+
+    /**
+     * 失败记录文件（JSONL，每次失败的尝试一行）
+     */
+    public File getFailuresFile(String jobId) {
+        return jobDir(jobId).resolve(FAILURES_FILE).toFile();
+    }
+
+    /**
+     * 应用关闭时停止接收新查询，已完成的结果已落盘，重启后可续跑
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (RunningJob running : runningJobs.values()) {
+            running.pool.shutdownNow();
+        }
+    }
+
+    // ===== 私有方法 =====
+
+    private void start(BatchJob job) {
+        Path jobDir = jobDir(job.getJobId());
+        List<String> queries;
+        Map<Integer, Integer> done;
+        Map<Integer, Integer> attempts;
+        try {
+            queries = loadQueries(jobDir.resolve(QUERIES_FILE));
+            done = loadIndexCounts(jobDir.resolve(RESULTS_FILE));
+            attempts = loadIndexCounts(jobDir.resolve(FAILURES_FILE));
+        } catch (IOException e) {
+            log.error("❌ Failed to load batch job data: {}", job.getJobId(), e);
+            job.setStatus("FAILED");
+            job.setErrorMessage(e.getMessage());
+            saveJob(job);
+            return;
+        }
+
+        // 未成功的查询：尝试次数未达上限的重新排队，达到上限的计为失败
+        List<Integer> pending = new ArrayList<>();
+        int exhausted = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            if (done.containsKey(i)) {
+                continue;
+            }
+            if (attempts.getOrDefault(i, 0) < maxAttempts) {
+                pending.add(i);
+            } else {
+                exhausted++;
+            }
+        }
+
+        job.setCompletedQueries(done.size() + exhausted);
+        job.setFailedQueries(exhausted);
+        job.setStatus("RUNNING");
+        job.setStartedTime(System.currentTimeMillis());
+        job.setFinishedTime(0);
+        job.setErrorMessage(null);
+        saveJob(job);
+
+        if (pending.isEmpty()) {
+            finishJob(job, false);
+            return;
+        }
+
+        int threads = Math.max(1, Math.min(job.getParallelism(), pending.size()));
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "BatchJob-" + job.getJobId().substring(0, 8) + "-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        RunningJob running = new RunningJob(pool);
+        runningJobs.put(job.getJobId(), running);
+        log.info("▶️  Batch job {} started: {} pending, {} already done, {} failed permanently, {} threads",
+                job.getJobId(), pending.size(), done.size(), exhausted, threads);
+
+        AtomicInteger remaining = new AtomicInteger(pending.size());
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(jobDir.resolve(RESULTS_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            running.writer = writer;
+            running.failureWriter = Files.newBufferedWriter(jobDir.resolve(FAILURES_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            for (Integer index : pending) {
+                int attempt = attempts.getOrDefault(index, 0) + 1;
+                pool.submit(() -> {
+                    try {
+                        if (!running.cancelled) {
+                            runQuery(job, running, index, attempt, queries.get(index));
+                        }
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            finishJob(job, running.cancelled);
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.error("❌ Failed to open results file for batch job: {}", job.getJobId(), e);
+            pool.shutdownNow();
+            runningJobs.remove(job.getJobId());
+            closeWriters(job, running);
+            job.setStatus("FAILED");
+            job.setErrorMessage(e.getMessage());
+            saveJob(job);
+        }
+    }
+
+    private void runQuery(BatchJob job, RunningJob running, int index, int attempt, String query) {
+        long startTime = System.currentTimeMillis();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+        result.put("query", query);
+        result.put("attempt", attempt);
+
+        // 每次尝试一个固定的执行 ID：任务中断后续跑时，做到一半的查询从其检查点继续；
+        // 失败后的重试换一个 ID，不沿用失败执行留下的检查点
+        String executionId = "batch-" + job.getJobId() + "-" + index + (attempt > 1 ? "-" + attempt : "");
+        boolean failed;
+        try {
+            ExecutionContext context = reasoningEngine.executeAsync(executionId,
+                    query, new ArrayList<>(), RequestPriority.BACKGROUND).join();
+            failed = !Boolean.TRUE.equals(context.getIsComplete());
+            result.put("result", context.getFinalAnswer());
+            result.put("iterations", context.getCurrentIteration());
+            result.put("is_complete", context.getIsComplete());
+            result.put("tool_calls", context.getToolResults().size());
+            result.put("prompt_tokens", context.getPromptTokens());
+            result.put("completion_tokens", context.getCompletionTokens());
+            result.put("prompt_cache_hit_tokens", context.getPromptCacheHitTokens());
+        } catch (Exception e) {
+            log.error("❌ Batch query {} failed in job {}", index, job.getJobId(), e);
+            failed = true;
+            result.put("error", e.getMessage());
+        }
+        result.put("duration_ms", System.currentTimeMillis() - startTime);
+
+        synchronized (running) {
+            // 成功的写入检查点，失败的单独记录，恢复时重新排队
+            BufferedWriter writer = failed ? running.failureWriter : running.writer;
+            try {
+                writer.write(objectMapper.writeValueAsString(result));
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                log.error("❌ Failed to write batch result {} for job {}", index, job.getJobId(), e);
+                return;
+            }
+
+            job.setCompletedQueries(job.getCompletedQueries() + 1);
+            if (failed) {
+                job.setFailedQueries(job.getFailedQueries() + 1);
+            }
+            // 元数据仅用于展示进度，检查点以 results.jsonl 为准，因此不必每条都落盘
+            if (job.getCompletedQueries() % 20 == 0) {
+                saveJob(job);
+            }
+        }
+    }
+
+    private void finishJob(BatchJob job, boolean cancelled) {
+        RunningJob running = runningJobs.remove(job.getJobId());
+        if (running != null) {
+            running.pool.shutdown();
+            closeWriters(job, running);
+        }
+
+        job.setStatus(cancelled ? "CANCELLED" : "COMPLETED");
+        job.setFinishedTime(System.currentTimeMillis());
+        saveJob(job);
+        log.info("🏁 Batch job {} {}: {}/{} done, {} failed", job.getJobId(), job.getStatus().toLowerCase(),
+                job.getCompletedQueries(), job.getTotalQueries(), job.getFailedQueries());
+    }
+
+    private void closeWriters(BatchJob job, RunningJob running) {
+        for (BufferedWriter writer : Arrays.asList(running.writer, running.failureWriter)) {
+            if (writer == null) {
+                continue;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Failed to close results file for batch job {}", job.getJobId());
+            }
+        }
+    }
+
+    private List<String> readQueries(InputStream input) throws IOException {
+        List<String> queries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                if (trimmed.startsWith("{")) {
+                    JsonNode node = objectMapper.readTree(trimmed);
+                    JsonNode query = node.get("query");
+                    if (query != null && !query.asText().trim().isEmpty()) {
+                        queries.add(query.asText());
+                    }
+                } else {
+                    queries.add(trimmed);
+                }
+            }
+        }
+        return queries;
+    }
+
+    private List<String> loadQueries(Path file) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                queries.add(objectMapper.readTree(line).get("query").asText());
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * 读取检查点：results.jsonl / failures.jsonl 中每个查询序号出现的次数
+     * 若上次写到一半进程退出，先截掉不完整的尾行再继续追加
+     */
+    private Map<Integer, Integer> loadIndexCounts(Path file) throws IOException {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (!Files.exists(file)) {
+            return counts;
+        }
+
+        truncatePartialTail(file);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonNode index = objectMapper.readTree(line).get("index");
+                if (index != null) {
+                    counts.merge(index.asInt(), 1, Integer::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private void truncatePartialTail(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long length = raf.length();
+            long pos = length - 1;
+            while (pos >= 0) {
+                raf.seek(pos);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                pos--;
+            }
+            if (pos + 1 < length) {
+                raf.setLength(pos + 1);
+                log.warn("✂️  Truncated partial result line in {}", file);
+            }
+        }
+    }
+
+    private void saveJob(BatchJob job) {
+        try {
+            Path dir = jobDir(job.getJobId());
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(JOB_FILE + ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), job);
+            Files.move(tmp, dir.resolve(JOB_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("❌ Failed to save batch job: {}", job.getJobId(), e);
+        }
+    }
+
+    private Path jobDir(String jobId) {
+        return new File(storagePath, jobId).toPath();
+    }
+
+    /**
+     * 运行中的任务状态
+     */
+    private static final class RunningJob {
+        private final ExecutorService pool;
+        private volatile BufferedWriter writer;
+        private volatile BufferedWriter failureWriter;
+        private volatile boolean cancelled;
+
+        private RunningJob(ExecutorService pool) {
+            this.pool = pool;
+        }
+    }
+}
@@ -1,20 +1,69 @@
 package com.agent.service;
 
+import com.agent.common.storage.KeyValueStores;
 import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+import com.agent.model.dto.SessionSummary;
+import com.agent.service.session.FileSessionStore;
+import com.agent.service.session.KeyValueSessionStore;
+import com.agent.service.session.SessionIndex;
+import com.agent.service.session.SessionStore;
+import com.agent.service.session.SessionStoreMigration;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 /**
  * 会话管理器 - 负责会话的存储、加载、删除等
  * 
- * 会话数据存储在 {storage-path}/sessions/ 目录下
- * 每个会话对应一个 JSON 文件
+ * 会话数据存储在 {storage-path}/sessions/ 目录下，存储后端可插拔（SessionStore，agent.session.storage-backend）：
+ * - file：每个会话对应一个 JSON 文件（兼容原有布局，默认）
+ * - log：全部会话放在一个嵌入式日志结构键值存储 store.kv 中；
+ *   首次以 log 启动且存储为空时自动迁移已有的 JSON 文件（原文件保留）
+ * 
+ * 分层存储：JSON 文件和内存中只保留最近的 hot-messages 条消息，
+ * 更早的消息按批压缩追加到 {sessionId}.archive（SessionArchive），
+ * 导出或检索较早的对话时才按需读取
+ * 
+ * 日志 + 快照：每轮对话只把新消息追加到 {sessionId}.journal（SessionJournal），
+ * 保存的开销与会话长度无关；会话 JSON 是快照，日志攒够 snapshot-every 条、
+ * 需要归档，或会话被删改（删除消息、清空、改标题等）时才重写
+ * 
+ * fsync 策略（agent.session.fsync）：
+ * - none：交给操作系统回写（默认，进程崩溃不丢数据，掉电可能丢最近几秒）
+ * - snapshot：快照和归档落盘，日志追加不落盘
+ * - always：每次追加都落盘
+ * 
+ * 内存中只缓存最近用过的会话（最多 max-sessions 个，空闲超过 max-idle-minutes 的淘汰，
+ * 待写的会话先写盘再淘汰，acquireSession 钉住的会话在 releaseSession 之前不淘汰），
+ * 其余会话按需从文件加载；同一会话 ID 始终对应缓存中的同一个对象。会话列表和统计由
+ * {storage-path}/sessions.index（SessionIndex）提供，启动时不再加载全部会话
+ * 
+ * 并发：同一会话的写盘、加载和删除按会话 ID 分段加锁（LOCK_STRIPES 个 ReentrantLock），
+ * 不同会话互不阻塞；读写消息列表时再持有会话对象的锁，与请求线程的 addMessage 互斥。
+ * 快照、归档截断和索引重写都是写临时文件后原子替换，并发流量不会留下写了一半的会话文件
+ * 
+ * 延迟写（agent.session.write-behind）：对话请求只调用 markDirty 标记会话待写，
+ * 后台线程在 flush-delay-ms 之后写盘，窗口内同一会话的多次更新合并为一次写入。
+ * 进程崩溃最多丢失最近 flush-delay-ms 内的更新；正常关闭时写完全部待写会话
  */
 @Slf4j
 @Component
@@ -23,8 +72,160 @@ public class SessionManager {
     @Value("${agent.session.storage-path:./data/sessions}")
     private String storagePath;
 
+    /**
+     * 存储后端：file / log
+     */
+    @Value("${agent.session.storage-backend:file}")
+    private String storageBackend;
+
+    /**
+     * 内存和 JSON 文件中保留的最近消息数
+     */
+    @Value("${agent.session.hot-messages:200}")
+    private Integer hotMessages;
+
+    /**
+     * 每次归档的最少消息数（攒够一批再压缩，压缩率更高）
+     */
+    @Value("${agent.session.archive-batch:100}")
+    private Integer archiveBatch;
+
+    /**
+     * 日志累计多少条消息后重写快照
+     */
+    @Value("${agent.session.snapshot-every:100}")
+    private Integer snapshotEvery;
+
+    /**
+     * fsync 策略：none / snapshot / always
+     */
+    @Value("${agent.session.fsync:none}")
+    private String fsync;
+
+    /**
+     * 是否延迟写盘（关闭时 markDirty 同步保存）
+     */
+    @Value("${agent.session.write-behind.enabled:true}")
+    private Boolean writeBehind;
+
+    /**
+     * 合并窗口：会话第一次被标记后多久写盘（也是崩溃时最多丢失的时长）
+     */
+    @Value("${agent.session.write-behind.flush-delay-ms:1000}")
+    private Long flushDelayMs;
+
+    /**
+     * 待写会话上限：超过时在调用线程直接写盘，积压不会无限增长
+     */
+    @Value("${agent.session.write-behind.max-pending:1000}")
+    private Integer maxPending;
+
+    /**
+     * 内存中最多缓存的会话数
+     */
+    @Value("${agent.session.cache.max-sessions:500}")
+    private Integer maxCachedSessions;
+
+    /**
+     * 会话空闲多久后移出内存
+     */
+    @Value("${agent.session.cache.max-idle-minutes:30}")
+    private Long maxIdleMinutes;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, ChatSession> sessionCache = new HashMap<>();
+
+    /**
+     * 会话 ID 直接用作文件名，只接受安全字符
+     */
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * 按会话 ID 分段的存储锁
+     */
+    private final ReentrantLock[] storageLocks = new ReentrantLock[LOCK_STRIPES];
+
+    {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            storageLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 会话缓存（读取无锁；淘汰时按最后访问时间挑选）
+     */
+    private final ConcurrentHashMap<String, CachedSession> sessionCache = new ConcurrentHashMap<>();
+
+    private volatile SessionIndex sessionIndex;
+
+    private volatile SessionStore sessionStore;
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * 每个会话已落盘的位置（快照 + 日志），用于判断本次保存是否只是追加
+     */
+    private final Map<String, PersistedState> persistedStates = new ConcurrentHashMap<>();
+
+    /**
+     * 待写会话（会话 ID → 第一次被标记的时间）
+     */
+    private final ConcurrentHashMap<String, Long> dirtySince = new ConcurrentHashMap<>();
+
+    private volatile ScheduledThreadPoolExecutor flusher;
+
+    private final AtomicLong dirtyMarks = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushLagMs = new AtomicLong();
+    private final AtomicLong inlineFlushes = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+
+    /**
+     * 写盘失败后重试间隔的上限
+     */
+    private static final long MAX_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 写盘抛出非 IO 异常（会话数据本身有问题）时最多尝试的次数
+     */
+    private static final int MAX_FLUSH_ATTEMPTS = 10;
+
+    /**
+     * 已交给后台线程的淘汰（请求线程遇到待写会话时不在本线程写盘）
+     */
+    private final AtomicBoolean evictionQueued = new AtomicBoolean();
+
+    /**
+     * 缓存中的会话
+     */
+    private static final class CachedSession {
+        private final ChatSession session;
+        private volatile long lastAccess = System.currentTimeMillis();
+        /** 正在处理的请求数（大于 0 时不淘汰） */
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private CachedSession(ChatSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * 已落盘的位置
+     */
+    private static final class PersistedState {
+        /** 已落盘的消息数 */
+        private int messageCount;
+        /** 最后一条已落盘消息的 ID */
+        private String lastMessageId;
+        /** 快照之后追加到日志的消息数 */
+        private int journaled;
+        /** 快照中的标题（标题不进日志，改标题需要重写快照） */
+        private String title;
+    }
 
     /**
      * 初始化存储目录
@@ -37,119 +238,724 @@ public class SessionManager {
                 log.info("✅ Session storage directory created: {}", storagePath);
             }
         }
-        loadAllSessions();
+        log.info("📇 Session index: {} sessions", index().size());
+        flusher().scheduleWithFixedDelay(() -> evictSessions(true), 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 会话索引（第一次用到时加载，索引文件不存在时从会话文件重建）
+     */
+    private SessionIndex index() {
+        SessionIndex index = sessionIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = sessionIndex;
+                if (index == null) {
+                    index = new SessionIndex(new File(storagePath, SessionIndex.FILE_NAME).toPath(), objectMapper);
+                    try {
+                        if (!index.load()) {
+                            rebuildIndex(index);
+                        }
+                    } catch (IOException e) {
+                        log.error("❌ Failed to load session index", e);
+                    }
+                    sessionIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 会话存储（第一次用到时打开）
+     */
+    private SessionStore store() {
+        SessionStore store = sessionStore;
+        if (store == null) {
+            synchronized (this) {
+                store = sessionStore;
+                if (store == null) {
+                    try {
+                        store = openStore();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to open session store: " + storagePath, e);
+                    }
+                    sessionStore = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    private SessionStore openStore() throws IOException {
+        Path dir = new File(storagePath).toPath();
+        FileSessionStore files = new FileSessionStore(dir, objectMapper);
+        if (KeyValueStores.isFileBackend(storageBackend)) {
+            return files;
+        }
+        SessionStore store = new KeyValueSessionStore(
+                KeyValueStores.open(storageBackend, dir, FileSessionStore.SNAPSHOT_SUFFIX), objectMapper);
+        if (store.sessionIds().isEmpty() && !files.sessionIds().isEmpty()) {
+            int migrated = SessionStoreMigration.migrate(files, store, objectMapper);
+            log.info("📦 Migrated {} sessions from JSON files to the {} store (files kept)", migrated, store.name());
+        }
+        return store;
     }
 
     /**
      * 获取或创建会话
      */
     public ChatSession getOrCreateSession(String sessionId) {
+        return resolveSession(sessionId, false);
+    }
+
+    /**
+     * 获取或创建会话，并在请求处理期间钉住它（不被淘汰），用完后调用 releaseSession
+     */
+    public ChatSession acquireSession(String sessionId) {
+        return resolveSession(sessionId, true);
+    }
+
+    /**
+     * 请求处理完毕，解除 acquireSession 的钉住
+     */
+    public void releaseSession(ChatSession session) {
+        CachedSession cached = sessionCache.get(session.getSessionId());
+        if (cached != null && cached.session == session) {
+            cached.inUse.updateAndGet(count -> Math.max(0, count - 1));
+        }
+    }
+
+    /**
+     * 同一会话 ID 始终解析到缓存中的同一个对象：加载和淘汰都持有该会话的存储锁
+     */
+    private ChatSession resolveSession(String sessionId, boolean pin) {
+        if (sessionId != null && !sessionId.isEmpty() && !isValidSessionId(sessionId)) {
+            throw new IllegalArgumentException("Invalid session ID: " + sessionId);
+        }
         // 先从缓存查找
-        if (sessionCache.containsKey(sessionId)) {
-            return sessionCache.get(sessionId);
+        ChatSession cached = sessionId != null ? cachedSession(sessionId, pin) : null;
+        if (cached != null) {
+            return cached;
         }
 
-        // 从文件加载
-        ChatSession session = loadSession(sessionId);
-        if (session == null) {
-            // 创建新会话
-            session = ChatSession.createNew();
-            if (sessionId != null && !sessionId.isEmpty()) {
-                session.setSessionId(sessionId);
+        cacheMisses.incrementAndGet();
+        ChatSession session;
+        if (sessionId == null || sessionId.isEmpty()) {
+            session = createSession(null);
+            sessionCache.put(session.getSessionId(), newCachedSession(session, pin));
+        } else {
+            ReentrantLock lock = lockFor(sessionId);
+            lock.lock();
+            try {
+                // 并发加载同一会话时只有第一个真正读存储
+                cached = cachedSession(sessionId, pin);
+                if (cached != null) {
+                    return cached;
+                }
+                session = loadSession(sessionId);
+                if (session == null) {
+                    session = createSession(sessionId);
+                }
+                sessionCache.put(sessionId, newCachedSession(session, pin));
+            } finally {
+                lock.unlock();
             }
-            log.info("📝 Created new session: {}", session.getSessionId());
         }
+        evictSessions(false);
+        return session;
+    }
 
-        sessionCache.put(session.getSessionId(), session);
+    private ChatSession createSession(String sessionId) {
+        ChatSession session = ChatSession.createNew();
+        if (sessionId != null) {
+            session.setSessionId(sessionId);
+        }
+        log.info("📝 Created new session: {}", session.getSessionId());
         return session;
     }
 
+    private CachedSession newCachedSession(ChatSession session, boolean pin) {
+        CachedSession cached = new CachedSession(session);
+        if (pin) {
+            cached.inUse.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * 会话 ID 是否可以用作文件名
+     */
+    public static boolean isValidSessionId(String sessionId) {
+        return sessionId != null && SESSION_ID.matcher(sessionId).matches();
+    }
+
+    private ReentrantLock lockFor(String sessionId) {
+        return storageLocks[(sessionId.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private ChatSession cachedSession(String sessionId) {
+        return cachedSession(sessionId, false);
+    }
+
+    /**
+     * 查缓存并刷新访问时间；钉住时与淘汰在同一个映射项上互斥，查到的会话不会随后被移出
+     */
+    private ChatSession cachedSession(String sessionId, boolean pin) {
+        CachedSession cached = pin
+                ? sessionCache.computeIfPresent(sessionId, (id, current) -> {
+                    current.inUse.incrementAndGet();
+                    return current;
+                })
+                : sessionCache.get(sessionId);
+        if (cached == null) {
+            return null;
+        }
+        cached.lastAccess = System.currentTimeMillis();
+        return cached.session;
+    }
+
+    /**
+     * 放入缓存（已缓存同一对象时只刷新访问时间；已缓存另一个对象时以缓存中的为准，不替换）
+     */
+    private void cache(ChatSession session) {
+        sessionCache.compute(session.getSessionId(), (id, cached) -> {
+            if (cached == null) {
+                return new CachedSession(session);
+            }
+            if (cached.session == session) {
+                cached.lastAccess = System.currentTimeMillis();
+            } else {
+                log.warn("⚠️ Stale session instance ignored: {}", id);
+            }
+            return cached;
+        });
+    }
+
+    /**
+     * 淘汰超出数量上限或空闲过久的会话；待写的会话先写盘，正在处理请求的会话不淘汰
+     *
+     * @param flushInline 是否在当前线程写盘（后台线程）；请求线程遇到待写会话时交给后台线程淘汰
+     */
+    private void evictSessions(boolean flushInline) {
+        int limit = maxCachedSessions != null && maxCachedSessions > 0 ? maxCachedSessions : 500;
+        long idleBefore = maxIdleMinutes != null && maxIdleMinutes > 0
+                ? System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(maxIdleMinutes) : Long.MIN_VALUE;
+        int excess = sessionCache.size() - limit;
+        List<CachedSession> victims = new ArrayList<>();
+        if (excess > 0) {
+            // 超出上限：最久未访问的先淘汰
+            List<CachedSession> all = new ArrayList<>(sessionCache.values());
+            all.sort(Comparator.comparingLong(cached -> cached.lastAccess));
+            for (CachedSession cached : all) {
+                if (excess <= 0 && cached.lastAccess >= idleBefore) {
+                    break;
+                }
+                if (cached.inUse.get() > 0) {
+                    continue;
+                }
+                victims.add(cached);
+                excess--;
+            }
+        } else {
+            for (CachedSession cached : sessionCache.values()) {
+                if (cached.lastAccess < idleBefore && cached.inUse.get() == 0) {
+                    victims.add(cached);
+                }
+            }
+        }
+        boolean deferred = false;
+        for (CachedSession victim : victims) {
+            String sessionId = victim.session.getSessionId();
+            if (dirtySince.containsKey(sessionId)) {
+                if (!flushInline) {
+                    deferred = true;
+                    continue;
+                }
+                flush(sessionId);
+            }
+            ReentrantLock lock = lockFor(sessionId);
+            lock.lock();
+            try {
+                if (dirtySince.containsKey(sessionId) || sessionCache.get(sessionId) != victim) {
+                    continue;
+                }
+                // 与钉住在同一个映射项上判断：挑选之后被请求钉住的会话留在缓存中
+                if (sessionCache.computeIfPresent(sessionId,
+                        (id, cached) -> cached.inUse.get() > 0 ? cached : null) != null) {
+                    continue;
+                }
+                persistedStates.remove(sessionId);
+            } finally {
+                lock.unlock();
+            }
+            evictions.incrementAndGet();
+            log.debug("🧹 Session evicted from memory: {}", sessionId);
+        }
+        if (deferred && evictionQueued.compareAndSet(false, true)) {
+            try {
+                flusher().execute(() -> {
+                    evictionQueued.set(false);
+                    evictSessions(true);
+                });
+            } catch (RejectedExecutionException e) {
+                // 正在关闭：待写会话由 flushAll 写盘
+                evictionQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * 标记会话待写，由后台线程合并后写盘
+     */
+    public void markDirty(ChatSession session) {
+        cache(session);
+        index().update(SessionSummary.of(session));
+        dirtyMarks.incrementAndGet();
+        if (!Boolean.TRUE.equals(writeBehind) || flushDelayMs == null || flushDelayMs <= 0) {
+            saveSession(session);
+            return;
+        }
+        if (dirtySince.putIfAbsent(session.getSessionId(), System.currentTimeMillis()) != null) {
+            // 已在等待写盘：本次更新合并进去
+            return;
+        }
+        if (maxPending != null && dirtySince.size() > maxPending) {
+            inlineFlushes.incrementAndGet();
+            flush(session.getSessionId());
+            return;
+        }
+        flusher().schedule(() -> flush(session.getSessionId()), flushDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写出一个待写会话（已被写出或删除时什么都不做）
+     */
+    private void flush(String sessionId) {
+        flush(sessionId, 0);
+    }
+
+    /**
+     * 写出一个待写会话
+     *
+     * 写盘失败时会话重新标记为待写（更新仍在内存中，也不会被淘汰），按失败次数退避后重试；
+     * IO 失败（磁盘满、存储不可用）一直重试，其他异常最多尝试 MAX_FLUSH_ATTEMPTS 次
+     *
+     * @param failures 此前连续写盘失败的次数
+     */
+    private void flush(String sessionId, int failures) {
+        // 取待写标记、写盘和失败后重新标记都持有存储锁：淘汰看到的要么是已写盘，要么仍是待写
+        ReentrantLock lock = lockFor(sessionId);
+        lock.lock();
+        long since;
+        long start = System.nanoTime();
+        try {
+            Long marked = dirtySince.remove(sessionId);
+            ChatSession session = marked != null ? cachedSession(sessionId) : null;
+            if (session == null) {
+                return;
+            }
+            since = marked;
+            try {
+                writeSession(session);
+            } catch (IOException e) {
+                flushFailures.incrementAndGet();
+                long delay = retryDelay(failures + 1);
+                log.error("❌ Session flush failed: {} (attempt {}), retrying in {}ms",
+                        sessionId, failures + 1, delay, e);
+                retry(sessionId, since, failures + 1, delay);
+                return;
+            } catch (RuntimeException e) {
+                // 会话数据本身写不出去，重试多次仍失败时放弃（会话再次更新时重新标记）
+                flushFailures.incrementAndGet();
+                if (failures + 1 >= MAX_FLUSH_ATTEMPTS) {
+                    log.error("❌ Session flush abandoned after {} attempts: {}", failures + 1, sessionId, e);
+                    return;
+                }
+                long delay = retryDelay(failures + 1);
+                log.warn("⚠️ Session flush failed: {} (attempt {}), retrying in {}ms: {}",
+                        sessionId, failures + 1, delay, e.toString());
+                retry(sessionId, since, failures + 1, delay);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        long elapsed = System.nanoTime() - start;
+        flushes.incrementAndGet();
+        flushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        maxFlushLagMs.accumulateAndGet(System.currentTimeMillis() - since, Math::max);
+    }
+
+    /**
+     * 重新标记待写并安排重试（期间请求线程再次标记时，由它安排的写入代替本次重试）
+     */
+    private void retry(String sessionId, long since, int failures, long delayMs) {
+        if (flusher().isShutdown()) {
+            // 正在关闭：不再重试，留下记录
+            log.error("❌ Session not saved before shutdown: {}", sessionId);
+            return;
+        }
+        if (dirtySince.putIfAbsent(sessionId, since) == null) {
+            flusher().schedule(() -> flush(sessionId, failures), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 第 n 次失败后的重试间隔：从合并窗口起每次翻倍，不超过 MAX_RETRY_DELAY_MS
+     */
+    private long retryDelay(int failures) {
+        long base = flushDelayMs != null && flushDelayMs > 0 ? flushDelayMs : 1000L;
+        return Math.min(MAX_RETRY_DELAY_MS, base << Math.min(failures - 1, 16));
+    }
+
+    /**
+     * 应用关闭时写完待写会话并关闭存储
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+        SessionStore store = sessionStore;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.error("❌ Failed to close session store", e);
+            }
+        }
+    }
+
+    /**
+     * 写出全部待写会话
+     */
+    public void flushAll() {
+        ScheduledThreadPoolExecutor executor = flusher;
+        if (executor != null) {
+            // 不再等待合并窗口：排队中的写入在这里直接做，正在进行的写入等它完成
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int pending = dirtySince.size();
+        for (String sessionId : new ArrayList<>(dirtySince.keySet())) {
+            flush(sessionId);
+        }
+        if (pending > 0) {
+            log.info("💾 Flushed {} pending sessions", pending);
+        }
+    }
+
+    private ScheduledThreadPoolExecutor flusher() {
+        ScheduledThreadPoolExecutor executor = flusher;
+        if (executor == null) {
+            synchronized (this) {
+                executor = flusher;
+                if (executor == null) {
+                    executor = new ScheduledThreadPoolExecutor(1, r -> {
+                        Thread t = new Thread(r, "SessionFlusher");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+                    flusher = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 延迟写统计（监控用）
+     */
+    public Map<String, Object> getPersistenceStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long flushCount = flushes.get();
+        stats.put("backend", storageBackend);
+        stats.put("writeBehind", Boolean.TRUE.equals(writeBehind));
+        stats.put("queueDepth", dirtySince.size());
+        stats.put("dirtyMarks", dirtyMarks.get());
+        stats.put("flushes", flushCount);
+        stats.put("coalesced", Math.max(0, dirtyMarks.get() - flushCount - dirtySince.size()));
+        stats.put("inlineFlushes", inlineFlushes.get());
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("avgFlushMs", flushCount > 0 ? flushNanos.get() / flushCount / 1_000_000.0 : 0.0);
+        stats.put("maxFlushMs", maxFlushNanos.get() / 1_000_000.0);
+        stats.put("maxFlushLagMs", maxFlushLagMs.get());
+        stats.put("cachedSessions", getCachedSessionCount());
+        stats.put("indexedSessions", getSessionCount());
+        stats.put("cacheMisses", cacheMisses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
     /**
      * 保存会话
+     * 
+     * 自上次保存以来只在末尾追加了消息时，只把新消息追加到日志；否则重写快照
      */
     public void saveSession(ChatSession session) {
         try {
-            File file = new File(storagePath, session.getSessionId() + ".json");
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, session);
-            sessionCache.put(session.getSessionId(), session);
-            log.debug("💾 Session saved: {}", session.getSessionId());
+            writeSession(session);
         } catch (IOException e) {
             log.error("❌ Failed to save session: {}", session.getSessionId(), e);
         }
     }
 
     /**
-     * 从文件加载会话
+     * 在会话的存储锁和会话对象的锁内写盘，失败时抛给调用方
+     */
+    private void writeSession(ChatSession session) throws IOException {
+        ReentrantLock lock = lockFor(session.getSessionId());
+        lock.lock();
+        try {
+            synchronized (session) {
+                persist(session);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写日志或快照（持有会话的存储锁和会话对象的锁）
+     */
+    private void persist(ChatSession session) throws IOException {
+        PersistedState state = persistedStates.get(session.getSessionId());
+        if (state != null && isAppendOnly(session, state)) {
+            int newMessages = session.getMessageCount() - state.messageCount;
+            if (newMessages > 0) {
+                List<ConversationMessage> hot = session.getMessages();
+                List<ConversationMessage> appended = hot.subList(hot.size() - newMessages, hot.size());
+                store().appendJournal(session.getSessionId(), session.getSnapshotVersion(), state.messageCount,
+                        appended, "always".equalsIgnoreCase(fsync));
+                state.messageCount = session.getMessageCount();
+                state.lastMessageId = appended.get(appended.size() - 1).getMessageId();
+                state.journaled += newMessages;
+            }
+            if (state.journaled < snapshotEvery
+                    && session.getMessages().size() - hotMessages < archiveBatch) {
+                cache(session);
+                index().put(SessionSummary.of(session));
+                log.debug("💾 Session journaled: {} (+{} messages)", session.getSessionId(), newMessages);
+                return;
+            }
+        }
+        writeSnapshot(session);
+        cache(session);
+        index().put(SessionSummary.of(session));
+        log.debug("💾 Session saved: {}", session.getSessionId());
+    }
+
+    /**
+     * 上次落盘之后，会话是否只在末尾追加了消息
+     */
+    private boolean isAppendOnly(ChatSession session, PersistedState state) {
+        int count = session.getMessageCount();
+        if (count < state.messageCount || !Objects.equals(state.title, session.getTitle())) {
+            return false;
+        }
+        if (state.messageCount == 0) {
+            return session.getArchivedCount() == 0;
+        }
+        int hotIndex = state.messageCount - 1 - session.getArchivedCount();
+        return hotIndex >= 0 && hotIndex < session.getMessages().size()
+                && Objects.equals(state.lastMessageId, session.getMessages().get(hotIndex).getMessageId());
+    }
+
+    /**
+     * 重写快照：先归档溢出的旧消息，再写会话 JSON（文件后端为临时文件 + 原子替换），同时清空日志
+     */
+    private void writeSnapshot(ChatSession session) throws IOException {
+        archiveColdMessages(session);
+        session.setSnapshotVersion(session.getSnapshotVersion() + 1);
+        store().writeSnapshot(session.getSessionId(), objectMapper.writeValueAsBytes(session),
+                !"none".equalsIgnoreCase(fsync));
+        markPersisted(session);
+    }
+
+    private void markPersisted(ChatSession session) {
+        PersistedState state = new PersistedState();
+        state.messageCount = session.getMessageCount();
+        List<ConversationMessage> hot = session.getMessages();
+        state.lastMessageId = hot.isEmpty() ? null : hot.get(hot.size() - 1).getMessageId();
+        state.title = session.getTitle();
+        persistedStates.put(session.getSessionId(), state);
+    }
+
+    /**
+     * 热消息超过 hot-messages + archive-batch 时，把最早的一批移入归档
+     */
+    private void archiveColdMessages(ChatSession session) throws IOException {
+        if (session.getArchivedCount() == 0) {
+            // 没有归档，或会话已清空、归档作废
+            store().deleteArchive(session.getSessionId());
+        }
+        int overflow = session.getMessages().size() - hotMessages;
+        if (overflow < archiveBatch) {
+            return;
+        }
+        // 先写归档块，写成功后才从热消息中移出：写失败时消息仍在内存中，下次保存重试
+        List<ConversationMessage> oldest = new ArrayList<>(session.getMessages().subList(0, overflow));
+        store().appendArchive(session.getSessionId(), session.getArchivedCount(), oldest,
+                !"none".equalsIgnoreCase(fsync));
+        session.archiveOldest(overflow);
+        log.debug("🧊 Archived {} messages of session {} ({} archived in total)",
+                oldest.size(), session.getSessionId(), session.getArchivedCount());
+    }
+
+    /**
+     * 读取已归档的消息 [from, to)（下标从会话第一条消息算起）
+     */
+    public List<ConversationMessage> loadArchivedMessages(ChatSession session, int from, int to) {
+        try {
+            return store().readArchive(session.getSessionId(), from, Math.min(to, session.getArchivedCount()));
+        } catch (IOException e) {
+            log.error("❌ Failed to read session archive: {}", session.getSessionId(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 导出完整会话（归档消息 + 热消息），不改变缓存中的会话
+     */
+    public ChatSession exportSession(String sessionId) {
+        ChatSession session = getOrCreateSession(sessionId);
+        List<ConversationMessage> messages = new ArrayList<>(session.getMessageCount());
+        synchronized (session) {
+            messages.addAll(loadArchivedMessages(session, 0, session.getArchivedCount()));
+            messages.addAll(session.getMessages());
+        }
+        return ChatSession.builder()
+                .sessionId(session.getSessionId())
+                .createdTime(session.getCreatedTime())
+                .lastActivityTime(session.getLastActivityTime())
+                .title(session.getTitle())
+                .messages(messages)
+                .messageCount(messages.size())
+                .archivedCount(0)
+                .build();
+    }
+
+    /**
+     * 从存储加载会话
      */
     public ChatSession loadSession(String sessionId) {
+        if (!isValidSessionId(sessionId)) {
+            return null;
+        }
+        ReentrantLock lock = lockFor(sessionId);
+        lock.lock();
         try {
-            File file = new File(storagePath, sessionId + ".json");
-            if (file.exists()) {
-                ChatSession session = objectMapper.readValue(file, ChatSession.class);
-                log.debug("📂 Session loaded from file: {}", sessionId);
+            byte[] snapshot = store().readSnapshot(sessionId);
+            if (snapshot != null) {
+                ChatSession session = readSession(snapshot);
+                log.debug("📂 Session loaded from storage: {}", sessionId);
                 return session;
             }
         } catch (IOException e) {
             log.error("❌ Failed to load session: {}", sessionId, e);
+        } finally {
+            lock.unlock();
         }
         return null;
     }
 
     /**
-     * 加载所有会话到缓存
+     * 读快照并重放日志
      */
-    public void loadAllSessions() {
-        File dir = new File(storagePath);
-        if (!dir.exists()) {
-            return;
+    private ChatSession readSession(byte[] snapshot) throws IOException {
+        ChatSession session = objectMapper.readValue(snapshot, ChatSession.class);
+        if (session.getMessages() == null) {
+            session.setMessages(new ArrayList<>());
         }
+        int replayed = store().replayJournal(session);
+        if (replayed > 0) {
+            log.debug("📜 Replayed {} journaled messages of session {}", replayed, session.getSessionId());
+        }
+        markPersisted(session);
+        persistedStates.get(session.getSessionId()).journaled = replayed;
+        return session;
+    }
 
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
-        if (files != null) {
-            for (File file : files) {
-                try {
-                    ChatSession session = objectMapper.readValue(file, ChatSession.class);
-                    sessionCache.put(session.getSessionId(), session);
-                    log.debug("✅ Loaded session: {}", session.getSessionId());
-                } catch (IOException e) {
-                    log.error("❌ Failed to load session file: {}", file.getName(), e);
+    /**
+     * 从会话存储重建索引（升级后第一次启动，或索引文件丢失）
+     */
+    private void rebuildIndex(SessionIndex index) throws IOException {
+        for (String sessionId : store().sessionIds()) {
+            try {
+                byte[] snapshot = store().readSnapshot(sessionId);
+                if (snapshot != null) {
+                    ChatSession session = readSession(snapshot);
+                    persistedStates.remove(session.getSessionId());
+                    index.update(SessionSummary.of(session));
                 }
+            } catch (IOException e) {
+                log.error("❌ Failed to index session: {}", sessionId, e);
             }
         }
-        log.info("✅ Loaded {} sessions from storage", sessionCache.size());
+        if (new File(storagePath).exists()) {
+            index.compact();
+        }
+        log.info("📇 Session index rebuilt from {} stored sessions", index.size());
     }
 
     /**
      * 删除会话
      */
     public boolean deleteSession(String sessionId) {
+        if (!isValidSessionId(sessionId)) {
+            return false;
+        }
+        ReentrantLock lock = lockFor(sessionId);
+        lock.lock();
+        boolean pending = dirtySince.remove(sessionId) != null;
         try {
-            File file = new File(storagePath, sessionId + ".json");
-            if (file.exists()) {
-                boolean deleted = file.delete();
-                if (deleted) {
-                    sessionCache.remove(sessionId);
-                    log.info("🗑️  Session deleted: {}", sessionId);
-                    return true;
-                }
+            if (store().delete(sessionId)) {
+                persistedStates.remove(sessionId);
+                uncache(sessionId);
+                index().remove(sessionId);
+                log.info("🗑️  Session deleted: {}", sessionId);
+                return true;
+            } else if (pending) {
+                // 从未写盘的新会话
+                uncache(sessionId);
+                index().remove(sessionId);
+                return true;
             }
         } catch (Exception e) {
             log.error("❌ Failed to delete session: {}", sessionId, e);
+        } finally {
+            lock.unlock();
         }
         return false;
     }
 
+    private void uncache(String sessionId) {
+        sessionCache.remove(sessionId);
+    }
+
     /**
-     * 获取所有会话列表
+     * 获取所有会话的摘要（按最后活动时间倒序，来自索引，不加载会话）
      */
-    public List<ChatSession> getAllSessions() {
-        return new ArrayList<>(sessionCache.values());
+    public List<SessionSummary> getAllSessions() {
+        return index().list();
     }
 
     /**
      * 获取会话总数
      */
     public int getSessionCount() {
+        return index().size();
+    }
+
+    /**
+     * 内存中缓存的会话数
+     */
+    public int getCachedSessionCount() {
         return sessionCache.size();
     }
 
@@ -157,16 +963,29 @@ public class SessionManager {
      * 清空所有会话
      */
     public void clearAllSessions() {
-        File dir = new File(storagePath);
-        if (dir.exists()) {
-            File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
-            if (files != null) {
-                for (File file : files) {
-                    file.delete();
-                }
+        // 按固定顺序取全部分段锁，与单个会话的写盘互斥
+        for (ReentrantLock lock : storageLocks) {
+            lock.lock();
+        }
+        try {
+            clearStorage();
+        } finally {
+            for (ReentrantLock lock : storageLocks) {
+                lock.unlock();
             }
         }
+    }
+
+    private void clearStorage() {
+        dirtySince.clear();
         sessionCache.clear();
+        persistedStates.clear();
+        try {
+            store().clear();
+            index().clear();
+        } catch (IOException e) {
+            log.error("❌ Failed to clear session storage", e);
+        }
         log.info("🗑️  All sessions cleared");
     }
 }
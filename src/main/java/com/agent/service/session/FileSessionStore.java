@@ -0,0 +1,142 @@
+package com.agent.service.session;
+
+import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 文件目录会话存储（兼容实现）
+ *
+ * 原有布局，每个会话最多三个文件：
+ * - {sessionId}.json：快照（临时文件 + 原子替换）
+ * - {sessionId}.journal：消息日志（SessionJournal）
+ * - {sessionId}.archive：压缩归档（SessionArchive）
+ */
+public final class FileSessionStore implements SessionStore {
+
+    public static final String SNAPSHOT_SUFFIX = ".json";
+
+    private final Path dir;
+
+    private final ObjectMapper objectMapper;
+
+    public FileSessionStore(Path dir, ObjectMapper objectMapper) {
+        this.dir = dir;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] readSnapshot(String sessionId) throws IOException {
+        try {
+            return Files.readAllBytes(snapshotOf(sessionId));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void writeSnapshot(String sessionId, byte[] snapshot, boolean fsync) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(sessionId + SNAPSHOT_SUFFIX + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(snapshot);
+            if (fsync) {
+                out.getFD().sync();
+            }
+        }
+        Files.move(tmp, snapshotOf(sessionId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // 进程在这里退出时日志残留：版本号已过期，重放时被忽略
+        journalOf(sessionId).reset();
+    }
+
+    @Override
+    public void appendJournal(String sessionId, long version, int firstIndex, List<ConversationMessage> messages,
+            boolean fsync) throws IOException {
+        journalOf(sessionId).append(version, firstIndex, messages, fsync);
+    }
+
+    @Override
+    public int replayJournal(ChatSession session) throws IOException {
+        return journalOf(session.getSessionId()).replay(session);
+    }
+
+    @Override
+    public void appendArchive(String sessionId, int archivedCount, List<ConversationMessage> messages,
+            boolean fsync) throws IOException {
+        archiveOf(sessionId).append(archivedCount, messages, fsync);
+    }
+
+    @Override
+    public List<ConversationMessage> readArchive(String sessionId, int from, int to) throws IOException {
+        return archiveOf(sessionId).read(from, to);
+    }
+
+    @Override
+    public void deleteArchive(String sessionId) throws IOException {
+        archiveOf(sessionId).delete();
+    }
+
+    @Override
+    public boolean delete(String sessionId) throws IOException {
+        boolean existed = Files.deleteIfExists(snapshotOf(sessionId));
+        archiveOf(sessionId).delete();
+        journalOf(sessionId).reset();
+        return existed;
+    }
+
+    @Override
+    public List<String> sessionIds() {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(SNAPSHOT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>(files.length);
+        for (File file : files) {
+            ids.add(file.getName().substring(0, file.getName().length() - SNAPSHOT_SUFFIX.length()));
+        }
+        return ids;
+    }
+
+    @Override
+    public void clear() {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(SNAPSHOT_SUFFIX)
+                || name.endsWith(SessionArchive.SUFFIX) || name.endsWith(SessionJournal.SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Path snapshotOf(String sessionId) {
+        return dir.resolve(sessionId + SNAPSHOT_SUFFIX);
+    }
+
+    private SessionJournal journalOf(String sessionId) {
+        return new SessionJournal(dir.resolve(sessionId + SessionJournal.SUFFIX), objectMapper);
+    }
+
+    private SessionArchive archiveOf(String sessionId) {
+        return new SessionArchive(dir.resolve(sessionId + SessionArchive.SUFFIX), objectMapper);
+    }
+}
@@ -0,0 +1,201 @@
+package com.agent.service.session;
+
+import com.agent.common.storage.KeyValueStore;
+import com.agent.common.storage.WriteBatch;
+import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 键值存储上的会话存储
+ *
+ * 所有会话放在一个 KeyValueStore 里（默认是单文件的 LogKeyValueStore），
+ * 会话数再多也不会产生大量小文件和目录扫描。键布局：
+ *
+ *   s/{sessionId}              快照（会话 JSON）
+ *   j/{sessionId}/{下标}       一条日志记录（SessionJournal.Record 的 JSON）
+ *   a/{sessionId}/{起始下标}    一个归档压缩块（与 .archive 文件中的块格式相同）
+ *
+ * 下标补零到 10 位，前缀扫描的顺序就是消息顺序。
+ * 写快照与删除旧日志在同一个批量写里完成；后端支持原子批量写时两者要么都生效要么都不生效，
+ * 不支持时残留的日志记录版本号已过期，重放时被忽略
+ */
+public final class KeyValueSessionStore implements SessionStore {
+
+    private static final String SNAPSHOT = "s/";
+    private static final String JOURNAL = "j/";
+    private static final String ARCHIVE = "a/";
+
+    private final KeyValueStore store;
+
+    private final ObjectMapper objectMapper;
+
+    public KeyValueSessionStore(KeyValueStore store, ObjectMapper objectMapper) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] readSnapshot(String sessionId) throws IOException {
+        return store.get(SNAPSHOT + sessionId);
+    }
+
+    @Override
+    public void writeSnapshot(String sessionId, byte[] snapshot, boolean fsync) throws IOException {
+        WriteBatch batch = new WriteBatch().put(SNAPSHOT + sessionId, snapshot);
+        for (String key : store.keys(journalPrefix(sessionId))) {
+            batch.delete(key);
+        }
+        store.write(batch, fsync);
+    }
+
+    @Override
+    public void appendJournal(String sessionId, long version, int firstIndex, List<ConversationMessage> messages,
+            boolean fsync) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        WriteBatch batch = new WriteBatch();
+        for (int k = 0; k < messages.size(); k++) {
+            int index = firstIndex + k;
+            batch.put(journalPrefix(sessionId) + pad(index),
+                    objectMapper.writeValueAsBytes(new SessionJournal.Record(version, index, messages.get(k))));
+        }
+        store.write(batch, fsync);
+    }
+
+    @Override
+    public int replayJournal(ChatSession session) throws IOException {
+        int applied = 0;
+        for (String key : store.keys(journalPrefix(session.getSessionId()))) {
+            byte[] value = store.get(key);
+            if (value == null) {
+                continue;
+            }
+            SessionJournal.Record record = objectMapper.readValue(value, SessionJournal.Record.class);
+            if (record.getV() == session.getSnapshotVersion() && record.getI() == session.getMessageCount()
+                    && record.getM() != null) {
+                ConversationMessage message = record.getM();
+                session.getMessages().add(message);
+                session.setMessageCount(session.getMessageCount() + 1);
+                session.setLastActivityTime(Math.max(session.getLastActivityTime(), message.getTimestamp()));
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public void appendArchive(String sessionId, int archivedCount, List<ConversationMessage> messages,
+            boolean fsync) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        WriteBatch batch = new WriteBatch();
+        String prefix = archivePrefix(sessionId);
+        for (String key : store.keys(prefix)) {
+            // 快照未确认的残留块
+            if (Integer.parseInt(key.substring(prefix.length())) >= archivedCount) {
+                batch.delete(key);
+            }
+        }
+        batch.put(prefix + pad(archivedCount), SessionArchive.encodeBlock(objectMapper, messages));
+        store.write(batch, fsync);
+    }
+
+    @Override
+    public List<ConversationMessage> readArchive(String sessionId, int from, int to) throws IOException {
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<ConversationMessage> result = new ArrayList<>(to - from);
+        String prefix = archivePrefix(sessionId);
+        for (String key : store.keys(prefix)) {
+            int start = Integer.parseInt(key.substring(prefix.length()));
+            if (start >= to) {
+                break;
+            }
+            byte[] block = store.get(key);
+            if (block == null || start + SessionArchive.blockCount(block) <= from) {
+                continue;
+            }
+            List<ConversationMessage> messages = SessionArchive.decodeBlock(objectMapper, block);
+            for (int i = 0; i < messages.size(); i++) {
+                if (start + i >= from && start + i < to) {
+                    result.add(messages.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteArchive(String sessionId) throws IOException {
+        WriteBatch batch = new WriteBatch();
+        for (String key : store.keys(archivePrefix(sessionId))) {
+            batch.delete(key);
+        }
+        store.write(batch, false);
+    }
+
+    @Override
+    public boolean delete(String sessionId) throws IOException {
+        boolean existed = store.get(SNAPSHOT + sessionId) != null;
+        WriteBatch batch = new WriteBatch().delete(SNAPSHOT + sessionId);
+        for (String key : store.keys(journalPrefix(sessionId))) {
+            batch.delete(key);
+        }
+        for (String key : store.keys(archivePrefix(sessionId))) {
+            batch.delete(key);
+        }
+        store.write(batch, false);
+        return existed;
+    }
+
+    @Override
+    public List<String> sessionIds() throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (String key : store.keys(SNAPSHOT)) {
+            ids.add(key.substring(SNAPSHOT.length()));
+        }
+        return ids;
+    }
+
+    @Override
+    public void clear() throws IOException {
+        WriteBatch batch = new WriteBatch();
+        for (String prefix : new String[]{SNAPSHOT, JOURNAL, ARCHIVE}) {
+            for (String key : store.keys(prefix)) {
+                batch.delete(key);
+            }
+        }
+        store.write(batch, false);
+    }
+
+    @Override
+    public String name() {
+        return store.name();
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private static String journalPrefix(String sessionId) {
+        return JOURNAL + sessionId + "/";
+    }
+
+    private static String archivePrefix(String sessionId) {
+        return ARCHIVE + sessionId + "/";
+    }
+
+    private static String pad(int index) {
+        return String.format("%010d", index);
+    }
+}
@@ -0,0 +1,233 @@
+package com.agent.service.session;
+
+import com.agent.model.dto.ConversationMessage;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 会话冷存储（归档段）
+ *
+ * 长会话中较早的消息从 ChatSession 的热列表移到这里，堆内存不随会话长度增长。
+ * 文件布局：{storage-path}/{sessionId}.archive，由若干个只追加的压缩块组成：
+ *
+ *   [int 消息数][int 原始长度][int 压缩长度][deflate(消息 JSON 数组)] ...
+ *
+ * 读取时整个文件只读内存映射，按块头跳过不需要的块，只解压命中的块
+ * （导出、按相关度检索较早的对话时才会读）。
+ *
+ * 块数以会话快照中的 archivedCount 为准：写入快照前进程退出留下的多余块，
+ * 在下一次追加前被截掉。
+ */
+public final class SessionArchive {
+
+    public static final String SUFFIX = ".archive";
+
+    private static final int HEADER_BYTES = 12;
+
+    private static final TypeReference<List<ConversationMessage>> MESSAGE_LIST =
+            new TypeReference<List<ConversationMessage>>() {
+            };
+
+    private final Path file;
+
+    private final ObjectMapper objectMapper;
+
+    public SessionArchive(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * 归档文件大小（字节）
+     */
+    public long sizeInBytes() throws IOException {
+        return exists() ? Files.size(file) : 0;
+    }
+
+    /**
+     * 追加一批消息为一个压缩块
+     *
+     * @param archivedCount 追加前会话记录的已归档消息数（超出部分是未提交的残留，先截掉）
+     * @param messages      按时间顺序的消息
+     * @param fsync         是否在返回前落盘
+     */
+    public void append(int archivedCount, List<ConversationMessage> messages, boolean fsync) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        ByteBuffer block = ByteBuffer.wrap(encodeBlock(objectMapper, messages));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long end = committedEnd(channel, archivedCount);
+            channel.truncate(end);
+            channel.position(end);
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * 读取 [from, to) 范围内的已归档消息（下标从会话的第一条消息算起）
+     */
+    public List<ConversationMessage> read(int from, int to) throws IOException {
+        if (from >= to || !exists()) {
+            return Collections.emptyList();
+        }
+        List<ConversationMessage> result = new ArrayList<>(to - from);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return result;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int index = 0;
+            while (index < to && buffer.remaining() >= HEADER_BYTES) {
+                int count = buffer.getInt();
+                int rawLength = buffer.getInt();
+                int compressedLength = buffer.getInt();
+                if (compressedLength > buffer.remaining()) {
+                    break;
+                }
+                if (index + count <= from) {
+                    // 整块在范围之前：不解压，直接跳过
+                    buffer.position(buffer.position() + compressedLength);
+                } else {
+                    byte[] compressed = new byte[compressedLength];
+                    buffer.get(compressed);
+                    List<ConversationMessage> block = objectMapper.readValue(inflate(compressed, rawLength),
+                            MESSAGE_LIST);
+                    for (int i = 0; i < block.size(); i++) {
+                        if (index + i >= from && index + i < to) {
+                            result.add(block.get(i));
+                        }
+                    }
+                }
+                index += count;
+            }
+        }
+        return result;
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 编码一个压缩块（块头 + deflate(消息 JSON 数组)），键值存储后端也用同一格式
+     */
+    static byte[] encodeBlock(ObjectMapper objectMapper, List<ConversationMessage> messages) throws IOException {
+        byte[] raw = objectMapper.writeValueAsBytes(messages);
+        byte[] compressed = deflate(raw);
+        ByteBuffer block = ByteBuffer.allocate(HEADER_BYTES + compressed.length);
+        block.putInt(messages.size()).putInt(raw.length).putInt(compressed.length).put(compressed);
+        return block.array();
+    }
+
+    /**
+     * 解码 encodeBlock 生成的压缩块
+     */
+    static List<ConversationMessage> decodeBlock(ObjectMapper objectMapper, byte[] block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        buffer.getInt();
+        int rawLength = buffer.getInt();
+        int compressedLength = buffer.getInt();
+        if (compressedLength != buffer.remaining()) {
+            throw new IOException("Corrupt session archive block");
+        }
+        byte[] compressed = new byte[compressedLength];
+        buffer.get(compressed);
+        return objectMapper.readValue(inflate(compressed, rawLength), MESSAGE_LIST);
+    }
+
+    /**
+     * 压缩块中的消息数（只读块头）
+     */
+    static int blockCount(byte[] block) {
+        return ByteBuffer.wrap(block).getInt();
+    }
+
+    /**
+     * 前 archivedCount 条消息所占的字节数（之后的块未被快照确认）
+     */
+    private long committedEnd(FileChannel channel, int archivedCount) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        int index = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (index < archivedCount && position + HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int count = header.getInt();
+            header.getInt();
+            int compressedLength = header.getInt();
+            position += HEADER_BYTES + compressedLength;
+            index += count;
+        }
+        return Math.min(position, size);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != rawLength) {
+                throw new IOException("Corrupt session archive block");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt session archive block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.agent.service.session;
+
+import com.agent.model.dto.SessionSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话索引
+ *
+ * 所有会话的摘要（标题、时间、消息数）常驻内存，会话列表和统计不再加载完整会话。
+ * 文件布局：{storage-path}/sessions.index，每行一条记录：
+ *
+ *   {"id":会话ID,"s":{摘要}}     （s 为 null 表示会话已删除）
+ *
+ * 会话写盘时追加一行，同一会话以最后一行为准；
+ * 行数超过会话数的两倍时整体重写（临时文件 + 原子替换）
+ */
+public final class SessionIndex {
+
+    public static final String FILE_NAME = "sessions.index";
+
+    private static final int COMPACT_SLACK = 64;
+
+    /**
+     * 一条索引记录
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Record {
+        /** 会话 ID */
+        private String id;
+        /** 摘要（null 表示删除） */
+        private SessionSummary s;
+    }
+
+    private final Path file;
+
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<String, SessionSummary> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * 文件中的记录行数
+     */
+    private int lines;
+
+    public SessionIndex(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 读取索引文件
+     *
+     * @return 索引文件是否存在（不存在时需要从会话文件重建）
+     */
+    public synchronized boolean load() throws IOException {
+        summaries.clear();
+        lines = 0;
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Record record;
+                try {
+                    record = objectMapper.readValue(line, Record.class);
+                } catch (IOException e) {
+                    // 写入中途退出留下的半行：下次重写时丢掉
+                    continue;
+                }
+                lines++;
+                if (record.getS() != null) {
+                    summaries.put(record.getId(), record.getS());
+                } else {
+                    summaries.remove(record.getId());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只更新内存中的摘要（会话尚未写盘）
+     */
+    public void update(SessionSummary summary) {
+        summaries.put(summary.getSessionId(), summary);
+    }
+
+    /**
+     * 更新摘要并追加到索引文件（会话写盘后调用）
+     */
+    public synchronized void put(SessionSummary summary) throws IOException {
+        summaries.put(summary.getSessionId(), summary);
+        append(new Record(summary.getSessionId(), summary));
+    }
+
+    public synchronized void remove(String sessionId) throws IOException {
+        if (summaries.remove(sessionId) != null) {
+            append(new Record(sessionId, null));
+        }
+    }
+
+    public SessionSummary get(String sessionId) {
+        return summaries.get(sessionId);
+    }
+
+    public int size() {
+        return summaries.size();
+    }
+
+    public Collection<SessionSummary> summaries() {
+        return summaries.values();
+    }
+
+    /**
+     * 按最后活动时间倒序的摘要列表
+     */
+    public List<SessionSummary> list() {
+        List<SessionSummary> list = new ArrayList<>(summaries.values());
+        list.sort(Comparator.comparingLong(SessionSummary::getLastActivityTime).reversed());
+        return list;
+    }
+
+    /**
+     * 只保留每个会话最新的一行，重写索引文件
+     */
+    public synchronized void compact() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 * Math.max(1, summaries.size()));
+        for (SessionSummary summary : summaries.values()) {
+            out.write(objectMapper.writeValueAsBytes(new Record(summary.getSessionId(), summary)));
+            out.write('\n');
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, out.toByteArray());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lines = summaries.size();
+    }
+
+    /**
+     * 清空索引
+     */
+    public synchronized void clear() throws IOException {
+        summaries.clear();
+        lines = 0;
+        Files.deleteIfExists(file);
+    }
+
+    private void append(Record record) throws IOException {
+        if (lines > 2 * summaries.size() + COMPACT_SLACK) {
+            // 内存中已是最新状态，重写后不必再追加
+            compact();
+            return;
+        }
+        byte[] line = objectMapper.writeValueAsBytes(record);
+        ByteBuffer buffer = ByteBuffer.allocate(line.length + 1);
+        buffer.put(line).put((byte) '\n');
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        lines++;
+    }
+}
@@ -0,0 +1,157 @@
+package com.agent.service.session;
+
+import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 会话消息日志（只追加）
+ *
+ * 文件布局：{storage-path}/{sessionId}.journal，每行一条记录：
+ *
+ *   {"v":快照版本,"i":消息下标,"m":{消息}}
+ *
+ * 每轮对话只追加新消息，不再重写整个会话 JSON；会话 JSON 作为快照定期重写，
+ * 重写后日志清空。加载时先读快照，再按顺序重放版本号等于快照版本、
+ * 下标正好接在快照之后的记录：
+ * - 快照已写入但日志未清空时，旧记录的版本号不同，被忽略
+ * - 进程退出留下的半行在重放时截掉，之后的追加从完整记录处继续
+ */
+public final class SessionJournal {
+
+    public static final String SUFFIX = ".journal";
+
+    /**
+     * 一条日志记录
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Record {
+        /** 记录所接续的快照版本 */
+        private long v;
+        /** 消息在会话中的下标（从第一条消息算起） */
+        private int i;
+        /** 消息 */
+        private ConversationMessage m;
+    }
+
+    private final Path file;
+
+    private final ObjectMapper objectMapper;
+
+    public SessionJournal(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * 日志文件大小（字节）
+     */
+    public long sizeInBytes() throws IOException {
+        return exists() ? Files.size(file) : 0;
+    }
+
+    /**
+     * 追加新消息
+     *
+     * @param version    会话当前的快照版本
+     * @param firstIndex 第一条消息的下标
+     * @param messages   按时间顺序的新消息
+     * @param fsync      是否在返回前落盘
+     */
+    public void append(long version, int firstIndex, List<ConversationMessage> messages, boolean fsync)
+            throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(256 * messages.size());
+        for (int k = 0; k < messages.size(); k++) {
+            lines.write(objectMapper.writeValueAsBytes(new Record(version, firstIndex + k, messages.get(k))));
+            lines.write('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * 把快照之后的记录重放到会话上
+     *
+     * @return 重放的消息数
+     */
+    public int replay(ChatSession session) throws IOException {
+        if (!exists()) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        int applied = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length) {
+                // 没有换行结尾的半行：写入中途退出留下的，截掉
+                truncate(start);
+                break;
+            }
+            Record record;
+            try {
+                record = objectMapper.readValue(new String(bytes, start, end - start, StandardCharsets.UTF_8),
+                        Record.class);
+            } catch (IOException e) {
+                truncate(start);
+                break;
+            }
+            if (record.getV() == session.getSnapshotVersion() && record.getI() == session.getMessageCount()
+                    && record.getM() != null) {
+                ConversationMessage message = record.getM();
+                session.getMessages().add(message);
+                session.setMessageCount(session.getMessageCount() + 1);
+                session.setLastActivityTime(Math.max(session.getLastActivityTime(), message.getTimestamp()));
+                applied++;
+            }
+            start = end + 1;
+        }
+        return applied;
+    }
+
+    /**
+     * 快照写入后清空日志
+     */
+    public void reset() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private void truncate(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.agent.service.session;
+
+import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 会话存储 SPI
+ *
+ * 一个会话由三部分组成：快照（会话 JSON）、快照之后的消息日志、较早消息的压缩归档。
+ * 实现：
+ * - FileSessionStore：原有的每会话多个文件的目录布局（兼容实现）
+ * - KeyValueSessionStore：全部会话放在一个嵌入式键值存储里，快照与清空日志是一次原子批量写
+ *
+ * 同一会话的调用由 SessionManager 串行化；不同会话可以并发调用
+ */
+public interface SessionStore extends Closeable {
+
+    /**
+     * 读取快照（不存在时返回 null）
+     */
+    byte[] readSnapshot(String sessionId) throws IOException;
+
+    /**
+     * 写入快照并丢弃该会话的消息日志
+     */
+    void writeSnapshot(String sessionId, byte[] snapshot, boolean fsync) throws IOException;
+
+    /**
+     * 追加消息日志
+     *
+     * @param version    会话当前的快照版本
+     * @param firstIndex 第一条消息的下标（从会话第一条消息算起）
+     */
+    void appendJournal(String sessionId, long version, int firstIndex, List<ConversationMessage> messages,
+            boolean fsync) throws IOException;
+
+    /**
+     * 把快照之后的日志重放到会话上
+     *
+     * @return 重放的消息数
+     */
+    int replayJournal(ChatSession session) throws IOException;
+
+    /**
+     * 追加一批归档消息
+     *
+     * @param archivedCount 追加前快照记录的已归档消息数（超出部分是未提交的残留，先丢弃）
+     */
+    void appendArchive(String sessionId, int archivedCount, List<ConversationMessage> messages, boolean fsync)
+            throws IOException;
+
+    /**
+     * 读取 [from, to) 范围内的已归档消息
+     */
+    List<ConversationMessage> readArchive(String sessionId, int from, int to) throws IOException;
+
+    /**
+     * 删除归档（会话被清空时）
+     */
+    void deleteArchive(String sessionId) throws IOException;
+
+    /**
+     * 删除会话的全部数据
+     *
+     * @return 快照是否存在
+     */
+    boolean delete(String sessionId) throws IOException;
+
+    /**
+     * 所有有快照的会话 ID
+     */
+    List<String> sessionIds() throws IOException;
+
+    /**
+     * 删除所有会话
+     */
+    void clear() throws IOException;
+
+    /**
+     * 后端名称（日志和监控用）
+     */
+    String name();
+}
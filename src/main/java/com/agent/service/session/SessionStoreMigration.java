@@ -0,0 +1,84 @@
+package com.agent.service.session;
+
+import com.agent.common.storage.KeyValueStores;
+import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话存储迁移工具
+ *
+ * 把一个 SessionStore 中的全部会话复制到另一个（如 JSON 文件目录 → 嵌入式键值存储）：
+ * 读快照并重放日志，已归档的消息作为一个归档块写入目标，再写入不带日志的快照。
+ * 源存储不做改动，迁移失败可以直接重跑（目标中已有的同名会话被覆盖）。
+ *
+ * 命令行用法（应用停止时，以应用的 classpath 运行）：
+ *
+ *   SessionStoreMigration {storage-path} {from-backend} {to-backend}    例如 ./data/sessions file log
+ *
+ * 之后把 agent.session.storage-backend 改为目标后端。
+ * 以 log 后端启动且存储为空时，SessionManager 会自动做同样的迁移
+ */
+public final class SessionStoreMigration {
+
+    private SessionStoreMigration() {
+    }
+
+    /**
+     * @return 迁移的会话数
+     */
+    public static int migrate(SessionStore from, SessionStore to, ObjectMapper objectMapper) throws IOException {
+        int migrated = 0;
+        for (String sessionId : from.sessionIds()) {
+            byte[] snapshot = from.readSnapshot(sessionId);
+            if (snapshot == null) {
+                continue;
+            }
+            ChatSession session = objectMapper.readValue(snapshot, ChatSession.class);
+            if (session.getMessages() == null) {
+                session.setMessages(new ArrayList<>());
+            }
+            from.replayJournal(session);
+
+            to.delete(sessionId);
+            if (session.getArchivedCount() > 0) {
+                List<ConversationMessage> archived = from.readArchive(sessionId, 0, session.getArchivedCount());
+                to.appendArchive(sessionId, 0, archived, false);
+            }
+            to.writeSnapshot(sessionId, objectMapper.writeValueAsBytes(session), false);
+            migrated++;
+        }
+        return migrated;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: SessionStoreMigration <storage-path> <from-backend> <to-backend>");
+            System.exit(1);
+        }
+        if (args[1].equalsIgnoreCase(args[2])) {
+            System.err.println("Source and target backend must differ");
+            System.exit(1);
+        }
+        Path dir = Paths.get(args[0]);
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (SessionStore from = open(args[1], dir, objectMapper); SessionStore to = open(args[2], dir, objectMapper)) {
+            int migrated = migrate(from, to, objectMapper);
+            System.out.println("Migrated " + migrated + " sessions from " + from.name() + " to " + to.name());
+        }
+    }
+
+    private static SessionStore open(String backend, Path dir, ObjectMapper objectMapper) throws IOException {
+        if (KeyValueStores.isFileBackend(backend)) {
+            return new FileSessionStore(dir, objectMapper);
+        }
+        return new KeyValueSessionStore(KeyValueStores.open(backend, dir, FileSessionStore.SNAPSHOT_SUFFIX),
+                objectMapper);
+    }
+}
@@ -1,5 +1,6 @@
 package com.agent.tool.executor;
 
+import com.agent.common.concurrent.Futures;
 import com.agent.tool.model.ToolCall;
 import com.agent.tool.model.ToolDefinition;
 import com.agent.tool.model.ToolResult;
@@ -18,6 +19,7 @@ import java.util.concurrent.*;
  * - Timeout control and handling
  * - Detailed error reporting
  * - Execution metrics
+ * - Non-blocking async API: only the tool method itself occupies a thread
  */
 @Slf4j
 @Component
@@ -47,11 +49,48 @@ public class ToolExecutor {
      * @return tool execution result
      */
     public ToolResult execute(String toolName, String input) {
+        CompletableFuture<ToolResult> future = executeAsync(toolName, input);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            log.warn("Tool execution interrupted: {}", toolName);
+            return ToolResult.failure(toolName, "Tool execution was interrupted: " + e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return ToolResult.failure(toolName, "Execution error: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Execute a tool asynchronously with retry and timeout control
+     * 
+     * No thread waits on the result: the timeout and the retry backoff are
+     * timer callbacks, and a worker thread is only held while the tool method
+     * itself runs. Cancelling the returned future interrupts the running attempt.
+     * 
+     * @param toolName the tool to execute
+     * @param input    the input parameter
+     * @return future completing with the tool result (never exceptionally, unless cancelled)
+     */
+    public CompletableFuture<ToolResult> executeAsync(String toolName, String input) {
+        return executeAsync(ToolCall.builder().toolName(toolName).input(input).build());
+    }
+
+    /**
+     * Execute a ToolCall asynchronously with retry logic
+     */
+    public CompletableFuture<ToolResult> executeAsync(ToolCall toolCall) {
+        String toolName = toolCall.getToolName();
+
         // Validate tool existence
         if (!toolRegistry.hasTool(toolName)) {
             String error = "Tool not found: " + toolName;
             log.warn(error);
-            return ToolResult.failure(toolName, error);
+            ToolResult failure = ToolResult.failure(toolName, error);
+            failure.setCallId(toolCall.getCallId());
+            return CompletableFuture.completedFuture(failure);
         }
 
         ToolDefinition toolDef = toolRegistry.getTool(toolName);
@@ -60,95 +99,117 @@ public class ToolExecutor {
         long timeoutMs = toolDef != null && toolDef.getTimeoutMs() != null ? toolDef.getTimeoutMs()
                 : DEFAULT_TIMEOUT_MS;
 
-        return executeWithRetry(toolName, input, maxRetries, timeoutMs);
+        Execution execution = new Execution(toolCall, maxRetries, timeoutMs);
+        execution.attempt(1);
+        return execution.result;
     }
 
     /**
-     * Execute a tool with retry logic
+     * One retried, time-limited tool execution
      */
-    private ToolResult executeWithRetry(String toolName, String input, int maxRetries, long timeoutMs) {
-        int attemptCount = 0;
-        ToolResult lastError = null;
+    private final class Execution {
+        private final String toolName;
+        private final String input;
+        private final String callId;
+        private final int maxRetries;
+        private final long timeoutMs;
+        private final CompletableFuture<ToolResult> result = new CompletableFuture<>();
+
+        /**
+         * The attempt currently occupying a worker thread
+         */
+        private volatile Future<?> running;
+
+        private Execution(ToolCall toolCall, int maxRetries, long timeoutMs) {
+            this.toolName = toolCall.getToolName();
+            this.input = toolCall.getInput();
+            this.callId = toolCall.getCallId();
+            this.maxRetries = maxRetries;
+            this.timeoutMs = timeoutMs;
+            // Caller gave up (e.g. a discarded speculative call): stop the tool as well
+            result.whenComplete((r, e) -> {
+                Future<?> task = running;
+                if (result.isCancelled() && task != null) {
+                    task.cancel(true);
+                }
+            });
+        }
 
-        while (attemptCount <= maxRetries) {
-            attemptCount++;
+        private void attempt(int attemptCount) {
+            if (result.isDone()) {
+                return;
+            }
             log.debug("Executing tool '{}' (attempt {}/{})", toolName, attemptCount, maxRetries + 1);
 
+            long startTime = System.currentTimeMillis();
+            CompletableFuture<ToolResult> invocation = new CompletableFuture<>();
             try {
-                // Execute with timeout
-                ToolResult result = executeWithTimeout(toolName, input, timeoutMs);
+                running = executorService.submit(() -> {
+                    try {
+                        invocation.complete(executeTool(toolName, input));
+                    } catch (Throwable t) {
+                        invocation.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                finish(ToolResult.failure(toolName, "Execution error: " + e.getMessage()));
+                return;
+            }
+            if (result.isCancelled()) {
+                running.cancel(true);
+                return;
+            }
+
+            long limit = timeoutMs > 0 ? timeoutMs : Long.MAX_VALUE / 2;
+            Futures.within(invocation, limit, "Tool '" + toolName + "'").whenComplete((toolResult, error) -> {
+                if (result.isDone()) {
+                    // Cancelled by the caller; the attempt was already interrupted
+                    return;
+                }
+                ToolResult outcome;
+                if (error != null) {
+                    running.cancel(true);
+                    Throwable cause = Futures.unwrap(error);
+                    if (cause instanceof TimeoutException) {
+                        log.warn("Tool '{}' execution timed out after {}ms", toolName, timeoutMs);
+                        outcome = ToolResult.failure(toolName,
+                                String.format("Tool execution timed out after %dms", timeoutMs));
+                    } else {
+                        log.error("Tool '{}' execution failed", toolName, cause);
+                        outcome = ToolResult.failure(toolName, "Tool execution error: " + cause.getMessage());
+                    }
+                } else {
+                    outcome = toolResult;
+                    outcome.setExecutionTimeMs(System.currentTimeMillis() - startTime);
+                }
 
                 // If successful, return immediately
-                if (result.getSuccess()) {
+                if (Boolean.TRUE.equals(outcome.getSuccess())) {
                     log.debug("Tool '{}' succeeded on attempt {}", toolName, attemptCount);
-                    return result;
+                    finish(outcome);
+                    return;
                 }
 
-                // If failed, store for retry
-                lastError = result;
-
                 // Don't retry on last attempt
                 if (attemptCount > maxRetries) {
                     log.warn("Tool '{}' failed after {} attempts. Final error: {}",
-                            toolName, attemptCount, result.getError());
-                    return result;
+                            toolName, attemptCount, outcome.getError());
+                    finish(outcome);
+                    return;
                 }
 
                 // Wait before retry with exponential backoff: 100ms, 200ms, 400ms...
                 long waitMs = 100 * (long) Math.pow(2, attemptCount - 1);
                 log.debug("Tool '{}' failed, retrying after {}ms", toolName, waitMs);
-                Thread.sleep(waitMs);
-
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("Tool execution interrupted: {}", toolName);
-                return ToolResult.failure(toolName, "Tool execution was interrupted: " + e.getMessage());
-            } catch (Exception e) {
-                lastError = ToolResult.failure(toolName, "Execution error: " + e.getMessage());
-                log.error("Unexpected error executing tool: {}", toolName, e);
-
-                if (attemptCount > maxRetries) {
-                    return lastError;
-                }
-            }
+                Futures.delay(waitMs).thenRun(() -> attempt(attemptCount + 1));
+            });
         }
 
-        // Return the last error if all retries exhausted
-        return lastError != null ? lastError
-                : ToolResult.failure(toolName, "Tool execution failed after " + maxRetries + " retries");
-    }
-
-    /**
-     * Execute a tool with timeout control
-     */
-    private ToolResult executeWithTimeout(String toolName, String input, long timeoutMs)
-            throws TimeoutException, InterruptedException {
-
-        long startTime = System.currentTimeMillis();
-
-        try {
-            // Execute in thread pool with timeout
-            Future<ToolResult> future = executorService.submit(() -> executeTool(toolName, input));
-
-            long remainingTime = timeoutMs > 0 ? timeoutMs : Long.MAX_VALUE;
-            ToolResult result = future.get(remainingTime, TimeUnit.MILLISECONDS);
-
-            long executionTime = System.currentTimeMillis() - startTime;
-            if (result != null) {
-                result.setExecutionTimeMs(executionTime);
+        private void finish(ToolResult outcome) {
+            if (callId != null) {
+                outcome.setCallId(callId);
             }
-
-            return result;
-
-        } catch (TimeoutException e) {
-            log.warn("Tool '{}' execution timed out after {}ms", toolName, timeoutMs);
-            return ToolResult.failure(toolName,
-                    String.format("Tool execution timed out after %dms", timeoutMs));
-        } catch (ExecutionException e) {
-            log.error("Tool '{}' execution failed", toolName, e.getCause());
-            Throwable cause = e.getCause();
-            return ToolResult.failure(toolName,
-                    "Tool execution error: " + (cause != null ? cause.getMessage() : e.getMessage()));
+            result.complete(outcome);
         }
     }
 
@@ -1,5 +1,6 @@
 package com.agent.tool.registry;
 
+import com.agent.llm.model.dto.ToolSpec;
 import com.agent.tool.annotation.Tool;
 import com.agent.tool.model.ToolDefinition;
 import com.agent.tool.model.ToolSchema;
@@ -28,11 +29,13 @@ import java.util.stream.Collectors;
 public class ToolRegistry {
 
     private final ApplicationContext applicationContext;
-    private final Map<String, ToolDefinition> tools = new HashMap<>();
+    // Sorted by name so tool listings are byte-identical across requests (prompt caching)
+    private final Map<String, ToolDefinition> tools = new TreeMap<>();
     private final Map<String, ToolSchema> schemas = new HashMap<>();
     private final Map<String, Method> toolMethods = new HashMap<>();
     private final Map<String, Object> toolBeans = new HashMap<>();
     private volatile boolean initialized = false;
+    private volatile List<ToolSpec> functionToolSpecs;
 
     public ToolRegistry(ApplicationContext applicationContext) {
         this.applicationContext = applicationContext;
@@ -221,6 +224,39 @@ public class ToolRegistry {
         return sb.toString();
     }
 
+    /**
+     * Get all tools as function specs for native function-calling
+     * Built once from the annotation schemas; ordered by name like the rest of the registry
+     */
+    public List<ToolSpec> getFunctionToolSpecs() {
+        lazyInit();
+        List<ToolSpec> specs = functionToolSpecs;
+        if (specs == null) {
+            specs = new ArrayList<>();
+            for (ToolDefinition tool : tools.values()) {
+                ToolSchema schema = schemas.get(tool.getName());
+                Map<String, Object> parameters = schema != null ? schema.getParameters() : null;
+                if (parameters == null) {
+                    // Function specs must always carry an object schema, even without parameters
+                    parameters = new LinkedHashMap<>();
+                    parameters.put("type", "object");
+                    parameters.put("properties", new LinkedHashMap<String, Object>());
+                }
+
+                specs.add(ToolSpec.builder()
+                        .function(ToolSpec.FunctionDefinition.builder()
+                                .name(tool.getName())
+                                .description(tool.getDescription())
+                                .parameters(parameters)
+                                .build())
+                        .build());
+            }
+            specs = Collections.unmodifiableList(specs);
+            functionToolSpecs = specs;
+        }
+        return specs;
+    }
+
     /**
      * Get method for a tool
      */
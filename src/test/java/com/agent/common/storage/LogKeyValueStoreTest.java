@@ -0,0 +1,157 @@
+package com.agent.common.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 日志结构存储测试
+ */
+public class LogKeyValueStoreTest {
+
+    private Path dir;
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("kv");
+        file = dir.resolve(KeyValueStores.LOG_FILE_NAME);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> f.toFile().delete());
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 测试 1: 重新打开后数据仍在；写了一半的最后一个批量整体丢弃
+     */
+    @Test
+    public void testReopenDropsTornBatch() throws Exception {
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            store.put("s/a", bytes("alpha"));
+            store.put("s/b", bytes("beta"));
+            store.delete("s/a");
+            store.write(new WriteBatch().put("s/c", bytes("gamma")).put("s/d", bytes("delta")), true);
+        }
+        // 模拟最后一个批量写到一半时崩溃
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            assertNull(store.get("s/a"));
+            assertArrayEquals(bytes("beta"), store.get("s/b"));
+            assertNull(store.get("s/c"));
+            assertNull(store.get("s/d"));
+            assertEquals(Arrays.asList("s/b"), store.keys("s/"));
+
+            store.put("s/e", bytes("epsilon"));
+        }
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            assertEquals(Arrays.asList("s/b", "s/e"), store.keys(""));
+        }
+    }
+
+    /**
+     * 测试 2: 覆盖写产生垃圾，压缩回收垃圾且不丢存活条目
+     */
+    @Test
+    public void testCompactionReclaimsGarbage() throws Exception {
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 4096)) {
+            for (int i = 0; i < 200; i++) {
+                store.put("k/" + (i % 10), bytes("value " + i + " padded to make records a little larger"));
+            }
+            assertTrue(store.compactions() > 0);
+            assertEquals(10, store.size());
+            // 共写入 200 条约 70 字节的记录，只剩 10 条存活记录和有限的垃圾
+            assertTrue(store.sizeInBytes() < 6000, "size " + store.sizeInBytes());
+            assertArrayEquals(bytes("value 199 padded to make records a little larger"), store.get("k/9"));
+        }
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 4096)) {
+            assertEquals(10, store.keys("k/").size());
+            assertArrayEquals(bytes("value 190 padded to make records a little larger"), store.get("k/0"));
+        }
+    }
+
+    /**
+     * 测试 3: 迁移复制每键一个文件布局中的全部条目
+     */
+    @Test
+    public void testMigrationFromFiles() throws Exception {
+        FileKeyValueStore files = new FileKeyValueStore(dir, ".json");
+        files.put("doc1", bytes("{\"docId\":\"doc1\"}"));
+        files.put("doc2", bytes("{\"docId\":\"doc2\"}"));
+
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            assertEquals(2, StorageMigration.copy(files, store, ""));
+            assertEquals(Arrays.asList("doc1", "doc2"), store.keys(""));
+            assertArrayEquals(files.get("doc2"), store.get("doc2"));
+        }
+    }
+
+    /**
+     * 测试 4: 中间的帧损坏时只丢该帧，之后的帧照常回放（payload 损坏和长度损坏两种情况）
+     */
+    @Test
+    public void testCorruptMiddleFrameIsSkipped() throws Exception {
+        long second;
+        long third;
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            store.put("s/a", bytes("alpha"));
+            second = store.sizeInBytes();
+            store.put("s/b", bytes("beta"));
+            third = store.sizeInBytes();
+            store.put("s/c", bytes("gamma"));
+            store.put("s/d", bytes("delta"));
+        }
+        // 改坏第二帧 payload 的最后一个字节
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(third - 1);
+            int last = raf.read();
+            raf.seek(third - 1);
+            raf.write(last ^ 0xff);
+        }
+
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            assertArrayEquals(bytes("alpha"), store.get("s/a"));
+            assertNull(store.get("s/b"));
+            assertArrayEquals(bytes("gamma"), store.get("s/c"));
+            assertArrayEquals(bytes("delta"), store.get("s/d"));
+            store.put("s/e", bytes("epsilon"));
+        }
+
+        // 再改坏第二帧的长度字段，只能逐字节找到下一帧
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(second);
+            raf.writeInt(7);
+        }
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            assertEquals(Arrays.asList("s/a", "s/c", "s/d", "s/e"), store.keys("s/"));
+            assertArrayEquals(bytes("epsilon"), store.get("s/e"));
+            // 被跳过的字节算作垃圾，压缩后文件里不再有损坏的帧
+            assertTrue(store.garbageBytes() >= third - second);
+            store.compact();
+        }
+        try (LogKeyValueStore store = new LogKeyValueStore(file, 1 << 20)) {
+            assertEquals(Arrays.asList("s/a", "s/c", "s/d", "s/e"), store.keys("s/"));
+            assertEquals(0, store.garbageBytes());
+        }
+    }
+}
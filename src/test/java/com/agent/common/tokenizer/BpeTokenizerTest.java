@@ -0,0 +1,58 @@
+package com.agent.common.tokenizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BPE 分词测试（使用内存中构造的小词表）
+ */
+public class BpeTokenizerTest {
+
+    /**
+     * 256 个单字节 token，加上按 rank 排列的合并：ab → abc → hello
+     */
+    private static BpeTokenizer tokenizer() throws Exception {
+        StringBuilder vocab = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            vocab.append(Base64.getEncoder().encodeToString(new byte[] { (byte) b })).append(' ').append(b).append('\n');
+        }
+        String[] merges = { "ab", "abc", "he", "ll", "hell", "hello", " hello" };
+        for (int i = 0; i < merges.length; i++) {
+            vocab.append(Base64.getEncoder().encodeToString(merges[i].getBytes(StandardCharsets.UTF_8)))
+                    .append(' ').append(256 + i).append('\n');
+        }
+        return BpeTokenizer.load(new ByteArrayInputStream(vocab.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * 测试 1: 按 rank 从低到高合并，整段命中时直接返回一个 token
+     */
+    @Test
+    public void testMergesLowestRankFirst() throws Exception {
+        BpeTokenizer tokenizer = tokenizer();
+
+        assertArrayEquals(new int[] { 257 }, tokenizer.encode("abc"));
+        assertArrayEquals(new int[] { 257, 'd' }, tokenizer.encode("abcd"));
+        assertArrayEquals(new int[] { 261, 262 }, tokenizer.encode("hello hello"));
+        assertEquals(4, tokenizer.countTokens("abcd abc"));
+    }
+
+    /**
+     * 测试 2: 未合并的多字节字符按字节编码，解码后还原原文
+     */
+    @Test
+    public void testByteFallbackRoundTrip() throws Exception {
+        BpeTokenizer tokenizer = tokenizer();
+        String text = "hello 世界, it's 42 😀\n";
+
+        int[] tokens = tokenizer.encode(text);
+
+        assertEquals(tokens.length, tokenizer.countTokens(text));
+        assertEquals(text, tokenizer.decode(tokens));
+    }
+}
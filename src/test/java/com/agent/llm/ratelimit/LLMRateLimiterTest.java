@@ -0,0 +1,107 @@
+package com.agent.llm.ratelimit;
+
+import com.agent.common.exception.AgentException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LLM 限流器测试
+ */
+public class LLMRateLimiterTest {
+
+    private LLMRateLimiter limiter;
+
+    @BeforeEach
+    public void setUp() {
+        limiter = new LLMRateLimiter();
+        ReflectionTestUtils.setField(limiter, "requestsPerMinute", 2);
+        ReflectionTestUtils.setField(limiter, "tokensPerMinute", 1000);
+        ReflectionTestUtils.setField(limiter, "maxWaitMs", 100L);
+    }
+
+    /**
+     * 测试 1: 配额充足时立即放行
+     */
+    @Test
+    public void testAdmitWithinBudget() throws Exception {
+        LLMRateLimiter.Permit permit = limiter.acquire(RequestPriority.INTERACTIVE, 300);
+
+        assertEquals(300, permit.getEstimatedTokens());
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1L, limiter.getStats().get("admitted"));
+    }
+
+    /**
+     * 测试 2: 请求配额耗尽后等待超时被拒绝
+     */
+    @Test
+    public void testRejectWhenRequestBudgetExhausted() throws Exception {
+        limiter.acquire(RequestPriority.NORMAL, 10);
+        limiter.acquire(RequestPriority.NORMAL, 10);
+
+        assertThrows(AgentException.class, () -> limiter.acquire(RequestPriority.BACKGROUND, 10));
+        assertEquals(0, limiter.getQueueDepth(), "超时的请求应离开队列");
+        assertEquals(1L, limiter.getStats().get("rejected"));
+    }
+
+    /**
+     * 测试 3: 实际用量少于估算时退还 token 配额
+     */
+    @Test
+    public void testReleaseRefundsOverEstimate() throws Exception {
+        LLMRateLimiter.Permit permit = limiter.acquire(RequestPriority.NORMAL, 900);
+        limiter.release(permit, 100);
+
+        Map<String, Object> stats = limiter.getStats();
+        assertTrue((Integer) stats.get("availableTokens") >= 900, "多估算的 token 应被退还");
+    }
+
+    /**
+     * 测试 4: 调用失败时退还请求数和 token，同一凭证只对账一次
+     */
+    @Test
+    public void testRefundOnFailureSettlesOnce() throws Exception {
+        LLMRateLimiter.Permit first = limiter.acquire(RequestPriority.NORMAL, 400);
+        limiter.acquire(RequestPriority.NORMAL, 400);
+
+        limiter.refund(first);
+        limiter.refund(first);
+        limiter.release(first, 0);
+
+        // 退还的请求数让第三个调用不必等待
+        limiter.acquire(RequestPriority.NORMAL, 400);
+        Map<String, Object> stats = limiter.getStats();
+        assertEquals(1L, stats.get("refunded"));
+        assertTrue((Integer) stats.get("availableTokens") < 300, "重复退还不应多加配额");
+    }
+
+    /**
+     * 测试 5: 配额耗尽时后到的 INTERACTIVE 请求先于排队中的 BACKGROUND 请求放行
+     */
+    @Test
+    public void testInteractiveAdmittedBeforeBackground() throws Exception {
+        ReflectionTestUtils.setField(limiter, "maxWaitMs", 10_000L);
+        LLMRateLimiter.Permit first = limiter.acquire(RequestPriority.NORMAL, 10);
+        LLMRateLimiter.Permit second = limiter.acquire(RequestPriority.NORMAL, 10);
+
+        CompletableFuture<LLMRateLimiter.Permit> background = limiter.acquireAsync(RequestPriority.BACKGROUND, 10);
+        CompletableFuture<LLMRateLimiter.Permit> interactive = limiter.acquireAsync(RequestPriority.INTERACTIVE, 10);
+        assertEquals(2, limiter.getQueueDepth());
+
+        // 退还一个请求数：只够放行一个，队头是 INTERACTIVE
+        limiter.refund(first);
+        assertTrue(interactive.isDone());
+        assertFalse(background.isDone());
+        assertEquals(RequestPriority.INTERACTIVE, interactive.get().getPriority());
+
+        limiter.refund(second);
+        assertEquals(RequestPriority.BACKGROUND, background.get().getPriority());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+}
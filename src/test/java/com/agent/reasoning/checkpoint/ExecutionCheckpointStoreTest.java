@@ -0,0 +1,75 @@
+package com.agent.reasoning.checkpoint;
+
+import com.agent.llm.model.dto.Message;
+import com.agent.llm.ratelimit.RequestPriority;
+import com.agent.tool.model.ToolCall;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 执行检查点存储测试
+ */
+public class ExecutionCheckpointStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ExecutionCheckpointStore store;
+
+    @BeforeEach
+    public void setUp() {
+        store = new ExecutionCheckpointStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "storagePath", tempDir.toString());
+        ReflectionTestUtils.setField(store, "retentionHours", 24);
+        store.init();
+    }
+
+    /**
+     * 测试 1: 保存后加载得到同样的消息、待执行工具和状态
+     */
+    @Test
+    public void testSaveAndLoadRoundTrip() {
+        store.save(ExecutionCheckpoint.builder()
+                .executionId("exec-1")
+                .status(ExecutionCheckpoint.TIMED_OUT)
+                .userQuery("算一下 6*7")
+                .priority(RequestPriority.INTERACTIVE)
+                .nextIteration(1)
+                .pendingToolCalls(Collections.singletonList(ToolCall.builder()
+                        .toolName("calculator").input("6*7").callId("call_1").build()))
+                .messages(Arrays.asList(
+                        Message.builder().role("system").content("sys").build(),
+                        Message.builder().role("user").content("算一下 6*7").build()))
+                .build());
+
+        ExecutionCheckpoint loaded = store.load("exec-1");
+        assertNotNull(loaded);
+        assertTrue(loaded.isResumable());
+        assertEquals(RequestPriority.INTERACTIVE, loaded.getPriority());
+        assertEquals("call_1", loaded.getPendingToolCalls().get(0).getCallId());
+        assertEquals("算一下 6*7", loaded.getMessages().get(1).getContent());
+        assertTrue(loaded.getUpdatedTime() > 0);
+        assertFalse(new File(tempDir.toFile(), "exec-1.json.tmp").exists());
+    }
+
+    /**
+     * 测试 2: 非法执行 ID 不能逃出存储目录
+     */
+    @Test
+    public void testRejectsUnsafeExecutionIds() {
+        assertFalse(ExecutionCheckpointStore.isValidExecutionId("../sessions/abc"));
+        assertFalse(ExecutionCheckpointStore.isValidExecutionId(""));
+        assertTrue(ExecutionCheckpointStore.isValidExecutionId("batch-3f2a_17"));
+        assertNull(store.load("../exec-1"));
+    }
+}
@@ -0,0 +1,248 @@
+package com.agent.reasoning.context;
+
+import com.agent.llm.model.dto.LLMToolCall;
+import com.agent.llm.model.dto.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对话历史增量计数测试
+ */
+public class ConversationHistoryTest {
+
+    /**
+     * 测试 1: 增删合并后，增量维护的计数与逐条重新统计一致
+     */
+    @Test
+    public void testCountersMatchRecount() {
+        ConversationHistory history = new ConversationHistory();
+        history.addMessage("system", "You are a helpful assistant.");
+        for (int i = 0; i < 20; i++) {
+            history.addMessage("user", "question " + i);
+            history.addMessage("assistant", "answer " + i);
+        }
+        history.removeMessage(1);
+        history.mergeWithNext(1);
+        history.insertMessage(1, ConversationMessage.builder().role("assistant").content("summary").build());
+
+        List<ConversationMessage> messages = history.getAllMessages();
+        int tokens = messages.stream().mapToInt(ConversationMessage::getTokenCount).sum();
+        int systemTokens = messages.stream().filter(m -> "system".equals(m.getRole()))
+                .mapToInt(ConversationMessage::getTokenCount).sum();
+        ConversationHistory.HistoryStats stats = history.getStats();
+
+        assertEquals(tokens, history.getTotalTokens());
+        assertEquals(systemTokens, (int) stats.getSystemTokens());
+        assertEquals(tokens - systemTokens, history.getNonSystemTokens());
+        assertEquals(messages.size(), (int) stats.getTotalMessages());
+        assertEquals(messages.stream().filter(m -> "user".equals(m.getRole())).count(),
+                (long) stats.getUserMessages());
+        assertEquals(messages.size(), history.getMessageMap().size());
+        assertEquals("system", history.getMessagesForLLM().get(0).getRole());
+    }
+
+    /**
+     * 测试 2: 压缩直接作用于历史本身，超限后 token 数确实下降
+     */
+    @Test
+    public void testCompressionShrinksHistory() {
+        HistoryCompressor compressor = new HistoryCompressor(HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(200)
+                .build());
+        ConversationHistory history = new ConversationHistory();
+        history.addMessage("system", "You are a helpful assistant.");
+        for (int i = 0; i < 30; i++) {
+            history.addMessage("user", "Please look up order number " + i + " and report its delivery status.");
+            history.addMessage("assistant", "Order " + i + " was shipped on day " + i + " via express courier.");
+        }
+
+        HistoryCompressor.CompressionResult result = compressor.compress(history);
+
+        assertTrue(result.getWasCompressed());
+        assertTrue(history.getTotalTokens() <= 200);
+        assertEquals(result.getCompressedTokens().intValue(), history.getTotalTokens());
+        assertEquals("system", history.getMessage(0).getRole());
+    }
+
+    /**
+     * 测试 3: 超限时按与当前问题的相关度保留轮次，早期的相关轮次不会因为位置靠前被删掉
+     */
+    @Test
+    public void testRelevancePruningKeepsRelatedTurn() {
+        HistoryCompressor compressor = new HistoryCompressor(HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(150)
+                .keepRecentCount(2)
+                .build());
+        ConversationHistory history = new ConversationHistory();
+        history.addMessage("system", "You are a helpful assistant.");
+        history.addMessage("user", "I was charged twice on invoice 4471, can I get a refund?");
+        history.addMessage("assistant", "A refund for the duplicate charge on invoice 4471 has been requested.");
+        for (int i = 0; i < 12; i++) {
+            history.addMessage("user", "What will the weather be like in city " + i + " tomorrow?");
+            history.addMessage("assistant", "Tomorrow in city " + i + " expect light rain and mild wind.");
+        }
+        history.addMessage("user", "When will the refund for invoice 4471 arrive?");
+        history.addMessage("assistant", "Refunds usually arrive within five business days.");
+
+        HistoryCompressor.CompressionResult result = compressor.compress(history);
+
+        assertTrue(result.getWasCompressed());
+        assertTrue(history.getTotalTokens() <= 150);
+        assertEquals("system", history.getMessage(0).getRole());
+        assertTrue(history.getMessage(1).getContent().contains("charged twice"));
+        assertTrue(history.getMessage(2).getContent().contains("duplicate charge"));
+        assertEquals("When will the refund for invoice 4471 arrive?",
+                history.getMessage(history.getMessageCount() - 2).getContent());
+        assertTrue(result.getSummarizedMessages().get(0).startsWith("Pruned"));
+    }
+
+    /**
+     * 测试 4: 前缀稳定布局下开头的多条系统消息在压缩后原样保留，摘要插在它们之后
+     */
+    @Test
+    public void testCompressionKeepsStablePrefix() {
+        HistoryCompressor compressor = new HistoryCompressor(HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(200)
+                .relevancePruning(false)
+                .build());
+        ConversationHistory history = new ConversationHistory();
+        history.addMessage("system", "You are a helpful assistant. Answer with the tools provided.");
+        history.addMessage("system", "You are a helpful assistant for the logistics domain.");
+        for (int i = 0; i < 30; i++) {
+            history.addMessage("user", "Please look up order number " + i + " and report its delivery status.");
+            history.addMessage("assistant", "Order " + i + " was shipped on day " + i + " via express courier.");
+        }
+        List<ConversationMessage> prefix = history.getMessages(0, 2);
+        List<String> prefixContent = new ArrayList<>();
+        for (ConversationMessage msg : prefix) {
+            prefixContent.add(msg.getContent());
+        }
+
+        compressor.compress(history);
+
+        assertTrue(history.getTotalTokens() <= 200);
+        for (int i = 0; i < prefix.size(); i++) {
+            assertSame(prefix.get(i), history.getMessage(i));
+            assertEquals(prefixContent.get(i), history.getMessage(i).getContent());
+        }
+        assertEquals("assistant", history.getMessage(2).getRole());
+        assertTrue(history.getMessage(2).getIsSummarized());
+    }
+
+    /**
+     * 测试 5: 环形缓冲在头部、中间、尾部增删后保持顺序
+     */
+    @Test
+    public void testRingBufferKeepsOrder() {
+        RingBufferList<Integer> ring = new RingBufferList<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ring.add(i);
+            expected.add(i);
+            if (i % 3 == 0 && ring.size() > 1) {
+                assertEquals(expected.remove(1), ring.remove(1));
+            }
+            if (i % 7 == 0) {
+                ring.add(ring.size() / 2, -i);
+                expected.add(expected.size() / 2, -i);
+            }
+        }
+        assertEquals(expected, ring);
+    }
+
+    /**
+     * 测试 6: 原生工具调用的历史按位置压缩后，调用与结果不被拆开，相同的 tool 结果不被合并
+     */
+    @Test
+    public void testCompressionKeepsToolCallPairs() {
+        HistoryCompressor compressor = new HistoryCompressor(HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(300)
+                .keepRecentCount(4)
+                .relevancePruning(false)
+                .build());
+        ConversationHistory history = new ConversationHistory();
+        history.addMessage("system", "You are a helpful assistant.");
+        for (int i = 0; i < 12; i++) {
+            addToolTurn(history, i);
+        }
+
+        compressor.compress(history);
+
+        assertTrue(history.getTotalTokens() <= 300);
+        assertToolPairsIntact(history);
+    }
+
+    /**
+     * 测试 7: 删除最老的消息时，工具调用的结果随调用一起删除
+     */
+    @Test
+    public void testRemoveOldestDropsWholeToolCall() {
+        HistoryCompressor compressor = new HistoryCompressor(HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(10)
+                .keepRecentCount(22)
+                .messagesToRemove(2)
+                .relevancePruning(false)
+                .build());
+        ConversationHistory history = new ConversationHistory();
+        history.addMessage("system", "You are a helpful assistant.");
+        for (int i = 0; i < 5; i++) {
+            addToolTurn(history, i);
+        }
+
+        HistoryCompressor.CompressionResult result = compressor.compress(history);
+
+        assertTrue(result.getSummarizedMessages().get(0).startsWith("Removed"));
+        assertToolPairsIntact(history);
+        assertNotEquals("tool", history.getMessage(1).getRole());
+    }
+
+    /**
+     * 一轮原生工具调用：提问、带两个 tool_calls 的助手消息、两条内容相同的结果、最终回答
+     */
+    private void addToolTurn(ConversationHistory history, int i) {
+        history.addMessage("user", "Where is order number " + i + " right now?");
+        List<LLMToolCall> calls = new ArrayList<>();
+        for (int k = 0; k < 2; k++) {
+            calls.add(LLMToolCall.builder()
+                    .id("call_" + i + "_" + k)
+                    .function(LLMToolCall.FunctionCall.builder()
+                            .name("track_order")
+                            .arguments("{\"order\":" + i + "}")
+                            .build())
+                    .build());
+        }
+        history.addMessage(Message.builder().role("assistant").toolCalls(calls).build());
+        for (LLMToolCall call : calls) {
+            history.addMessage(Message.builder().role("tool").toolCallId(call.getId())
+                    .content("Order status: shipped, in transit via express courier.").build());
+        }
+        history.addMessage("assistant", "Order " + i + " is in transit via express courier.");
+    }
+
+    /**
+     * 每条 tool 消息都紧跟在发起它的助手消息之后，每个调用都有结果
+     */
+    private void assertToolPairsIntact(ConversationHistory history) {
+        Set<String> open = new HashSet<>();
+        for (int i = 0; i < history.getMessageCount(); i++) {
+            ConversationMessage msg = history.getMessage(i);
+            if ("tool".equals(msg.getRole())) {
+                assertTrue(open.remove(msg.getToolCallId()), "tool 结果缺少对应的调用: " + msg.getToolCallId());
+                continue;
+            }
+            assertTrue(open.isEmpty(), "工具调用缺少结果: " + open);
+            if (msg.getToolCalls() != null) {
+                for (LLMToolCall call : msg.getToolCalls()) {
+                    open.add(call.getId());
+                }
+            }
+        }
+        assertTrue(open.isEmpty(), "工具调用缺少结果: " + open);
+    }
+}
@@ -0,0 +1,162 @@
+package com.agent.reasoning.context;
+
+import com.agent.llm.model.dto.ChatRequest;
+import com.agent.llm.model.dto.ChatResponse;
+import com.agent.llm.model.dto.Message;
+import com.agent.llm.service.LLMService;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 后台摘要压缩测试
+ */
+public class HistoryCompactorTest {
+
+    /**
+     * 摘要调用由测试手动完成，模拟后台返回
+     */
+    private final List<CompletableFuture<ChatResponse>> calls = new ArrayList<>();
+
+    private ContextManager contextManager() {
+        LLMService llm = new LLMService() {
+            @Override
+            public ChatResponse chat(ChatRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<ChatResponse> chatAsync(ChatRequest request) {
+                CompletableFuture<ChatResponse> call = new CompletableFuture<>();
+                calls.add(call);
+                return call;
+            }
+
+            @Override
+            public void validateRequest(ChatRequest request) {
+            }
+        };
+        HistoryCompactor compactor = new HistoryCompactor(llm);
+        ReflectionTestUtils.setField(compactor, "enabled", true);
+        ReflectionTestUtils.setField(compactor, "model", "deepseek-chat");
+        ReflectionTestUtils.setField(compactor, "maxSummaryTokens", 256);
+        ReflectionTestUtils.setField(compactor, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(compactor, "timeoutSeconds", 30);
+
+        HistoryCompressor.CompressionConfig config = HistoryCompressor.CompressionConfig.builder()
+                .maxTokens(100_000)
+                .compressionThreshold(150)
+                .keepRecentCount(2)
+                .build();
+        ContextManager contextManager = new ContextManager(config, true, compactor);
+        contextManager.initializeWithSystemPrompt("You are a helpful assistant.");
+        for (int i = 0; i < 10; i++) {
+            contextManager.addUserMessage("Please look up order number " + i + " and report its delivery status.");
+            contextManager.addAssistantMessage("Order " + i + " was shipped on day " + i + " via express courier.");
+        }
+        return contextManager;
+    }
+
+    private static ChatResponse reply(String content) {
+        ChatResponse.Choice choice = new ChatResponse.Choice();
+        choice.setMessage(Message.builder().role("assistant").content(content).build());
+        List<ChatResponse.Choice> choices = new ArrayList<>();
+        choices.add(choice);
+        ChatResponse response = new ChatResponse();
+        response.setChoices(choices);
+        return response;
+    }
+
+    /**
+     * 测试 1: 超过软阈值时请求不等待摘要；摘要完成后在下一次请求时整体替换旧消息
+     */
+    @Test
+    public void testSummarySwappedInOnNextRequest() {
+        ContextManager contextManager = contextManager();
+        int tokensBefore = contextManager.getTotalTokens();
+
+        List<Message> first = contextManager.getMessagesForLLM();
+        assertEquals(21, first.size());
+        assertEquals(1, calls.size());
+        assertTrue(contextManager.isCompacting());
+
+        calls.get(0).complete(reply("Orders 0-8 were all shipped by express courier."));
+        List<Message> second = contextManager.getMessagesForLLM();
+
+        assertEquals(4, second.size());
+        assertEquals("system", second.get(0).getRole());
+        assertTrue(second.get(1).getContent().startsWith("Previous context summary: Orders 0-8"));
+        assertEquals("Order 9 was shipped on day 9 via express courier.", second.get(3).getContent());
+        assertTrue(contextManager.getLastCompressionResult().getWasCompressed());
+        assertTrue(contextManager.getTotalTokens() < tokensBefore);
+    }
+
+    /**
+     * 测试 2: 摘要期间原消息已被改动时放弃替换
+     */
+    @Test
+    public void testStaleSummaryDropped() {
+        ContextManager contextManager = contextManager();
+        contextManager.getMessagesForLLM();
+        contextManager.clear();
+        calls.get(0).complete(reply("stale"));
+
+        List<Message> messages = contextManager.getMessagesForLLM();
+
+        assertEquals(1, messages.size());
+        assertNull(contextManager.getLastCompressionResult());
+    }
+
+    /**
+     * 测试 3: 取消进行中的摘要会取消底层 LLM 调用，许可随之释放
+     */
+    @Test
+    public void testCancelAbortsLlmCall() {
+        ContextManager contextManager = contextManager();
+        contextManager.getMessagesForLLM();
+        assertTrue(contextManager.isCompacting());
+
+        contextManager.cancelCompaction();
+
+        assertTrue(calls.get(0).isCancelled());
+        assertFalse(contextManager.isCompacting());
+        HistoryCompactor compactor = (HistoryCompactor) ReflectionTestUtils.getField(contextManager, "compactor");
+        Semaphore permits = (Semaphore) ReflectionTestUtils.getField(compactor, "permits");
+        assertEquals(2, permits.availablePermits());
+
+        // 取消次数超过并发上限后仍能发起新的摘要
+        for (int i = 0; i < 3; i++) {
+            contextManager.addUserMessage("Any news on order " + i + "?");
+            contextManager.getMessagesForLLM();
+            contextManager.cancelCompaction();
+        }
+        assertEquals(4, calls.size());
+        assertEquals(2, permits.availablePermits());
+    }
+
+    /**
+     * 测试 4: 单次执行的上下文不做后台摘要，只有会话级上下文会
+     */
+    @Test
+    public void testOnlySessionContextsCompact() {
+        HistoryCompactor compactor = new HistoryCompactor(null);
+        ContextManagerFactory factory = new ContextManagerFactory(compactor);
+        ReflectionTestUtils.setField(factory, "maxTokens", 4096);
+        ReflectionTestUtils.setField(factory, "compressionThreshold", 3000);
+        ReflectionTestUtils.setField(factory, "keepRecentCount", 5);
+        ReflectionTestUtils.setField(factory, "enableSmartSummary", true);
+        ReflectionTestUtils.setField(factory, "relevancePruning", false);
+        ReflectionTestUtils.setField(factory, "prefixStable", false);
+
+        ContextManager execution = factory.create();
+        assertNull(ReflectionTestUtils.getField(execution, "compactor"));
+        factory.release(execution);
+        assertSame(compactor, ReflectionTestUtils.getField(factory.newContextManager(), "compactor"));
+    }
+}
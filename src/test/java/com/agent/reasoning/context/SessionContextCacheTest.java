@@ -0,0 +1,107 @@
+package com.agent.reasoning.context;
+
+import com.agent.model.dto.ChatSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 会话级已编译上下文缓存测试
+ */
+public class SessionContextCacheTest {
+
+    private SessionContextCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        ContextManagerFactory factory = new ContextManagerFactory(null);
+        ReflectionTestUtils.setField(factory, "maxTokens", 4096);
+        ReflectionTestUtils.setField(factory, "compressionThreshold", 3000);
+        ReflectionTestUtils.setField(factory, "keepRecentCount", 5);
+        ReflectionTestUtils.setField(factory, "enableSmartSummary", true);
+        ReflectionTestUtils.setField(factory, "relevancePruning", true);
+        ReflectionTestUtils.setField(factory, "prefixStable", true);
+        cache = new SessionContextCache(factory);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSessions", 2);
+    }
+
+    /**
+     * 测试 1: 每轮只追加新增消息，当前问题不计入历史，快照带着已计数的 token
+     */
+    @Test
+    public void testOnlyNewMessagesAppended() {
+        ChatSession session = ChatSession.createNew();
+        session.addMessage("user", "What is the capital of France?");
+        session.addMessage("assistant", "The capital of France is Paris.");
+        session.addMessage("user", "And of Italy?");
+
+        CompiledHistory first = cache.compile(session.getSessionId(), session.getMessages(), "And of Italy?");
+        assertEquals(2, first.size());
+
+        session.addMessage("assistant", "The capital of Italy is Rome.");
+        session.addMessage("user", "Which one is larger?");
+        CompiledHistory second = cache.compile(session.getSessionId(), session.getMessages(),
+                "Which one is larger?");
+
+        assertEquals(4, second.size());
+        assertEquals("And of Italy?", second.messages().get(2).getContent());
+        assertTrue(second.getTokens() > first.getTokens());
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("incrementalSyncs"));
+        assertEquals(4L, stats.get("appendedMessages"));
+        assertEquals(0L, stats.get("rebuilds"));
+
+        // 带入执行的是副本：执行内的改动不影响缓存
+        ContextManager contextManager = new ContextManager();
+        contextManager.addHistory(second);
+        contextManager.clear();
+        assertEquals(4, cache.compile(session.getSessionId(), session.getMessages(), "Which one is larger?").size());
+    }
+
+    /**
+     * 测试 2: 会话中间的消息被删除后整体重建
+     */
+    @Test
+    public void testRebuiltWhenHistoryEdited() {
+        ChatSession session = ChatSession.createNew();
+        session.addMessage("user", "first question");
+        session.addMessage("assistant", "first answer");
+        session.addMessage("user", "second question");
+        cache.compile(session.getSessionId(), session.getMessages(), "second question");
+
+        session.removeMessage(session.getMessages().get(0).getMessageId());
+        session.addMessage("assistant", "second answer");
+        session.addMessage("user", "third question");
+        CompiledHistory history = cache.compile(session.getSessionId(), session.getMessages(), "third question");
+
+        assertEquals(3, history.size());
+        assertEquals("first answer", history.messages().get(0).getContent());
+        assertEquals(1L, cache.getStats().get("rebuilds"));
+    }
+
+    /**
+     * 测试 3: 较早的消息归档出热列表后，缓存继续增量追加而不是重建
+     */
+    @Test
+    public void testArchivedPrefixKeepsCache() {
+        ChatSession session = ChatSession.createNew();
+        for (int i = 0; i < 6; i++) {
+            session.addMessage(i % 2 == 0 ? "user" : "assistant", "message " + i);
+        }
+        cache.compile(session.getSessionId(), session.getArchivedCount(), session.getMessages(), "next");
+
+        session.archiveOldest(4);
+        session.addMessage("user", "next");
+        CompiledHistory history = cache.compile(session.getSessionId(), session.getArchivedCount(),
+                session.getMessages(), "next");
+
+        assertEquals(6, history.size());
+        assertEquals(0L, cache.getStats().get("rebuilds"));
+        assertEquals(1L, cache.getStats().get("incrementalSyncs"));
+    }
+}
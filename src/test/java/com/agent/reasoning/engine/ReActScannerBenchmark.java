@@ -0,0 +1,176 @@
+package com.agent.reasoning.engine;
+
+import com.agent.tool.model.ToolCall;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ReAct 响应解析基准测试
+ *
+ * 对比原先的三段正则解析与 {@link ReActScanner}（一次性解析 / 按流式 delta 增量解析）。
+ * 不是单元测试，surefire 不会执行；运行方式：mvn test-compile 后在 IDE 中运行 main，
+ * 或 java -cp target/test-classes:target/classes:&lt;test classpath&gt; com.agent.reasoning.engine.ReActScannerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReActScannerBenchmark {
+
+    private static final Pattern THOUGHT_PATTERN = Pattern.compile(
+            "Thought:\\s*(.+?)(?=Action:|Final Answer:|$)", Pattern.DOTALL);
+
+    private static final Pattern FINAL_ANSWER_PATTERN = Pattern.compile(
+            "Final Answer:\\s*(.+?)$", Pattern.DOTALL);
+
+    private static final Pattern ACTION_BLOCK_PATTERN = Pattern.compile(
+            "Action:[ \\t]*([^\\n]+?)\\s*(?:Action Input:[ \\t]*(.*?))?\\s*"
+                    + "(?=\\n\\s*(?:Thought:|Action:|Observation:|Final Answer:)|\\z)",
+            Pattern.DOTALL);
+
+    /**
+     * action: 长 Thought + 单个工具调用；parallel: 三个调用且含多行 JSON 输入；final: 长 Final Answer
+     */
+    @Param({ "action", "parallel", "final" })
+    private String shape;
+
+    /**
+     * Thought / Final Answer 正文的字符数
+     */
+    @Param({ "1024", "4096" })
+    private int size;
+
+    private String response;
+    private List<String> deltas;
+
+    @Setup
+    public void setUp() {
+        String prose = prose(size);
+        if ("action".equals(shape)) {
+            response = "Thought: " + prose + "\nAction: calculator\nAction Input: (1024 * 3) / 7 + 12\n";
+        } else if ("parallel".equals(shape)) {
+            response = "Thought: " + prose + "\n"
+                    + "Action: weather\nAction Input: {\"city\": \"Beijing\",\n  \"unit\": \"celsius\"}\n\n"
+                    + "Action: weather\nAction Input: {\"city\": \"Shanghai\",\n  \"unit\": \"celsius\"}\n\n"
+                    + "Action: calculator\nAction Input: 31 - 27\n";
+        } else {
+            response = "Thought: I now have everything I need.\nFinal Answer: " + prose;
+        }
+
+        // DeepSeek 每个 delta 只有几个字符
+        deltas = new ArrayList<>();
+        for (int i = 0; i < response.length(); i += 6) {
+            deltas.add(response.substring(i, Math.min(response.length(), i + 6)));
+        }
+    }
+
+    @Benchmark
+    public ThoughtAction regex() {
+        return regexParse(response);
+    }
+
+    @Benchmark
+    public ThoughtAction scanner() {
+        return ReActScanner.parse(response);
+    }
+
+    @Benchmark
+    public ThoughtAction scannerStreamed() {
+        ReActScanner scanner = new ReActScanner();
+        for (String delta : deltas) {
+            scanner.append(delta);
+        }
+        return scanner.finish();
+    }
+
+    /**
+     * 原 ReasoningEngine.parseResponse 的实现，作为基线
+     */
+    private static ThoughtAction regexParse(String response) {
+        ThoughtAction thoughtAction = ThoughtAction.builder()
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        Matcher thoughtMatcher = THOUGHT_PATTERN.matcher(response);
+        if (thoughtMatcher.find()) {
+            thoughtAction.setThought(thoughtMatcher.group(1).trim());
+        }
+
+        Matcher finalAnswerMatcher = FINAL_ANSWER_PATTERN.matcher(response);
+        if (finalAnswerMatcher.find()) {
+            thoughtAction.setFinalAnswer(finalAnswerMatcher.group(1).trim());
+            thoughtAction.setAction("finish");
+            thoughtAction.setIsFinished(true);
+            return thoughtAction;
+        }
+
+        Matcher actionMatcher = ACTION_BLOCK_PATTERN.matcher(response);
+        while (actionMatcher.find()) {
+            String action = actionMatcher.group(1).trim();
+            String actionInput = actionMatcher.group(2) != null ? actionMatcher.group(2).trim() : "";
+            if (action.isEmpty() || "finish".equalsIgnoreCase(action)) {
+                continue;
+            }
+            thoughtAction.getToolCalls().add(ToolCall.builder()
+                    .toolName(action)
+                    .input(actionInput)
+                    .callId("call_" + (thoughtAction.getToolCalls().size() + 1))
+                    .build());
+        }
+
+        if (!thoughtAction.getToolCalls().isEmpty()) {
+            ToolCall first = thoughtAction.getToolCalls().get(0);
+            thoughtAction.setAction(first.getToolName());
+            thoughtAction.setActionInput(first.getInput());
+        } else {
+            thoughtAction.setAction("finish");
+            thoughtAction.setFinalAnswer(response);
+        }
+        thoughtAction.setIsFinished("finish".equalsIgnoreCase(thoughtAction.getAction()));
+        return thoughtAction;
+    }
+
+    /**
+     * 类似模型输出的英文段落（含换行和标点，不含 ReAct 标记）
+     */
+    private static String prose(int length) {
+        String[] sentences = {
+                "The user is asking about the quarterly revenue trend, so I should compare each period. ",
+                "According to the knowledge base, the figures are reported in millions of yuan.\n",
+                "I need to be careful: the second quarter includes a one-off adjustment of 12.5%. ",
+                "Breaking it down step by step makes the calculation easier to verify.\n",
+        };
+        StringBuilder text = new StringBuilder(length + 100);
+        for (int i = 0; text.length() < length; i++) {
+            text.append(sentences[i % sentences.length]);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReActScannerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.agent.reasoning.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReAct 单遍解析测试
+ */
+public class ReActScannerTest {
+
+    private static final String PARALLEL_RESPONSE = "Thought: need both\n"
+            + "Action: weather\nAction Input: {\"city\": \"Paris\",\n  \"unit\": \"C\"}\n\n"
+            + "Action: calculator\nAction Input: 3*4\n"
+            + "Observation: 12";
+
+    /**
+     * 测试 1: 多个 Action 块，多行输入一直延续到下一个行首标记
+     */
+    @Test
+    public void testParsesParallelActions() {
+        ThoughtAction step = ReActScanner.parse(PARALLEL_RESPONSE);
+
+        assertEquals("need both", step.getThought());
+        assertFalse(step.getIsFinished());
+        assertEquals(2, step.getToolCalls().size());
+        assertEquals("weather", step.getAction());
+        assertEquals("{\"city\": \"Paris\",\n  \"unit\": \"C\"}", step.getToolCalls().get(0).getInput());
+        assertEquals("calculator", step.getToolCalls().get(1).getToolName());
+        assertEquals("3*4", step.getToolCalls().get(1).getInput());
+        assertEquals("call_2", step.getToolCalls().get(1).getCallId());
+    }
+
+    /**
+     * 测试 2: Final Answer 优先，可在 Thought 同一行出现；无标记时整段作为答案
+     */
+    @Test
+    public void testFinalAnswer() {
+        ThoughtAction step = ReActScanner.parse("Thought: I know. Final Answer: 42\nAction: ignored");
+        assertEquals("I know.", step.getThought());
+        assertEquals("42\nAction: ignored", step.getFinalAnswer());
+        assertTrue(step.getIsFinished());
+
+        ThoughtAction plain = ReActScanner.parse("Just an answer");
+        assertEquals("finish", plain.getAction());
+        assertEquals("Just an answer", plain.getFinalAnswer());
+    }
+
+    /**
+     * 测试 3: 任意切分的流式输入与一次性解析结果一致，Action 在输入首行结束时即上报
+     */
+    @Test
+    public void testStreamedChunksMatchOneShotParse() {
+        ThoughtAction expected = ReActScanner.parse(PARALLEL_RESPONSE);
+        for (int split = 0; split <= PARALLEL_RESPONSE.length(); split++) {
+            List<String> reported = new ArrayList<>();
+            ReActScanner scanner = new ReActScanner((tool, input) -> reported.add(tool + ":" + input));
+            scanner.append(PARALLEL_RESPONSE.substring(0, split));
+            scanner.append(PARALLEL_RESPONSE.substring(split));
+            ThoughtAction step = scanner.finish();
+
+            assertEquals(expected.getThought(), step.getThought(), "split at " + split);
+            assertEquals(expected.getToolCalls(), step.getToolCalls(), "split at " + split);
+            assertEquals(2, reported.size(), "split at " + split);
+            assertEquals("weather:{\"city\": \"Paris\",", reported.get(0));
+        }
+    }
+}
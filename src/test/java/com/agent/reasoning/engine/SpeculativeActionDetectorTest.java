@@ -0,0 +1,93 @@
+package com.agent.reasoning.engine;
+
+import com.agent.tool.executor.ToolExecutor;
+import com.agent.tool.model.ToolCall;
+import com.agent.tool.model.ToolResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 流式推测执行测试
+ */
+public class SpeculativeActionDetectorTest {
+
+    private ToolExecutor toolExecutor;
+    private SpeculativeActionDetector detector;
+
+    @BeforeEach
+    public void setUp() {
+        toolExecutor = mock(ToolExecutor.class);
+        when(toolExecutor.executeAsync(any(ToolCall.class))).thenAnswer(invocation -> {
+            ToolCall call = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(ToolResult.success(call.getToolName(), "ok:" + call.getInput()));
+        });
+        detector = new SpeculativeActionDetector(toolExecutor);
+    }
+
+    /**
+     * 测试 1: Action Input 行完整到达后立即启动工具，而不是等响应结束
+     */
+    @Test
+    public void testStartsOnceActionInputLineCompletes() {
+        detector.accept("Thought: need math\nAct");
+        detector.accept("ion: calculator\nAction In");
+        verify(toolExecutor, never()).executeAsync(any(ToolCall.class));
+
+        detector.accept("put: 1 + 2");
+        verify(toolExecutor, never()).executeAsync(any(ToolCall.class));
+
+        detector.accept("\nObservation:");
+        verify(toolExecutor, times(1)).executeAsync(any(ToolCall.class));
+        assertEquals(1, detector.getStartedCount());
+    }
+
+    /**
+     * 测试 2: 最终解析一致时复用推测结果，不一致时取消
+     */
+    @Test
+    public void testReserveMatchingAndCancelMismatched() {
+        detector.accept("Action: calculator\nAction Input: 1 + 2\n");
+
+        CompletableFuture<ToolResult> mismatch = detector.reserve(ToolCall.builder()
+                .toolName("calculator").input("1 + 2 + 3").build());
+        assertNull(mismatch, "输入不同不能复用推测结果");
+
+        ToolCall parsed = ToolCall.builder().toolName("calculator").input("1 + 2").callId("call_1").build();
+        CompletableFuture<ToolResult> future = detector.reserve(parsed);
+        assertNotNull(future);
+        assertNull(detector.reserve(parsed), "同一推测只能被预定一次");
+        assertEquals(0, detector.cancelUnreserved());
+
+        ToolResult result = SpeculativeActionDetector.adopt(future, parsed).join();
+        assertEquals("ok:1 + 2", result.getResult());
+        assertEquals("call_1", result.getCallId());
+    }
+
+    /**
+     * 测试 3: 出现 Final Answer 后不再推测
+     */
+    @Test
+    public void testNoSpeculationAfterFinalAnswer() {
+        detector.accept("Final Answer: done\nAction: calculator\nAction Input: 1\n");
+        verify(toolExecutor, never()).executeAsync(any(ToolCall.class));
+    }
+
+    /**
+     * 测试 4: 丢弃未预定的推测后，迟到的 Action 不再启动工具
+     */
+    @Test
+    public void testNoSpeculationAfterCancel() {
+        detector.accept("Action: calculator\nAction Input: 1 + 2\n");
+        assertEquals(1, detector.cancelUnreserved());
+
+        detector.accept("Action: search\nAction Input: weather\n");
+        verify(toolExecutor, times(1)).executeAsync(any(ToolCall.class));
+        assertEquals(0, detector.cancelUnreserved());
+    }
+}
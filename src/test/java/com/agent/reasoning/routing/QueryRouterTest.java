@@ -0,0 +1,112 @@
+package com.agent.reasoning.routing;
+
+import com.agent.config.DomainPromptConfig;
+import com.agent.knowledge.service.EmbeddingService;
+import com.agent.knowledge.service.KnowledgeBaseManager;
+import com.agent.tool.model.ToolDefinition;
+import com.agent.tool.registry.ToolRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 查询分流测试
+ */
+public class QueryRouterTest {
+
+    private QueryRouter router;
+    private KnowledgeBaseManager knowledgeBaseManager;
+
+    @BeforeEach
+    public void setUp() {
+        ToolRegistry toolRegistry = mock(ToolRegistry.class);
+        when(toolRegistry.getAllTools()).thenReturn(Collections.singletonList(ToolDefinition.builder()
+                .name("calculator")
+                .description("Execute mathematical calculations with basic operators")
+                .examples(Arrays.asList("Input: 100 + 200 * 2", "Output: 500"))
+                .tags(Arrays.asList("math", "calculation"))
+                .build()));
+        knowledgeBaseManager = mock(KnowledgeBaseManager.class);
+        when(knowledgeBaseManager.getStats()).thenReturn(KnowledgeBaseManager.KnowledgeBaseStats.builder()
+                .totalDocuments(0).build());
+
+        router = new QueryRouter(toolRegistry, new EmbeddingService(), knowledgeBaseManager,
+                new DomainPromptConfig());
+        ReflectionTestUtils.setField(router, "enabled", true);
+        ReflectionTestUtils.setField(router, "knowledgeThreshold", 0.9);
+        ReflectionTestUtils.setField(router, "embeddingMargin", 0.05);
+        ReflectionTestUtils.setField(router, "smallTalkMaxLength", 40);
+        ReflectionTestUtils.setField(router, "cacheSize", 16);
+        ReflectionTestUtils.setField(router, "cacheTtlSeconds", 600L);
+    }
+
+    /**
+     * 测试 1: 闲聊走单次调用，算式和工具名走 ReAct
+     */
+    @Test
+    public void testSmallTalkDirectAndToolQueriesReact() {
+        assertEquals(QueryRouter.Route.DIRECT, route("你好！", false).getRoute());
+        assertEquals(QueryRouter.Route.REACT, route("帮我算 12 * 7 是多少", false).getRoute());
+        assertEquals(QueryRouter.Route.REACT, route("use the calculator please", false).getRoute());
+    }
+
+    /**
+     * 测试 2: 无上下文依赖的答案被缓存，有历史时不复用
+     */
+    @Test
+    public void testCachedAnswerOnlyWithoutPriorTurns() {
+        RouteDecision first = route("Thank you", false);
+        assertTrue(first.isCacheable());
+        router.remember(first, "Thank you", "You're welcome!");
+
+        RouteDecision again = route("  thank   YOU ", false);
+        assertEquals(QueryRouter.Route.CACHED, again.getRoute());
+        assertEquals("You're welcome!", again.getCachedAnswer());
+
+        RouteDecision withHistory = route("Thank you", true);
+        assertNotEquals(QueryRouter.Route.CACHED, withHistory.getRoute());
+    }
+
+    /**
+     * 测试 3: 关闭路由时全部走 ReAct
+     */
+    @Test
+    public void testDisabledAlwaysReact() {
+        ReflectionTestUtils.setField(router, "enabled", false);
+        assertEquals(QueryRouter.Route.REACT, route("你好", false).getRoute());
+        assertEquals(1L, ((java.util.Map<?, ?>) router.getStats().get("routes")).get("REACT"));
+    }
+
+    /**
+     * 测试 4: 专业领域查询仍走 ReAct，复用预处理阶段的检索结果
+     */
+    @Test
+    public void testDomainQueryKeepsToolsAndReusesRetrieval() {
+        String query = "这份合同的违约条款怎么理解";
+        KnowledgeBaseManager.Retrieval retrieval = KnowledgeBaseManager.Retrieval.builder()
+                .queryVector(new EmbeddingService().embed(query))
+                .results(Collections.emptyList())
+                .build();
+
+        RouteDecision decision = router.route(query, false, CompletableFuture.completedFuture(retrieval)).join();
+        assertEquals(QueryRouter.Route.REACT, decision.getRoute());
+        assertEquals(DomainPromptConfig.DOMAIN_LEGAL, decision.getDomain());
+        verify(knowledgeBaseManager, never()).semanticSearch(anyString(), anyInt());
+
+        // 只缓存无上下文的 DIRECT 答案
+        RouteDecision knowledge = RouteDecision.builder().route(QueryRouter.Route.KNOWLEDGE).cacheable(true).build();
+        router.remember(knowledge, query, "answer");
+        assertEquals(0, router.getStats().get("cachedAnswers"));
+    }
+
+    private RouteDecision route(String query, boolean hasPriorTurns) {
+        return router.route(query, hasPriorTurns, null).join();
+    }
+}
@@ -0,0 +1,93 @@
+package com.agent.reasoning.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 执行追踪测试
+ */
+public class ExecutionTraceTest {
+
+    /**
+     * 测试 1: 各阶段耗时汇总，剩余部分计入 other_ms
+     */
+    @Test
+    public void testBreakdownSumsPhases() throws Exception {
+        ExecutionTrace trace = new ExecutionTrace();
+        Span root = trace.startSpan(ExecutionTrace.EXECUTE, null);
+        Span iteration = root.startChild(ExecutionTrace.ITERATION);
+        Span llm = iteration.startChild(ExecutionTrace.LLM_CALL).setKind(Span.Kind.CLIENT);
+        Thread.sleep(20);
+        llm.end();
+        Span tools = iteration.startChild(ExecutionTrace.TOOLS);
+        tools.startChild(ExecutionTrace.TOOL_CALL).end();
+        tools.startChild(ExecutionTrace.TOOL_CALL).end();
+        tools.end();
+        iteration.end();
+        root.end();
+
+        Map<String, Object> breakdown = trace.getBreakdown();
+        assertTrue((Double) breakdown.get("llm_ms") >= 20.0);
+        assertTrue((Double) breakdown.get("total_ms") >= (Double) breakdown.get("llm_ms"));
+        assertEquals(1, breakdown.get("iterations"));
+        assertEquals(1, breakdown.get("llm_calls"));
+        assertEquals(2, breakdown.get("tool_calls"));
+    }
+
+    /**
+     * 测试 2: 并行的前置阶段各自报告耗时，但只按 preamble_ms 计入总耗时
+     */
+    @Test
+    public void testPreambleStagesOverlap() throws Exception {
+        ExecutionTrace trace = new ExecutionTrace();
+        Span root = trace.startSpan(ExecutionTrace.EXECUTE, null);
+        Span preamble = root.startChild(ExecutionTrace.PREAMBLE);
+        Span prompt = preamble.startChild(ExecutionTrace.PROMPT);
+        Span retrieval = preamble.startChild(ExecutionTrace.RETRIEVAL);
+        Thread.sleep(20);
+        prompt.end();
+        retrieval.end();
+        preamble.end();
+        root.startChild(ExecutionTrace.LLM_CALL).end();
+        root.end();
+
+        Map<String, Object> breakdown = trace.getBreakdown();
+        double preambleMs = (Double) breakdown.get("preamble_ms");
+        assertTrue((Double) breakdown.get("prompt_ms") >= 20.0);
+        assertTrue((Double) breakdown.get("retrieval_ms") >= 20.0);
+        assertTrue(preambleMs < (Double) breakdown.get("prompt_ms") + (Double) breakdown.get("retrieval_ms"));
+        assertTrue((Double) breakdown.get("time_to_first_llm_ms") >= preambleMs);
+    }
+
+    /**
+     * 测试 3: OTLP JSON 保留父子关系、类型和错误状态
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOtlpExport() {
+        ExecutionTrace trace = new ExecutionTrace();
+        Span root = trace.startSpan(ExecutionTrace.EXECUTE, null);
+        Span llm = root.startChild(ExecutionTrace.LLM_CALL)
+                .setKind(Span.Kind.CLIENT)
+                .setAttribute("gen_ai.usage.input_tokens", 42);
+        llm.end(new RuntimeException("boom"));
+        root.end();
+
+        Map<String, Object> resourceSpans = ((List<Map<String, Object>>) trace.toOtlpJson().get("resourceSpans")).get(0);
+        Map<String, Object> scopeSpans = ((List<Map<String, Object>>) resourceSpans.get("scopeSpans")).get(0);
+        List<Map<String, Object>> spans = (List<Map<String, Object>>) scopeSpans.get("spans");
+        assertEquals(2, spans.size());
+
+        Map<String, Object> llmSpan = spans.get(1);
+        assertEquals(root.getSpanId(), llmSpan.get("parentSpanId"));
+        assertEquals(3, llmSpan.get("kind"));
+        assertEquals(2, ((Map<String, Object>) llmSpan.get("status")).get("code"));
+        Map<String, Object> attribute = ((List<Map<String, Object>>) llmSpan.get("attributes")).get(0);
+        assertEquals("gen_ai.usage.input_tokens", attribute.get("key"));
+        assertEquals("42", ((Map<String, Object>) attribute.get("value")).get("intValue"));
+    }
+}
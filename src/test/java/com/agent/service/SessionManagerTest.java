@@ -0,0 +1,348 @@
+package com.agent.service;
+
+import com.agent.common.storage.KeyValueStores;
+import com.agent.model.dto.ChatSession;
+import com.agent.model.dto.ConversationMessage;
+import com.agent.model.dto.SessionSummary;
+import com.agent.service.session.SessionArchive;
+import com.agent.service.session.SessionIndex;
+import com.agent.service.session.SessionJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 会话持久化测试（日志 + 快照）
+ */
+public class SessionManagerTest {
+
+    private Path dir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("sessions");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private SessionManager newSessionManager() {
+        return newSessionManager("file");
+    }
+
+    private SessionManager newSessionManager(String storageBackend) {
+        SessionManager sessionManager = new SessionManager();
+        ReflectionTestUtils.setField(sessionManager, "storagePath", dir.toString());
+        ReflectionTestUtils.setField(sessionManager, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(sessionManager, "hotMessages", 200);
+        ReflectionTestUtils.setField(sessionManager, "archiveBatch", 100);
+        ReflectionTestUtils.setField(sessionManager, "snapshotEvery", 100);
+        ReflectionTestUtils.setField(sessionManager, "fsync", "none");
+        ReflectionTestUtils.setField(sessionManager, "writeBehind", true);
+        ReflectionTestUtils.setField(sessionManager, "flushDelayMs", 60_000L);
+        ReflectionTestUtils.setField(sessionManager, "maxPending", 1000);
+        ReflectionTestUtils.setField(sessionManager, "maxCachedSessions", 2);
+        ReflectionTestUtils.setField(sessionManager, "maxIdleMinutes", 30L);
+        sessionManager.init();
+        return sessionManager;
+    }
+
+    /**
+     * 测试 1: 每轮只追加日志，不重写会话 JSON；重新加载时重放日志
+     */
+    @Test
+    public void testTurnsAppendToJournal() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ChatSession session = sessionManager.getOrCreateSession("s1");
+        session.addMessage("user", "first question");
+        sessionManager.saveSession(session);
+
+        File snapshot = dir.resolve("s1.json").toFile();
+        String before = new String(Files.readAllBytes(snapshot.toPath()), "UTF-8");
+        for (int i = 0; i < 10; i++) {
+            session.addMessage("assistant", "answer " + i);
+            session.addMessage("user", "question " + i);
+            sessionManager.saveSession(session);
+        }
+
+        assertEquals(before, new String(Files.readAllBytes(snapshot.toPath()), "UTF-8"));
+        assertTrue(Files.size(dir.resolve("s1" + SessionJournal.SUFFIX)) > 0);
+
+        ChatSession reloaded = newSessionManager().getOrCreateSession("s1");
+        assertEquals(21, reloaded.getMessageCount());
+        assertEquals(session.getMessages(), reloaded.getMessages());
+    }
+
+    /**
+     * 测试 2: 删改会话时重写快照，旧版本的日志记录不再重放
+     */
+    @Test
+    public void testEditRewritesSnapshot() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ChatSession session = sessionManager.getOrCreateSession("s1");
+        session.addMessage("user", "first question");
+        sessionManager.saveSession(session);
+        session.addMessage("assistant", "first answer");
+        session.addMessage("user", "second question");
+        sessionManager.saveSession(session);
+
+        session.removeMessage(session.getMessages().get(1).getMessageId());
+        sessionManager.saveSession(session);
+        assertFalse(Files.exists(dir.resolve("s1" + SessionJournal.SUFFIX)));
+
+        ChatSession reloaded = newSessionManager().getOrCreateSession("s1");
+        assertEquals(2, reloaded.getMessageCount());
+        assertEquals("second question", reloaded.getMessages().get(1).getContent());
+    }
+
+    /**
+     * 测试 3: 延迟写把窗口内的多次更新合并为一次写盘，关闭时写完待写会话
+     */
+    @Test
+    public void testWriteBehindCoalescesUpdates() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ChatSession session = sessionManager.getOrCreateSession("s1");
+        for (int i = 0; i < 5; i++) {
+            session.addMessage("user", "question " + i);
+            sessionManager.markDirty(session);
+        }
+        assertFalse(Files.exists(dir.resolve("s1.json")));
+        assertEquals(1, sessionManager.getPersistenceStats().get("queueDepth"));
+
+        sessionManager.flushAll();
+
+        Map<String, Object> stats = sessionManager.getPersistenceStats();
+        assertEquals(0, stats.get("queueDepth"));
+        assertEquals(1L, stats.get("flushes"));
+        assertEquals(4L, stats.get("coalesced"));
+        assertEquals(5, newSessionManager().getOrCreateSession("s1").getMessageCount());
+    }
+
+    /**
+     * 测试 4: 超出缓存上限的会话先在后台写盘再淘汰；列表和统计来自索引，重启后不加载会话
+     */
+    @Test
+    public void testBoundedCacheAndIndex() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        for (int i = 0; i < 4; i++) {
+            ChatSession session = sessionManager.getOrCreateSession("s" + i);
+            session.addMessage("user", "question " + i);
+            session.addMessage("assistant", "answer " + i);
+            sessionManager.markDirty(session);
+        }
+
+        // 待写会话由后台线程写盘后淘汰，请求线程不等待
+        for (int i = 0; i < 200 && sessionManager.getCachedSessionCount() > 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, sessionManager.getCachedSessionCount());
+        assertTrue(Files.exists(dir.resolve("s0.json")));
+        assertEquals(4, sessionManager.getSessionCount());
+        assertEquals(2, sessionManager.getOrCreateSession("s0").getMessageCount());
+        sessionManager.flushAll();
+
+        SessionManager restarted = newSessionManager();
+        assertEquals(0, restarted.getCachedSessionCount());
+        List<SessionSummary> sessions = restarted.getAllSessions();
+        assertEquals(4, sessions.size());
+        assertEquals(8, sessions.stream().mapToInt(SessionSummary::getMessageCount).sum());
+
+        restarted.deleteSession("s1");
+        assertEquals(3, newSessionManager().getSessionCount());
+    }
+
+    /**
+     * 测试 5: 同一会话的并发请求不丢消息，落盘结果与内存一致
+     */
+    @Test
+    public void testConcurrentTurnsOnSameSession() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ReflectionTestUtils.setField(sessionManager, "flushDelayMs", 1L);
+        ReflectionTestUtils.setField(sessionManager, "snapshotEvery", 7);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    ChatSession session = sessionManager.getOrCreateSession("s1");
+                    session.addMessage("user", "question " + thread + "-" + i);
+                    if (i % 2 == 0) {
+                        sessionManager.markDirty(session);
+                    } else {
+                        sessionManager.saveSession(session);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        sessionManager.flushAll();
+
+        ChatSession session = sessionManager.getOrCreateSession("s1");
+        assertEquals(400, session.getMessageCount());
+        ChatSession reloaded = newSessionManager().getOrCreateSession("s1");
+        assertEquals(400, reloaded.getMessageCount());
+        assertEquals(session.getMessages(), reloaded.getMessages());
+        assertThrows(IllegalArgumentException.class, () -> sessionManager.getOrCreateSession("../s1"));
+    }
+
+    /**
+     * 测试 6: log 后端首次启动时从 JSON 文件迁移（含日志和归档），之后的读写都在单个存储文件中
+     */
+    @Test
+    public void testLogBackendMigratesFiles() throws Exception {
+        SessionManager files = newSessionManager();
+        ReflectionTestUtils.setField(files, "hotMessages", 4);
+        ReflectionTestUtils.setField(files, "archiveBatch", 2);
+        ChatSession session = files.getOrCreateSession("s1");
+        for (int i = 0; i < 8; i++) {
+            session.addMessage(i % 2 == 0 ? "user" : "assistant", "message " + i);
+            files.saveSession(session);
+        }
+        assertTrue(session.getArchivedCount() > 0);
+
+        List<ConversationMessage> expected = files.exportSession("s1").getMessages();
+
+        // 索引作废：log 后端从迁移后的存储重建
+        Files.delete(dir.resolve(SessionIndex.FILE_NAME));
+        SessionManager kv = newSessionManager("log");
+        assertEquals(1, kv.getSessionCount());
+        ChatSession migrated = kv.getOrCreateSession("s1");
+        assertEquals(8, migrated.getMessageCount());
+        assertEquals(expected, kv.exportSession("s1").getMessages());
+
+        migrated.addMessage("user", "message 8");
+        kv.saveSession(migrated);
+        kv.shutdown();
+        assertTrue(Files.exists(dir.resolve(KeyValueStores.LOG_FILE_NAME)));
+
+        SessionManager reopened = newSessionManager("log");
+        assertEquals(9, reopened.getOrCreateSession("s1").getMessageCount());
+        assertEquals(9, reopened.exportSession("s1").getMessages().size());
+        reopened.shutdown();
+    }
+
+    /**
+     * 测试 7: 写盘失败的会话保持待写、不被淘汰，退避后重试直到写盘成功
+     */
+    @Test
+    public void testFailedFlushIsRetried() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ReflectionTestUtils.setField(sessionManager, "flushDelayMs", 20L);
+        // 临时文件的位置被目录占住：写快照失败
+        Path blocker = Files.createDirectory(dir.resolve("s1.json.tmp"));
+        ChatSession session = sessionManager.getOrCreateSession("s1");
+        session.addMessage("user", "question");
+        sessionManager.markDirty(session);
+        for (int i = 0; i < 200 && (Long) sessionManager.getPersistenceStats().get("flushFailures") < 2; i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue((Long) sessionManager.getPersistenceStats().get("flushFailures") >= 2);
+        assertFalse(Files.exists(dir.resolve("s1.json")));
+        for (int i = 0; i < 3; i++) {
+            sessionManager.getOrCreateSession("other" + i);
+        }
+        assertSame(session, sessionManager.getOrCreateSession("s1"));
+
+        Files.delete(blocker);
+        for (int i = 0; i < 500 && !Files.exists(dir.resolve("s1.json")); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.exists(dir.resolve("s1.json")));
+        assertEquals(1, newSessionManager().getOrCreateSession("s1").getMessageCount());
+    }
+
+    /**
+     * 测试 8: 处理请求中的会话不被淘汰；同一会话 ID 并发加载时只得到一个对象
+     */
+    @Test
+    public void testPinnedSessionsStayCached() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ChatSession pinned = sessionManager.acquireSession("s1");
+        for (int i = 2; i < 6; i++) {
+            sessionManager.getOrCreateSession("s" + i);
+        }
+        assertSame(pinned, sessionManager.getOrCreateSession("s1"));
+
+        sessionManager.releaseSession(pinned);
+        for (int i = 6; i < 9; i++) {
+            sessionManager.getOrCreateSession("s" + i);
+        }
+        assertEquals(2, sessionManager.getCachedSessionCount());
+        assertNotSame(pinned, sessionManager.getOrCreateSession("s1"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<ChatSession>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> sessionManager.acquireSession("s9")));
+        }
+        ChatSession first = futures.get(0).get();
+        for (Future<ChatSession> future : futures) {
+            assertSame(first, future.get());
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * 测试 9: 归档块写失败时消息留在热消息中，恢复后下次保存补写归档
+     */
+    @Test
+    public void testFailedArchiveKeepsMessages() throws Exception {
+        SessionManager sessionManager = newSessionManager();
+        ReflectionTestUtils.setField(sessionManager, "hotMessages", 4);
+        ReflectionTestUtils.setField(sessionManager, "archiveBatch", 2);
+        ChatSession session = sessionManager.getOrCreateSession("s1");
+        for (int i = 0; i < 6; i++) {
+            session.addMessage(i % 2 == 0 ? "user" : "assistant", "message " + i);
+            sessionManager.saveSession(session);
+        }
+        assertEquals(2, session.getArchivedCount());
+
+        // 归档文件的位置被目录占住：追加归档块失败
+        Path archive = dir.resolve("s1" + SessionArchive.SUFFIX);
+        Path saved = Files.move(archive, dir.resolve("s1.archive.saved"));
+        Path blocker = Files.createFile(Files.createDirectory(archive).resolve("blocker"));
+        for (int i = 6; i < 8; i++) {
+            session.addMessage(i % 2 == 0 ? "user" : "assistant", "message " + i);
+            sessionManager.saveSession(session);
+        }
+        assertEquals(8, session.getMessageCount());
+        assertEquals(2, session.getArchivedCount());
+        assertEquals(6, session.getMessages().size());
+
+        Files.delete(blocker);
+        Files.delete(archive);
+        Files.move(saved, archive);
+        sessionManager.saveSession(session);
+        assertEquals(4, session.getArchivedCount());
+
+        List<ConversationMessage> messages = newSessionManager().exportSession("s1").getMessages();
+        assertEquals(8, messages.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals("message " + i, messages.get(i).getContent());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.agent.service.session;
+
+import com.agent.model.dto.ConversationMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 会话冷存储测试
+ */
+public class SessionArchiveTest {
+
+    private Path dir;
+    private SessionArchive archive;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("session-archive");
+        archive = new SessionArchive(dir.resolve("s1" + SessionArchive.SUFFIX), new ObjectMapper());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        archive.delete();
+        Files.deleteIfExists(dir);
+    }
+
+    private static List<ConversationMessage> messages(int from, int to) {
+        List<ConversationMessage> messages = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            messages.add(ConversationMessage.builder()
+                    .role(i % 2 == 0 ? "user" : "assistant")
+                    .content("message " + i + " about the delivery status of order " + i)
+                    .timestamp(i)
+                    .messageId("m" + i)
+                    .build());
+        }
+        return messages;
+    }
+
+    /**
+     * 测试 1: 多个压缩块按下标范围读回，跨块范围顺序正确
+     */
+    @Test
+    public void testReadRangesAcrossBlocks() throws Exception {
+        archive.append(0, messages(0, 100), false);
+        archive.append(100, messages(100, 250), false);
+
+        assertEquals(250, archive.read(0, 250).size());
+        List<ConversationMessage> range = archive.read(95, 105);
+        assertEquals(10, range.size());
+        assertEquals("m95", range.get(0).getMessageId());
+        assertEquals("m104", range.get(9).getMessageId());
+        assertEquals("m249", archive.read(249, 300).get(0).getMessageId());
+        assertTrue(archive.sizeInBytes() < 250 * 40);
+    }
+
+    /**
+     * 测试 2: 快照未确认的残留块在下一次追加时被截掉
+     */
+    @Test
+    public void testUncommittedBlockTruncated() throws Exception {
+        archive.append(0, messages(0, 100), false);
+        archive.append(100, messages(100, 200), false);
+
+        // 快照只记录了前 100 条：第二块是残留
+        archive.append(100, messages(500, 600), false);
+
+        List<ConversationMessage> all = archive.read(0, 1000);
+        assertEquals(200, all.size());
+        assertEquals("m99", all.get(99).getMessageId());
+        assertEquals("m500", all.get(100).getMessageId());
+    }
+}